@@ -0,0 +1,207 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jcstress.annotations.*;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.I_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+/**
+ * Stress tests of the hierarchical Collection locks
+ * in Multi-Writer/Multi-Reader mode.
+ */
+public class CollectionLocksStressTest {
+
+    private static final int CONCURRENCY_LEVEL = 16;
+    private static final int TIMEOUT = 100;
+
+    private static final XmldbURI APPS = XmldbURI.create("/db/apps");
+    private static final XmldbURI COLLECTION_A = XmldbURI.create("/db/apps/a");
+    private static final XmldbURI COLLECTION_B = XmldbURI.create("/db/apps/b");
+
+    private static LockManager multiWriterLockManager() {
+        return new LockManager(null, CONCURRENCY_LEVEL, true, TIMEOUT);
+    }
+
+    private static ManagedCollectionLock readLock(final LockManager lockManager, final XmldbURI collectionUri) {
+        try {
+            return lockManager.acquireCollectionReadLock(collectionUri);
+        } catch (final LockException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ManagedCollectionLock writeLock(final LockManager lockManager, final XmldbURI collectionUri) {
+        try {
+            return lockManager.acquireCollectionWriteLock(collectionUri);
+        } catch (final LockException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "Writers were mutually exclusive")
+    @Outcome(id = "1", expect = Expect.FORBIDDEN, desc = "Writers overlapped")
+    @State
+    public static class SameCollectionWriters {
+        final LockManager lockManager = multiWriterLockManager();
+        int counter;
+
+        @Actor
+        public void actor1() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_A)) {
+                counter = counter + 1;
+            }
+        }
+
+        @Actor
+        public void actor2() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_A)) {
+                counter = counter + 1;
+            }
+        }
+
+        @Arbiter
+        public void arbiter(final I_Result r) {
+            r.r1 = counter;
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "Writers were mutually exclusive")
+    @Outcome(id = "1", expect = Expect.FORBIDDEN, desc = "Writer of ancestor overlapped with writer of descendant")
+    @State
+    public static class AncestorAndDescendantWriters {
+        final LockManager lockManager = multiWriterLockManager();
+        int counter;
+
+        @Actor
+        public void actor1() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, APPS)) {
+                counter = counter + 1;
+            }
+        }
+
+        @Actor
+        public void actor2() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_A)) {
+                counter = counter + 1;
+            }
+        }
+
+        @Arbiter
+        public void arbiter(final I_Result r) {
+            r.r1 = counter;
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = {"0, 0", "1, 1"}, expect = Expect.ACCEPTABLE, desc = "Reader saw a consistent state")
+    @Outcome(id = {"1, 0", "0, 1"}, expect = Expect.FORBIDDEN, desc = "Reader of ancestor saw a partial write of descendant")
+    @State
+    public static class AncestorReaderAndDescendantWriter {
+        final LockManager lockManager = multiWriterLockManager();
+        int x;
+        int y;
+
+        @Actor
+        public void reader(final II_Result r) {
+            try (final ManagedCollectionLock lock = readLock(lockManager, APPS)) {
+                r.r1 = x;
+                r.r2 = y;
+            }
+        }
+
+        @Actor
+        public void writer() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_A)) {
+                x = 1;
+                y = 1;
+            }
+        }
+    }
+
+    @JCStressTest
+    @Outcome(id = "true, true", expect = Expect.ACCEPTABLE, desc = "Both writers completed")
+    @State
+    public static class SiblingWriters {
+        final LockManager lockManager = multiWriterLockManager();
+        boolean a;
+        boolean b;
+
+        @Actor
+        public void actor1() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_A)) {
+                a = lockManager.isCollectionLockedForWrite(COLLECTION_A);
+            }
+        }
+
+        @Actor
+        public void actor2() {
+            try (final ManagedCollectionLock lock = writeLock(lockManager, COLLECTION_B)) {
+                b = lockManager.isCollectionLockedForWrite(COLLECTION_B);
+            }
+        }
+
+        @Arbiter
+        public void arbiter(final ZZ_Result r) {
+            r.r1 = a;
+            r.r2 = b;
+        }
+    }
+
+    /**
+     * Two threads lock sibling Collections in the opposite order, which
+     * would deadlock if nested acquisitions waited indefinitely.
+     */
+    @JCStressTest
+    @Outcome(id = "true, true", expect = Expect.ACCEPTABLE, desc = "Both threads acquired both locks")
+    @Outcome(id = {"true, false", "false, true"}, expect = Expect.ACCEPTABLE_INTERESTING, desc = "One thread gave up to avoid a deadlock")
+    @Outcome(id = "false, false", expect = Expect.ACCEPTABLE_INTERESTING, desc = "Both threads gave up to avoid a deadlock")
+    @State
+    public static class OppositeOrderWriters {
+        final LockManager lockManager = multiWriterLockManager();
+
+        @Actor
+        public void actor1(final ZZ_Result r) {
+            r.r1 = lockBoth(lockManager, COLLECTION_A, COLLECTION_B);
+        }
+
+        @Actor
+        public void actor2(final ZZ_Result r) {
+            r.r2 = lockBoth(lockManager, COLLECTION_B, COLLECTION_A);
+        }
+
+        private static boolean lockBoth(final LockManager lockManager, final XmldbURI first, final XmldbURI second) {
+            try (final ManagedCollectionLock firstLock = writeLock(lockManager, first)) {
+                try (final ManagedCollectionLock secondLock = lockManager.acquireCollectionWriteLock(second)) {
+                    return true;
+                } catch (final LockException e) {
+                    return false;
+                }
+            }
+        }
+    }
+}
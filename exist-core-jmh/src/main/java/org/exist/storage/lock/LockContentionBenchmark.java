@@ -0,0 +1,167 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-threaded benchmarks of lock acquisition,
+ * including the overhead of the {@link LockTable}.
+ */
+public class LockContentionBenchmark {
+
+    private static final int THREADS = 8;
+
+    @State(Scope.Benchmark)
+    public static class LockTableState {
+        /**
+         * Size of the lock event buffer, 0 disables the buffer
+         */
+        @Param({"0", "4096"})
+        int eventBufferSize;
+
+        /**
+         * Contention sampling interval, 0 disables sampling
+         */
+        @Param({"0", "64"})
+        int sampleInterval;
+
+        LockTable lockTable;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            lockTable = new LockTable(false, 0, eventBufferSize, sampleInterval, LockTable.DEFAULT_CONTENTION_THRESHOLD);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LockManagerState {
+        final LockManager lockManager = new LockManager(1000);
+        final XmldbURI sharedCollection = XmldbURI.create("/db/apps/docs/data");
+        final XmldbURI sharedDocument = XmldbURI.create("/db/apps/docs/data/1.xml");
+        final AtomicInteger nextThread = new AtomicInteger();
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        XmldbURI document;
+        String btree;
+
+        @Setup(Level.Trial)
+        public void setUp(final LockManagerState lockManagerState) {
+            final int thread = lockManagerState.nextThread.getAndIncrement();
+            document = XmldbURI.create("/db/apps/docs/data/" + thread + ".xml");
+            btree = "BTREE-" + thread;
+        }
+    }
+
+    /**
+     * All threads record lock events for the same lock.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public void lockTableEventsSharedLock(final LockTableState lockTableState) {
+        final LockTable lockTable = lockTableState.lockTable;
+        lockTable.attempt(-1, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+        lockTable.acquired(-1, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+        lockTable.released(-1, "BTREE", Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+    }
+
+    /**
+     * Each thread records lock events for its own lock.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public void lockTableEventsDistinctLocks(final LockTableState lockTableState, final ThreadState threadState) {
+        final LockTable lockTable = lockTableState.lockTable;
+        lockTable.attempt(-1, threadState.btree, Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+        lockTable.acquired(-1, threadState.btree, Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+        lockTable.released(-1, threadState.btree, Lock.LockType.BTREE, Lock.LockMode.READ_LOCK);
+    }
+
+    /**
+     * All threads read the same Collection.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public void collectionReadLockShared(final LockManagerState lockManagerState, final Blackhole blackhole) throws LockException {
+        try (final ManagedCollectionLock lock = lockManagerState.lockManager.acquireCollectionReadLock(lockManagerState.sharedCollection)) {
+            blackhole.consume(lock);
+        }
+    }
+
+    /**
+     * All threads write the same Document.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public void documentWriteLockShared(final LockManagerState lockManagerState, final Blackhole blackhole) throws LockException {
+        try (final ManagedDocumentLock lock = lockManagerState.lockManager.acquireDocumentWriteLock(lockManagerState.sharedDocument)) {
+            blackhole.consume(lock);
+        }
+    }
+
+    /**
+     * Each thread writes its own Document.
+     */
+    @Benchmark
+    @Threads(THREADS)
+    public void documentWriteLockDistinct(final LockManagerState lockManagerState, final ThreadState threadState, final Blackhole blackhole) throws LockException {
+        try (final ManagedDocumentLock lock = lockManagerState.lockManager.acquireDocumentWriteLock(threadState.document)) {
+            blackhole.consume(lock);
+        }
+    }
+
+    /**
+     * Readers and a writer of the same Document.
+     */
+    @Benchmark
+    @Group("documentReadWrite")
+    @GroupThreads(THREADS - 1)
+    public void documentReader(final LockManagerState lockManagerState, final Blackhole blackhole) throws LockException {
+        try (final ManagedDocumentLock lock = lockManagerState.lockManager.acquireDocumentReadLock(lockManagerState.sharedDocument)) {
+            blackhole.consume(lock);
+        }
+    }
+
+    @Benchmark
+    @Group("documentReadWrite")
+    @GroupThreads(1)
+    public void documentWriter(final LockManagerState lockManagerState, final Blackhole blackhole) throws LockException {
+        try (final ManagedDocumentLock lock = lockManagerState.lockManager.acquireDocumentWriteLock(lockManagerState.sharedDocument)) {
+            blackhole.consume(lock);
+        }
+    }
+}
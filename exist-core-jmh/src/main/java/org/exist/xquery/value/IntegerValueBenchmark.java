@@ -0,0 +1,112 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.RangeSequence;
+import org.exist.xquery.XPathException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+
+/**
+ * Benchmarks of xs:integer arithmetic and comparison,
+ * for values which do and do not fit into a long.
+ */
+@State(Scope.Benchmark)
+public class IntegerValueBenchmark {
+
+    /**
+     * The first operand, the second is one less
+     */
+    @Param({"12345", "9223372036854775807", "92233720368547758070"})
+    private String value;
+
+    private IntegerValue left;
+    private IntegerValue right;
+    private DoubleValue rightDouble;
+
+    @Setup(Level.Trial)
+    public void setUp() throws XPathException {
+        final BigInteger bigValue = new BigInteger(value);
+        left = new IntegerValue(bigValue);
+        right = new IntegerValue(bigValue.subtract(BigInteger.ONE));
+        rightDouble = new DoubleValue(right.getDouble());
+    }
+
+    @Benchmark
+    public ComputableValue plus() throws XPathException {
+        return left.plus(right);
+    }
+
+    @Benchmark
+    public ComputableValue minus() throws XPathException {
+        return left.minus(right);
+    }
+
+    @Benchmark
+    public ComputableValue mult() throws XPathException {
+        return left.mult(right);
+    }
+
+    @Benchmark
+    public NumericValue mod() throws XPathException {
+        return left.mod(right);
+    }
+
+    @Benchmark
+    public IntegerValue idiv() throws XPathException {
+        return left.idiv(right);
+    }
+
+    @Benchmark
+    public void compare(final Blackhole blackhole) throws XPathException {
+        blackhole.consume(left.compareTo(null, right));
+        blackhole.consume(left.compareTo(null, rightDouble));
+    }
+
+    @Benchmark
+    public int hashCodeOf() {
+        return left.hashCode();
+    }
+
+    @Benchmark
+    public String stringValue() throws XPathException {
+        return left.getStringValue();
+    }
+
+    /**
+     * Iterates a range sequence, i.e. {@code 1 to 1000}.
+     */
+    @Benchmark
+    public void range(final Blackhole blackhole) throws XPathException {
+        final SequenceIterator iterator = new RangeSequence(new IntegerValue(1), new IntegerValue(1000)).iterate();
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.nextItem());
+        }
+    }
+}
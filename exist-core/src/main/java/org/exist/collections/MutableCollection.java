@@ -1089,6 +1089,8 @@ public class MutableCollection implements Collection {
 
                     trigger.afterDeleteDocument(broker, transaction, doc.getURI());
 
+                    broker.getBrokerPool().getNotificationService().notifyUpdate(doc, UpdateListener.REMOVE);
+
                 } finally {
                     broker.getBrokerPool().getProcessMonitor().endJob();
                 }
@@ -1873,6 +1875,8 @@ public class MutableCollection implements Collection {
                 trigger.afterUpdateDocument(broker, transaction, blob);
             }
 
+            db.getNotificationService().notifyUpdate(blob, oldDoc == null ? UpdateListener.ADD : UpdateListener.UPDATE);
+
             // NOTE: early release of Collection lock inline with Asymmetrical Locking scheme
             collectionLock.close();
 
@@ -84,8 +84,12 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.XMLFilterImpl;
 
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamException;
@@ -1390,9 +1394,24 @@ public class RESTServer {
                 compilationTime = 0;
             }
 
+            final XQueryResultCache resultCache = broker.getBrokerPool().getXQueryResultCache();
+            final XQueryResultCache.Key resultKey = cache || sessionIdParam != null ? null
+                    : resultCacheKey(resultCache, broker, compiled, source, request);
+            if (resultKey != null && writeCachedResult(resultCache, resultKey, response)) {
+                return;
+            }
+
             try {
                 final long executeStart = System.currentTimeMillis();
-                final Sequence resultSequence = xquery.execute(broker, compiled, null, outputProperties);
+                final Sequence resultSequence;
+                final XQueryResultCache.Recording recording = resultKey != null ? resultCache.record(broker, context) : null;
+                try {
+                    resultSequence = xquery.execute(broker, compiled, null, outputProperties);
+                } finally {
+                    if (recording != null) {
+                        recording.close();
+                    }
+                }
                 final long executionTime = System.currentTimeMillis() - executeStart;
 
                 if (LOG.isDebugEnabled()) {
@@ -1407,7 +1426,17 @@ public class RESTServer {
                     }
                 }
 
-                writeResults(response, broker, transaction, resultSequence, howmany, start, typed, outputProperties, wrap, compilationTime, executionTime);
+                if (recording != null) {
+                    final CapturingResponseWrapper capturingResponse = new CapturingResponseWrapper(response, resultCache.getMaxEntrySize());
+                    final boolean committed = response.isCommitted();
+                    writeResults(capturingResponse, broker, transaction, resultSequence, howmany, start, typed, outputProperties, wrap, compilationTime, executionTime);
+                    final byte[] captured = capturingResponse.getCaptured();
+                    if (!committed && captured != null) {
+                        resultCache.put(resultKey, recording, context, response.getContentType(), captured);
+                    }
+                } else {
+                    writeResults(response, broker, transaction, resultSequence, howmany, start, typed, outputProperties, wrap, compilationTime, executionTime);
+                }
 
             } finally {
                 context.runCleanupTasks();
@@ -1589,10 +1618,35 @@ public class RESTServer {
             boolean wrap = outputProperties.getProperty("_wrap") != null
                     && "yes".equals(outputProperties.getProperty("_wrap"));
 
+            final XQueryResultCache resultCache = broker.getBrokerPool().getXQueryResultCache();
+            final XQueryResultCache.Key resultKey = resultCacheKey(resultCache, broker, compiled, source, request);
+            if (resultKey != null && writeCachedResult(resultCache, resultKey, response)) {
+                return;
+            }
+
             try {
                 final long executeStart = System.currentTimeMillis();
-                final Sequence result = xquery.execute(broker, compiled, null, outputProperties);
-                writeResults(response, broker, transaction, result, -1, 1, false, outputProperties, wrap, compilationTime, System.currentTimeMillis() - executeStart);
+                final Sequence result;
+                final XQueryResultCache.Recording recording = resultKey != null ? resultCache.record(broker, context) : null;
+                try {
+                    result = xquery.execute(broker, compiled, null, outputProperties);
+                } finally {
+                    if (recording != null) {
+                        recording.close();
+                    }
+                }
+
+                if (recording != null) {
+                    final CapturingResponseWrapper capturingResponse = new CapturingResponseWrapper(response, resultCache.getMaxEntrySize());
+                    final boolean committed = response.isCommitted();
+                    writeResults(capturingResponse, broker, transaction, result, -1, 1, false, outputProperties, wrap, compilationTime, System.currentTimeMillis() - executeStart);
+                    final byte[] captured = capturingResponse.getCaptured();
+                    if (!committed && captured != null) {
+                        resultCache.put(resultKey, recording, context, response.getContentType(), captured);
+                    }
+                } else {
+                    writeResults(response, broker, transaction, result, -1, 1, false, outputProperties, wrap, compilationTime, System.currentTimeMillis() - executeStart);
+                }
 
             } finally {
                 context.runCleanupTasks();
@@ -2108,6 +2162,45 @@ public class RESTServer {
         attrs.addAttribute("", "permissions", "permissions", "CDATA", perm.toString());
     }
 
+    /**
+     * Get the key for the cached result of a query, if the result of the query may be cached.
+     *
+     * Only the results of GET requests are cached, as they are determined by the URI of the request.
+     */
+    private static @Nullable XQueryResultCache.Key resultCacheKey(final XQueryResultCache resultCache, final DBBroker broker,
+            final CompiledXQuery compiled, final Source source, final HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) || !resultCache.isCacheable(compiled)) {
+            return null;
+        }
+        return new XQueryResultCache.Key(source, broker.getCurrentSubject().getName(),
+                request.getRequestURI() + '?' + request.getQueryString());
+    }
+
+    /**
+     * Write the cached result of a query to the response.
+     *
+     * @return true if the cached result was written, false if there is no cached result
+     */
+    private static boolean writeCachedResult(final XQueryResultCache resultCache, final XQueryResultCache.Key resultKey,
+            final HttpServletResponse response) throws BadRequestException {
+        final XQueryResultCache.CachedResult cachedResult = resultCache.get(resultKey);
+        if (cachedResult == null) {
+            return false;
+        }
+
+        if (cachedResult.getContentType() != null) {
+            response.setContentType(cachedResult.getContentType());
+        }
+        try {
+            final OutputStream os = response.getOutputStream();
+            os.write(cachedResult.getContent());
+            os.flush();
+        } catch (final IOException e) {
+            throw new BadRequestException("Error while writing cached result: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
     protected void writeResults(final HttpServletResponse response, final DBBroker broker, final Txn transaction,
             final Sequence results, int howmany, final int start, final boolean typed,
             final Properties outputProperties, final boolean wrap, final long compilationTime, final long executionTime)
@@ -2273,4 +2366,85 @@ public class RESTServer {
             )
         );
     }
+
+    /**
+     * Copies the output which is written to the output stream of a response,
+     * so that it can be cached.
+     */
+    private static class CapturingResponseWrapper extends HttpServletResponseWrapper {
+        private final int maxCaptureSize;
+        private @Nullable ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        private @Nullable ServletOutputStream outputStream = null;
+
+        CapturingResponseWrapper(final HttpServletResponse response, final int maxCaptureSize) {
+            super(response);
+            this.maxCaptureSize = maxCaptureSize;
+        }
+
+        /**
+         * Get the output which was written to the response.
+         *
+         * @return the output, or null if the output was too large or not written to the output stream
+         */
+        @Nullable byte[] getCaptured() {
+            return captured != null ? captured.toByteArray() : null;
+        }
+
+        private void capture(final byte[] b, final int off, final int len) {
+            if (captured != null) {
+                if (captured.size() + len > maxCaptureSize) {
+                    captured = null;
+                } else {
+                    captured.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            captured = null;
+            return super.getWriter();
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                final ServletOutputStream os = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        os.write(b);
+                        capture(new byte[] {(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        os.write(b, off, len);
+                        capture(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        os.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        os.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return os.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        os.setWriteListener(writeListener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
 }
@@ -33,21 +33,26 @@ import org.exist.security.internal.web.HttpAccount;
 import org.exist.storage.BrokerPool;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.VirtualThreads;
 import org.xmldb.api.DatabaseManager;
 import org.xmldb.api.base.Database;
 import org.xmldb.api.base.XMLDBException;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Principal;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -70,6 +75,7 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
     private Authenticator authenticator;
     private Subject defaultUser = null;
     private boolean internalOnly = false;
+    @Nullable private transient ExecutorService virtualThreadExecutor = null;
     
     @Override
     public void init(ServletConfig config) throws ServletException {
@@ -91,8 +97,65 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
     @Override
     public void destroy() {
         super.destroy();
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
         BrokerPool.stopAll(false);
     }
+
+    /**
+     * If the servlet is configured to use virtual threads, and the request is not
+     * already being handled on a virtual thread, the request is processed
+     * asynchronously on a new virtual thread. Otherwise it is processed on
+     * the container's thread.
+     */
+    @Override
+    protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        if (virtualThreadExecutor == null || VirtualThreads.isVirtual(Thread.currentThread())
+                || !request.isAsyncSupported() || request.isAsyncStarted()) {
+            serviceRequest(request, response);
+            return;
+        }
+
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        // long running requests must not be timed out by the container
+        asyncContext.setTimeout(0);
+        try {
+            virtualThreadExecutor.execute(() -> {
+                try {
+                    serviceRequest(request, response);
+                } catch (final ServletException | IOException | RuntimeException e) {
+                    getLog().error("Error whilst processing request {}: {}", request.getRequestURI(), e.getMessage(), e);
+                    if (!response.isCommitted()) {
+                        try {
+                            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        } catch (final IOException | IllegalStateException ioe) {
+                            getLog().warn("Unable to send error response: {}", ioe.getMessage());
+                        }
+                    }
+                } finally {
+                    asyncContext.complete();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            // the servlet is being destroyed
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+        }
+    }
+
+    /**
+     * Dispatches the request to the doXXX method for its HTTP method.
+     *
+     * @param request the HTTP request
+     * @param response the HTTP response
+     *
+     * @throws ServletException if the request could not be handled
+     * @throws IOException if an I/O error occurs
+     */
+    protected void serviceRequest(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+        super.service(request, response);
+    }
     
     public abstract Logger getLog();
     
@@ -214,6 +277,15 @@ public abstract class AbstractExistHttpServlet extends HttpServlet {
         if(param != null) {
             internalOnly = Boolean.parseBoolean(param);
         }
+
+        if(Boolean.parseBoolean(config.getInitParameter("virtual-threads"))) {
+            virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor().orElse(null);
+            if(virtualThreadExecutor != null) {
+                getLog().info("Requests to {} will be processed on virtual threads", config.getServletName());
+            } else {
+                getLog().warn("Virtual threads are not supported by this JVM, requests to {} will be processed on the container's threads", config.getServletName());
+            }
+        }
     }
     
     protected Subject authenticate(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -579,12 +579,12 @@ public class EXistServlet extends AbstractExistHttpServlet {
     }
 
     @Override
-    protected void service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+    protected void serviceRequest(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
         final String method = req.getMethod();
         if (method.equals("PATCH")) {
             this.doPatch(req, resp);
             return;
         }
-        super.service(req, resp);
+        super.serviceRequest(req, resp);
     }
 }
@@ -46,6 +46,11 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	private Object2LongMap<String> dateHeaders = null;
 	private static final long NO_SUCH_DATE_HEADER = -1;
 
+	/**
+	 * Set when the response is changed or written to through this wrapper
+	 */
+	private boolean modified = false;
+
 	/**
 	 * @param response the http response
 	 */
@@ -55,11 +60,13 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	
 	@Override
 	public void addCookie(final String name, final String value) {
+		modified = true;
 		response.addCookie(new Cookie(name, encode(value)));
 	}
 
 	@Override
 	public void addCookie(final String name, final String value, final int maxAge) {
+		modified = true;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		response.addCookie(cookie);
@@ -67,6 +74,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	
 	@Override
 	public void addCookie(final String name, final String value, final int maxAge, final boolean secure) {
+		modified = true;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		cookie.setSecure(secure);
@@ -75,6 +83,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	
 	@Override
 	public void addCookie(final String name, final String value, final int maxAge, boolean secure, final String domain, final String path) {
+		modified = true;
 		final Cookie cookie = new Cookie(name, encode(value));
 		cookie.setMaxAge(maxAge);
 		cookie.setSecure( secure );
@@ -90,21 +99,25 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	@Override
 	public void setContentType(final String type)
 	{
+		modified = true;
 		response.setContentType(type);
 	}
 	
 	@Override
 	public void addDateHeader(final String name, final long date) {
+		modified = true;
 		response.addDateHeader(name, date);
 	}
 	
 	@Override
 	public void addHeader(final String name, final String value) {
+		modified = true;
 		response.addHeader(name, encode(value));
 	}
 	
 	@Override
 	public void addIntHeader(final String name, final int value) {
+		modified = true;
 		response.addIntHeader(name, value);
 	}
 	
@@ -120,6 +133,7 @@ public class HttpResponseWrapper implements ResponseWrapper {
 
 	@Override
 	public void flushBuffer() throws IOException {
+		modified = true;
 		response.flushBuffer();
 	}
 	
@@ -140,11 +154,13 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	
 	@Override
 	public void sendRedirect(final String location) throws IOException {
+		modified = true;
 		response.sendRedirect(location);
 	}
 
 	@Override
 	public void setDateHeader(final String name, final long date) {
+		modified = true;
 		if (dateHeaders == null) {
 			dateHeaders = new Object2LongOpenHashMap<>();
 			dateHeaders.defaultReturnValue(NO_SUCH_DATE_HEADER);
@@ -165,36 +181,53 @@ public class HttpResponseWrapper implements ResponseWrapper {
 	
 	@Override
 	public void setHeader(final String name, final String value) {
+		modified = true;
 		response.setHeader(name, encode(value));
 	}
 
 	@Override
 	public void setIntHeader(final String name, final int value) {
+		modified = true;
 		response.setIntHeader(name, value);
 	}
 
 	@Override
 	public void sendError(final int sc) throws IOException {
+		modified = true;
 		response.sendError(sc);
 	}
 
 	@Override
 	public void sendError(final int sc, final String msg) throws IOException {
+		modified = true;
 		response.sendError(sc, msg);
 	}
 
 	@Override
 	public void setStatusCode(final int sc) {
+		modified = true;
 		response.setStatus(sc);
 	}
 	
 	@Override
 	public void setLocale(final Locale locale) {
+		modified = true;
 		response.setLocale(locale);
 	}
 
+	/**
+	 * Determine if the response was changed through this wrapper,
+	 * other than by reading its properties.
+	 *
+	 * @return true if the response was changed
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
 	@Override
 	public OutputStream getOutputStream() throws IOException {
+		modified = true;
 		return response.getOutputStream();
 	}
 	
@@ -52,6 +52,7 @@ import javax.xml.transform.OutputKeys;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -480,11 +481,35 @@ public class XQueryServlet extends AbstractExistHttpServlet {
 
             DebuggeeFactory.checkForDebugRequest(request, context);
 
+            final XQueryResultCache resultCache = getPool().getXQueryResultCache();
+            final XQueryResultCache.Key resultKey;
+            if (requestAttr == null && "GET".equals(request.getMethod()) && resultCache.isCacheable(query)) {
+                resultKey = new XQueryResultCache.Key(source, broker.getCurrentSubject().getName(),
+                        request.getRequestURI() + '?' + request.getQueryString());
+
+                final XQueryResultCache.CachedResult cachedResult = resultCache.get(resultKey);
+                if (cachedResult != null) {
+                    getPool().getXQueryPool().returnCompiledXQuery(source, query);
+                    if (cachedResult.getContentType() != null) {
+                        response.setContentType(cachedResult.getContentType());
+                    }
+                    sout.write(cachedResult.getContent());
+                    sout.flush();
+                    return;
+                }
+            } else {
+                resultKey = null;
+            }
+
             Sequence resultSequence;
+            final XQueryResultCache.Recording recording = resultKey != null ? resultCache.record(broker, context) : null;
             try {
                 resultSequence = xquery.execute(broker, query, null, outputProperties);
                 
             } finally {
+                if (recording != null) {
+                    recording.close();
+                }
                 context.runCleanupTasks();
                 getPool().getXQueryPool().returnCompiledXQuery(source, query);
             }
@@ -518,6 +543,18 @@ public class XQueryServlet extends AbstractExistHttpServlet {
             if (requestAttr != null && (XmldbURI.API_LOCAL.equals(collectionURI.getApiName())) ) {
                 request.setAttribute(requestAttr, resultSequence);
                 
+            } else if (recording != null) {
+                // serialize to a buffer, so that the result can be cached
+                final StringWriter buffer = new StringWriter();
+                final XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, buffer);
+                serializer.serialize(resultSequence);
+
+                final String result = buffer.toString();
+                if (!response.isCommitted()) {
+                    resultCache.put(resultKey, recording, context, response.getContentType(), result.getBytes(getFormEncoding()));
+                }
+                output.write(result);
+
             } else {
                 XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, output);
                 serializer.serialize(resultSequence);
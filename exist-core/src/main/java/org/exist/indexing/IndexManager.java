@@ -25,13 +25,17 @@ import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.backup.RawDataBackup;
+import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.BrokerPoolService;
 import org.exist.storage.BrokerPoolServiceException;
 import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.txn.Txn;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
 import org.w3c.dom.Element;
 
 import java.io.IOException;
@@ -236,6 +240,30 @@ public class IndexManager implements BrokerPoolService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Reindexes the database if one of the registered indexes had to discard its
+     * content when it was opened, see {@link StartupReindexSupport}.
+     *
+     * @param systemBroker The broker that will perform the operation
+     * @param transaction The transaction for the reindex
+     */
+    @Override
+    public void startPreMultiUserSystem(final DBBroker systemBroker, final Txn transaction) {
+        for (final Iterator<Index> i = iterator(); i.hasNext(); ) {
+            final Index index = i.next();
+            if (index instanceof StartupReindexSupport && ((StartupReindexSupport) index).isReindexRequired()) {
+                LOG.warn("Index {} was not shut down cleanly. Reindexing the database ...", index.getIndexName());
+                try {
+                    systemBroker.reindexCollection(transaction, XmldbURI.ROOT_COLLECTION_URI);
+                } catch (final PermissionDeniedException | IOException | LockException e) {
+                    LOG.error("Failed to reindex the database: {}", e.getMessage(), e);
+                }
+                // a single reindex rebuilds all indexes
+                return;
+            }
+        }
+    }
+
     /**
      * Shutdowns all registered indexes by calling {@link org.exist.indexing.Index#close()}
      * on them.
@@ -0,0 +1,41 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing;
+
+/**
+ * Interface to be implemented by an index whose changes are not written to the
+ * journal, and which thus cannot be recovered after the database was not shut down
+ * cleanly.
+ *
+ * If such an index finds on {@link Index#open()} that it was not closed cleanly, it
+ * discards its content and reports that it has to be rebuilt. The {@link IndexManager}
+ * then reindexes the database before it enters multi-user mode, unless the database
+ * was already reindexed after running the recovery.
+ */
+public interface StartupReindexSupport {
+
+    /**
+     * @return true if the content of the index was discarded when it was opened,
+     *     and the database has to be reindexed to rebuild it
+     */
+    boolean isReindexRequired();
+}
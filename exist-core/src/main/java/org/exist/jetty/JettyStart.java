@@ -51,6 +51,8 @@ import se.softhouse.jargo.Argument;
 import se.softhouse.jargo.ArgumentException;
 import se.softhouse.jargo.CommandLineParser;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.Reader;
@@ -505,6 +507,27 @@ public class JettyStart extends Observable implements LifeCycle.Listener {
         return server;
     }
 
+    /**
+     * Provides the executor for the virtual threads of Jetty's thread pool,
+     * called from jetty-threadpool.xml.
+     *
+     * @param useVirtualThreads true if Jetty should run blocking tasks,
+     *     such as servlet requests, on virtual threads
+     *
+     * @return the executor, or null if virtual threads are not to be, or cannot be, used
+     */
+    public static @Nullable java.util.concurrent.Executor virtualThreadsExecutor(final boolean useVirtualThreads) {
+        if (!useVirtualThreads) {
+            return null;
+        }
+        if (!VirtualThreads.isSupported()) {
+            logger.warn("Virtual threads are not supported by this JVM, HTTP requests will be processed on platform threads");
+            return null;
+        }
+        logger.info("HTTP requests will be processed on virtual threads");
+        return org.eclipse.jetty.util.VirtualThreads.getDefaultVirtualThreadsExecutor();
+    }
+
     private Map<String, String> getConfigProperties(final Path configDir) throws IOException {
         final Map<String, String> configProperties = new HashMap<>();
 
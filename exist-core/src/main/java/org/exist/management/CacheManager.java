@@ -65,4 +65,29 @@ public class CacheManager implements CacheManagerMXBean {
     public long getCurrentSize() {
         return manager.getCurrentSize();
     }
+
+    @Override
+    public long getOffHeapMaxSize() {
+        return manager.getOffHeapMaxSize();
+    }
+
+    @Override
+    public long getOffHeapAllocatedSize() {
+        return manager.getOffHeapAllocatedSize();
+    }
+
+    @Override
+    public long getOffHeapUsedSize() {
+        return manager.getOffHeapUsedSize();
+    }
+
+    @Override
+    public long getOffHeapHits() {
+        return manager.getOffHeapHits();
+    }
+
+    @Override
+    public long getOffHeapFails() {
+        return manager.getOffHeapFails();
+    }
 }
@@ -30,4 +30,14 @@ public interface CacheManagerMXBean extends PerInstanceMBean {
     long getMaxSingle();
 
     long getCurrentSize();
+
+    long getOffHeapMaxSize();
+
+    long getOffHeapAllocatedSize();
+
+    long getOffHeapUsedSize();
+
+    long getOffHeapHits();
+
+    long getOffHeapFails();
 }
@@ -106,6 +106,7 @@ public class JMXtoXML {
         putCategory("binarystreamcaches", BinaryValues.getAllInstancesQuery());
         putCategory("processes", ProcessReport.getAllInstancesQuery());
         putCategory("sanity", SanityReport.getAllInstancesQuery());
+        putCategory("journal", Journal.getAllInstancesQuery());
 
         // Jetty
         putCategory("jetty.threads", "org.eclipse.jetty.util.thread:type=queuedthreadpool,*");
@@ -409,6 +410,9 @@ public class JMXtoXML {
         } else if (object instanceof Object[]) {
             serialize(builder, (Object[]) object);
 
+        } else if (object instanceof long[]) {
+            builder.characters(Arrays.toString((long[]) object));
+
         } else {
             builder.characters(object.toString());
         }
@@ -30,6 +30,7 @@ import javax.management.ObjectName;
 
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.util.LatencyHistogram;
 
 public class Database implements DatabaseMXBean {
 
@@ -87,6 +88,21 @@ public class Database implements DatabaseMXBean {
         return pool.total();
     }
 
+    @Override
+    public int getBrokerQueueLength() {
+        return pool.getBrokerQueueLength();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getBrokerWaitTime() {
+        return pool.getBrokerWaitTime().snapshot();
+    }
+
+    @Override
+    public long getBrokerWaitTimeouts() {
+        return pool.getBrokerWaitTimeouts();
+    }
+
     @Override
     public List<ActiveBroker> getActiveBrokersMap() {
         final List<ActiveBroker> brokersList = new ArrayList<>();
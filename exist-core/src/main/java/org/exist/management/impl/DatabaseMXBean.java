@@ -21,6 +21,8 @@
  */
 package org.exist.management.impl;
 
+import org.exist.util.LatencyHistogram;
+
 import java.util.List;
 
 public interface DatabaseMXBean extends PerInstanceMBean {
@@ -36,6 +38,21 @@ public interface DatabaseMXBean extends PerInstanceMBean {
     int getActiveBrokers();
 
     int getTotalBrokers();
+
+    /**
+     * @return an estimate of the number of threads waiting for a broker
+     */
+    int getBrokerQueueLength();
+
+    /**
+     * @return the time spent by threads waiting to lease a broker
+     */
+    LatencyHistogram.Snapshot getBrokerWaitTime();
+
+    /**
+     * @return the number of times a thread gave up waiting for a broker
+     */
+    long getBrokerWaitTimeouts();
     
     long getReservedMem();
 
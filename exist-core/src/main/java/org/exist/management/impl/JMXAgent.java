@@ -86,7 +86,8 @@ public final class JMXAgent implements Agent {
                 new DiskUsage(instance),
                 new ProcessReport(instance),
                 new BinaryValues(instance),
-                new CollectionCache(instance)
+                new CollectionCache(instance),
+                new Journal(instance)
         );
 
         for (final PerInstanceMBean perInstanceMBean : perInstanceMBeans) {
@@ -0,0 +1,55 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.management.impl;
+
+import org.exist.util.LatencyHistogram;
+
+public interface JournalMXBean extends PerInstanceMBean {
+
+    /**
+     * Determine if group commits are enabled for the Journal
+     *
+     * @return true if group commits are enabled
+     */
+    boolean isGroupCommits();
+
+    /**
+     * Get the number of syncs performed on behalf of a group of commits
+     *
+     * @return the number of group syncs
+     */
+    long getGroupSyncs();
+
+    /**
+     * Get the number of commits made durable by group syncs
+     *
+     * @return the number of commits
+     */
+    long getGroupSyncedCommits();
+
+    /**
+     * Get a snapshot of the latencies for writing commit records to the Journal
+     *
+     * @return the commit latencies
+     */
+    LatencyHistogram.Snapshot getCommitLatency();
+}
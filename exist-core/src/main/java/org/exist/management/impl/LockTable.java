@@ -26,9 +26,12 @@ import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.lock.Lock;
 import org.exist.storage.lock.Lock.LockType;
+import org.exist.storage.lock.LockContentionMonitor.ContendedLock;
+import org.exist.storage.lock.LockEventRingBuffer;
 import org.exist.storage.lock.LockTable.LockCountTraces;
 import org.exist.storage.lock.LockTable.LockModeOwner;
 import org.exist.storage.lock.LockTableUtils;
+import org.exist.util.LatencyHistogram;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 
 import javax.management.MalformedObjectNameException;
@@ -49,6 +52,8 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  */
 public class LockTable implements LockTableMXBean {
 
+    private static final int TOP_CONTENDED_LIMIT = 20;
+
     private final BrokerPool pool;
 
     public LockTable(final BrokerPool brokerPool) {
@@ -83,6 +88,26 @@ public class LockTable implements LockTableMXBean {
         return pool.getLockManager().getLockTable().getAttempting();
     }
 
+    @Override
+    public List<LockEventRingBuffer.Event> getRecentEvents() {
+        return pool.getLockManager().getLockTable().getRecentEvents();
+    }
+
+    @Override
+    public Map<LockType, LatencyHistogram.Snapshot> getWaitTimes() {
+        return pool.getLockManager().getLockTable().getWaitTimes();
+    }
+
+    @Override
+    public List<ContendedLock> getTopContended() {
+        return pool.getLockManager().getLockTable().getTopContended(TOP_CONTENDED_LIMIT);
+    }
+
+    @Override
+    public void resetContention() {
+        pool.getLockManager().getLockTable().getContentionMonitor().reset();
+    }
+
     @Override
     public void dumpToConsole() {
         System.out.println(LockTableUtils.stateToString(pool.getLockManager().getLockTable(), false));
@@ -23,8 +23,11 @@
 package org.exist.management.impl;
 
 import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.LockContentionMonitor.ContendedLock;
+import org.exist.storage.lock.LockEventRingBuffer;
 import org.exist.storage.lock.LockTable.LockCountTraces;
 import org.exist.storage.lock.LockTable.LockModeOwner;
+import org.exist.util.LatencyHistogram;
 
 import java.util.List;
 import java.util.Map;
@@ -50,6 +53,32 @@ public interface LockTableMXBean extends PerInstanceMBean {
      */
     Map<String, Map<Lock.LockType, List<LockModeOwner>>> getAttempting();
 
+    /**
+     * Get the most recent lock events
+     *
+     * @return the most recent lock events, oldest first
+     */
+    List<LockEventRingBuffer.Event> getRecentEvents();
+
+    /**
+     * Get the sampled time spent waiting to acquire locks
+     *
+     * @return the wait times by lock type
+     */
+    Map<Lock.LockType, LatencyHistogram.Snapshot> getWaitTimes();
+
+    /**
+     * Get the most contended Collection and Document locks
+     *
+     * @return the most contended locks, longest total wait time first
+     */
+    List<ContendedLock> getTopContended();
+
+    /**
+     * Reset the wait times and contention counts
+     */
+    void resetContention();
+
     void dumpToConsole();
 
     void dumpToLog();
@@ -24,6 +24,7 @@ package org.exist.storage;
 import com.evolvedbinary.j8fu.fsm.AtomicFSM;
 import com.evolvedbinary.j8fu.fsm.FSM;
 import com.evolvedbinary.j8fu.lazy.AtomicLazyVal;
+import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -69,6 +70,8 @@ import org.exist.util.*;
 import org.exist.xmldb.ShutdownListener;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.PerformanceStats;
+import org.exist.xquery.ParallelEvaluationService;
+import org.exist.xquery.XQueryResultCache;
 import org.exist.xquery.PerformanceStatsService;
 import org.exist.xquery.XQuery;
 
@@ -85,7 +88,12 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -193,7 +201,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     /**
      * The number of brokers for the database instance
      */
-    private int brokersCount = 0;
+    private final AtomicInteger brokersCount = new AtomicInteger();
 
     /**
      * The minimal number of brokers for the database instance
@@ -208,15 +216,49 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     private final int maxBrokers;
 
     /**
-     * The number of inactive brokers for the database instance
+     * The inactive brokers for the database instance
      */
+    @GuardedBy("brokersLock")
     private final Deque<DBBroker> inactiveBrokers = new ArrayDeque<>();
 
     /**
-     * The number of active brokers for the database instance
+     * The active brokers for the database instance
      */
     private final Map<Thread, DBBroker> activeBrokers = new ConcurrentHashMap<>();
 
+    /**
+     * Guards the hand-off of brokers between {@link #inactiveBrokers} and {@link #activeBrokers}.
+     */
+    private final ReentrantLock brokersLock = new ReentrantLock();
+
+    /**
+     * Signalled when the database becomes idle, or leaves service mode.
+     */
+    private final Condition brokersChanged = brokersLock.newCondition();
+
+    /**
+     * One permit for each broker that may be leased. Threads which have to wait
+     * for a broker are queued in FIFO order, and releasing a broker wakes
+     * just the thread at the head of the queue.
+     */
+    private final Semaphore brokerPermits;
+
+    /**
+     * Maximum time (in ms) to wait for a broker to become available, or -1 to wait indefinitely.
+     */
+    @ConfigurationFieldAsAttribute("broker-wait-timeout")
+    private final long brokerWaitTimeout;
+
+    /**
+     * Time spent waiting to lease a broker.
+     */
+    private final LatencyHistogram brokerWaitTime = new LatencyHistogram();
+
+    /**
+     * Number of times a thread gave up waiting for a broker.
+     */
+    private final LongAdder brokerWaitTimeouts = new LongAdder();
+
 
     /**
      * Used when TRACE level logging is enabled
@@ -255,6 +297,9 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     @ConfigurationFieldAsAttribute("pageSize")
     private final int pageSize;
 
+    @ConfigurationFieldAsAttribute("page-io")
+    private final String pageIO;
+
     private FileLockService dataLock;
 
     /**
@@ -332,11 +377,21 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache of the results of XQueries.
+     */
+    private XQueryResultCache xQueryResultCache;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
     private ProcessMonitor processMonitor;
 
+    /**
+     * The service which evaluates XQuery expressions in parallel.
+     */
+    private ParallelEvaluationService parallelEvaluationService;
+
     /**
      * Global performance stats to gather function execution statistics
      * from all queries running on this database instance.
@@ -363,7 +418,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
     private final Lock globalXUpdateLock = new ReentrantLock();
 
-    private Subject serviceModeUser = null;
+    private volatile Subject serviceModeUser = null;
     private boolean inServiceMode = false;
 
     //the time that the database was started
@@ -407,6 +462,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.minBrokers = conf.getProperty(PROPERTY_MIN_CONNECTIONS, minBrokers);
         this.maxBrokers = conf.getProperty(PROPERTY_MAX_CONNECTIONS, maxBrokers);
         LOG.info("database instance '{}' will have between {} and {} brokers", instanceName, nf.format(this.minBrokers), nf.format(this.maxBrokers));
+        this.brokerPermits = new Semaphore(this.maxBrokers, true);
+
+        this.brokerWaitTimeout = conf.getProperty(PROPERTY_BROKER_WAIT_TIMEOUT, DEFAULT_BROKER_WAIT_TIMEOUT);
+        if (brokerWaitTimeout >= 0) {
+            LOG.info("database instance '{}' will wait at most {} ms for a broker", instanceName, nf.format(this.brokerWaitTimeout));
+        }
 
         this.majorSyncPeriod = conf.getProperty(PROPERTY_SYNC_PERIOD, DEFAULT_SYNCH_PERIOD);
         LOG.info("database instance '{}' will be synchronized every {} ms", instanceName, nf.format(/*this.*/majorSyncPeriod));
@@ -416,6 +477,9 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.pageSize = conf.getProperty(PROPERTY_PAGE_SIZE, DEFAULT_PAGE_SIZE);
 
+        this.pageIO = conf.getProperty(PROPERTY_PAGE_IO, DEFAULT_PAGE_IO);
+        LOG.info("database instance '{}' will use '{}' page I/O", instanceName, pageIO);
+
         //Configuration is valid, save it
         this.conf = conf;
 
@@ -476,6 +540,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         this.xQueryPool = servicesManager.register(new XQueryPool());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStatsService());
+        this.parallelEvaluationService = servicesManager.register(new ParallelEvaluationService());
         final XMLReaderObjectFactory xmlReaderObjectFactory = servicesManager.register(new XMLReaderObjectFactory());
         this.xmlReaderPool = servicesManager.register(new XMLReaderPool(xmlReaderObjectFactory, maxBrokers, 0));
         final int bufferSize = Optional.of(conf.getInteger(PROPERTY_COLLECTION_CACHE_SIZE))
@@ -483,6 +548,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 .orElse(DEFAULT_COLLECTION_BUFFER_SIZE);
         this.collectionCache = servicesManager.register(new CollectionCache());
         this.notificationService = servicesManager.register(new NotificationService());
+        this.xQueryResultCache = servicesManager.register(new XQueryResultCache());
 
         this.journalManager = recoveryEnabled ? Optional.of(new JournalManager()) : Optional.empty();
         journalManager.ifPresent(servicesManager::register);
@@ -804,6 +870,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return pageSize;
     }
 
+    /**
+     * Determines if the paged database files should be read
+     * via memory mapped regions.
+     *
+     * @return true if the page I/O mode is {@link BrokerPoolConstants#PAGE_IO_MMAP}.
+     */
+    public boolean isMemoryMappedPageIO() {
+        return PAGE_IO_MMAP.equals(pageIO);
+    }
+
     /**
      * Returns the class loader used when this BrokerPool was configured.
      *
@@ -871,7 +947,40 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     //TODO : rename as getInactiveBrokers ?
     public int available() {
-        return inactiveBrokers.size();
+        brokersLock.lock();
+        try {
+            return inactiveBrokers.size();
+        } finally {
+            brokersLock.unlock();
+        }
+    }
+
+    /**
+     * Returns an estimate of the number of threads waiting for a broker.
+     *
+     * @return the number of waiting threads
+     */
+    public int getBrokerQueueLength() {
+        return brokerPermits.getQueueLength();
+    }
+
+    /**
+     * Returns the time spent by threads waiting to lease a broker.
+     *
+     * @return the wait time histogram
+     */
+    public LatencyHistogram getBrokerWaitTime() {
+        return brokerWaitTime;
+    }
+
+    /**
+     * Returns the number of times that a thread gave up waiting for a broker
+     * because the broker-wait-timeout expired.
+     *
+     * @return the number of timeouts
+     */
+    public long getBrokerWaitTimeouts() {
+        return brokerWaitTimeouts.sum();
     }
 
     //TODO : getMin() method ?
@@ -887,7 +996,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     }
 
     public int total() {
-        return brokersCount;
+        return brokersCount.get();
     }
 
     /**
@@ -1044,6 +1153,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the results of XQueries are stored.
+     *
+     * @return The cache
+     */
+    public XQueryResultCache getXQueryResultCache() {
+        return xQueryResultCache;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1053,6 +1171,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xqueryService;
     }
 
+    /**
+     * Returns the service which evaluates XQuery expressions in parallel.
+     *
+     * @return The service
+     */
+    public ParallelEvaluationService getParallelEvaluationService() {
+        return parallelEvaluationService;
+    }
+
     /**
      * Returns a monitor in which the database instance's <strong>running</strong> XQueries are managed.
      *
@@ -1115,9 +1242,13 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     protected DBBroker createBroker() throws EXistException {
         //TODO : in the future, don't pass the whole configuration, just the part relevant to brokers
         final DBBroker broker = BrokerFactory.getInstance(this, this.getConfiguration());
-        inactiveBrokers.push(broker);
-        brokersCount++;
-        broker.setId(broker.getClass().getName() + '_' + instanceName + "_" + brokersCount);
+        broker.setId(broker.getClass().getName() + '_' + instanceName + "_" + brokersCount.incrementAndGet());
+        brokersLock.lock();
+        try {
+            inactiveBrokers.push(broker);
+        } finally {
+            brokersLock.unlock();
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Created broker '{} for database instance '{}'", broker.getId(), instanceName);
         }
@@ -1224,36 +1355,77 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         //No active broker : get one ASAP
 
-        while(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
+        if(serviceModeUser != null) {
+            brokersLock.lock();
             try {
-                LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
-                wait();
-            } catch(final InterruptedException e) {
-                Thread.currentThread().interrupt();
-                LOG.error("Interrupt detected");
+                while(serviceModeUser != null && subject.isPresent() && !subject.equals(Optional.ofNullable(serviceModeUser))) {
+                    LOG.debug("Db instance is in service mode. Waiting for db to become available again ...");
+                    brokersChanged.awaitUninterruptibly();
+                }
+            } finally {
+                brokersLock.unlock();
             }
         }
 
-        synchronized(this) {
-            //Are there any available brokers ?
+        acquireBrokerPermit();
+        return lease(subject);
+    }
+
+    /**
+     * Returns an active broker for the database instance, but only if one
+     * is available without waiting.
+     *
+     * Tasks which are evaluated on behalf of a thread that already holds a broker
+     * should use this rather than {@link #get(Optional)}, as waiting for a broker
+     * whilst that thread waits for the task could deadlock the database.
+     *
+     * @param subject Optionally a subject to set on the broker, if a user is not provided then the
+     *                current user assigned to the broker will be re-used
+     * @return The broker, or {@link Optional#empty()} if the thread would have to wait for a broker
+     * @throws EXistException If the instance is not available (stopped or not configured)
+     */
+    public Optional<DBBroker> tryGet(final Optional<Subject> subject) throws EXistException {
+        Objects.requireNonNull(subject, "Subject cannot be null, use BrokerPool#getBroker() instead");
+
+        if(!isInstanceConfigured()) {
+            throw new EXistException("database instance '" + instanceName + "' is not available");
+        }
+
+        if(activeBrokers.containsKey(Thread.currentThread())) {
+            return Optional.of(get(subject));
+        }
+
+        if(serviceModeUser != null) {
+            return Optional.empty();
+        }
+
+        try {
+            // NOTE: the untimed tryAcquire() would barge ahead of the queued threads
+            if(!brokerPermits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                return Optional.empty();
+            }
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        return Optional.of(lease(subject));
+    }
+
+    /**
+     * Leases an inactive broker to the current thread, which must hold a broker permit.
+     *
+     * @param subject Optionally a subject to set on the broker
+     * @return The broker
+     * @throws EXistException if the broker cannot be created
+     */
+    private DBBroker lease(final Optional<Subject> subject) throws EXistException {
+        brokersLock.lock();
+        try {
+            //Are there any available brokers ? If not, create one, the permit guarantees that we may
             if(inactiveBrokers.isEmpty()) {
-                //There are no available brokers. If allowed...
-                if(brokersCount < maxBrokers)
-                //... create one
-                {
-                    createBroker();
-                } else
-                    //... or wait until there is one available
-                    while(inactiveBrokers.isEmpty()) {
-                        LOG.debug("waiting for a broker to become available");
-                        try {
-                            this.wait();
-                        } catch(final InterruptedException e) {
-                            //nothing to be done!
-                        }
-                    }
+                createBroker();
             }
-            broker = inactiveBrokers.pop();
+            final DBBroker broker = inactiveBrokers.pop();
             broker.prepare();
 
             //activate the broker
@@ -1278,10 +1450,38 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 brokerLeaseChangeTrace.get(broker.getId()).add(TraceableBrokerLeaseChange.get(new TraceableBrokerLeaseChange.BrokerInfo(broker.getId(), broker.getReferenceCount())));
             }
 
-            //Inform the other threads that we have a new-comer
-            // TODO: do they really need to be informed here???????
-            this.notifyAll();
             return broker;
+        } catch(final EXistException | RuntimeException e) {
+            brokerPermits.release();
+            throw e;
+        } finally {
+            brokersLock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a permit to lease a broker, in FIFO order with any other waiting threads.
+     *
+     * @throws EXistException if the broker-wait-timeout expired, or the thread was interrupted whilst waiting
+     */
+    private void acquireBrokerPermit() throws EXistException {
+        final long waitStart = System.nanoTime();
+        try {
+            // NOTE: the untimed tryAcquire() would barge ahead of the queued threads
+            if(!brokerPermits.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                LOG.debug("waiting for a broker to become available");
+                if(brokerWaitTimeout < 0) {
+                    brokerPermits.acquireUninterruptibly();
+                } else if(!brokerPermits.tryAcquire(brokerWaitTimeout, TimeUnit.MILLISECONDS)) {
+                    brokerWaitTimeouts.increment();
+                    throw new EXistException("Timed out after " + brokerWaitTimeout + " ms waiting for a broker of database instance '" + instanceName + "', " + brokerPermits.getQueueLength() + " threads are waiting");
+                }
+            }
+        } catch(final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EXistException("Interrupted whilst waiting for a broker of database instance '" + instanceName + "'", e);
+        } finally {
+            brokerWaitTime.record(System.nanoTime() - waitStart);
         }
     }
 
@@ -1314,7 +1514,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             return;
         }
 
-        synchronized(this) {
+        brokersLock.lock();
+        try {
             //Broker is no more used : inactivate it
             for(final DBBroker inactiveBroker : inactiveBrokers) {
                 if(broker == inactiveBroker) {
@@ -1385,10 +1586,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 if(serviceModeUser != null && !lastUser.equals(serviceModeUser)) {
                     inServiceMode = true;
                 }
+                //Inform the threads waiting for the database to become idle
+                brokersChanged.signalAll();
             }
-            //Inform the other threads that someone is gone
-            this.notifyAll();
+        } finally {
+            brokersLock.unlock();
         }
+
+        //Hand over to the next thread waiting for a broker
+        brokerPermits.release();
     }
 
     public DBBroker enterServiceMode(final Subject user) throws PermissionDeniedException {
@@ -1396,21 +1602,21 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             throw new PermissionDeniedException("Only users of group dba can switch the db to service mode");
         }
 
-        serviceModeUser = user;
-        synchronized(this) {
+        final DBBroker broker;
+        brokersLock.lock();
+        try {
+            serviceModeUser = user;
             if(activeBrokers.size() != 0) {
                 while(!inServiceMode) {
-                    try {
-                        wait();
-                    } catch(final InterruptedException e) {
-                        //nothing to be done
-                    }
+                    brokersChanged.awaitUninterruptibly();
                 }
             }
-        }
 
-        inServiceMode = true;
-        final DBBroker broker = inactiveBrokers.peek();
+            inServiceMode = true;
+            broker = inactiveBrokers.peek();
+        } finally {
+            brokersLock.unlock();
+        }
         broker.prepare();
         checkpoint = true;
         sync(broker, Sync.MAJOR);
@@ -1423,10 +1629,13 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         if(!user.equals(serviceModeUser)) {
             throw new PermissionDeniedException("The db has been locked by a different user");
         }
-        serviceModeUser = null;
-        inServiceMode = false;
-        synchronized(this) {
-            this.notifyAll();
+        brokersLock.lock();
+        try {
+            serviceModeUser = null;
+            inServiceMode = false;
+            brokersChanged.signalAll();
+        } finally {
+            brokersLock.unlock();
         }
     }
 
@@ -1633,11 +1842,16 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                         printSystemInfo();
                         LOG.info("Waiting {}ms for remaining threads to shut down...", maxShutdownWait);
                         while (activeBrokers.size() > 0) {
+                            brokersLock.lock();
                             try {
                                 //Wait until they become inactive...
-                                this.wait(1000);
+                                if (activeBrokers.size() > 0) {
+                                    brokersChanged.await(1000, TimeUnit.MILLISECONDS);
+                                }
                             } catch (final InterruptedException e) {
                                 //nothing to be done
+                            } finally {
+                                brokersLock.unlock();
                             }
 
                             //...or force the shutdown
@@ -1652,7 +1866,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     //TODO : replace the following code by get()/release() statements ?
                     // WM: deadlock risk if not all brokers returned properly.
                     DBBroker broker = null;
-                    if (inactiveBrokers.isEmpty())
+                    if (available() == 0)
                         try {
                             broker = createBroker();
                         } catch (final EXistException e) {
@@ -1664,7 +1878,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     // WM: deadlock risk if not all brokers returned properly.
                     //TODO: always createBroker? -dmitriy
                     {
-                        broker = inactiveBrokers.peek();
+                        brokersLock.lock();
+                        try {
+                            broker = inactiveBrokers.peek();
+                        } finally {
+                            brokersLock.unlock();
+                        }
                     }
 
                     try {
@@ -1698,7 +1917,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     servicesManager.shutdown();
 
                     // remove all remaining inactive brokers as we have shutdown now and no longer need those
-                    inactiveBrokers.clear();
+                    brokersLock.lock();
+                    try {
+                        inactiveBrokers.clear();
+                    } finally {
+                        brokersLock.unlock();
+                    }
 
                     // deregister JMX MBeans
                     AgentFactory.getInstance().closeDBInstance(this);
@@ -1726,7 +1950,9 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 transactionManager = null;
                 collectionCache = null;
                 xQueryPool = null;
+                xQueryResultCache = null;
                 processMonitor = null;
+                parallelEvaluationService = null;
                 collectionConfigurationManager = null;
                 notificationService = null;
                 indexManager = null;
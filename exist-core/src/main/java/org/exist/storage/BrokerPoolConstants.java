@@ -61,6 +61,7 @@ public interface BrokerPoolConstants {
     String MAX_CONNECTIONS_ATTRIBUTE = "max";
     String SYNC_PERIOD_ATTRIBUTE = "sync-period";
     String SHUTDOWN_DELAY_ATTRIBUTE = "wait-before-shutdown";
+    String BROKER_WAIT_TIMEOUT_ATTRIBUTE = "broker-wait-timeout";
     String NODES_BUFFER_ATTRIBUTE = "nodesBuffer";
 
     //Various configuration property keys (set by the configuration manager)
@@ -70,6 +71,7 @@ public interface BrokerPoolConstants {
     String PROPERTY_MAX_CONNECTIONS = "db-connection.pool.max";
     String PROPERTY_SYNC_PERIOD = "db-connection.pool.sync-period";
     String PROPERTY_SHUTDOWN_DELAY = "wait-before-shutdown";
+    String PROPERTY_BROKER_WAIT_TIMEOUT = "db-connection.pool.broker-wait-timeout";
     String DISK_SPACE_MIN_PROPERTY = "db-connection.diskSpaceMin";
 
     //TODO : move elsewhere ?
@@ -89,13 +91,23 @@ public interface BrokerPoolConstants {
 
     String PROPERTY_PAGE_SIZE = "db-connection.page-size";
 
+    String PAGE_IO_ATTRIBUTE = "page-io";
+    String PROPERTY_PAGE_IO = "db-connection.page-io";
+    /** Pages are read and written via positional file I/O */
+    String PAGE_IO_FILE = "file";
+    /** Pages are read via memory mapped regions of the file, and written via positional file I/O */
+    String PAGE_IO_MMAP = "mmap";
+
     /**
      * Default values
      */
     long DEFAULT_SYNCH_PERIOD = 120000;
     long DEFAULT_MAX_SHUTDOWN_WAIT = 45000;
+    /** Wait indefinitely for a broker to become available */
+    long DEFAULT_BROKER_WAIT_TIMEOUT = -1;
     //TODO : move this default setting to org.exist.collections.CollectionCache ?
     int DEFAULT_COLLECTION_BUFFER_SIZE = 64;
     int DEFAULT_PAGE_SIZE = 4096;
+    String DEFAULT_PAGE_IO = PAGE_IO_FILE;
     short DEFAULT_DISK_SPACE_MIN = 64; // 64 MB
 }
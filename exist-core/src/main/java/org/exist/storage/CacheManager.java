@@ -79,6 +79,31 @@ public interface CacheManager {
      */
     long getCurrentSize();
 
+    /**
+     * @return Maximum size of the off-heap page pool in bytes, or 0 if there is no off-heap page pool
+     */
+    long getOffHeapMaxSize();
+
+    /**
+     * @return Direct memory currently allocated by the off-heap page pool in bytes
+     */
+    long getOffHeapAllocatedSize();
+
+    /**
+     * @return Bytes of the off-heap page pool which currently hold pages
+     */
+    long getOffHeapUsedSize();
+
+    /**
+     * @return Number of pages found in the off-heap page pool
+     */
+    long getOffHeapHits();
+
+    /**
+     * @return Number of pages not found in the off-heap page pool
+     */
+    long getOffHeapFails();
+
     /**
      * Returns the default initial size for all caches.
      *
@@ -1193,6 +1193,24 @@ public interface DBBroker extends AutoCloseable {
 
     void setTriggersEnabled(boolean triggersEnabled);
 
+    /**
+     * Get the set into which the URIs of the Collections that are opened
+     * through this broker are recorded.
+     *
+     * @return the set of accessed Collection URIs, or null if accesses are not being recorded.
+     */
+    @Nullable Set<XmldbURI> getAccessedCollections();
+
+    /**
+     * Record the URIs of the Collections which are opened through this broker,
+     * i.e. the Collections which are read by a query. A Collection is recorded
+     * whether it is opened directly or because one of its documents is read.
+     *
+     * @param accessedCollections the set into which to record the URIs, which must be thread-safe
+     *     if it is shared with other brokers, or null to stop recording.
+     */
+    void setAccessedCollections(@Nullable Set<XmldbURI> accessedCollections);
+
     @Override
     void close();
 
@@ -26,15 +26,25 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.management.Agent;
 import org.exist.management.AgentFactory;
+import org.exist.storage.cache.BTreeCache;
+import org.exist.storage.cache.BTreeCacheable;
 import org.exist.storage.cache.Cache;
+import org.exist.storage.cache.Cacheable;
+import org.exist.storage.cache.LRUCache;
+import org.exist.storage.cache.OffHeapPagePool;
+import org.exist.storage.cache.WTinyLFUCache;
 import org.exist.util.Configuration;
 import org.exist.util.DatabaseConfigurationException;
 
+import javax.annotation.Nullable;
+
 import java.text.NumberFormat;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -70,6 +80,11 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  CACHE_SIZE_ATTRIBUTE           			= "cacheSize";
     public static final String  PROPERTY_CACHE_SIZE             			= "db-connection.cache-size";
 
+    /** The size of the off-heap page pool in megabytes, 0 disables the pool, see {@link OffHeapPagePool}. */
+    public static final int     DEFAULT_OFF_HEAP_CACHE_SIZE                 = 0;
+    public static final String  OFF_HEAP_CACHE_SIZE_ATTRIBUTE               = "offHeapCacheSize";
+    public static final String  PROPERTY_OFF_HEAP_CACHE_SIZE                = "db-connection.off-heap-cache-size";
+
     public static final String         DEFAULT_CACHE_CHECK_MAX_SIZE_STRING		= "true";
     public static final String  CACHE_CHECK_MAX_SIZE_ATTRIBUTE 			= "checkMaxCacheSize";
     public static final String  PROPERTY_CACHE_CHECK_MAX_SIZE				= "db-connection.check-max-cache-size";
@@ -77,6 +92,18 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     public static final String  SHRINK_THRESHOLD_ATTRIBUTE     		 	= "cacheShrinkThreshold";
     public static final String  SHRINK_THRESHOLD_PROPERTY      			= "db-connection.cache-shrink-threshold";
 
+    /** Least Recently Used, see {@link LRUCache} and {@link BTreeCache}. */
+    public static final String  CACHE_POLICY_LRU                    = "lru";
+    /** Scan resistant W-TinyLFU, see {@link WTinyLFUCache}. */
+    public static final String  CACHE_POLICY_W_TINY_LFU             = "w-tinylfu";
+    public static final String  DEFAULT_CACHE_POLICY                = CACHE_POLICY_LRU;
+    public static final String  CACHE_POLICY_ATTRIBUTE              = "cache-policy";
+    public static final String  PROPERTY_CACHE_POLICY               = "db-connection.cache-policy";
+    public static final String  CONFIGURATION_CACHE_POLICY_ELEMENT_NAME = "cache-policy";
+    public static final String  CACHE_POLICY_FILE_ATTRIBUTE         = "file";
+    public static final String  CACHE_POLICY_POLICY_ATTRIBUTE       = "policy";
+    public static final String  PROPERTY_CACHE_POLICY_FILES         = "db-connection.cache-policy.files";
+
     /** Caches maintained by this class. */
     private List<Cache>         caches                          = new ArrayList<>();
 
@@ -108,12 +135,24 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
 
     private String              instanceName;
 
+    /** The cache policy for files which do not have a specific policy. */
+    private final String        cachePolicy;
+
+    /** Cache policies for specific files, by file name. */
+    private final Map<String, String> fileCachePolicies;
+
+    /** The pool of page images held off-heap beneath the page caches, or null if disabled. */
+    @Nullable private final OffHeapPagePool offHeapPagePool;
+
     public DefaultCacheManager( BrokerPool pool )
     {
         this.instanceName = pool.getId();
         final Configuration configuration = pool.getConfiguration();
         int cacheSize;
 
+        this.cachePolicy = configuration.getProperty( PROPERTY_CACHE_POLICY, DEFAULT_CACHE_POLICY );
+        this.fileCachePolicies = configuration.getProperty( PROPERTY_CACHE_POLICY_FILES, Collections.emptyMap() );
+
         if( ( pageSize = configuration.getInteger( BrokerPool.PROPERTY_PAGE_SIZE ) ) < 0 ) {
 
             //TODO : should we share the page size with the native broker ?
@@ -149,7 +188,14 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         this.maxCacheSize   = (int)( totalPageCount * MAX_MEM_USE );
         final NumberFormat nf     = NumberFormat.getNumberInstance();
 
-        LOG.info("Cache settings: {}k; totalPages: {}; maxCacheSize: {}; cacheShrinkThreshold: {}", nf.format(totalMem / 1024L), nf.format(totalPageCount), nf.format(maxCacheSize), nf.format(shrinkThreshold));
+        final int offHeapCacheSize = configuration.getProperty( PROPERTY_OFF_HEAP_CACHE_SIZE, DEFAULT_OFF_HEAP_CACHE_SIZE );
+        if( offHeapCacheSize > 0 ) {
+            this.offHeapPagePool = new OffHeapPagePool( offHeapCacheSize * 1024L * 1024L, pageSize );
+        } else {
+            this.offHeapPagePool = null;
+        }
+
+        LOG.info("Cache settings: {}k; totalPages: {}; maxCacheSize: {}; cacheShrinkThreshold: {}; cachePolicy: {}; fileCachePolicies: {}; offHeapCacheSize: {}M", nf.format(totalMem / 1024L), nf.format(totalPageCount), nf.format(maxCacheSize), nf.format(shrinkThreshold), cachePolicy, fileCachePolicies, offHeapCacheSize);
 
         registerMBean();
     }
@@ -267,6 +313,11 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
                     }
                 }
             }
+
+            if (offHeapPagePool != null && offHeapPagePool.getLoad() < shrinkThreshold) {
+                // release half of the direct memory of an idle pool
+                offHeapPagePool.shrink(offHeapPagePool.getAllocatedSize() / 2);
+            }
         }
     }
 
@@ -326,6 +377,39 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
         return( maxCacheSize );
     }
 
+    /**
+     * @return the pool of page images held off-heap, or null if it is not enabled
+     */
+    @Nullable
+    public OffHeapPagePool getOffHeapPagePool() {
+        return offHeapPagePool;
+    }
+
+    @Override
+    public long getOffHeapMaxSize() {
+        return offHeapPagePool != null ? offHeapPagePool.getMaxSize() : 0;
+    }
+
+    @Override
+    public long getOffHeapAllocatedSize() {
+        return offHeapPagePool != null ? offHeapPagePool.getAllocatedSize() : 0;
+    }
+
+    @Override
+    public long getOffHeapUsedSize() {
+        return offHeapPagePool != null ? offHeapPagePool.getUsedSize() : 0;
+    }
+
+    @Override
+    public long getOffHeapHits() {
+        return offHeapPagePool != null ? offHeapPagePool.getHits() : 0;
+    }
+
+    @Override
+    public long getOffHeapFails() {
+        return offHeapPagePool != null ? offHeapPagePool.getFails() : 0;
+    }
+
     public long getTotalMem()
     {
         return( totalMem );
@@ -342,6 +426,71 @@ public class DefaultCacheManager implements CacheManager, BrokerPoolService
     }
 
 
+    /**
+     * Determines if the name is that of a known cache policy.
+     *
+     * @param policy the name of the cache policy
+     *
+     * @return true if the policy is known
+     */
+    public static boolean isCachePolicy(final String policy) {
+        return CACHE_POLICY_LRU.equals(policy) || CACHE_POLICY_W_TINY_LFU.equals(policy);
+    }
+
+    /**
+     * Get the cache policy configured for a database file.
+     *
+     * @param fileName the name of the database file, e.g. "dom.dbx"
+     *
+     * @return the cache policy
+     */
+    public String getCachePolicy(final String fileName) {
+        final String filePolicy = fileCachePolicies.get(fileName);
+        return filePolicy != null ? filePolicy : cachePolicy;
+    }
+
+    /**
+     * Creates a cache for the pages of a B+-tree
+     * using the cache policy configured for the file.
+     *
+     * The cache is not registered with this cache manager.
+     *
+     * @param <T> the type of the cached pages
+     * @param fileName the name of the database file
+     * @param size the initial size of the cache
+     * @param growthFactor the growth factor of the cache
+     * @param growthThreshold the growth threshold of the cache
+     *
+     * @return the cache
+     */
+    public <T extends BTreeCacheable> Cache<T> createBTreeCache(final String fileName, final int size, final double growthFactor, final double growthThreshold) {
+        if (CACHE_POLICY_W_TINY_LFU.equals(getCachePolicy(fileName))) {
+            return new WTinyLFUCache<>(fileName, size, growthFactor, growthThreshold, Cache.CacheType.BTREE);
+        }
+        return new BTreeCache<>(fileName, size, growthFactor, growthThreshold, Cache.CacheType.BTREE);
+    }
+
+    /**
+     * Creates a cache for data pages
+     * using the cache policy configured for the file.
+     *
+     * The cache is not registered with this cache manager.
+     *
+     * @param <T> the type of the cached pages
+     * @param fileName the name of the database file
+     * @param size the initial size of the cache
+     * @param growthFactor the growth factor of the cache
+     * @param growthThreshold the growth threshold of the cache
+     *
+     * @return the cache
+     */
+    public <T extends Cacheable> Cache<T> createDataCache(final String fileName, final int size, final double growthFactor, final double growthThreshold) {
+        if (CACHE_POLICY_W_TINY_LFU.equals(getCachePolicy(fileName))) {
+            return new WTinyLFUCache<>(fileName, size, growthFactor, growthThreshold, Cache.CacheType.DATA);
+        }
+        return new LRUCache<>(fileName, size, growthFactor, growthThreshold, Cache.CacheType.DATA);
+    }
+
     private void registerMBean() {
         final Agent agent = AgentFactory.getInstance();
         try {
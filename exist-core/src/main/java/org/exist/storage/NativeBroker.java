@@ -183,6 +183,8 @@ public class NativeBroker implements DBBroker {
 
     private boolean triggersEnabled = true;
 
+    private @Nullable Set<XmldbURI> accessedCollections = null;
+
     /** the database files */
     private final CollectionStore collectionsDb;
     private final DOMFile domDb;
@@ -983,6 +985,9 @@ public class NativeBroker implements DBBroker {
     @Override
     public Collection openCollection(final XmldbURI uri, final LockMode lockMode) throws PermissionDeniedException {
         final XmldbURI collectionUri = prepend(uri.toCollectionPathURI().normalizeCollectionPath());
+        if (accessedCollections != null) {
+            accessedCollections.add(collectionUri);
+        }
 
         final ManagedCollectionLock collectionLock;
         final Runnable unlockFn;    // we unlock on error, or if there is no Collection
@@ -1565,6 +1570,10 @@ public class NativeBroker implements DBBroker {
                 pool.getProcessMonitor().endJob();
             }
         }
+
+        final NotificationService notificationService = pool.getNotificationService();
+        notificationService.notifyCollectionUpdate(sourceCollectionUri);
+        notificationService.notifyCollectionUpdate(destinationCollectionUri);
     }
 
     /**
@@ -1750,7 +1759,11 @@ public class NativeBroker implements DBBroker {
         // WRITE LOCK the collection's parent (as we will remove this collection from it)
         final XmldbURI parentCollectionUri = collection.getParentURI() == null ? XmldbURI.ROOT_COLLECTION_URI : collection.getParentURI();
         try(final ManagedCollectionLock parentCollectionLock = writeLockCollection(parentCollectionUri)) {
-            return _removeCollection(transaction, collection);
+            final boolean removed = _removeCollection(transaction, collection);
+            if (removed) {
+                pool.getNotificationService().notifyCollectionUpdate(collection.getURI());
+            }
+            return removed;
         } catch(final LockException e) {
             LOG.error("Unable to lock Collection: {}", collection.getURI(), e);
             return false;
@@ -2649,6 +2662,8 @@ public class NativeBroker implements DBBroker {
 
             doCopyDocument(transaction, trigger, sourceDocument, targetCollection, newDocName, oldDoc, preserve);
         }
+
+        pool.getNotificationService().notifyCollectionUpdate(targetCollectionUri);
     }
 
     /**
@@ -2938,6 +2953,12 @@ public class NativeBroker implements DBBroker {
         saveCollection(transaction, targetCollection);
 
         trigger.afterMoveDocument(this, transaction, sourceDocument, sourceDocumentUri);
+
+        final NotificationService notificationService = pool.getNotificationService();
+        notificationService.notifyCollectionUpdate(sourceCollection.getURI());
+        if (!renameOnly) {
+            notificationService.notifyCollectionUpdate(targetCollectionUri);
+        }
     }
 
     @Override
@@ -4080,6 +4101,16 @@ public class NativeBroker implements DBBroker {
         this.triggersEnabled = triggersEnabled;
     }
 
+    @Override
+    public @Nullable Set<XmldbURI> getAccessedCollections() {
+        return accessedCollections;
+    }
+
+    @Override
+    public void setAccessedCollections(@Nullable final Set<XmldbURI> accessedCollections) {
+        this.accessedCollections = accessedCollections;
+    }
+
     @Override
     public void close() {
         pool.release(this);
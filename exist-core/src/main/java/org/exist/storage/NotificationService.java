@@ -26,6 +26,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.numbering.NodeId;
+import org.exist.xmldb.XmldbURI;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -84,6 +85,17 @@ public class NotificationService implements BrokerPoolService {
         listeners.keySet().forEach(listener -> listener.documentUpdated(document, event));
     }
 
+    /**
+     * Notify all subscribers that a Collection has been removed
+     * or moved, or that its documents have changed without
+     * a notification for each document.
+     *
+     * @param collectionUri the URI of the affected Collection
+     */
+    public synchronized void notifyCollectionUpdate(final XmldbURI collectionUri) {
+        listeners.keySet().forEach(listener -> listener.collectionUpdated(collectionUri));
+    }
+
     /**
      * Notify all subscribers that a node has been moved. Nodes may be moved during a
      * defragmentation run.
@@ -35,9 +35,12 @@ import org.exist.xquery.functions.request.RequestModule;
 import org.exist.xquery.util.ExpressionDumper;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.apache.commons.lang3.ArrayUtils.isEmpty;
 
@@ -49,6 +52,9 @@ import static org.apache.commons.lang3.ArrayUtils.isEmpty;
  * If it simply ignores the terminate signal, it will be killed after the shutdown
  * timeout is reached.
  *
+ * Waits use {@link java.util.concurrent.locks} rather than object monitors, so
+ * that a virtual thread which waits here does not pin its carrier thread.
+ *
  * @author wolf
  */
 public class ProcessMonitor implements BrokerPoolService {
@@ -69,9 +75,12 @@ public class ProcessMonitor implements BrokerPoolService {
     private static final long QUERY_HISTORY_TIMEOUT = 2 * 60 * 1000; // 2 minutes
     private static final long MIN_TIME = 100;
 
-    private final Set<XQueryWatchDog> runningQueries = new HashSet<>();
+    private final Set<XQueryWatchDog> runningQueries = ConcurrentHashMap.newKeySet();
     private final DelayQueue<QueryHistory> history = new DelayQueue<>();
-    private final Map<Thread, JobInfo> processes = new HashMap<>();
+    private final ReentrantLock historyLock = new ReentrantLock();
+    private final Map<Thread, JobInfo> processes = new ConcurrentHashMap<>();
+    private final ReentrantLock processesLock = new ReentrantLock();
+    private final Condition jobEnded = processesLock.newCondition();
     private long maxShutdownWait;
     private long historyTimespan = QUERY_HISTORY_TIMEOUT;
     private long minTime = MIN_TIME;
@@ -94,36 +103,33 @@ public class ProcessMonitor implements BrokerPoolService {
     public void startJob(final String action, final Object addInfo, final Monitor monitor) {
         final JobInfo info = new JobInfo(action, monitor);
         info.setAddInfo(addInfo);
-        synchronized (this) {
-            processes.put(info.getThread(), info);
-        }
+        processes.put(info.getThread(), info);
     }
 
-    public synchronized void endJob() {
-        processes.remove(Thread.currentThread());
-        notifyAll();
+    public void endJob() {
+        processesLock.lock();
+        try {
+            processes.remove(Thread.currentThread());
+            jobEnded.signalAll();
+        } finally {
+            processesLock.unlock();
+        }
     }
 
     public JobInfo[] runningJobs() {
-        synchronized (this) {
-            final JobInfo[] jobs = new JobInfo[processes.size()];
-            int j = 0;
-            for (final Iterator<JobInfo> i = processes.values().iterator(); i.hasNext(); j++) {
-                //BUG: addInfo = XmldbURI ? -shabanovd
-                jobs[j] = i.next();
-            }
-            return jobs;
-        }
+        //BUG: addInfo = XmldbURI ? -shabanovd
+        return processes.values().toArray(new JobInfo[0]);
     }
 
     public void stopRunningJobs() {
         final long waitStart = System.currentTimeMillis();
-        synchronized (this) {
+        processesLock.lock();
+        try {
             if (maxShutdownWait > -1) {
                 while (processes.size() > 0) {
                     try {
                         //Wait until they become inactive...
-                        this.wait(1000);
+                        jobEnded.await(1000, TimeUnit.MILLISECONDS);
                     } catch (final InterruptedException e) {
                         //no op
                         Thread.currentThread().interrupt(); // pass on interrupted status
@@ -137,26 +143,24 @@ public class ProcessMonitor implements BrokerPoolService {
             for (final JobInfo job : processes.values()) {
                 job.stop();
             }
+        } finally {
+            processesLock.unlock();
         }
     }
 
     public void queryStarted(final XQueryWatchDog watchdog) {
-        synchronized (runningQueries) {
-            watchdog.setRunningThread(Thread.currentThread().getName());
-            runningQueries.add(watchdog);
-        }
+        watchdog.setRunningThread(Thread.currentThread().getName());
+        runningQueries.add(watchdog);
     }
 
     public void queryCompleted(final XQueryWatchDog watchdog) {
-        boolean found;
-        synchronized (runningQueries) {
-            found = runningQueries.remove(watchdog);
-        }
+        final boolean found = runningQueries.remove(watchdog);
 
         // add to query history if elapsed time > minTime
         final long elapsed = System.currentTimeMillis() - watchdog.getStartTime();
         if (found && elapsed > minTime) {
-            synchronized (history) {
+            historyLock.lock();
+            try {
                 final Source source = watchdog.getContext().getSource();
                 final String sourceKey = source == null ? "unknown" : source.pathOrShortIdentifier();
                 QueryHistory qh = new QueryHistory(sourceKey, historyTimespan);
@@ -168,6 +172,8 @@ public class ProcessMonitor implements BrokerPoolService {
                 }
                 history.add(qh);
                 cleanHistory();
+            } finally {
+                historyLock.unlock();
             }
         }
     }
@@ -282,29 +288,28 @@ public class ProcessMonitor implements BrokerPoolService {
     }
 
     public QueryHistory[] getRecentQueryHistory() {
-        synchronized (history) {
+        historyLock.lock();
+        try {
             cleanHistory();
             return
                     history.stream()
                             .sorted((o1, o2) -> Long.compare(o2.expires, o1.expires))
                             .toArray(QueryHistory[]::new);
+        } finally {
+            historyLock.unlock();
         }
     }
 
 
     public void killAll(final long waitTime) {
-        synchronized(runningQueries) {
-            for (final XQueryWatchDog watchdog : runningQueries) {
-                LOG.debug("Killing query: {}", ExpressionDumper.dump(watchdog.getContext().getRootExpression()));
-                watchdog.kill(waitTime);
-            }
+        for (final XQueryWatchDog watchdog : runningQueries) {
+            LOG.debug("Killing query: {}", ExpressionDumper.dump(watchdog.getContext().getRootExpression()));
+            watchdog.kill(waitTime);
         }
     }
 
     public XQueryWatchDog[] getRunningXQueries() {
-        synchronized (runningQueries) {
-            return runningQueries.toArray(new XQueryWatchDog[0]);
-        }
+        return runningQueries.toArray(new XQueryWatchDog[0]);
     }
 
     public final static class Monitor {
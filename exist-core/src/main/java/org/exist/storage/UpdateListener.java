@@ -24,6 +24,7 @@ package org.exist.storage;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.NodeHandle;
 import org.exist.numbering.NodeId;
+import org.exist.xmldb.XmldbURI;
 
 public interface UpdateListener {
 
@@ -48,6 +49,17 @@ public interface UpdateListener {
 	 */
 	public void documentUpdated(DocumentImpl document, int event);
 
+    /**
+     * Called whenever a Collection is removed or moved within the database,
+     * or a document is moved, copied or removed without a call to
+     * {@link #documentUpdated(DocumentImpl, int)}.
+     *
+     * @param collectionUri the URI of the affected Collection,
+     *     all of its descendant Collections may also be affected
+     */
+    default void collectionUpdated(final XmldbURI collectionUri) {
+    }
+
     /**
      * nodeMoved is called after a defragmentation run occurred for a document during which
      * the address and the nodeId of a node may have changed. Defragmentation
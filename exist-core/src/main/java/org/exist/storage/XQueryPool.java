@@ -36,6 +36,7 @@ import java.text.NumberFormat;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+import antlr.collections.AST;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import net.jcip.annotations.ThreadSafe;
@@ -49,6 +50,8 @@ import org.exist.util.Configuration;
 import org.exist.util.Holder;
 import org.exist.xquery.*;
 
+import javax.annotation.Nullable;
+
 /**
  * Global pool for compiled XQuery expressions.
  *
@@ -58,6 +61,13 @@ import org.exist.xquery.*;
  * For each XQuery, a maximum of {@link #DEFAULT_MAX_QUERY_STACK_SIZE} compiled
  * expressions are kept in the pool.
  *
+ * A compiled expression can only be used by one query at a time, so when
+ * all of the compiled expressions for a query are in use, the query has to be
+ * compiled again. To make that cheaper, the pool also caches the syntax trees
+ * of the library modules imported by queries. A syntax tree only depends on the
+ * source of its module, so it can be shared by all of the queries which import the
+ * module, and is only parsed again when the source of the module changes.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
@@ -83,6 +93,11 @@ public class XQueryPool implements BrokerPoolService {
      */
     private Cache<Source, Deque<CompiledXQuery>> cache;
 
+    /**
+     * Source -> Syntax tree of a library module
+     */
+    private Cache<Source, ModuleSyntaxTree> moduleCache;
+
     @Override
     public void configure(final Configuration configuration) {
         final Integer maxStSz = (Integer) configuration.getProperty(PROPERTY_MAX_STACK_SIZE);
@@ -105,6 +120,10 @@ public class XQueryPool implements BrokerPoolService {
                 .maximumSize(maxPoolSize)
                 .build();
 
+        this.moduleCache = Caffeine.newBuilder()
+                .maximumSize(maxPoolSize)
+                .build();
+
         LOG.info("QueryPool: size = {}; maxQueryStackSize = {}", nf.format(maxPoolSize), nf.format(maxQueryStackSize));
     }
 
@@ -212,10 +231,86 @@ public class XQueryPool implements BrokerPoolService {
         return compiledXQuery.isValid();
     }
 
+    /**
+     * Gets the syntax tree of a library module from the XQuery pool.
+     *
+     * The syntax tree must not be modified, as it may be
+     * shared by many queries at the same time.
+     *
+     * @param source The source of the library module.
+     *
+     * @return The syntax tree of the library module, or null if there is
+     *     no valid syntax tree for the source in the XQuery pool.
+     */
+    public @Nullable AST getModuleSyntaxTree(final Source source) {
+        if (source == null || moduleCache == null) {
+            return null;
+        }
+
+        final ModuleSyntaxTree moduleSyntaxTree = moduleCache.getIfPresent(source);
+        if (moduleSyntaxTree == null) {
+            return null;
+        }
+
+        if (!isModuleSyntaxTreeValid(source, moduleSyntaxTree)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} has changed, removing its syntax tree from XQuery Pool...", source.pathOrShortIdentifier());
+            }
+
+            // only remove the syntax tree that we found to be invalid, another thread may have already replaced it
+            moduleCache.asMap().remove(source, moduleSyntaxTree);
+            return null;
+        }
+
+        return moduleSyntaxTree.ast;
+    }
+
+    /**
+     * Adds the syntax tree of a library module to the XQuery pool.
+     *
+     * @param source The source of the library module.
+     * @param ast The syntax tree that was parsed from the source, which must not be modified afterwards.
+     */
+    public void returnModuleSyntaxTree(final Source source, final AST ast) {
+        if (source == null || ast == null || moduleCache == null) {
+            return;
+        }
+
+        moduleCache.put(source, new ModuleSyntaxTree(source, ast));
+    }
+
+    /**
+     * Determines if the syntax tree of a library module is still valid.
+     *
+     * @param source the source of the module that is to be imported
+     * @param moduleSyntaxTree the cached syntax tree of the module
+     *
+     * @return true if the syntax tree is still valid, false otherwise.
+     */
+    private static boolean isModuleSyntaxTreeValid(final Source source, final ModuleSyntaxTree moduleSyntaxTree) {
+        if (source instanceof DBSource && moduleSyntaxTree.source instanceof DBSource) {
+            // avoid a database lookup, the source to be imported was just read from the database
+            return ((DBSource) source).getLastModified() == ((DBSource) moduleSyntaxTree.source).getLastModified();
+        }
+
+        return moduleSyntaxTree.source.isValid() != Source.Validity.INVALID;
+    }
+
     /**
      * Removes all entries from the XQuery Pool.
      */
     public void clear() {
         cache.invalidateAll();
+        moduleCache.invalidateAll();
+    }
+
+    private static class ModuleSyntaxTree {
+        final Source source;
+        final AST ast;
+
+        ModuleSyntaxTree(final Source source, final AST ast) {
+            this.source = source;
+            this.ast = ast;
+        }
     }
 }
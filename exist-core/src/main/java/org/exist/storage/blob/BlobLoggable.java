@@ -40,4 +40,15 @@ import org.exist.storage.journal.Loggable;
 public interface BlobLoggable extends Loggable {
     byte LOG_STORE_BLOB_FILE = 0x50;
     byte LOG_UPDATE_BLOB_REF_COUNT = 0x51;
+
+    /**
+     * The Blob Store is not a paged storage file, so it
+     * is given an id outside the range of storage file ids.
+     */
+    int BLOB_STORE_FILE_ID = 0x100;
+
+    @Override
+    default int getStorageFileId() {
+        return BLOB_STORE_FILE_ID;
+    }
 }
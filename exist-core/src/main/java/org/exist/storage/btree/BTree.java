@@ -224,8 +224,7 @@ public class BTree extends Paged implements Lockable {
     }
 
     protected void initCache() {
-        this.cache = new BTreeCache<>(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5,
-            0, Cache.CacheType.BTREE);
+        this.cache = cacheManager.createBTreeCache(FileUtils.fileName(getFile()), cacheManager.getDefaultInitialSize(), 1.5, 0);
         cacheManager.registerCache(cache);
     }
 
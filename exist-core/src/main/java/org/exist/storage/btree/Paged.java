@@ -75,26 +75,54 @@ package org.exist.storage.btree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.DefaultCacheManager;
+import org.exist.storage.cache.OffHeapPagePool;
 import org.exist.storage.journal.Lsn;
 import org.exist.util.ByteConversion;
 import org.exist.util.FileUtils;
 import org.exist.xquery.Constants;
 
+import javax.annotation.Nullable;
+
 import java.lang.AutoCloseable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
  *  its subclasses.
+ *
+ *  All page I/O is positional, i.e. it does not depend on the file pointer
+ *  of the underlying file, so that pages may be read by concurrent threads,
+ *  also while another thread writes a different page. Writes share a single
+ *  page buffer and are serialized on it; the structure of the file as a whole
+ *  is still protected by the B-tree lock of the callers.
+ *
+ *  If the database is configured for memory mapped page I/O
+ *  ({@link BrokerPool#isMemoryMappedPageIO()}), then pages are read from
+ *  read-only memory mapped regions of the file, which are shared with the
+ *  operating system's page cache, instead of via a system call per read.
+ *  Writes are always made via positional file I/O, which on all supported
+ *  platforms is immediately visible through the mapping.
  */
 public abstract class Paged implements AutoCloseable {
 
@@ -129,12 +157,49 @@ public abstract class Paged implements AutoCloseable {
 
     protected static int PAGE_SIZE = 4096;
 
+    /**
+     * Size of each memory mapped region of the file.
+     */
+    static final long MAPPED_REGION_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Releases a memory mapped region, i.e. {@code sun.misc.Unsafe#invokeCleaner(ByteBuffer)},
+     * or null if that is not available.
+     */
+    @Nullable private static final MethodHandle UNMAPPER = unmapper();
+
     protected final short fileVersion;
     private final FileHeader fileHeader;
-    private final byte[] tempPageData;
-    private final byte[] tempHeaderData;
+    /**
+     * Buffer for writing out a page, guarded by its own monitor.
+     */
+    private final byte[] writeBuffer;
 
     private RandomAccessFile raf;
+    private FileChannel channel;
+
+    private final boolean memoryMapped;
+    private long mappedRegionSize = MAPPED_REGION_SIZE;
+    /**
+     * Memory mapped regions of the file, copy-on-write.
+     * Only regions which lie entirely within the file are mapped.
+     */
+    private volatile MappedByteBuffer[] mappedRegions = new MappedByteBuffer[0];
+    private final Object mappedRegionsLock = new Object();
+    /**
+     * Held shared whilst a page is read from a mapped region, and exclusively
+     * whilst the regions are released, as reading a released region crashes the JVM.
+     */
+    private final ReadWriteLock mappedRegionsAccessLock = new ReentrantReadWriteLock();
+    /**
+     * A lower bound of the current size of the file.
+     */
+    private final AtomicLong knownSize = new AtomicLong();
+    /**
+     * Pool of page images held off-heap, or null if disabled.
+     */
+    @Nullable private final OffHeapPagePool offHeapPagePool;
+    private final int offHeapFileId;
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
@@ -142,8 +207,26 @@ public abstract class Paged implements AutoCloseable {
     public Paged(final BrokerPool pool, final short fileVersion) {
         this.fileVersion = fileVersion;
         this.fileHeader = createFileHeader(pool.getPageSize());
-        this.tempPageData = new byte[fileHeader.pageSize];
-        this.tempHeaderData = new byte[fileHeader.pageHeaderSize];
+        this.writeBuffer = new byte[fileHeader.pageSize];
+        this.memoryMapped = pool.isMemoryMappedPageIO();
+        final DefaultCacheManager cacheManager = pool.getCacheManager();
+        this.offHeapPagePool = cacheManager != null ? cacheManager.getOffHeapPagePool() : null;
+        this.offHeapFileId = offHeapPagePool != null ? offHeapPagePool.registerFile() : -1;
+    }
+
+    private static @Nullable MethodHandle unmapper() {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null))
+                    .asType(MethodType.methodType(void.class, MappedByteBuffer.class));
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            LOG.warn("Memory mapped regions of database files cannot be released explicitly: {}", e.getMessage());
+            return null;
+        }
     }
 
     public final static void setPageSize(final int pageSize) {
@@ -165,6 +248,10 @@ public abstract class Paged implements AutoCloseable {
      */
     @Override
     public void close() throws DBException {
+        unmapRegions();
+        if (offHeapPagePool != null) {
+            offHeapPagePool.invalidateFile(offHeapFileId);
+        }
         try {
             raf.close();
         } catch (final IOException e) {
@@ -181,7 +268,11 @@ public abstract class Paged implements AutoCloseable {
      */
     public final void closeAndRemove() throws DBException {
         close();
-        FileUtils.deleteQuietly(file);
+        try {
+            FileUtils.delete(file);
+        } catch (final IOException e) {
+            LOG.error("Unable to remove the database file '{}': {}", FileUtils.fileName(file), e.getMessage(), e);
+        }
     }
 
     public boolean create() throws DBException {
@@ -242,11 +333,171 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException if an I/O error occurs
      */
     public void backupToStream(final OutputStream os) throws IOException {
-        raf.seek(0);
         final byte[] buf = new byte[4096];
+        long position = 0;
         int len;
-        while ((len = raf.read(buf)) > 0) {
+        while ((len = channel.read(ByteBuffer.wrap(buf), position)) > 0) {
             os.write(buf, 0, len);
+            position += len;
+        }
+    }
+
+    /**
+     * Reserved for testing!
+     *
+     * @param mappedRegionSize the size of each memory mapped region,
+     *     must be set before any region is mapped.
+     */
+    void setMappedRegionSize(final long mappedRegionSize) {
+        this.mappedRegionSize = mappedRegionSize;
+    }
+
+    /**
+     * Reserved for testing!
+     *
+     * @return the number of regions of the file which are currently memory mapped
+     */
+    int getMappedRegionCount() {
+        return (int) Arrays.stream(mappedRegions).filter(Objects::nonNull).count();
+    }
+
+    /**
+     * Reads from the file at an absolute position, without moving
+     * the file pointer.
+     *
+     * @param buf the buffer to read into
+     * @param position the position in the file to read from
+     *
+     * @return the number of bytes read, which will be less than the
+     *     length of the buffer only if the end of the file was reached
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private int readFully(final byte[] buf, final long position) throws IOException {
+        if (memoryMapped) {
+            final Lock accessLock = mappedRegionsAccessLock.readLock();
+            accessLock.lock();
+            try {
+                final MappedByteBuffer region = mappedRegion(position, buf.length);
+                if (region != null) {
+                    region.get((int) (position % mappedRegionSize), buf);
+                    return buf.length;
+                }
+            } finally {
+                accessLock.unlock();
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(buf);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Writes to the file at an absolute position, without moving
+     * the file pointer.
+     *
+     * @param buf the data to write
+     * @param position the position in the file to write at
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeFully(final byte[] buf, final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(buf);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        knownSize.accumulateAndGet(position + buf.length, Math::max);
+    }
+
+    /**
+     * Get the memory mapped region which holds a range of the file.
+     *
+     * @param position the start of the range in the file
+     * @param length the length of the range
+     *
+     * @return the region, or null if the range crosses the boundary
+     *     between two regions, or its region extends beyond the end of the file
+     *
+     * @throws IOException if the region cannot be mapped
+     */
+    private MappedByteBuffer mappedRegion(final long position, final int length) throws IOException {
+        final int idx = (int) (position / mappedRegionSize);
+        final long regionEnd = (idx + 1) * mappedRegionSize;
+        if (position + length > regionEnd) {
+            return null;
+        }
+
+        final MappedByteBuffer[] regions = mappedRegions;
+        if (idx < regions.length && regions[idx] != null) {
+            return regions[idx];
+        }
+
+        if (regionEnd > knownSize.get()) {
+            // the tail of the file is read via file I/O until it has grown by a whole region
+            return null;
+        }
+        return mapRegion(idx);
+    }
+
+    /**
+     * Releases the memory mapped regions of the file straight away.
+     *
+     * Otherwise they are only released when garbage collected, and until then
+     * the file cannot be deleted on some platforms (e.g. Windows).
+     * Waits for reads from the regions which are in progress, later reads
+     * map the file again or fail as it is closed.
+     */
+    private void unmapRegions() {
+        final Lock accessLock = mappedRegionsAccessLock.writeLock();
+        accessLock.lock();
+        try {
+            final MappedByteBuffer[] regions;
+            synchronized (mappedRegionsLock) {
+                regions = mappedRegions;
+                mappedRegions = new MappedByteBuffer[0];
+            }
+            for (final MappedByteBuffer region : regions) {
+                if (region != null) {
+                    unmap(region);
+                }
+            }
+        } finally {
+            accessLock.unlock();
+        }
+    }
+
+    private static void unmap(final MappedByteBuffer region) {
+        if (UNMAPPER == null) {
+            return;
+        }
+        try {
+            UNMAPPER.invokeExact(region);
+        } catch (final Throwable e) {
+            LOG.warn("Unable to unmap a region of a database file: {}", e.getMessage(), e);
+        }
+    }
+
+    private MappedByteBuffer mapRegion(final int idx) throws IOException {
+        synchronized (mappedRegionsLock) {
+            MappedByteBuffer[] regions = mappedRegions;
+            if (idx < regions.length && regions[idx] != null) {
+                return regions[idx];
+            }
+
+            final MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, idx * mappedRegionSize, mappedRegionSize);
+            if (idx >= regions.length) {
+                regions = Arrays.copyOf(regions, idx + 1);
+            } else {
+                regions = regions.clone();
+            }
+            regions[idx] = region;
+            mappedRegions = regions;
+            return region;
         }
     }
 
@@ -401,7 +652,8 @@ public abstract class Paged implements AutoCloseable {
             if ((!Files.exists(file)) || Files.isWritable(file)) {
                 try {
                     raf = new RandomAccessFile(file.toFile(), "rw");
-                    final FileChannel channel = raf.getChannel();   
+                    channel = raf.getChannel();
+                    knownSize.set(channel.size());
                     final FileLock lock = channel.tryLock();
                     if (lock == null) {
                         readOnly = true;
@@ -411,11 +663,15 @@ public abstract class Paged implements AutoCloseable {
                     //No way : switch to read-only mode
                     readOnly = true;
                     raf = new RandomAccessFile(file.toFile(), "r");
+                    channel = raf.getChannel();
+                    knownSize.set(channel.size());
                     LOG.warn(e);
                 }
             } else {
                 readOnly = true;
                 raf = new RandomAccessFile(file.toFile(), "r");
+                channel = raf.getChannel();
+                knownSize.set(channel.size());
             }
         } catch (final IOException e) {
             LOG.warn("An exception occurred while opening database file {}: {}", file.toAbsolutePath().toString(), e.getMessage(), e);
@@ -711,8 +967,7 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void read() throws IOException {
-            raf.seek(0);
-            raf.read(buf);
+            readFully(buf, 0);
             read(buf);
             calculateWorkSize();
             dirty = false;
@@ -848,9 +1103,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public final synchronized void write() throws IOException {
-            raf.seek(0);
             write(buf);
-            raf.write(buf);
+            writeFully(buf, 0);
             dirty = false;
         }
     }
@@ -944,16 +1198,23 @@ public abstract class Paged implements AutoCloseable {
 
         public byte[] read() throws IOException {
             try {
-                if (raf.getFilePointer() != offset) {
-                    raf.seek(offset);
+                if (isOffHeapCached()) {
+                    final byte[] pageData = new byte[fileHeader.pageSize];
+                    if (!offHeapPagePool.read(offHeapFileId, pageNum, pageData)
+                            && readFully(pageData, offset) == pageData.length) {
+                        offHeapPagePool.put(offHeapFileId, pageNum, pageData);
+                    }
+                    header.read(pageData, 0);
+                    return Arrays.copyOfRange(pageData, fileHeader.pageHeaderSize, fileHeader.pageHeaderSize + header.dataLen);
                 }
-                Arrays.fill(tempHeaderData, (byte)0);
-                raf.read(tempHeaderData);
+
+                final byte[] headerData = new byte[fileHeader.pageHeaderSize];
+                readFully(headerData, offset);
                 // Read in the header
-                header.read(tempHeaderData, 0);
+                header.read(headerData, 0);
                 // Read the working data
                 final byte[] workData = new byte[header.dataLen];
-                raf.read(workData);
+                readFully(workData, offset + headerData.length);
                 return workData;
             } catch(final Exception e) {
                 LOG.warn("error while reading page: {}", getPageInfo(), e);
@@ -971,25 +1232,32 @@ public abstract class Paged implements AutoCloseable {
         }
 
         private final void write(final byte[] data) throws IOException {
+            if (data != null && data.length > fileHeader.workSize) {
+                throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
+            }
             if(data == null) {
-                // Removed page: fill with 0
-                Arrays.fill(tempPageData, (byte)0);
                 header.setLsn(Lsn.LSN_INVALID);
             }
-            // Write out the header
-            header.write(tempPageData, 0);
-            header.dirty = false;
-            if (data != null) {
-                if (data.length > fileHeader.workSize) {
-                    throw new IOException("page: " + getPageInfo() + ": data length too large: " + data.length);
-                } else {
-                    System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
+            synchronized (writeBuffer) {
+                // Write out the header
+                header.write(writeBuffer, 0);
+                header.dirty = false;
+                // Removed page: data is filled with 0
+                int dataEnd = fileHeader.pageHeaderSize;
+                if (data != null) {
+                    System.arraycopy(data, 0, writeBuffer, dataEnd, data.length);
+                    dataEnd += data.length;
+                }
+                Arrays.fill(writeBuffer, dataEnd, writeBuffer.length, (byte) 0);
+                writeFully(writeBuffer, offset);
+                if (isOffHeapCached()) {
+                    offHeapPagePool.put(offHeapFileId, pageNum, writeBuffer);
                 }
             }
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
-            raf.write(tempPageData);
+        }
+
+        private boolean isOffHeapCached() {
+            return offHeapPagePool != null && offHeapPagePool.getFrameSize() == fileHeader.pageSize;
         }
 
         @Override
@@ -1009,11 +1277,8 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
-            if (raf.getFilePointer() != offset) {
-                raf.seek(offset);
-            }
             final byte[] data = new byte[fileHeader.pageSize];
-            raf.read(data);
+            readFully(data, offset);
             LOG.debug("Contents of page {}: {}", pageNum, hexDump(data));
         }
     }
@@ -0,0 +1,131 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A Count-Min sketch which estimates how often a key has been
+ * accessed, with periodic aging so that the estimates reflect
+ * recent history, as used by the TinyLFU admission policy.
+ *
+ * Each counter saturates at 15. Once the number of recorded
+ * accesses reaches ten times the width of the sketch, all counters
+ * are halved.
+ *
+ * Updates are lock-free, concurrent updates to the same counter
+ * may very occasionally be lost whilst the sketch is being aged,
+ * which is acceptable for an estimate.
+ */
+@ThreadSafe
+class FrequencySketch {
+
+    static final int MAX_FREQUENCY = 15;
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0x97cb3127b9d6a5b3L,
+            0xc2b2ae3d27d4eb4fL,
+            0x9e3779b97f4a7c15L,
+            0x165667b19e3779f9L
+    };
+
+    private final AtomicIntegerArray counters;
+    private final int width;
+    private final int mask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    /**
+     * @param capacity the expected maximum number of entries in the cache
+     */
+    FrequencySketch(final int capacity) {
+        this.width = Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+        this.mask = width - 1;
+        this.counters = new AtomicIntegerArray(DEPTH * width);
+        this.sampleSize = 10 * width;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Estimate the access frequency of a key.
+     *
+     * @param key the key
+     *
+     * @return the estimated frequency, between 0 and {@link #MAX_FREQUENCY}
+     */
+    int frequency(final long key) {
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, counters.get(index(key, i)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access of a key.
+     *
+     * @param key the key
+     */
+    void increment(final long key) {
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            final int idx = index(key, i);
+            int current;
+            while ((current = counters.get(idx)) < MAX_FREQUENCY) {
+                if (counters.compareAndSet(idx, current, current + 1)) {
+                    added = true;
+                    break;
+                }
+            }
+        }
+
+        if (added && additions.incrementAndGet() >= sampleSize) {
+            age();
+        }
+    }
+
+    private void age() {
+        final int current = additions.get();
+        if (current < sampleSize || !additions.compareAndSet(current, current / 2)) {
+            // another thread is already aging the sketch
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            int value;
+            do {
+                value = counters.get(i);
+            } while (value > 0 && !counters.compareAndSet(i, value, value >>> 1));
+        }
+    }
+
+    private int index(final long key, final int row) {
+        long h = (key + SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 31;
+        return (row * width) + ((int) h & mask);
+    }
+}
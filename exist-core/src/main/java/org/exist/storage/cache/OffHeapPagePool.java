@@ -0,0 +1,424 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of page images held outside of the Java heap.
+ *
+ * The pool is a second level cache which sits beneath the page caches
+ * (e.g. {@link BTreeCache}) of the paged database files. It holds the raw
+ * bytes of pages in frames of direct memory, each frame having the size of
+ * a database page. A page which is evicted from a (small) heap cache can
+ * then be re-read from the pool rather than from disk, so that a large
+ * amount of memory can be given to caching without growing the heap.
+ *
+ * Memory is allocated lazily in slabs of up to {@link #SLAB_SIZE} bytes, up to the
+ * maximum size of the pool, and may be released again by {@link #shrink(long)}.
+ * Once the pool is full, frames are replaced using the CLOCK algorithm.
+ *
+ * Lookups do not block: a frame carries a version which is incremented
+ * before and after its contents are replaced, readers copy the frame
+ * and then check that neither the version nor the page held by the frame
+ * has changed, otherwise the lookup is treated as a miss. Writers are
+ * serialized. Pages are found by an open addressing table of primitive keys,
+ * which readers probe without locking; as they check the frame which they find,
+ * a probe which races with a writer at worst misses.
+ *
+ * Callers are responsible for writing through, i.e. every write of a page
+ * to disk must also be {@link #put(int, long, byte[])} to the pool.
+ */
+@ThreadSafe
+public class OffHeapPagePool {
+
+    private static final Logger LOG = LogManager.getLogger(OffHeapPagePool.class);
+
+    static final int SLAB_SIZE = 64 * 1024 * 1024;
+    private static final long NO_KEY = -1;
+    private static final int PAGE_NUM_BITS = 40;
+
+    private final int frameSize;
+    private final int framesPerSlab;
+    private final int maxFrames;
+
+    private final AtomicInteger nextFileId = new AtomicInteger();
+
+    /**
+     * Table of the frames which hold pages, indexed by the hash of their key,
+     * using linear probing. Written only whilst holding the monitor.
+     */
+    private final AtomicLongArray tableKeys;
+    private final AtomicIntegerArray tableFrames;
+    private final int tableMask;
+    private volatile int usedFrames = 0;
+
+    private final AtomicLongArray frameKeys;
+    private final AtomicLongArray frameVersions;
+    private final AtomicIntegerArray frameReferenced;
+
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    @GuardedBy("this") private int allocatedFrames = 0;
+    @GuardedBy("this") private int clockHand = 0;
+    @GuardedBy("this") private final IntArrayList freeFrames = new IntArrayList();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long hitsOld = 0;
+
+    /**
+     * @param maxSize the maximum size of the pool in bytes
+     * @param frameSize the size of a frame, i.e. the page size of the database
+     */
+    public OffHeapPagePool(final long maxSize, final int frameSize) {
+        if (frameSize <= 0 || frameSize > SLAB_SIZE) {
+            throw new IllegalArgumentException("Invalid frame size: " + frameSize);
+        }
+        this.frameSize = frameSize;
+        this.maxFrames = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, maxSize / frameSize));
+        this.framesPerSlab = Math.min(SLAB_SIZE / frameSize, maxFrames);
+        this.frameKeys = new AtomicLongArray(maxFrames);
+        this.frameVersions = new AtomicLongArray(maxFrames);
+        this.frameReferenced = new AtomicIntegerArray(maxFrames);
+        for (int i = 0; i < maxFrames; i++) {
+            frameKeys.set(i, NO_KEY);
+        }
+
+        final int tableSize = HashCommon.arraySize(maxFrames, 0.75f);
+        this.tableKeys = new AtomicLongArray(tableSize);
+        this.tableFrames = new AtomicIntegerArray(tableSize);
+        this.tableMask = tableSize - 1;
+        for (int i = 0; i < tableSize; i++) {
+            tableKeys.set(i, NO_KEY);
+        }
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * Registers a database file with the pool.
+     *
+     * @return an identifier for the pages of the file
+     */
+    public int registerFile() {
+        final int fileId = nextFileId.getAndIncrement();
+        if (fileId >= (1 << (63 - PAGE_NUM_BITS))) {
+            throw new IllegalStateException("Too many files have been registered with the off-heap page pool");
+        }
+        return fileId;
+    }
+
+    private static long key(final int fileId, final long pageNum) {
+        return ((long) fileId << PAGE_NUM_BITS) | pageNum;
+    }
+
+    /**
+     * Reads a page from the pool.
+     *
+     * @param fileId the id of the file, as returned by {@link #registerFile()}
+     * @param pageNum the page number
+     * @param dst the buffer to copy the page into, which must be {@link #getFrameSize()} bytes long
+     *
+     * @return true if the page was found in the pool, false otherwise
+     */
+    public boolean read(final int fileId, final long pageNum, final byte[] dst) {
+        final long key = key(fileId, pageNum);
+        final int f = lookup(key);
+        if (f >= 0) {
+            final long version = frameVersions.get(f);
+            final ByteBuffer[] currentSlabs = slabs;
+            final int slab = f / framesPerSlab;
+            if ((version & 1) == 0 && slab < currentSlabs.length) {
+                currentSlabs[slab].get((f % framesPerSlab) * frameSize, dst, 0, frameSize);
+                // the copy must not be reordered after the checks below
+                VarHandle.acquireFence();
+                if (frameKeys.get(f) == key && frameVersions.get(f) == version) {
+                    frameReferenced.set(f, 1);
+                    hits.increment();
+                    return true;
+                }
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Puts a page into the pool, replacing any previous version.
+     *
+     * @param fileId the id of the file, as returned by {@link #registerFile()}
+     * @param pageNum the page number
+     * @param src the content of the page, which must be {@link #getFrameSize()} bytes long
+     */
+    public synchronized void put(final int fileId, final long pageNum, final byte[] src) {
+        final long key = key(fileId, pageNum);
+        final int existing = lookup(key);
+        final int frame = existing >= 0 ? existing : allocateFrame();
+        if (frame < 0) {
+            return;
+        }
+
+        frameVersions.incrementAndGet(frame);
+        slabs[frame / framesPerSlab].put((frame % framesPerSlab) * frameSize, src, 0, frameSize);
+        frameKeys.set(frame, key);
+        frameVersions.incrementAndGet(frame);
+        frameReferenced.set(frame, 1);
+        if (existing < 0) {
+            tableInsert(key, frame);
+        }
+    }
+
+    /**
+     * Finds the frame which holds a page. Whilst the table is being changed
+     * the result may be stale, so the caller must check the key of the frame.
+     *
+     * @param key the key of the page
+     *
+     * @return the frame, or -1 if the page was not found
+     */
+    private int lookup(final long key) {
+        int pos = (int) HashCommon.mix(key) & tableMask;
+        for (int i = 0; i <= tableMask; i++) {
+            final long k = tableKeys.get(pos);
+            if (k == key) {
+                return tableFrames.get(pos);
+            } else if (k == NO_KEY) {
+                return -1;
+            }
+            pos = (pos + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    @GuardedBy("this")
+    private void tableInsert(final long key, final int frame) {
+        int pos = (int) HashCommon.mix(key) & tableMask;
+        while (tableKeys.get(pos) != NO_KEY) {
+            pos = (pos + 1) & tableMask;
+        }
+        tableFrames.set(pos, frame);
+        tableKeys.set(pos, key);
+        usedFrames++;
+    }
+
+    @GuardedBy("this")
+    private void tableRemove(final long key) {
+        if (key == NO_KEY) {
+            return;
+        }
+        int pos = (int) HashCommon.mix(key) & tableMask;
+        long k;
+        while ((k = tableKeys.get(pos)) != key) {
+            if (k == NO_KEY) {
+                return;
+            }
+            pos = (pos + 1) & tableMask;
+        }
+        usedFrames--;
+
+        // shift the following entries back, so that no probe stops early at the removed entry
+        while (true) {
+            final int last = pos;
+            pos = (pos + 1) & tableMask;
+            while (true) {
+                k = tableKeys.get(pos);
+                if (k == NO_KEY) {
+                    tableKeys.set(last, NO_KEY);
+                    return;
+                }
+                final int slot = (int) HashCommon.mix(k) & tableMask;
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+                    break;
+                }
+                pos = (pos + 1) & tableMask;
+            }
+            tableFrames.set(last, tableFrames.get(pos));
+            tableKeys.set(last, k);
+        }
+    }
+
+    /**
+     * Removes all pages of a file from the pool.
+     *
+     * @param fileId the id of the file, as returned by {@link #registerFile()}
+     */
+    public synchronized void invalidateFile(final int fileId) {
+        for (int frame = 0; frame < allocatedFrames; frame++) {
+            final long key = frameKeys.get(frame);
+            if (key != NO_KEY && (key >>> PAGE_NUM_BITS) == fileId) {
+                releaseFrame(frame);
+                freeFrames.add(frame);
+            }
+        }
+    }
+
+    /**
+     * Releases memory, so that the pool holds at most {@code targetSize} bytes.
+     * The pool may grow again later when pages are added.
+     *
+     * @param targetSize the target size of the pool in bytes
+     */
+    public synchronized void shrink(final long targetSize) {
+        final int keepSlabs = (int) Math.min(slabs.length, Math.max(0, targetSize / ((long) framesPerSlab * frameSize)));
+        if (keepSlabs == slabs.length) {
+            return;
+        }
+
+        final int keepFrames = keepSlabs * framesPerSlab;
+        for (int frame = keepFrames; frame < allocatedFrames; frame++) {
+            if (frameKeys.get(frame) != NO_KEY) {
+                releaseFrame(frame);
+            }
+        }
+        freeFrames.removeIf(frame -> frame >= keepFrames);
+        allocatedFrames = Math.min(allocatedFrames, keepFrames);
+        if (clockHand >= allocatedFrames) {
+            clockHand = 0;
+        }
+        // the direct memory of the dropped slabs is released when they are garbage collected
+        slabs = Arrays.copyOf(slabs, keepSlabs);
+        LOG.debug("Shrunk off-heap page pool to {} bytes", getAllocatedSize());
+    }
+
+    @GuardedBy("this")
+    private void releaseFrame(final int frame) {
+        frameVersions.incrementAndGet(frame);
+        tableRemove(frameKeys.get(frame));
+        frameKeys.set(frame, NO_KEY);
+        frameReferenced.set(frame, 0);
+        frameVersions.incrementAndGet(frame);
+    }
+
+    /**
+     * @return a free frame, or -1 if no frame could be allocated
+     */
+    @GuardedBy("this")
+    private int allocateFrame() {
+        if (!freeFrames.isEmpty()) {
+            return freeFrames.removeInt(freeFrames.size() - 1);
+        }
+
+        if (allocatedFrames < maxFrames) {
+            final int frame = allocatedFrames;
+            final int slab = frame / framesPerSlab;
+            if (slab >= slabs.length) {
+                try {
+                    final ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slab + 1);
+                    newSlabs[slab] = ByteBuffer.allocateDirect(Math.min(framesPerSlab, maxFrames - frame) * frameSize);
+                    slabs = newSlabs;
+                } catch (final OutOfMemoryError e) {
+                    LOG.warn("Unable to grow the off-heap page pool beyond {} bytes, consider increasing -XX:MaxDirectMemorySize: {}", getAllocatedSize(), e.getMessage());
+                    return evictFrame();
+                }
+            }
+            allocatedFrames++;
+            return frame;
+        }
+
+        return evictFrame();
+    }
+
+    @GuardedBy("this")
+    private int evictFrame() {
+        if (allocatedFrames == 0) {
+            return -1;
+        }
+        // CLOCK, at most two sweeps are needed to find a frame which has not been referenced
+        for (int i = 0; i < 2 * allocatedFrames; i++) {
+            final int frame = clockHand;
+            clockHand = (clockHand + 1) % allocatedFrames;
+            if (frameReferenced.getAndSet(frame, 0) == 0) {
+                if (frameKeys.get(frame) != NO_KEY) {
+                    releaseFrame(frame);
+                    evictions.increment();
+                }
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the maximum size of the pool in bytes
+     */
+    public long getMaxSize() {
+        return (long) maxFrames * frameSize;
+    }
+
+    /**
+     * @return the amount of direct memory currently allocated by the pool in bytes
+     */
+    public long getAllocatedSize() {
+        long size = 0;
+        for (final ByteBuffer slab : slabs) {
+            size += slab.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of the pool which currently hold pages
+     */
+    public long getUsedSize() {
+        return (long) usedFrames * frameSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getFails() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of hits since the last call to this method.
+     *
+     * @return the number of hits
+     */
+    public synchronized long getLoad() {
+        final long currentHits = hits.sum();
+        final long load = currentHits - hitsOld;
+        hitsOld = currentHits;
+        return load;
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.CacheManager;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A scan resistant cache implementing the W-TinyLFU policy.
+ *
+ * New items enter a small LRU <i>window</i> (1% of the cache). Items which
+ * fall out of the window are only admitted to the <i>main</i> space if they
+ * have been accessed more often than the item which the main space would
+ * have to evict for them, according to a {@link FrequencySketch}. The main
+ * space is a segmented LRU, items which are hit whilst on <i>probation</i>
+ * are promoted to the <i>protected</i> segment (80% of the main space).
+ *
+ * A large sequential scan therefore only cycles through the window
+ * and the probation segment, frequently used pages (e.g. the inner pages
+ * of a B+-tree, or hot index pages) stay in the protected segment.
+ *
+ * Lookups are lock-free, the frequency sketch is updated without
+ * locking, and reordering the recency queues on a hit is skipped
+ * if another thread is currently updating the cache. Additions and
+ * removals are serialized.
+ *
+ * As with the other caches, items which do not {@link Cacheable#allowUnload()}
+ * are never evicted. For {@link BTreeCacheable} items, leaf pages are
+ * evicted in preference to inner pages.
+ */
+@ThreadSafe
+public class WTinyLFUCache<T extends Cacheable> implements Cache<T> {
+
+    private final static Logger LOG = LogManager.getLogger(WTinyLFUCache.class);
+
+    static final double WINDOW_RATIO = 0.01;
+    static final double PROTECTED_RATIO = 0.8;
+
+    private final String name;
+    private final CacheType type;
+    private final double growthFactor;
+    private final ConcurrentHashMap<Long, Node<T>> map;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @GuardedBy("lock") private final Accounting accounting;
+    @GuardedBy("lock") private final AccessOrderQueue<T> window = new AccessOrderQueue<>();
+    @GuardedBy("lock") private final AccessOrderQueue<T> probation = new AccessOrderQueue<>();
+    @GuardedBy("lock") private final AccessOrderQueue<T> protect = new AccessOrderQueue<>();
+    @GuardedBy("lock") private int windowMax;
+    @GuardedBy("lock") private int protectedMax;
+
+    private volatile int max;
+    private volatile FrequencySketch sketch;
+    private volatile CacheManager cacheManager = null;
+    private int hitsOld = -1;
+
+    public WTinyLFUCache(final String name, final int size, final double growthFactor, final double growthThreshold, final CacheType type) {
+        this.name = name;
+        this.type = type;
+        this.growthFactor = growthFactor;
+        this.map = new ConcurrentHashMap<>(size * 2);
+        this.accounting = new Accounting(growthThreshold);
+        this.sketch = new FrequencySketch(size);
+        setMax(size);
+    }
+
+    @GuardedBy("lock")
+    private void setMax(final int size) {
+        this.max = Math.max(size, 2);
+        this.windowMax = Math.max(1, (int) (max * WINDOW_RATIO));
+        this.protectedMax = (int) ((max - windowMax) * PROTECTED_RATIO);
+        this.accounting.setTotalSize(max);
+        if (sketch.getWidth() < max) {
+            this.sketch = new FrequencySketch(max);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public CacheType getType() {
+        return type;
+    }
+
+    @Override
+    public void add(final T item) {
+        add(item, 1);
+    }
+
+    @Override
+    public void add(final T item, final int initialRefCount) {
+        final boolean resizeNeeded;
+        lock.lock();
+        try {
+            final Node<T> existing = map.get(item.getKey());
+            if (existing != null) {
+                existing.item = item;
+                onAccess(existing);
+                return;
+            }
+
+            final Node<T> node = new Node<>(item.getKey(), item);
+            map.put(node.key, node);
+            window.addLast(node, Segment.WINDOW);
+            resizeNeeded = admitFromWindow(node);
+        } finally {
+            lock.unlock();
+        }
+
+        if (resizeNeeded) {
+            // must be called without holding the lock, as the cache manager may resize this cache
+            final CacheManager manager = cacheManager;
+            if (manager != null) {
+                manager.requestMem(this);
+            }
+        }
+    }
+
+    @Override
+    public T get(final T item) {
+        return get(item.getKey());
+    }
+
+    @Override
+    public T get(final long key) {
+        sketch.increment(key);
+
+        final Node<T> node = map.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        if (lock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node.item;
+    }
+
+    @Override
+    public void remove(final T item) {
+        lock.lock();
+        try {
+            final Node<T> node = map.remove(item.getKey());
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        boolean flushed = false;
+        for (final Node<T> node : map.values()) {
+            final T cacheable = node.item;
+            if (cacheable.isDirty()) {
+                flushed = flushed | cacheable.sync(false);
+            }
+        }
+        return flushed;
+    }
+
+    @Override
+    public boolean hasDirtyItems() {
+        for (final Node<T> node : map.values()) {
+            if (node.item.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getBuffers() {
+        return max;
+    }
+
+    @Override
+    public int getUsedBuffers() {
+        return map.size();
+    }
+
+    @Override
+    public int getHits() {
+        return hits.intValue();
+    }
+
+    @Override
+    public int getFails() {
+        return misses.intValue();
+    }
+
+    @Override
+    public double getGrowthFactor() {
+        return growthFactor;
+    }
+
+    @Override
+    public void setCacheManager(final CacheManager manager) {
+        this.cacheManager = manager;
+    }
+
+    @Override
+    public void resize(final int newSize) {
+        lock.lock();
+        try {
+            setMax(newSize);
+            accounting.reset();
+            evictMain(null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getLoad() {
+        final int currentHits = getHits();
+        if (hitsOld == 0) {
+            hitsOld = currentHits;
+            return Integer.MAX_VALUE;
+        }
+        final int load = currentHits - hitsOld;
+        hitsOld = currentHits;
+        return load;
+    }
+
+    /**
+     * Moves an item to the most recently used position
+     * of its segment, promoting it to the protected segment
+     * if it was on probation.
+     */
+    @GuardedBy("lock")
+    private void onAccess(final Node<T> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+
+            case PROBATION:
+                probation.remove(node);
+                protect.addLast(node, Segment.PROTECTED);
+                while (protect.size > protectedMax) {
+                    final Node<T> demoted = protect.head;
+                    protect.remove(demoted);
+                    probation.addLast(demoted, Segment.PROBATION);
+                }
+                break;
+
+            case PROTECTED:
+                protect.moveToLast(node);
+                break;
+
+            case NONE:
+            default:
+                // removed concurrently
+                break;
+        }
+    }
+
+    /**
+     * Moves the items which overflow the window into the main space,
+     * if they win against the main space's eviction victim.
+     *
+     * @param added the item which was just added, which must not be evicted
+     *
+     * @return true if the cache manager should be asked for more memory
+     */
+    @GuardedBy("lock")
+    private boolean admitFromWindow(final Node<T> added) {
+        boolean replaced = false;
+        while (window.size > windowMax) {
+            final Node<T> candidate = window.head;
+            window.remove(candidate);
+            probation.addLast(candidate, Segment.PROBATION);
+
+            if (map.size() <= max) {
+                // there is free space in the main space
+                continue;
+            }
+
+            final Node<T> victim = selectVictim(probation, candidate);
+            final Node<T> evict;
+            if (victim == null) {
+                evict = candidate.item.allowUnload() ? candidate : null;
+            } else if (!candidate.item.allowUnload() || admit(candidate.key, victim.key)) {
+                evict = victim;
+            } else {
+                evict = candidate;
+            }
+
+            if (evict != null) {
+                evict(evict);
+                replaced = true;
+            }
+        }
+
+        replaced |= evictMain(added);
+        return replaced && growthFactor > 1.0 && accounting.resizeNeeded();
+    }
+
+    /**
+     * Evicts items until the cache is within its maximum size,
+     * or there are no more items which may be evicted.
+     *
+     * @param added the item which was just added, which must not be evicted
+     *
+     * @return true if any item was evicted
+     */
+    @GuardedBy("lock")
+    private boolean evictMain(@Nullable final Node<T> added) {
+        boolean replaced = false;
+        while (map.size() > max) {
+            Node<T> victim = selectVictim(probation, added);
+            if (victim == null) {
+                victim = selectVictim(protect, added);
+            }
+            if (victim == null) {
+                victim = selectVictim(window, added);
+            }
+            if (victim == null) {
+                LOG.debug("Unable to evict an entry from cache: {}, all entries are in use", name);
+                break;
+            }
+            evict(victim);
+            replaced = true;
+        }
+        return replaced;
+    }
+
+    /**
+     * TinyLFU admission, a candidate is only admitted if it is used
+     * more frequently than the victim. Ties are given to the victim, which
+     * is what makes the cache resistant to one-off scans.
+     */
+    private boolean admit(final long candidateKey, final long victimKey) {
+        final FrequencySketch frequencies = sketch;
+        return frequencies.frequency(candidateKey) > frequencies.frequency(victimKey);
+    }
+
+    /**
+     * Finds the least recently used item of a segment which
+     * may be unloaded, preferring leaf pages over inner pages.
+     */
+    @GuardedBy("lock")
+    private @Nullable Node<T> selectVictim(final AccessOrderQueue<T> queue, @Nullable final Node<T> exclude) {
+        Node<T> innerPage = null;
+        for (Node<T> node = queue.head; node != null; node = node.next) {
+            if (node == exclude || !node.item.allowUnload()) {
+                continue;
+            }
+            if (node.item instanceof BTreeCacheable && ((BTreeCacheable) node.item).isInnerPage()) {
+                if (innerPage == null) {
+                    innerPage = node;
+                }
+                continue;
+            }
+            return node;
+        }
+        return innerPage;
+    }
+
+    @GuardedBy("lock")
+    private void evict(final Node<T> node) {
+        node.item.sync(true);
+        unlink(node);
+        map.remove(node.key, node);
+        accounting.replacedPage(node.item);
+    }
+
+    @GuardedBy("lock")
+    private void unlink(final Node<T> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protect.remove(node);
+                break;
+            case NONE:
+            default:
+                break;
+        }
+    }
+
+    int getWindowSize() {
+        lock.lock();
+        try {
+            return window.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getProtectedSize() {
+        lock.lock();
+        try {
+            return protect.size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private enum Segment {
+        NONE,
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Node<T> {
+        final long key;
+        volatile T item;
+        Segment segment = Segment.NONE;
+        Node<T> prev;
+        Node<T> next;
+
+        Node(final long key, final T item) {
+            this.key = key;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked list, the head is the least recently used.
+     */
+    private static final class AccessOrderQueue<T> {
+        Node<T> head;
+        Node<T> tail;
+        int size;
+
+        void addLast(final Node<T> node, final Segment segment) {
+            node.segment = segment;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void remove(final Node<T> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            node.segment = Segment.NONE;
+            size--;
+        }
+
+        void moveToLast(final Node<T> node) {
+            if (node != tail) {
+                final Segment segment = node.segment;
+                remove(node);
+                addLast(node, segment);
+            }
+        }
+    }
+}
@@ -83,4 +83,9 @@ public class AddLinkLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - created link on page: " + pageNum + " for tid: " + tid;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
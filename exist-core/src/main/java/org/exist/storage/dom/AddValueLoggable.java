@@ -114,4 +114,9 @@ public class AddValueLoggable extends AbstractLoggable {
     public long getPageNum() {
         return pageNum;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
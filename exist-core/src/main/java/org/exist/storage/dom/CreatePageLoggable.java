@@ -91,4 +91,9 @@ public class CreatePageLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - new page created: " + newPage + "; prev. page: " + prevPage + "; next page: " + nextPage;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
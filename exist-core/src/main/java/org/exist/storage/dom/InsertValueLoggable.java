@@ -100,4 +100,9 @@ public class InsertValueLoggable extends AbstractLoggable {
         return super.dump() + " - inserted value; tid = " + tid + " in page " + pageNum +
                 "; bytes: " + value.length + "; offset: " + offset;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
@@ -83,4 +83,9 @@ public class RemoveEmptyPageLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - removed page " + pageNum;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
@@ -87,4 +87,9 @@ public class RemoveOverflowLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - removed overflow page " + pageNum;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
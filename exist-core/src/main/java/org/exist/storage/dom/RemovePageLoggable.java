@@ -114,4 +114,9 @@ public class RemovePageLoggable extends AbstractLoggable {
     public int getOldLen() {
         return oldLen;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
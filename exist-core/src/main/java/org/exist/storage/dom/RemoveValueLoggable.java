@@ -104,4 +104,9 @@ public class RemoveValueLoggable extends AbstractLoggable {
         return super.dump() + " - removed value; tid = " + ItemId.getId(tid) + " from page " + pageNum + " at " + offset +
                 "; len = " + oldData.length;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
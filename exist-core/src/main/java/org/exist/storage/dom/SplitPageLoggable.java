@@ -91,4 +91,9 @@ public class SplitPageLoggable extends AbstractLoggable implements Loggable {
     public String dump() {
         return super.dump() + " - page split: " + pageNum + " at offset: " + splitOffset;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
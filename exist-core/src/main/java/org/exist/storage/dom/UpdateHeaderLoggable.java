@@ -93,4 +93,9 @@ public class UpdateHeaderLoggable extends AbstractLoggable {
         return super.dump() + " - update header of page " + pageNum + ": prev = " + prevPage +
                 "; next = " + nextPage + "; oldPrev = " + oldPrev + "; oldNext = " + oldNext;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
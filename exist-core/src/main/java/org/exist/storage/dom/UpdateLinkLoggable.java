@@ -84,4 +84,9 @@ public class UpdateLinkLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - updated link on page: " + pageNum + " at offset: " + offset;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
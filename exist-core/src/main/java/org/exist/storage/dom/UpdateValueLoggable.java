@@ -95,4 +95,9 @@ public class UpdateValueLoggable extends AbstractLoggable {
     public String dump() {
         return super.dump() + " - updated value; tid = " + ItemId.getId(tid) + " to page " + pageNum;
     }
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
 }
@@ -96,4 +96,9 @@ public class WriteOverflowPageLoggable extends AbstractLoggable {
     public Value getValue() {
         return value;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getStorageFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+}
@@ -31,6 +31,8 @@ import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Stream;
 
 import net.jcip.annotations.GuardedBy;
@@ -66,6 +68,13 @@ import static org.exist.util.ThreadUtils.newInstanceThread;
  * A buffer is used to temporarily buffer journal entries. To guarantee consistency, the buffer will be flushed
  * and the journal is synced after every commit or whenever a db page is written to disk.
  *
+ * When group commit is enabled (see {@link #groupCommit(Lsn)}), concurrent committers do not each
+ * sync the journal. Instead, the first committer to arrive becomes the leader of a batch, it
+ * flushes the buffer containing the commit records of all committers that have joined the batch,
+ * issues a single sync for the whole batch, and then wakes the other committers. The sync is
+ * issued without holding the monitor of the journal, so that the commits which arrive meanwhile
+ * are written to the buffer and form the next batch.
+ *
  * Each journal file has the following format:
  *
  * <pre>{@code
@@ -128,6 +137,11 @@ public final class Journal implements Closeable {
     public static final String PROPERTY_RECOVERY_JOURNAL_DIR = "db-connection.recovery.journal-dir";
     public static final String PROPERTY_RECOVERY_SYNC_ON_COMMIT = "db-connection.recovery.sync-on-commit";
 
+    public static final String RECOVERY_GROUP_COMMIT_MAX_DELAY_ATTRIBUTE = "group-commit-max-delay";
+    public static final String RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE = "group-commit-max-batch";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY = "db-connection.recovery.group-commit-max-delay";
+    public static final String PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH = "db-connection.recovery.group-commit-max-batch";
+
     public static final String LOG_FILE_SUFFIX = "log";
     public static final String BAK_FILE_SUFFIX = ".bak";
 
@@ -168,6 +182,18 @@ public final class Journal implements Closeable {
      */
     static final int DEFAULT_MIN_SIZE = 1;  // MB
 
+    /**
+     * default maximum time that the leader of a group commit waits for
+     * further commits to join the batch before syncing: 0 ms, i.e. the
+     * commits which arrive whilst the previous sync is in progress are batched.
+     */
+    static final long DEFAULT_GROUP_COMMIT_MAX_DELAY = 0;  // ms
+
+    /**
+     * default maximum number of commits in a group commit batch
+     */
+    static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 128;
+
     /**
      * We use a 1 megabyte buffer.
      */
@@ -214,6 +240,20 @@ public final class Journal implements Closeable {
     //TODO: conf.xml refactoring <recovery size=""> => <journal size="">
     private final long journalSizeLimit;
 
+    /**
+     * The maximum time in nanoseconds that the leader of a group commit
+     * waits for further commits to join the batch.
+     */
+    @ConfigurationFieldAsAttribute("group-commit-max-delay")
+    private final long groupCommitMaxDelay;
+
+    /**
+     * The number of commits at which the leader of a group commit
+     * stops waiting and syncs the batch.
+     */
+    @ConfigurationFieldAsAttribute("group-commit-max-batch")
+    private final int groupCommitMaxBatch;
+
     private final FileLock fileLock;
 
     private final XXHash64 xxHash64 = XXHashFactory.fastestInstance().hash64();
@@ -259,6 +299,19 @@ public final class Journal implements Closeable {
      */
     @GuardedBy("this") private boolean initialised = false;
 
+    /**
+     * true whilst a group commit leader is collecting and syncing a batch
+     */
+    @GuardedBy("this") private boolean groupSyncInProgress = false;
+
+    /**
+     * the number of commits waiting for the next group sync
+     */
+    @GuardedBy("this") private int groupCommitsPending = 0;
+
+    private final LongAdder groupSyncs = new LongAdder();
+    private final LongAdder groupSyncedCommits = new LongAdder();
+
 
     // NOTE(AR) called from BrokerPool.prepare -- single thread!
     public Journal(final BrokerPool pool, final Path directory) throws EXistException {
@@ -307,6 +360,12 @@ public final class Journal implements Closeable {
         this.journalSizeMin = 1024 * 1024 * configuration.getProperty(PROPERTY_RECOVERY_SIZE_MIN, DEFAULT_MIN_SIZE);
         this.journalSizeLimit = 1024 * 1024 * configuration.getProperty(PROPERTY_RECOVERY_SIZE_LIMIT, DEFAULT_MAX_SIZE);
 
+        this.groupCommitMaxDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(0, configuration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, DEFAULT_GROUP_COMMIT_MAX_DELAY)));
+        this.groupCommitMaxBatch = Math.max(1, configuration.getProperty(PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_BATCH));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("GroupCommitMaxDelay = {}ms, GroupCommitMaxBatch = {}", TimeUnit.NANOSECONDS.toMillis(groupCommitMaxDelay), groupCommitMaxBatch);
+        }
+
         final Path lck = dir.resolve(LCK_FILE);
         this.fileLock = new FileLock(pool, lck);
 
@@ -427,6 +486,13 @@ public final class Journal implements Closeable {
             LOG.error("Could not sync Journal to disk: {}", e.getMessage(), e);
         }
 
+        checkJournalSize();
+    }
+
+    /**
+     * Trigger a checkpoint if the journal file has reached its size limit.
+     */
+    private void checkJournalSize() {
         try {
             if (channel != null && channel.size() >= journalSizeLimit) {
                 pool.triggerCheckpoint();
@@ -436,10 +502,158 @@ public final class Journal implements Closeable {
         }
     }
 
+    /**
+     * Wait until the journal has been synced to disk up to and including
+     * the entry with the given LSN, usually a commit record.
+     *
+     * Concurrent callers are batched: the first caller becomes the leader
+     * and waits up to {@link #groupCommitMaxDelay} (or until
+     * {@link #groupCommitMaxBatch} callers have joined) before flushing
+     * the buffer and syncing once on behalf of all callers. The other
+     * callers simply wait for a sync which covers their LSN. The leader
+     * releases the monitor of the journal whilst it syncs, so callers which
+     * arrive in the meantime can write their entries and join the next batch.
+     *
+     * If {@code sync-on-commit} is disabled, the journal is not synced
+     * on commit, and this method returns immediately leaving the buffer
+     * to be flushed once it is full, at the next checkpoint, or when a
+     * db page is written to disk.
+     *
+     * @param commitLsn the LSN of the entry which must be durable.
+     *
+     * @throws JournalException if the journal could not be synced, or the
+     *     thread was interrupted whilst waiting.
+     */
+    public void groupCommit(final Lsn commitLsn) throws JournalException {
+        synchronized (this) {
+            if (inRecovery || !syncOnCommit || channel == null) {
+                return;
+            }
+
+            groupCommitsPending++;
+            if (groupSyncInProgress && groupCommitsPending >= groupCommitMaxBatch) {
+                // wake the leader, the batch is full
+                notifyAll();
+            }
+        }
+
+        try {
+            while (true) {
+                final FileChannel syncChannel;
+                final Lsn syncLsn;
+                synchronized (this) {
+                    if (lastSyncLsn.compareTo(commitLsn) >= 0) {
+                        groupSyncedCommits.increment();
+                        return;
+                    }
+
+                    if (currentBuffer == null || channel == null) {
+                        throw new JournalException("Database is shut down.");
+                    }
+
+                    if (groupSyncInProgress) {
+                        // follower, wait for the leader to sync the batch
+                        wait();
+                        continue;
+                    }
+
+                    // leader, collect the batch and flush it
+                    groupSyncInProgress = true;
+                    try {
+                        final long deadline = System.nanoTime() + groupCommitMaxDelay;
+                        long remaining = groupCommitMaxDelay;
+                        while (remaining > 0 && groupCommitsPending < groupCommitMaxBatch) {
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                            remaining = deadline - System.nanoTime();
+                        }
+
+                        groupCommitsPending = 0;
+
+                        flushBuffer();
+                        syncChannel = channel;
+                        syncLsn = currentLsn;
+                    } catch (final InterruptedException | RuntimeException e) {
+                        groupSyncInProgress = false;
+                        notifyAll();
+                        throw e;
+                    }
+                }
+
+                // sync without holding the monitor, so that further committers
+                // can write their entries and join the next batch meanwhile
+                IOException syncException = null;
+                try {
+                    syncChannel.force(true);
+                } catch (final IOException e) {
+                    syncException = e;
+                }
+
+                synchronized (this) {
+                    groupSyncInProgress = false;
+                    notifyAll();
+
+                    if (syncException != null) {
+                        LOG.error("Could not sync Journal to disk: {}", syncException.getMessage(), syncException);
+                        throw new JournalException("Unable to sync Journal to disk for commit: " + commitLsn, syncException);
+                    }
+
+                    if (lastSyncLsn.compareTo(syncLsn) < 0) {
+                        lastSyncLsn = syncLsn;
+                    }
+                    groupSyncs.increment();
+
+                    checkJournalSize();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JournalException("Interrupted whilst waiting for group commit of: " + commitLsn, e);
+        }
+    }
+
+    /**
+     * Get the number of syncs performed by group commit leaders.
+     *
+     * @return the number of group syncs.
+     */
+    public long getGroupSyncs() {
+        return groupSyncs.sum();
+    }
+
+    /**
+     * Get the number of commits made durable by group commit syncs.
+     *
+     * The average batch size is {@code getGroupSyncedCommits() / getGroupSyncs()}.
+     *
+     * @return the number of commits.
+     */
+    public long getGroupSyncedCommits() {
+        return groupSyncedCommits.sum();
+    }
+
     private void sync() throws IOException {
         channel.force(true);
     }
 
+    /**
+     * Wait until a group commit leader has finished syncing the
+     * journal file, before the file may be switched or closed.
+     */
+    @GuardedBy("this")
+    private void awaitGroupSync() {
+        boolean interrupted = false;
+        while (groupSyncInProgress) {
+            try {
+                wait();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Flush the buffer to disk.
      */
@@ -476,6 +690,7 @@ public final class Journal implements Closeable {
      */
     public synchronized void checkpoint(final long txnId, final boolean switchLogFiles) throws JournalException {
         LOG.debug("Checkpoint reached");
+        awaitGroupSync();
         writeToLog(new Checkpoint(txnId));
         if (switchLogFiles) {
             // if we switch files, we don't need to sync.
@@ -547,6 +762,7 @@ public final class Journal implements Closeable {
      * @throws LogException if the journal files could not be switched
      */
     public synchronized void switchFiles() throws LogException {
+        awaitGroupSync();
         final short newJournalFileNumber = getNextJournalFileNumber(currentJournalFileNumber);
         final String newJournalFileName = getFileName(newJournalFileNumber);
         final Path newJournalFile = dir.resolve(newJournalFileName);
@@ -608,6 +824,7 @@ public final class Journal implements Closeable {
      */
     @Override
     public synchronized void close() throws IOException {
+        awaitGroupSync();
         if (channel != null) {
             try {
                 sync();
@@ -729,6 +946,8 @@ public final class Journal implements Closeable {
             return; // the db has probably shut down already
         }
 
+        awaitGroupSync();
+
         if (!BrokerPool.FORCE_CORRUPTION) {
             if (checkpoint) {
                 LOG.info("Shutting down Journal with checkpoint...");
@@ -749,6 +968,9 @@ public final class Journal implements Closeable {
         channel = null;
         fileLock.release();
         currentBuffer = null;
+
+        // wake any group committers, they will fail as the database is shut down
+        notifyAll();
     }
 
     /**
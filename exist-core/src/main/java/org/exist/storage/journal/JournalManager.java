@@ -42,6 +42,7 @@ import org.exist.storage.BrokerPoolService;
 import org.exist.storage.BrokerPoolServiceException;
 import org.exist.storage.recovery.RecoveryManager;
 import org.exist.util.Configuration;
+import org.exist.util.LatencyHistogram;
 import org.exist.util.ReadOnlyException;
 
 import java.nio.file.Path;
@@ -68,6 +69,8 @@ public class JournalManager implements BrokerPoolService {
 
     private final List<JournalListener> journalListeners = new CopyOnWriteArrayList<>();
 
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
     @Override
     public synchronized void configure(final Configuration configuration) {
         this.journalDir = (Path) Optional.ofNullable(configuration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR))
@@ -111,22 +114,83 @@ public class JournalManager implements BrokerPoolService {
     }
 
     /**
-     * Write a group of entrys to the journal
+     * Write an entry which ends a group of entries, i.e. a commit
+     * or abort, to the journal.
+     *
+     * If group commits are disabled, the journal is flushed (and
+     * synced if {@code sync-on-commit} is enabled) before returning.
+     *
+     * If group commits are enabled, then this waits for a sync which
+     * is shared with any other concurrent committers, see {@link Journal#groupCommit(Lsn)}.
+     * The lock on this Journal Manager is not held whilst waiting, so that
+     * other committers may join the batch.
      *
      * @see Journal#writeToLog(Loggable)
      * @see Journal#flushToLog(boolean)
+     * @see Journal#groupCommit(Lsn)
      *
      * @param loggable The entry to write in the journalGroup
      *
      * @throws JournalException of the journal group cannot be written
      */
-    public synchronized void journalGroup(final Loggable loggable) throws JournalException {
-        if (!journallingDisabled) {
+    public void journalGroup(final Loggable loggable) throws JournalException {
+        final long start = System.nanoTime();
+
+        final Journal groupJournal;
+        synchronized (this) {
+            if (journallingDisabled) {
+                return;
+            }
+
             journal.writeToLog(loggable);
             if (!groupCommits) {
                 journal.flushToLog(true);
+                commitLatency.record(System.nanoTime() - start);
+                return;
             }
+
+            groupJournal = journal;
         }
+
+        groupJournal.groupCommit(loggable.getLsn());
+        commitLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Get the latencies of writing commit and abort entries
+     * to the journal, including the time taken to sync.
+     *
+     * @return the commit latency histogram.
+     */
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @see Journal#getGroupSyncs()
+     *
+     * @return the number of group syncs, or 0 if journalling is disabled.
+     */
+    public synchronized long getGroupSyncs() {
+        return journal != null ? journal.getGroupSyncs() : 0;
+    }
+
+    /**
+     * @see Journal#getGroupSyncedCommits()
+     *
+     * @return the number of commits made durable by group syncs, or 0 if journalling is disabled.
+     */
+    public synchronized long getGroupSyncedCommits() {
+        return journal != null ? journal.getGroupSyncedCommits() : 0;
+    }
+
+    /**
+     * Determine if group commits are enabled.
+     *
+     * @return true if group commits are enabled.
+     */
+    public synchronized boolean isGroupCommits() {
+        return groupCommits;
     }
 
     /**
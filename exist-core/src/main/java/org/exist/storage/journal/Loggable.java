@@ -30,7 +30,12 @@ import java.nio.ByteBuffer;
  * @author wolf
  */
 public interface Loggable {
-    
+
+    /**
+     * Indicates that an entry does not target a single storage file.
+     */
+    int NO_STORAGE_FILE_ID = -1;
+
 	/**
 	 * Returns the type id of the log entry. This is the type registered
 	 * with class {@link LogEntryTypes}. The returned id is used by
@@ -100,7 +105,22 @@ public interface Loggable {
      * @throws LogException if the operation cannot be undone
      */
     void undo() throws LogException;
-    
+
+    /**
+     * Returns the id of the storage file which is the
+     * target of the underlying operation. Entries for
+     * different storage files may be redone concurrently by
+     * {@link org.exist.storage.recovery.RecoveryManager},
+     * entries for the same storage file are always redone in
+     * the order in which they were written to the journal.
+     *
+     * @return the id of the target storage file, or {@link #NO_STORAGE_FILE_ID}
+     *     if the operation does not target a single storage file.
+     */
+    default int getStorageFileId() {
+        return NO_STORAGE_FILE_ID;
+    }
+
     /**
      * Returns a description of the entry for debugging purposes.
      * 
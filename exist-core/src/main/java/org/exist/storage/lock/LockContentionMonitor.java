@@ -0,0 +1,222 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.storage.lock.Lock.LockType;
+import org.exist.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reports how long threads wait to acquire locks.
+ *
+ * Wait times are sampled, i.e. only one in every {@code sampleInterval}
+ * lock acquisitions of a thread is recorded into the histogram for its
+ * lock type, which keeps the overhead low enough for the monitor to be
+ * always on.
+ *
+ * Independently of sampling, every acquisition of a Collection or Document
+ * lock which waited for at least the contention threshold is counted against
+ * the URI of the lock, so that the most contended URIs can be reported.
+ * At most {@link #MAX_CONTENDED_IDS} URIs are tracked between resets.
+ */
+@ThreadSafe
+public class LockContentionMonitor {
+
+    static final int MAX_CONTENDED_IDS = 1024;
+
+    private final int sampleInterval;
+    private final long contentionThresholdNanos;
+
+    private final LatencyHistogram[] waitTimes;
+    private final ConcurrentHashMap<String, ContentionCounter> contended = new ConcurrentHashMap<>();
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * @param sampleInterval record the wait time of one in every {@code sampleInterval} lock acquisitions,
+     *     or 0 to disable sampling
+     * @param contentionThresholdNanos the wait time above which an acquisition is considered contended
+     */
+    public LockContentionMonitor(final int sampleInterval, final long contentionThresholdNanos) {
+        this.sampleInterval = Math.max(0, sampleInterval);
+        this.contentionThresholdNanos = contentionThresholdNanos;
+        this.waitTimes = new LatencyHistogram[LockType.values().length];
+        for (int i = 0; i < waitTimes.length; i++) {
+            waitTimes[i] = new LatencyHistogram();
+        }
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public long getContentionThresholdNanos() {
+        return contentionThresholdNanos;
+    }
+
+    /**
+     * Records that a lock was acquired.
+     *
+     * @param id the id of the lock
+     * @param lockType the type of the lock
+     * @param waitNanos the time spent waiting for the lock
+     * @param sampled true if the wait time should be recorded in the histogram
+     */
+    public void acquired(final String id, final LockType lockType, final long waitNanos, final boolean sampled) {
+        if (sampled) {
+            waitTimes[lockType.ordinal()].record(waitNanos);
+        }
+
+        if (waitNanos >= contentionThresholdNanos && (lockType == LockType.COLLECTION || lockType == LockType.DOCUMENT)) {
+            ContentionCounter counter = contended.get(id);
+            if (counter == null) {
+                if (contended.size() >= MAX_CONTENDED_IDS) {
+                    untracked.increment();
+                    return;
+                }
+                counter = contended.computeIfAbsent(id, k -> new ContentionCounter(lockType));
+            }
+            counter.record(waitNanos);
+        }
+    }
+
+    /**
+     * Get the sampled wait times of each type of lock.
+     *
+     * @return the wait times of the lock types for which waits have been sampled
+     */
+    public Map<LockType, LatencyHistogram.Snapshot> getWaitTimes() {
+        final Map<LockType, LatencyHistogram.Snapshot> result = new EnumMap<>(LockType.class);
+        for (final LockType lockType : LockType.values()) {
+            final LatencyHistogram.Snapshot snapshot = waitTimes[lockType.ordinal()].snapshot();
+            if (snapshot.getCount() > 0) {
+                result.put(lockType, snapshot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the most contended Collection and Document locks.
+     *
+     * @param limit the maximum number of locks to return
+     *
+     * @return the most contended locks, ordered by their total wait time, longest first
+     */
+    public List<ContendedLock> getTopContended(final int limit) {
+        final List<ContendedLock> result = new ArrayList<>(contended.size());
+        contended.forEach((id, counter) -> result.add(counter.snapshot(id)));
+        result.sort(Comparator.comparingLong(ContendedLock::getTotalWaitMicros).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * @return the number of contended acquisitions which were not counted because
+     *     too many URIs were already being tracked
+     */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    /**
+     * Resets all recorded wait times and contention counts.
+     */
+    public void reset() {
+        for (final LatencyHistogram waitTime : waitTimes) {
+            waitTime.reset();
+        }
+        contended.clear();
+        untracked.reset();
+    }
+
+    private static class ContentionCounter {
+        final LockType lockType;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        ContentionCounter(final LockType lockType) {
+            this.lockType = lockType;
+        }
+
+        void record(final long waitNanos) {
+            count.increment();
+            totalNanos.add(waitNanos);
+            maxNanos.accumulate(waitNanos);
+        }
+
+        ContendedLock snapshot(final String id) {
+            return new ContendedLock(id, lockType, count.sum(), totalNanos.sum() / 1000, maxNanos.get() / 1000);
+        }
+    }
+
+    /**
+     * Contention of a single lock.
+     */
+    public static class ContendedLock {
+        private final String id;
+        private final LockType lockType;
+        private final long count;
+        private final long totalWaitMicros;
+        private final long maxWaitMicros;
+
+        public ContendedLock(final String id, final LockType lockType, final long count, final long totalWaitMicros,
+                final long maxWaitMicros) {
+            this.id = id;
+            this.lockType = lockType;
+            this.count = count;
+            this.totalWaitMicros = totalWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public LockType getLockType() {
+            return lockType;
+        }
+
+        /**
+         * @return the number of contended acquisitions of the lock
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalWaitMicros() {
+            return totalWaitMicros;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+    }
+}
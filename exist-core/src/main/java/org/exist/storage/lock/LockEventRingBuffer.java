@@ -0,0 +1,244 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.Lock.LockType;
+import org.exist.storage.lock.LockTable.LockEventType;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size buffer of the most recent lock events.
+ *
+ * The buffer is split into stripes, and a thread always records into
+ * the stripe selected by its id, so that threads rarely contend on the
+ * same cursor. All storage is allocated up-front, recording an event
+ * only writes into pre-allocated arrays.
+ *
+ * Each slot carries a sequence number which is cleared before and published
+ * after the slot is written, readers discard slots whose sequence changed
+ * whilst they were being read. Should a stripe wrap around whilst
+ * another thread is still writing to the same slot, the event may be
+ * lost or reported inconsistently, which is acceptable for diagnostics.
+ */
+@ThreadSafe
+public class LockEventRingBuffer {
+
+    private static final int MAX_STRIPES = 64;
+    private static final int MIN_STRIPE_CAPACITY = 16;
+    private static final long WRITING = -1;
+
+    private static final LockEventType[] EVENT_TYPES = LockEventType.values();
+    private static final LockType[] LOCK_TYPES = LockType.values();
+    private static final LockMode[] LOCK_MODES = LockMode.values();
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param capacity the total number of events to retain, shared between the stripes
+     */
+    public LockEventRingBuffer(final int capacity) {
+        final int stripeCount = Math.min(MAX_STRIPES, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+        final int stripeCapacity = ceilingPowerOfTwo(Math.max(MIN_STRIPE_CAPACITY, capacity / stripeCount));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    private static int ceilingPowerOfTwo(final int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * @return the total number of events which the buffer retains
+     */
+    public int getCapacity() {
+        return stripes.length * stripes[0].capacity();
+    }
+
+    /**
+     * Records a lock event.
+     *
+     * @param eventType the type of the event
+     * @param timestamp the time of the event, from {@link System#nanoTime()}
+     * @param groupId the id of the lock group
+     * @param id the id of the lock
+     * @param lockType the type of the lock
+     * @param lockMode the mode of the lock
+     * @param thread the thread which caused the event
+     */
+    public void record(final LockEventType eventType, final long timestamp, final long groupId, final String id,
+            final LockType lockType, final LockMode lockMode, final Thread thread) {
+        final Stripe stripe = stripes[(int) (thread.getId() & stripeMask)];
+        final long sequence = stripe.cursor.getAndIncrement();
+        final int slot = (int) (sequence & stripe.mask);
+
+        stripe.sequences.set(slot, WRITING);
+        VarHandle.storeStoreFence();
+
+        stripe.timestamps[slot] = timestamp;
+        stripe.groupIds[slot] = groupId;
+        stripe.ids[slot] = id;
+        stripe.threadNames[slot] = thread.getName();
+        stripe.eventTypes[slot] = (byte) eventType.ordinal();
+        stripe.lockTypes[slot] = (byte) lockType.ordinal();
+        stripe.lockModes[slot] = (byte) lockMode.ordinal();
+
+        // publish the slot
+        stripe.sequences.set(slot, sequence);
+    }
+
+    /**
+     * Takes a snapshot of the events in the buffer.
+     *
+     * @return the events, in the order in which they occurred
+     */
+    public List<Event> snapshot() {
+        final List<Event> events = new ArrayList<>(getCapacity());
+        for (final Stripe stripe : stripes) {
+            stripe.readInto(events);
+        }
+        events.sort(Comparator.comparingLong(Event::getTimestamp));
+        return events;
+    }
+
+    private static class Stripe {
+        final AtomicLong cursor = new AtomicLong();
+        final int mask;
+        final AtomicLongArray sequences;
+        final long[] timestamps;
+        final long[] groupIds;
+        final String[] ids;
+        final String[] threadNames;
+        final byte[] eventTypes;
+        final byte[] lockTypes;
+        final byte[] lockModes;
+
+        Stripe(final int capacity) {
+            this.mask = capacity - 1;
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, WRITING);
+            }
+            this.timestamps = new long[capacity];
+            this.groupIds = new long[capacity];
+            this.ids = new String[capacity];
+            this.threadNames = new String[capacity];
+            this.eventTypes = new byte[capacity];
+            this.lockTypes = new byte[capacity];
+            this.lockModes = new byte[capacity];
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        void readInto(final List<Event> events) {
+            for (int slot = 0; slot <= mask; slot++) {
+                final long sequence = sequences.get(slot);
+                if (sequence == WRITING) {
+                    continue;
+                }
+
+                final long timestamp = timestamps[slot];
+                final long groupId = groupIds[slot];
+                final String id = ids[slot];
+                final String threadName = threadNames[slot];
+                final byte eventType = eventTypes[slot];
+                final byte lockType = lockTypes[slot];
+                final byte lockMode = lockModes[slot];
+
+                VarHandle.acquireFence();
+                if (sequences.get(slot) == sequence) {
+                    events.add(new Event(EVENT_TYPES[eventType], timestamp, groupId, id, LOCK_TYPES[lockType], LOCK_MODES[lockMode], threadName));
+                }
+            }
+        }
+    }
+
+    /**
+     * A lock event read from the buffer.
+     */
+    public static class Event {
+        private final LockEventType eventType;
+        private final long timestamp;
+        private final long groupId;
+        private final String id;
+        private final LockType lockType;
+        private final LockMode lockMode;
+        private final String threadName;
+
+        public Event(final LockEventType eventType, final long timestamp, final long groupId, final String id,
+                final LockType lockType, final LockMode lockMode, final String threadName) {
+            this.eventType = eventType;
+            this.timestamp = timestamp;
+            this.groupId = groupId;
+            this.id = id;
+            this.lockType = lockType;
+            this.lockMode = lockMode;
+            this.threadName = threadName;
+        }
+
+        public LockEventType getEventType() {
+            return eventType;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getGroupId() {
+            return groupId;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public LockType getLockType() {
+            return lockType;
+        }
+
+        public LockMode getLockMode() {
+            return lockMode;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        @Override
+        public String toString() {
+            return eventType.name() + ' ' + lockType.name() + '#' + groupId + '(' + lockMode + ") of " + id + " by " + threadName + " at " + timestamp;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import org.exist.util.WeakLazyStripes;
 import org.exist.xmldb.XmldbURI;
 import uk.ac.ic.doc.slurp.multilock.MultiLock;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
@@ -59,6 +60,13 @@ import java.util.function.Consumer;
  * Our adaptions enable us to specify either a multi-writer/multi-reader approach between Collection
  * sub-trees or a single-writer/multi-reader approach on the entire Collection tree.
  *
+ * With the multi-writer/multi-reader approach, ancestor Collections are only locked with
+ * INTENTION_READ (IS) or INTENTION_WRITE (IX) modes, so writers of sibling sub-trees
+ * do not block each other. A thread which already holds Collection locks may however
+ * close a cycle with another thread when acquiring further Collection locks. Such nested
+ * acquisitions are therefore made with a timeout, and a {@link LockException} is thrown
+ * if a lock cannot be acquired in time, rather than deadlocking.
+ *
  * The uptake is that locking a Collection, also implicitly implies locking all descendant
  * Collections with the same mode. This reduces the amount of locks required for
  * manipulating Collection sub-trees.
@@ -77,6 +85,9 @@ public class LockManager {
     public final static String CONFIGURATION_WARN_WAIT_ON_READ_FOR_WRITE = "lock-manager.warn-wait-on-read-for-write";
     public final static String CONFIGURATION_PATH_LOCKS_FOR_DOCUMENTS = "lock-manager.document.use-path-locks";
     public final static String CONFIGURATION_PATHS_MULTI_WRITER = "lock-manager.paths-multi-writer";
+    public final static String CONFIGURATION_PATHS_MULTI_WRITER_TIMEOUT = "lock-manager.paths-multi-writer-timeout";
+
+    public final static int DEFAULT_PATHS_MULTI_WRITER_TIMEOUT = 30_000;
 
     //TODO(AR) remove eventually!
     // legacy properties for overriding the config
@@ -98,6 +109,12 @@ public class LockManager {
      */
     private final boolean pathsMultiWriter;
 
+    /**
+     * The maximum time in milliseconds to wait for a path lock in
+     * Multi-Writer/Multi-Reader mode, when the thread already holds path locks
+     */
+    private final int pathsMultiWriterTimeout;
+
     /**
      * Set to true to enable checking for lock upgrading within the same
      * thread, i.e. READ_LOCK -> WRITE_LOCK
@@ -121,9 +138,24 @@ public class LockManager {
      * @param concurrencyLevel Concurrency Level of the lock table.
      */
     public LockManager(final Configuration configuration, final int concurrencyLevel) {
+        this(configuration, concurrencyLevel,
+                getLegacySystemPropertyOrConfigPropertyBool(PROP_ENABLE_PATHS_MULTI_WRITER, configuration, CONFIGURATION_PATHS_MULTI_WRITER, false),
+                getConfigPropertyInt(configuration, CONFIGURATION_PATHS_MULTI_WRITER_TIMEOUT, DEFAULT_PATHS_MULTI_WRITER_TIMEOUT));
+    }
+
+    /**
+     * @param configuration database configuration
+     * @param concurrencyLevel Concurrency Level of the lock table.
+     * @param pathsMultiWriter true for Multi-Writer/Multi-Reader semantics for the path Hierarchy
+     * @param pathsMultiWriterTimeout the maximum time in milliseconds to wait for a nested path lock
+     *     in Multi-Writer/Multi-Reader mode
+     */
+    LockManager(final Configuration configuration, final int concurrencyLevel, final boolean pathsMultiWriter,
+            final int pathsMultiWriterTimeout) {
         // set configuration
         this.usePathLocksForDocuments = getConfigPropertyBool(configuration, CONFIGURATION_PATH_LOCKS_FOR_DOCUMENTS, false);
-        this.pathsMultiWriter = getLegacySystemPropertyOrConfigPropertyBool(PROP_ENABLE_PATHS_MULTI_WRITER, configuration, CONFIGURATION_PATHS_MULTI_WRITER, false);
+        this.pathsMultiWriter = pathsMultiWriter;
+        this.pathsMultiWriterTimeout = pathsMultiWriterTimeout;
         this.upgradeCheck = getLegacySystemPropertyOrConfigPropertyBool(PROP_UPGRADE_CHECK, configuration, CONFIGURATION_UPGRADE_CHECK, false);
         this.warnWaitOnReadForWrite = getLegacySystemPropertyOrConfigPropertyBool(PROP_WARN_WAIT_ON_READ_FOR_WRITE, configuration, CONFIGURATION_WARN_WAIT_ON_READ_FOR_WRITE, false);
 
@@ -136,7 +168,7 @@ public class LockManager {
         }
         this.btreeLocks = new WeakLazyStripes<>(concurrencyLevel, LockManager::createBtreeLock);
 
-        LOG.info("Configured LockManager with concurrencyLevel={} use-path-locks-for-documents={} paths-multi-writer={}", concurrencyLevel, usePathLocksForDocuments, pathsMultiWriter);
+        LOG.info("Configured LockManager with concurrencyLevel={} use-path-locks-for-documents={} paths-multi-writer={} paths-multi-writer-timeout={}", concurrencyLevel, usePathLocksForDocuments, pathsMultiWriter, pathsMultiWriterTimeout);
     }
 
     /**
@@ -238,6 +270,7 @@ public class LockManager {
 
         String pathStr = "";
         final LockedPath[] locked = new LockedPath[segments.length];
+        long timeout = -1;
         for (int i = 0; i < segments.length; i++) {
             pathStr += '/' + segments[i].toString();
 
@@ -249,9 +282,12 @@ public class LockManager {
             }
 
             final MultiLock lock = getPathLock(pathStr);
+            if (i == 0) {
+                timeout = pathLockTimeout(lock);
+            }
 
             lockTable.attempt(groupId, pathStr, lockType, lockMode);
-            if (lock(lock, lockMode)) {
+            if (lock(lock, lockMode, timeout)) {
                 locked[i] = new LockedPath(lock, lockMode, pathStr);
                 lockTable.acquired(groupId, pathStr, lockType, lockMode);
             } else {
@@ -259,13 +295,74 @@ public class LockManager {
 
                 unlockAll(locked, l -> lockTable.released(groupId, l.path, lockType, l.mode));
 
-                throw new LockException("Unable to acquire " + lockType + " " + lockMode + " for: " + pathStr);
+                throw lockFailed(lockType, lockMode, pathStr, timeout);
             }
         }
 
         return new LockGroup(groupId, locked);
     }
 
+    /**
+     * Determines how long to wait for the path locks of an acquisition.
+     *
+     * In Multi-Writer/Multi-Reader mode, a thread which already holds path locks
+     * could close a cycle with another thread, so it only waits for a limited time.
+     * As every path lock implies a lock on the root of the path hierarchy, the hold
+     * counts of the root lock tell us whether the thread already holds path locks.
+     *
+     * @param rootLock the lock of the root of the path hierarchy.
+     *
+     * @return the timeout in milliseconds, or -1 to wait indefinitely.
+     */
+    private long pathLockTimeout(final MultiLock rootLock) {
+        if (!pathsMultiWriter || pathsMultiWriterTimeout < 0) {
+            return -1;
+        }
+
+        if (rootLock.getIntentionReadHoldCount() > 0 || rootLock.getIntentionWriteHoldCount() > 0
+                || rootLock.getReadHoldCount() > 0 || rootLock.getWriteHoldCount() > 0) {
+            return pathsMultiWriterTimeout;
+        }
+        return -1;
+    }
+
+    private static LockException lockFailed(final LockType lockType, final Lock.LockMode lockMode,
+            final String pathStr, final long timeout) {
+        if (timeout > -1) {
+            return new LockException("Unable to acquire " + lockType + " " + lockMode + " for: " + pathStr
+                    + " within " + timeout + " ms whilst holding other locks, possible deadlock avoided");
+        }
+        return new LockException("Unable to acquire " + lockType + " " + lockMode + " for: " + pathStr);
+    }
+
+    /**
+     * Locks a lock object, waiting at most for a timeout.
+     *
+     * @param lock the lock object to lock.
+     * @param lockMode the mode of the {@code lock} to acquire.
+     * @param timeout the maximum time to wait in milliseconds, or -1 to wait indefinitely.
+     *
+     * @return true, if we were able to lock with the mode.
+     */
+    private static boolean lock(final MultiLock lock, final Lock.LockMode lockMode, final long timeout) {
+        if (timeout < 0) {
+            return lock(lock, lockMode);
+        }
+
+        try {
+            return switch (lockMode) {
+                case INTENTION_READ -> lock.tryIntentionReadLock(timeout, TimeUnit.MILLISECONDS);
+                case INTENTION_WRITE -> lock.tryIntentionWriteLock(timeout, TimeUnit.MILLISECONDS);
+                case READ_LOCK -> lock.tryReadLock(timeout, TimeUnit.MILLISECONDS);
+                case WRITE_LOCK -> lock.tryWriteLock(timeout, TimeUnit.MILLISECONDS);
+                default -> throw new UnsupportedOperationException(); // TODO(AR) implement the other modes
+            };
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Locks a lock object.
      *
@@ -309,6 +406,10 @@ public class LockManager {
     static void unlockAll(final LockedPath[] locked, final Consumer<LockedPath> unlockListener) {
         for (int i = locked.length - 1; i >= 0; i--) {
             final LockedPath lock = locked[i];
+            if (lock == null) {
+                // not yet acquired, when releasing after a failed acquisition
+                continue;
+            }
             unlock(lock.lock, lock.mode);
             unlockListener.accept(lock);
         }
@@ -387,6 +488,7 @@ public class LockManager {
 
         String pathStr = "";
         final LockedPath[] locked = new LockedPath[segments.length];
+        long timeout = -1;
         for (int i = 0; i < segments.length; i++) {
             pathStr += '/' + segments[i].toString();
 
@@ -408,6 +510,9 @@ public class LockManager {
             }
 
             final MultiLock lock = getPathLock(pathStr);
+            if (i == 0) {
+                timeout = pathLockTimeout(lock);
+            }
 
             if (upgradeCheck && lockMode == Lock.LockMode.WRITE_LOCK && (lock.getIntentionReadHoldCount() > 0  || lock.getReadHoldCount() > 0)) {
                 throw new LockException("Lock upgrading would lead to a self-deadlock: " + pathStr);
@@ -422,7 +527,7 @@ public class LockManager {
             }
 
             lockTable.attempt(groupId, pathStr, lockType, lockMode);
-            if (lock(lock, lockMode)) {
+            if (lock(lock, lockMode, timeout)) {
                 locked[i] = new LockedPath(lock, lockMode, pathStr);
                 lockTable.acquired(groupId, pathStr, lockType, lockMode);
             } else {
@@ -430,7 +535,7 @@ public class LockManager {
 
                 unlockAll(locked, l -> lockTable.released(groupId, l.path, lockType, l.mode));
 
-                throw new LockException("Unable to acquire " + lockType + " " + lockMode + " for: " + pathStr);
+                throw lockFailed(lockType, lockMode, pathStr, timeout);
             }
         }
 
@@ -754,6 +859,25 @@ public class LockManager {
         }
     }
 
+    /**
+     * Gets a configuration option from an eXist-db Configuration file
+     * property.
+     *
+     * @param configuration eXist-db configuration
+     * @param configProperty name of an eXist-db configuration property
+     * @param defaultValue the default value if no config property is found.
+     *
+     * @return the value of the property
+     */
+    static int getConfigPropertyInt(final Configuration configuration, final String configProperty,
+            final int defaultValue) {
+        if (configuration != null) {
+            return configuration.getProperty(configProperty, defaultValue);
+        } else {
+            return defaultValue;
+        }
+    }
+
     /**
      * Gets a configuration option from a (legacy) System Property
      * or if that is not set, then from an eXist-db Configuration file
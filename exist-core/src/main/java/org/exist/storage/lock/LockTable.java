@@ -42,6 +42,7 @@ import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.Lock.LockType;
 import org.exist.storage.txn.Txn;
 import org.exist.util.Configuration;
+import org.exist.util.LatencyHistogram;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
@@ -61,6 +62,14 @@ import static org.exist.storage.lock.LockTable.LockEventType.*;
  * which is typically an indicator of the
  * lock subject.
  *
+ * The most recent lock events are retained
+ * in a {@link LockEventRingBuffer}, and the time spent
+ * waiting for locks is reported by a {@link LockContentionMonitor}.
+ * The tables of the locks which each thread is attempting
+ * and has acquired are only kept whilst tracing, i.e. when
+ * the trace stack depth is not 0, as they cost more
+ * for every lock event.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 public class LockTable {
@@ -68,6 +77,13 @@ public class LockTable {
     // org.exist.util.Configuration properties
     public static final String CONFIGURATION_DISABLED = "lock-table.disabled";
     public static final String CONFIGURATION_TRACE_STACK_DEPTH = "lock-table.trace-stack-depth";
+    public static final String CONFIGURATION_EVENT_BUFFER_SIZE = "lock-table.event-buffer-size";
+    public static final String CONFIGURATION_SAMPLE_INTERVAL = "lock-table.sample-interval";
+    public static final String CONFIGURATION_CONTENTION_THRESHOLD = "lock-table.contention-threshold";
+
+    public static final int DEFAULT_EVENT_BUFFER_SIZE = 4096;
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+    public static final int DEFAULT_CONTENTION_THRESHOLD = 1000;
 
     //TODO(AR) remove eventually!
     // legacy properties for overriding the config
@@ -86,7 +102,7 @@ public class LockTable {
      * Whether we should try and trace the stack for the lock event, -1 means all stack,
      * 0 means no stack, n means n stack frames, 5 is a reasonable value
      */
-    private int traceStackDepth;
+    private volatile int traceStackDepth;
 
     /**
      * Lock event listeners
@@ -104,10 +120,47 @@ public class LockTable {
      */
     private final Map<Thread, Entries> acquired = new ConcurrentHashMap<>(60);
 
+    /**
+     * The most recent lock events, or null if disabled
+     */
+    @Nullable private final LockEventRingBuffer eventBuffer;
+
+    /**
+     * Samples the time spent waiting for locks
+     */
+    private final LockContentionMonitor contentionMonitor;
+
+    /**
+     * The time of the current lock attempt of each thread,
+     * and its countdown to the next sampled acquisition
+     */
+    private final ThreadLocal<long[]> attemptTimes = ThreadLocal.withInitial(() -> new long[2]);
+
 
     LockTable(final Configuration configuration) {
-        this.disableEvents = LockManager.getLegacySystemPropertyOrConfigPropertyBool(PROP_DISABLE, configuration, CONFIGURATION_DISABLED, false);
-        this.traceStackDepth = LockManager.getLegacySystemPropertyOrConfigPropertyInt(PROP_TRACE_STACK_DEPTH, configuration, CONFIGURATION_TRACE_STACK_DEPTH, 0);
+        this(
+                LockManager.getLegacySystemPropertyOrConfigPropertyBool(PROP_DISABLE, configuration, CONFIGURATION_DISABLED, false),
+                LockManager.getLegacySystemPropertyOrConfigPropertyInt(PROP_TRACE_STACK_DEPTH, configuration, CONFIGURATION_TRACE_STACK_DEPTH, 0),
+                LockManager.getConfigPropertyInt(configuration, CONFIGURATION_EVENT_BUFFER_SIZE, DEFAULT_EVENT_BUFFER_SIZE),
+                LockManager.getConfigPropertyInt(configuration, CONFIGURATION_SAMPLE_INTERVAL, DEFAULT_SAMPLE_INTERVAL),
+                LockManager.getConfigPropertyInt(configuration, CONFIGURATION_CONTENTION_THRESHOLD, DEFAULT_CONTENTION_THRESHOLD)
+        );
+    }
+
+    /**
+     * @param disableEvents true to disable all events
+     * @param traceStackDepth the depth at which to trace lock events through the stack
+     * @param eventBufferSize the number of recent lock events to retain, or 0 to disable the event buffer
+     * @param sampleInterval record the wait time of one in every {@code sampleInterval} lock acquisitions,
+     *     or 0 to disable sampling
+     * @param contentionThreshold the wait time in microseconds above which an acquisition is considered contended
+     */
+    LockTable(final boolean disableEvents, final int traceStackDepth, final int eventBufferSize,
+            final int sampleInterval, final int contentionThreshold) {
+        this.disableEvents = disableEvents;
+        this.traceStackDepth = traceStackDepth;
+        this.eventBuffer = eventBufferSize > 0 ? new LockEventRingBuffer(eventBufferSize) : null;
+        this.contentionMonitor = new LockContentionMonitor(sampleInterval, contentionThreshold * 1000L);
 
         // add a log listener if trace level logging is enabled
         if(LOG.isTraceEnabled()) {
@@ -127,10 +180,17 @@ public class LockTable {
     /**
      * Set the depth at which we should trace lock events through the stack
      *
+     * Whilst the depth is 0 the attempted and acquired locks are not traced,
+     * see {@link #getAttempting()} and {@link #getAcquired()}.
+     *
      * @param traceStackDepth -1 traces the whole stack, 0 means no stack traces, n means n stack frames
      */
     public void setTraceStackDepth(final int traceStackDepth) {
         this.traceStackDepth = traceStackDepth;
+        if (traceStackDepth == 0) {
+            attempting.clear();
+            acquired.clear();
+        }
     }
 
     public void attempt(final long groupId, final String id, final LockType lockType, final LockMode mode) {
@@ -157,6 +217,10 @@ public class LockTable {
         final long timestamp = System.nanoTime();
         final Thread currentThread = Thread.currentThread();
 
+        if (eventBuffer != null) {
+            eventBuffer.record(lockEventType, timestamp, groupId, id, lockType, lockMode, currentThread);
+        }
+
 //        if(ignoreEvent(threadName, id)) {
 //            return;
 //        }
@@ -168,6 +232,27 @@ public class LockTable {
 //            sanityCheckLockLifecycles(lockEventType, groupId, id, lockType, lockMode, threadName, 1, timestamp, stackTrace);
 //        }
 
+        final long[] attemptTime;
+        switch (lockEventType) {
+            case Attempt:
+                attemptTime = attemptTimes.get();
+                attemptTime[0] = timestamp;
+                break;
+
+            case Acquired:
+                attemptTime = attemptTimes.get();
+                contentionMonitor.acquired(id, lockType, timestamp - attemptTime[0], sample(attemptTime));
+                break;
+        }
+
+        final int traceStackDepth = this.traceStackDepth;
+        if (traceStackDepth == 0) {
+            if (listeners != null) {
+                notifyListeners(lockEventType, timestamp, groupId, new Entry(id, lockType, lockMode, currentThread.getName(), null));
+            }
+            return;
+        }
+
         switch (lockEventType) {
             case Attempt:
 
@@ -182,12 +267,8 @@ public class LockTable {
                 entry.lockType = lockType;
                 entry.lockMode = lockMode;
                 entry.owner = currentThread.getName();
-                if(traceStackDepth == 0) {
-                    entry.stackTraces = null;
-                } else {
-                    entry.stackTraces = new ArrayList<>();
-                    entry.stackTraces.add(getStackTrace(currentThread));
-                }
+                entry.stackTraces = new ArrayList<>();
+                entry.stackTraces.add(getStackTrace(currentThread));
                 // write count last to ensure reader-thread visibility of above fields
                 entry.count = 1;
 
@@ -261,6 +342,26 @@ public class LockTable {
         }
     }
 
+    /**
+     * Determines whether the wait time of a lock acquisition
+     * should be sampled.
+     *
+     * @param attemptTime the attempt time of the acquiring thread
+     *
+     * @return true if the acquisition should be sampled
+     */
+    private boolean sample(final long[] attemptTime) {
+        final int sampleInterval = contentionMonitor.getSampleInterval();
+        if (sampleInterval == 0) {
+            return false;
+        }
+        if (--attemptTime[1] <= 0) {
+            attemptTime[1] = sampleInterval;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * There is one Entries object for each writing-thread,
      * however it may be read from other threads which
@@ -607,6 +708,43 @@ public class LockTable {
         return result;
     }
 
+    /**
+     * Get's the most recent lock events.
+     *
+     * @return the most recent lock events, in the order in which they occurred,
+     *     or an empty list if the event buffer is disabled
+     */
+    public List<LockEventRingBuffer.Event> getRecentEvents() {
+        if (eventBuffer == null) {
+            return Collections.emptyList();
+        }
+        return eventBuffer.snapshot();
+    }
+
+    /**
+     * Get's the sampled time spent waiting for locks.
+     *
+     * @return the wait times by lock type
+     */
+    public Map<LockType, LatencyHistogram.Snapshot> getWaitTimes() {
+        return contentionMonitor.getWaitTimes();
+    }
+
+    /**
+     * Get's the most contended Collection and Document locks.
+     *
+     * @param limit the maximum number of locks to return
+     *
+     * @return the most contended locks, longest total wait time first
+     */
+    public List<LockContentionMonitor.ContendedLock> getTopContended(final int limit) {
+        return contentionMonitor.getTopContended(limit);
+    }
+
+    public LockContentionMonitor getContentionMonitor() {
+        return contentionMonitor;
+    }
+
     public static class LockModeOwner {
         final LockMode lockMode;
         final String ownerThread;
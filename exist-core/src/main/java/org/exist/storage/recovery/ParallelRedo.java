@@ -0,0 +1,217 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Database;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.exist.util.ThreadUtils.newInstanceThread;
+
+/**
+ * Redoes journal entries on a pool of worker threads.
+ *
+ * Entries are partitioned by their target storage file, see {@link Loggable#getStorageFileId()}.
+ * All entries for the same storage file are redone by the same worker, in the order in which
+ * they were submitted, so the journal (and therefore per-page LSN) order is preserved for each file.
+ * The storage files share no page state, so entries for different files may be redone concurrently.
+ *
+ * Entries which do not target a single storage file act as a barrier: they are redone by the
+ * calling thread once all previously submitted entries have been redone.
+ *
+ * Whilst the workers redo entries, the calling thread is free to continue reading the journal,
+ * i.e. reading the journal is pipelined with redo.
+ */
+@NotThreadSafe
+class ParallelRedo implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelRedo.class);
+
+    /**
+     * Maximum number of entries queued per worker before the reader is blocked.
+     */
+    static final int QUEUE_CAPACITY = 4096;
+
+    private final Database database;
+    private final Worker[] workers;
+    private final Int2ObjectMap<Worker> partitions = new Int2ObjectOpenHashMap<>();
+    private int nextWorker = 0;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final Object drained = new Object();
+    private final AtomicReference<Failure> failure = new AtomicReference<>();
+
+    ParallelRedo(final Database database, final int threads) {
+        this.database = database;
+        this.workers = new Worker[threads];
+    }
+
+    /**
+     * Redo an entry.
+     *
+     * @param entry the journal entry to redo.
+     *
+     * @throws LogException if this or a previously submitted entry could not be redone.
+     * @throws InterruptedException if the thread is interrupted whilst waiting for the workers.
+     */
+    public void redo(final Loggable entry) throws LogException, InterruptedException {
+        checkFailure();
+
+        final int storageFileId = entry.getStorageFileId();
+        if (storageFileId == Loggable.NO_STORAGE_FILE_ID) {
+            awaitDrained();
+            entry.redo();
+            return;
+        }
+
+        pending.incrementAndGet();
+        worker(storageFileId).queue.put(entry);
+    }
+
+    /**
+     * Wait until all submitted entries have been redone.
+     *
+     * @throws LogException if any submitted entry could not be redone.
+     * @throws InterruptedException if the thread is interrupted whilst waiting for the workers.
+     */
+    public void awaitDrained() throws LogException, InterruptedException {
+        synchronized (drained) {
+            while (pending.get() > 0) {
+                drained.wait();
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Get the entry which caused the redo to fail.
+     *
+     * @return the entry which could not be redone, or null if there was no failure.
+     */
+    public @Nullable Loggable getFailedEntry() {
+        final Failure f = failure.get();
+        return f != null ? f.entry : null;
+    }
+
+    /**
+     * Stops the workers. Any entries that have not yet been redone are discarded.
+     */
+    @Override
+    public void close() {
+        for (final Worker worker : workers) {
+            if (worker != null) {
+                worker.thread.interrupt();
+            }
+        }
+        for (final Worker worker : workers) {
+            if (worker != null) {
+                try {
+                    worker.thread.join();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private Worker worker(final int storageFileId) {
+        Worker worker = partitions.get(storageFileId);
+        if (worker == null) {
+            // assign storage files to workers round-robin, starting workers lazily
+            final int idx = nextWorker++ % workers.length;
+            worker = workers[idx];
+            if (worker == null) {
+                worker = new Worker();
+                worker.thread = newInstanceThread(database, "recovery-redo-" + idx, worker);
+                worker.thread.start();
+                workers[idx] = worker;
+            }
+            partitions.put(storageFileId, worker);
+        }
+        return worker;
+    }
+
+    private void checkFailure() throws LogException {
+        final Failure f = failure.get();
+        if (f != null) {
+            throw new LogException("Unable to redo journal entry: " + f.entry.dump(), f.cause);
+        }
+    }
+
+    private void completed() {
+        if (pending.decrementAndGet() == 0) {
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Loggable> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private Thread thread;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final Loggable entry = queue.take();
+                    try {
+                        // once any worker has failed, the remaining entries are only drained
+                        if (failure.get() == null) {
+                            entry.redo();
+                        }
+                    } catch (final Exception e) {
+                        failure.compareAndSet(null, new Failure(entry, e));
+                        LOG.error("Exception caught while redoing journal entry: {}", entry.getLsn(), e);
+                    } finally {
+                        completed();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // closed, exit...
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class Failure {
+        private final Loggable entry;
+        private final Exception cause;
+
+        Failure(final Loggable entry, final Exception cause) {
+            this.entry = entry;
+            this.cause = cause;
+        }
+    }
+}
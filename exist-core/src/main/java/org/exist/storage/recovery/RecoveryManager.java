@@ -51,6 +51,10 @@ import javax.annotation.Nullable;
  * Database recovery. This class is used once during startup to check
  * if the database is in a consistent state. If not, the class attempts to recover
  * the database from the journalling log.
+ *
+ * If more than one redo thread is configured, the redo pass is performed
+ * by a {@link ParallelRedo}, which redoes the entries for each storage file
+ * on its own worker thread, whilst the journal continues to be read.
  * 
  * @author wolf
  */
@@ -58,16 +62,26 @@ public class RecoveryManager {
 	
 	private final static Logger LOG = LogManager.getLogger(RecoveryManager.class);
 
+    public static final String RECOVERY_REDO_THREADS_ATTRIBUTE = "redo-threads";
+    public static final String PROPERTY_RECOVERY_REDO_THREADS = "db-connection.recovery.redo-threads";
+
+    /**
+     * default number of threads used for the redo pass: 1, i.e. redo on the recovering thread
+     */
+    public static final int DEFAULT_REDO_THREADS = 1;
+
     private final DBBroker broker;
     private final JournalRecoveryAccessor journalRecovery;
     private final boolean restartOnError;
     private final boolean hideProgressBar;
+    private final int redoThreads;
 
     public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError) {
         this.broker = broker;
         this.journalRecovery = journalManager.getRecoveryAccessor(this);
         this.restartOnError = restartOnError;
         this.hideProgressBar = Boolean.getBoolean("exist.recovery.progressbar.hide");
+        this.redoThreads = Math.max(1, broker.getBrokerPool().getConfiguration().getProperty(PROPERTY_RECOVERY_REDO_THREADS, DEFAULT_REDO_THREADS));
 	}
 
 	/**
@@ -264,6 +278,10 @@ public class RecoveryManager {
                     LOG.info("First pass: redoing {} transactions...", txnCount);}
             Loggable next = null;
             int redoCnt = 0;
+            @Nullable final ParallelRedo parallelRedo = redoThreads > 1 ? new ParallelRedo(broker.getBrokerPool(), redoThreads) : null;
+            if (parallelRedo != null) {
+                LOG.info("Redoing in parallel with {} threads", redoThreads);
+            }
             try {
                 final long lastSize = FileUtils.sizeQuietly(last);
                 @Nullable final ProgressBar redoProgressBar = hideProgressBar ? null : new ProgressBar("Redo ", lastSize);
@@ -283,7 +301,12 @@ public class RecoveryManager {
                     }
         //            LOG.debug("Redo: " + next.dump());
                     // redo the log entry
-                    next.redo();
+                    if (parallelRedo != null && !isTransactionEntry(next)) {
+                        parallelRedo.redo(next);
+                    } else {
+                        // NOTE: transaction records have nothing to redo, so they need not wait for the ParallelRedo
+                        next.redo();
+                    }
 
                     if (redoProgressBar != null) {
                         redoProgressBar.set(next.getLsn().getOffset());
@@ -295,17 +318,30 @@ public class RecoveryManager {
                     }
                 }
 
+                if (parallelRedo != null) {
+                    parallelRedo.awaitDrained();
+                }
+
                 if (redoProgressBar != null) {
                     redoProgressBar.set(lastSize);  // 100% done
                 }
             } catch (final Exception e) {
                 LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
                     "Before starting again, make sure to run a check via the emergency export tool.", e);
+                if (parallelRedo != null && parallelRedo.getFailedEntry() != null) {
+                    next = parallelRedo.getFailedEntry();
+                }
                 if (next != null)
                     {
                         LOG.info("Log entry that caused the exception: {}", next.dump());}
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
                 throw new LogException("Recovery aborted. ");
             } finally {
+                if (parallelRedo != null) {
+                    parallelRedo.close();
+                }
                 LOG.info("Redo processed {} out of {} transactions.", redoCnt, txnCount);
             }
 
@@ -363,6 +399,13 @@ public class RecoveryManager {
         }
     }
     
+    private static boolean isTransactionEntry(final Loggable entry) {
+        final byte logType = entry.getLogType();
+        return logType == LogEntryTypes.TXN_START
+                || logType == LogEntryTypes.TXN_COMMIT
+                || logType == LogEntryTypes.TXN_ABORT;
+    }
+
 	private void cleanDirectory(final Stream<Path> files) {
         files.forEach(FileUtils::deleteQuietly);
 	}
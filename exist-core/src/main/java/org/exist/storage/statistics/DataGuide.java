@@ -116,6 +116,30 @@ public class DataGuide {
         return temp.getMaxDepth();
     }
 
+    /**
+     * Get the number of elements with the given name, on any path.
+     *
+     * @param qname the name of the elements
+     *
+     * @return the number of elements
+     */
+    public long getNodeCount(QName qname) {
+        return root.getNodeCount(qname);
+    }
+
+    /**
+     * Get the average number of elements with the given name
+     * below each of their parents.
+     *
+     * @param qname the name of the elements
+     *
+     * @return the average number of elements per parent, or 0 if there are no such elements
+     */
+    public double getAverageFanout(QName qname) {
+        final long parentCount = root.getParentNodeCount(qname);
+        return parentCount == 0 ? 0 : (double) root.getNodeCount(qname) / parentCount;
+    }
+
     public String toString() {
         final List<StringBuilder> paths = new ArrayList<>();
         root.dump(new StringBuilder(), paths);
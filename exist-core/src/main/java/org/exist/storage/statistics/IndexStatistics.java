@@ -70,6 +70,29 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return dataGuide.getMaxParentDepth(qname);
     }
 
+    /**
+     * Get the number of elements with the given name in the database.
+     *
+     * @param qname the name of the elements
+     *
+     * @return the number of elements
+     */
+    public long getNodeCount(QName qname) {
+        return dataGuide.getNodeCount(qname);
+    }
+
+    /**
+     * Get the average number of elements with the given name
+     * below each of their parents.
+     *
+     * @param qname the name of the elements
+     *
+     * @return the average number of elements per parent, or 0 if there are no such elements
+     */
+    public double getAverageFanout(QName qname) {
+        return dataGuide.getAverageFanout(qname);
+    }
+
     protected void mergeStats(DataGuide other) {
         dataGuide = other.mergeInto(dataGuide);
     }
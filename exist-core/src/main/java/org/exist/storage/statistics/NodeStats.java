@@ -137,6 +137,30 @@ class NodeStats {
         }
     }
 
+    protected long getNodeCount(QName name) {
+        long count = qname != null && qname.equals(name) ? nodeCount : 0;
+        if (children != null) {
+            for (NodeStats child : children) {
+                count += child.getNodeCount(name);
+            }
+        }
+        return count;
+    }
+
+    protected long getParentNodeCount(QName name) {
+        long count = 0;
+        if (qname != null && qname.equals(name)) {
+            // a root element has no parent element, so count its document instead
+            count = parent == null || parent.qname == null ? nodeCount : parent.nodeCount;
+        }
+        if (children != null) {
+            for (NodeStats child : children) {
+                count += child.getParentNodeCount(name);
+            }
+        }
+        return count;
+    }
+
     protected void write(ByteBuffer buffer, SymbolTable symbols) {
         buffer.putShort(symbols.getNSSymbol(qname.getNamespaceURI()));
         buffer.putShort(symbols.getSymbol(qname.getLocalPart()));
@@ -37,6 +37,7 @@ import org.exist.storage.lock.LockTable;
 import org.exist.util.io.ContentFilePool;
 import org.exist.xquery.Expression;
 import org.exist.xquery.PerformanceStats;
+import org.exist.xquery.XQueryResultCache;
 import org.exist.xquery.XQueryWatchDog;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -161,12 +162,18 @@ import static org.exist.storage.NativeValueIndex.PROPERTY_INDEX_CASE_SENSITIVE;
 import static org.exist.storage.XQueryPool.MAX_STACK_SIZE_ATTRIBUTE;
 import static org.exist.storage.XQueryPool.POOL_SIZE_ATTTRIBUTE;
 import static org.exist.storage.XQueryPool.PROPERTY_MAX_STACK_SIZE;
+import static org.exist.storage.journal.Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH;
+import static org.exist.storage.journal.Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY;
 import static org.exist.storage.journal.Journal.PROPERTY_RECOVERY_JOURNAL_DIR;
 import static org.exist.storage.journal.Journal.PROPERTY_RECOVERY_SIZE_LIMIT;
 import static org.exist.storage.journal.Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT;
+import static org.exist.storage.journal.Journal.RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE;
+import static org.exist.storage.journal.Journal.RECOVERY_GROUP_COMMIT_MAX_DELAY_ATTRIBUTE;
 import static org.exist.storage.journal.Journal.RECOVERY_JOURNAL_DIR_ATTRIBUTE;
 import static org.exist.storage.journal.Journal.RECOVERY_SIZE_LIMIT_ATTRIBUTE;
 import static org.exist.storage.journal.Journal.RECOVERY_SYNC_ON_COMMIT_ATTRIBUTE;
+import static org.exist.storage.recovery.RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS;
+import static org.exist.storage.recovery.RecoveryManager.RECOVERY_REDO_THREADS_ATTRIBUTE;
 import static org.exist.storage.serializers.Serializer.ADD_EXIST_ID_ATTRIBUTE;
 import static org.exist.storage.serializers.Serializer.COMPRESS_OUTPUT_ATTRIBUTE;
 import static org.exist.storage.serializers.Serializer.ENABLE_XINCLUDE_ATTRIBUTE;
@@ -215,9 +222,12 @@ import static org.exist.xquery.XQueryContext.PROPERTY_BUILT_IN_MODULES;
 import static org.exist.xquery.XQueryContext.PROPERTY_ENABLE_QUERY_REWRITING;
 import static org.exist.xquery.XQueryContext.PROPERTY_ENFORCE_INDEX_USE;
 import static org.exist.xquery.XQueryContext.PROPERTY_MODULE_PARAMETERS;
+import static org.exist.xquery.XQueryContext.PROPERTY_SPECIALIZATION_THRESHOLD;
 import static org.exist.xquery.XQueryContext.PROPERTY_STATIC_MODULE_MAP;
 import static org.exist.xquery.XQueryContext.PROPERTY_XQUERY_BACKWARD_COMPATIBLE;
 import static org.exist.xquery.XQueryContext.PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL;
+import static org.exist.xquery.XQueryContext.SPECIALIZATION_THRESHOLD_ATTRIBUTE;
+import static org.exist.xquery.XQueryContext.SPECIALIZATION_THRESHOLD_DEFAULT;
 import static org.exist.xquery.XQueryContext.XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE;
 import static org.exist.xquery.XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE;
 import static org.exist.xquery.XQueryContext.XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT;
@@ -482,6 +492,7 @@ public class Configuration implements ErrorHandler {
         configureProperty(lockManager, "upgrade-check", LockManager.CONFIGURATION_UPGRADE_CHECK, Configuration::asBoolean, FALSE);
         configureProperty(lockManager, "warn-wait-on-read-for-write", LockManager.CONFIGURATION_WARN_WAIT_ON_READ_FOR_WRITE, Configuration::asBoolean, FALSE);
         configureProperty(lockManager, "paths-multi-writer", LockManager.CONFIGURATION_PATHS_MULTI_WRITER, Configuration::asBoolean, FALSE);
+        configureProperty(lockManager, "paths-multi-writer-timeout", LockManager.CONFIGURATION_PATHS_MULTI_WRITER_TIMEOUT, Configuration::asInteger, LockManager.DEFAULT_PATHS_MULTI_WRITER_TIMEOUT);
 
         configureElement(lockManager, "lock-table", lockTable -> {
             final boolean lockTableDisabled = parseBoolean(getConfigAttributeValue(lockTable, "disabled"), false);
@@ -489,6 +500,14 @@ public class Configuration implements ErrorHandler {
 
             setProperty(LockTable.CONFIGURATION_DISABLED, lockTableDisabled);
             setProperty(LockTable.CONFIGURATION_TRACE_STACK_DEPTH, lockTableTraceStackDepth);
+
+            final int lockTableEventBufferSize = parseInt(getConfigAttributeValue(lockTable, "event-buffer-size"), LockTable.DEFAULT_EVENT_BUFFER_SIZE);
+            final int lockTableSampleInterval = parseInt(getConfigAttributeValue(lockTable, "sample-interval"), LockTable.DEFAULT_SAMPLE_INTERVAL);
+            final int lockTableContentionThreshold = parseInt(getConfigAttributeValue(lockTable, "contention-threshold"), LockTable.DEFAULT_CONTENTION_THRESHOLD);
+
+            setProperty(LockTable.CONFIGURATION_EVENT_BUFFER_SIZE, lockTableEventBufferSize);
+            setProperty(LockTable.CONFIGURATION_SAMPLE_INTERVAL, lockTableSampleInterval);
+            setProperty(LockTable.CONFIGURATION_CONTENTION_THRESHOLD, lockTableContentionThreshold);
         });
 
         configureElement(lockManager, "document", document -> {
@@ -525,6 +544,7 @@ public class Configuration implements ErrorHandler {
         configureProperty(xquery, ENFORCE_INDEX_USE_ATTRIBUTE, PROPERTY_ENFORCE_INDEX_USE);
         configureProperty(xquery, XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE, PROPERTY_XQUERY_BACKWARD_COMPATIBLE);
         configureProperty(xquery, XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE, PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Configuration::asBoolean, XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT);
+        configureProperty(xquery, SPECIALIZATION_THRESHOLD_ATTRIBUTE, PROPERTY_SPECIALIZATION_THRESHOLD, Configuration::asInteger, SPECIALIZATION_THRESHOLD_DEFAULT);
         configureProperty(xquery, PerformanceStats.CONFIG_ATTR_TRACE, PerformanceStats.CONFIG_PROPERTY_TRACE);
 
         // built-in-modules
@@ -924,6 +944,21 @@ public class Configuration implements ErrorHandler {
             }
         }
 
+        String offHeapCacheMem = getConfigAttributeValue(con, DefaultCacheManager.OFF_HEAP_CACHE_SIZE_ATTRIBUTE);
+
+        if (offHeapCacheMem != null) {
+
+            if (offHeapCacheMem.endsWith("M") || offHeapCacheMem.endsWith("m")) {
+                offHeapCacheMem = offHeapCacheMem.substring(0, offHeapCacheMem.length() - 1);
+            }
+
+            try {
+                setProperty(DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE, Integer.valueOf(offHeapCacheMem));
+            } catch (final NumberFormatException nfe) {
+                LOG.warn(CANNOT_CONVERT_VALUE_TO_INTEGER, DefaultCacheManager.PROPERTY_OFF_HEAP_CACHE_SIZE, offHeapCacheMem, nfe);
+            }
+        }
+
         // Process the Check Max Cache value
 
         String checkMaxCache = getConfigAttributeValue(con, CACHE_CHECK_MAX_SIZE_ATTRIBUTE);
@@ -976,6 +1011,16 @@ public class Configuration implements ErrorHandler {
 
         configureProperty(con, NativeBroker.PAGE_SIZE_ATTRIBUTE, PROPERTY_PAGE_SIZE, Configuration::asInteger, null);
 
+        final String pageIO = getConfigAttributeValue(con, BrokerPoolConstants.PAGE_IO_ATTRIBUTE);
+        if (pageIO != null) {
+            final String mode = pageIO.trim().toLowerCase();
+            if (BrokerPoolConstants.PAGE_IO_FILE.equals(mode) || BrokerPoolConstants.PAGE_IO_MMAP.equals(mode)) {
+                setProperty(BrokerPoolConstants.PROPERTY_PAGE_IO, mode);
+            } else {
+                LOG.warn("Unknown value for {}: '{}', expected '{}' or '{}'", BrokerPoolConstants.PAGE_IO_ATTRIBUTE, pageIO, BrokerPoolConstants.PAGE_IO_FILE, BrokerPoolConstants.PAGE_IO_MMAP);
+            }
+        }
+
         //Not clear : rather looks like a buffers count
         configureProperty(con, BrokerPoolConstants.COLLECTION_CACHE_SIZE_ATTRIBUTE, PROPERTY_COLLECTION_CACHE_SIZE, Configuration::asInteger, null);
 
@@ -1010,16 +1055,48 @@ public class Configuration implements ErrorHandler {
             setProperty(PROPERTY_STARTUP_TRIGGERS, startupTriggers);
         }
 
+        configureCachePolicy(con);
+
         configureElement(con, BrokerPoolConstants.CONFIGURATION_POOL_ELEMENT_NAME, this::configurePool);
         configureElement(con, XQueryPool.CONFIGURATION_ELEMENT_NAME, this::configureXQueryPool);
+        configureElement(con, XQueryResultCache.CONFIGURATION_ELEMENT_NAME, this::configureXQueryResultCache);
         configureElement(con, XQueryWatchDog.CONFIGURATION_ELEMENT_NAME, this::configureWatchdog);
         configureElement(con, BrokerPoolConstants.CONFIGURATION_RECOVERY_ELEMENT_NAME, element -> configureRecovery(dbHome, element));
     }
 
+    private void configureCachePolicy(final Element con) {
+        final String cachePolicy = getConfigAttributeValue(con, DefaultCacheManager.CACHE_POLICY_ATTRIBUTE);
+        if (cachePolicy != null) {
+            if (DefaultCacheManager.isCachePolicy(cachePolicy)) {
+                setProperty(DefaultCacheManager.PROPERTY_CACHE_POLICY, cachePolicy);
+            } else {
+                LOG.warn("Unknown {}: '{}', using the default", DefaultCacheManager.CACHE_POLICY_ATTRIBUTE, cachePolicy);
+            }
+        }
+
+        final Map<String, String> fileCachePolicies = new HashMap<>();
+        final NodeList nlCachePolicies = con.getElementsByTagName(DefaultCacheManager.CONFIGURATION_CACHE_POLICY_ELEMENT_NAME);
+        for (int i = 0; i < nlCachePolicies.getLength(); i++) {
+            final Element elem = (Element) nlCachePolicies.item(i);
+            final String file = getConfigAttributeValue(elem, DefaultCacheManager.CACHE_POLICY_FILE_ATTRIBUTE);
+            final String policy = getConfigAttributeValue(elem, DefaultCacheManager.CACHE_POLICY_POLICY_ATTRIBUTE);
+            if (file == null || policy == null || !DefaultCacheManager.isCachePolicy(policy)) {
+                LOG.warn("Ignoring invalid {} configuration: file='{}' policy='{}'", DefaultCacheManager.CONFIGURATION_CACHE_POLICY_ELEMENT_NAME, file, policy);
+                continue;
+            }
+            fileCachePolicies.put(file, policy);
+        }
+        if (!fileCachePolicies.isEmpty()) {
+            setProperty(DefaultCacheManager.PROPERTY_CACHE_POLICY_FILES, fileCachePolicies);
+        }
+    }
+
     private void configureRecovery(final Optional<Path> dbHome, final Element recovery) throws DatabaseConfigurationException {
         configureProperty(recovery, RECOVERY_ENABLED_ATTRIBUTE, PROPERTY_RECOVERY_ENABLED, Configuration::asBoolean, TRUE);
         configureProperty(recovery, RECOVERY_SYNC_ON_COMMIT_ATTRIBUTE, PROPERTY_RECOVERY_SYNC_ON_COMMIT, Configuration::asBoolean, TRUE);
         configureProperty(recovery, RECOVERY_GROUP_COMMIT_ATTRIBUTE, PROPERTY_RECOVERY_GROUP_COMMIT, Configuration::asBoolean, FALSE);
+        configureProperty(recovery, RECOVERY_GROUP_COMMIT_MAX_DELAY_ATTRIBUTE, PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Configuration::asLong, null);
+        configureProperty(recovery, RECOVERY_GROUP_COMMIT_MAX_BATCH_ATTRIBUTE, PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Configuration::asInteger, null);
 
         final String journalDir = getConfigAttributeValue(recovery, RECOVERY_JOURNAL_DIR_ATTRIBUTE);
         if (journalDir != null) {
@@ -1048,6 +1125,7 @@ public class Configuration implements ErrorHandler {
 
         configureProperty(recovery, RECOVERY_FORCE_RESTART_ATTRIBUTE, PROPERTY_RECOVERY_FORCE_RESTART, Configuration::asBoolean, FALSE);
         configureProperty(recovery, RECOVERY_POST_RECOVERY_CHECK, PROPERTY_RECOVERY_CHECK, Configuration::asBoolean, FALSE);
+        configureProperty(recovery, RECOVERY_REDO_THREADS_ATTRIBUTE, PROPERTY_RECOVERY_REDO_THREADS, Configuration::asInteger, null);
     }
 
     /**
@@ -1070,6 +1148,11 @@ public class Configuration implements ErrorHandler {
         configureProperty(queryPool, POOL_SIZE_ATTTRIBUTE, XQueryPool.PROPERTY_POOL_SIZE, Configuration::asInteger, null);
     }
 
+    private void configureXQueryResultCache(final Element resultCache) {
+        configureProperty(resultCache, XQueryResultCache.SIZE_ATTRIBUTE, XQueryResultCache.PROPERTY_SIZE, Configuration::asInteger, null);
+        configureProperty(resultCache, XQueryResultCache.MAX_ENTRY_SIZE_ATTRIBUTE, XQueryResultCache.PROPERTY_MAX_ENTRY_SIZE, Configuration::asInteger, null);
+    }
+
     private void configureStartup(final Element startup) throws DatabaseConfigurationException {
         // Retrieve <triggers>
         configureElement(startup, "triggers", triggers -> {
@@ -1134,6 +1217,7 @@ public class Configuration implements ErrorHandler {
         configureProperty(pool, MAX_CONNECTIONS_ATTRIBUTE, PROPERTY_MAX_CONNECTIONS, Configuration::asInteger, null);
         configureProperty(pool, SYNC_PERIOD_ATTRIBUTE, PROPERTY_SYNC_PERIOD, Configuration::asLong, null);
         configureProperty(pool, SHUTDOWN_DELAY_ATTRIBUTE, PROPERTY_SHUTDOWN_DELAY, Configuration::asLong, null);
+        configureProperty(pool, BrokerPoolConstants.BROKER_WAIT_TIMEOUT_ATTRIBUTE, BrokerPoolConstants.PROPERTY_BROKER_WAIT_TIMEOUT, Configuration::asLong, null);
     }
 
     private void configureIndexer(final Document doc, final Element indexer) throws DatabaseConfigurationException {
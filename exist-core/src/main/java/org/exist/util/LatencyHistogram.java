@@ -0,0 +1,189 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cheap, lock-free histogram of latencies.
+ *
+ * Latencies are recorded in microseconds into buckets whose
+ * upper bounds are powers of two, i.e. bucket {@code n} holds
+ * values in the range {@code [2^(n-1), 2^n)}. This gives a
+ * resolution which is good enough for reporting percentiles
+ * of I/O and lock waits, without any allocation on the
+ * recording path.
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    /**
+     * 2^39 microseconds is roughly 6 days, anything larger goes into the last bucket.
+     */
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos the latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucket(micros));
+        count.increment();
+        total.add(micros);
+        max.accumulate(micros);
+    }
+
+    static int bucket(final long micros) {
+        final int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * Reset all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Take a point-in-time snapshot of the histogram.
+     *
+     * As recording is not blocked whilst the snapshot is taken,
+     * the snapshot is only approximately consistent.
+     *
+     * @return the snapshot.
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(count.sum(), total.sum(), max.get(), counts);
+    }
+
+    /**
+     * Immutable view of a {@link LatencyHistogram}, suitable
+     * for exposing via JMX.
+     */
+    public static class Snapshot {
+        private final long count;
+        private final long totalMicros;
+        private final long maxMicros;
+        private final long[] buckets;
+
+        /**
+         * @param count the number of recorded latencies
+         * @param totalMicros the sum of all recorded latencies in microseconds
+         * @param maxMicros the largest recorded latency in microseconds
+         * @param buckets the count of recorded latencies per bucket
+         */
+        @ConstructorProperties({"count", "totalMicros", "maxMicros", "buckets"})
+        public Snapshot(final long count, final long totalMicros, final long maxMicros, final long[] buckets) {
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        public double getMeanMicros() {
+            return count == 0 ? 0 : (double) totalMicros / count;
+        }
+
+        public long getMedianMicros() {
+            return percentile(0.5);
+        }
+
+        public long getPercentile95Micros() {
+            return percentile(0.95);
+        }
+
+        public long getPercentile99Micros() {
+            return percentile(0.99);
+        }
+
+        /**
+         * Get the count of recorded latencies per bucket,
+         * the upper bound of bucket {@code n} is {@code 2^n} microseconds.
+         *
+         * @return the bucket counts.
+         */
+        public long[] getBuckets() {
+            return buckets;
+        }
+
+        /**
+         * Get the upper bound of the bucket which contains the percentile.
+         *
+         * @param percentile the percentile, between 0 and 1.
+         *
+         * @return an upper bound for the percentile in microseconds.
+         */
+        public long percentile(final double percentile) {
+            long bucketsTotal = 0;
+            for (final long bucketCount : buckets) {
+                bucketsTotal += bucketCount;
+            }
+            if (bucketsTotal == 0) {
+                return 0;
+            }
+
+            final long rank = (long) Math.ceil(percentile * bucketsTotal);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(1L << i, maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+    }
+}
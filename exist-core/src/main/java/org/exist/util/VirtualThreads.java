@@ -0,0 +1,108 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Access to virtual threads, which are available from Java 21.
+ *
+ * eXist-db is compiled for an earlier version of Java, so the
+ * virtual thread API is looked up reflectively. When running on a
+ * JVM without virtual threads, they are reported as unsupported.
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOG = LogManager.getLogger(VirtualThreads.class);
+
+    @Nullable private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR;
+    @Nullable private static final MethodHandle IS_VIRTUAL;
+
+    static {
+        MethodHandle newExecutor = null;
+        MethodHandle isVirtual = null;
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newExecutor = lookup.findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            isVirtual = lookup.findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            LOG.debug("Virtual threads are not supported by this JVM: {}", e.getMessage());
+            newExecutor = null;
+            isVirtual = null;
+        }
+        NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Determines if a thread is a virtual thread.
+     *
+     * @param thread the thread
+     *
+     * @return true if the thread is a virtual thread
+     */
+    public static boolean isVirtual(final Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (final Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task.
+     *
+     * @return the executor, or {@link Optional#empty()} if virtual threads are not supported
+     */
+    public static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of((ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact());
+        } catch (final Throwable e) {
+            LOG.warn("Unable to create a virtual thread executor: {}", e.getMessage(), e);
+            return Optional.empty();
+        }
+    }
+}
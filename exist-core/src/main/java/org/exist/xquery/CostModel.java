@@ -0,0 +1,234 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.QName;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.statistics.IndexStatistics;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the relative cost of evaluating expressions, based on
+ * the element statistics collected by the {@link IndexStatistics} index.
+ *
+ * The estimates are only meaningful relative to each other: the cost of a
+ * location step is the number of nodes it is expected to select for each
+ * node in its context, the cost of a function call a fixed penalty. Predicates
+ * which can be answered from an index are considered cheaper than any navigation.
+ *
+ * The statistics index is disabled by default. Without it the cost model is
+ * disabled, and the query engine does not change the order of evaluation.
+ *
+ * The statistics index only ever adds to its counts: removing or replacing a
+ * document does not decrement them. The counts, and so the estimates, thus drift
+ * upward as documents are removed and replaced, until the database is reindexed.
+ */
+public class CostModel {
+
+    /**
+     * Cost of a predicate which can be evaluated by an index lookup.
+     */
+    static final double INDEX_COST = 0.5;
+
+    /**
+     * Cost of a location step selecting elements for which no statistics are available.
+     */
+    static final double UNKNOWN_STEP_COST = 8;
+
+    /**
+     * Cost of a location step on the descendant axis, for which the fanout cannot be estimated.
+     */
+    static final double DESCENDANT_STEP_COST = 64;
+
+    static final double BUILTIN_FUNCTION_COST = 2;
+
+    /**
+     * Cost of calling a user defined function, the body of which is not inspected
+     * as the function might be recursive.
+     */
+    static final double USER_FUNCTION_COST = 32;
+
+    /**
+     * Number of nodes which can be navigated at the cost of a single index lookup.
+     */
+    public static final double INDEX_LOOKUP_COST = 64;
+
+    @Nullable private final IndexStatistics statistics;
+
+    public CostModel(final XQueryContext context) {
+        final DBBroker broker = context.getBroker();
+        if (broker != null && broker.getBrokerPool() != null) {
+            this.statistics = (IndexStatistics) broker.getBrokerPool().getIndexManager().getIndexById(IndexStatistics.ID);
+        } else {
+            this.statistics = null;
+        }
+    }
+
+    /**
+     * @return true if statistics are available to the cost model
+     */
+    public boolean isEnabled() {
+        return statistics != null;
+    }
+
+    /**
+     * Get the number of elements with the given name.
+     *
+     * @param qname the name of the elements
+     *
+     * @return the number of elements, or -1 if unknown
+     */
+    public long getNodeCount(@Nullable final QName qname) {
+        if (statistics == null || qname == null || qname.getNameType() != ElementValue.ELEMENT) {
+            return -1;
+        }
+        return statistics.getNodeCount(qname);
+    }
+
+    /**
+     * Estimate the number of nodes selected by a location step for each node in its context.
+     *
+     * @param step the location step
+     *
+     * @return the estimated number of nodes selected per context node
+     */
+    public double getSelectivity(final LocationStep step) {
+        final NodeTest test = step.getTest();
+        switch (step.getAxis()) {
+            case Constants.SELF_AXIS:
+            case Constants.ATTRIBUTE_AXIS:
+            case Constants.PARENT_AXIS:
+                return 1;
+
+            case Constants.CHILD_AXIS:
+                if (statistics != null && test != null && !test.isWildcardTest() && test.getType() == Type.ELEMENT) {
+                    final QName name = test.getName();
+                    if (name != null && name.getNameType() == ElementValue.ELEMENT) {
+                        return statistics.getAverageFanout(name);
+                    }
+                }
+                return UNKNOWN_STEP_COST;
+
+            case Constants.DESCENDANT_AXIS:
+            case Constants.DESCENDANT_SELF_AXIS:
+            case Constants.DESCENDANT_ATTRIBUTE_AXIS:
+                return DESCENDANT_STEP_COST;
+
+            default:
+                return UNKNOWN_STEP_COST;
+        }
+    }
+
+    /**
+     * Estimate the cost of evaluating a predicate for a single context node.
+     *
+     * @param predicate the predicate
+     *
+     * @return the estimated cost
+     */
+    public double getCost(final Predicate predicate) {
+        final Optimizer.FindOptimizable findOptimizable = new Optimizer.FindOptimizable();
+        predicate.accept(findOptimizable);
+        @Nullable final Optimizable[] optimizables = findOptimizable.getOptimizables();
+        if (optimizables != null && optimizables.length > 0) {
+            boolean indexed = true;
+            for (final Optimizable optimizable : optimizables) {
+                if (!Optimizer.canOptimizeAxis(optimizable.getOptimizeAxis())) {
+                    indexed = false;
+                    break;
+                }
+            }
+            if (indexed) {
+                return INDEX_COST;
+            }
+        }
+
+        final CostEstimator estimator = new CostEstimator();
+        predicate.getExpression(0).accept(estimator);
+        return estimator.cost;
+    }
+
+    /**
+     * Sums up the estimated cost of the expressions in a tree.
+     */
+    private class CostEstimator extends DefaultExpressionVisitor {
+        private double cost = 0;
+
+        @Override
+        public void visitLocationStep(final LocationStep locationStep) {
+            final double selectivity = getSelectivity(locationStep);
+            cost += selectivity;
+            @Nullable final Predicate[] predicates = locationStep.getPredicates();
+            if (predicates != null) {
+                for (final Predicate predicate : predicates) {
+                    final CostEstimator nested = new CostEstimator();
+                    predicate.accept(nested);
+                    // predicates are evaluated once per selected node
+                    cost += nested.cost * Math.max(1, selectivity);
+                }
+            }
+        }
+
+        @Override
+        public void visitGeneralComparison(final GeneralComparison comparison) {
+            comparison.getLeft().accept(this);
+            comparison.getRight().accept(this);
+        }
+
+        @Override
+        public void visitAndExpr(final OpAnd and) {
+            and.getLeft().accept(this);
+            and.getRight().accept(this);
+        }
+
+        @Override
+        public void visitOrExpr(final OpOr or) {
+            or.getLeft().accept(this);
+            or.getRight().accept(this);
+        }
+
+        @Override
+        public void visitBuiltinFunction(final Function function) {
+            cost += BUILTIN_FUNCTION_COST;
+            super.visitBuiltinFunction(function);
+        }
+
+        @Override
+        public void visitFunctionCall(final FunctionCall call) {
+            cost += USER_FUNCTION_COST;
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                call.getArgument(i).accept(this);
+            }
+        }
+
+        @Override
+        public void visitFilteredExpr(final FilteredExpression filtered) {
+            filtered.getExpression().accept(this);
+            for (final Predicate predicate : filtered.getPredicates()) {
+                predicate.accept(this);
+            }
+        }
+    }
+}
@@ -76,6 +76,12 @@ public interface Expression extends Materializable {
      */
     public final static int UNORDERED = 1024;
 
+    /**
+     * Indicates that the expression is within an {@code exist:parallel} extension
+     * expression, and so a "for" clause may evaluate its bindings in parallel.
+     */
+    public final static int PARALLEL_EXECUTION = 2048;
+
     /**
      * Indicates that no context id is supplied to an expression.
      */
@@ -0,0 +1,388 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.util.Collations;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Specializes the boolean expression of a {@link Predicate}, once the query
+ * containing it has been executed often enough, see {@link XQueryContext#isSpecializationDue()}.
+ *
+ * General and value comparisons, and the and/or expressions combining them, are
+ * replaced by evaluators which compare the values of their operands directly,
+ * for the operand types expected by static analysis, skipping the profiling,
+ * caching and optimization checks of the generic evaluation for each item.
+ *
+ * Each specialized comparison guards on the actual types of its operand values.
+ * When a guard fails, the values which have already been evaluated are compared
+ * by the generic implementation, so operands are never evaluated twice. A predicate
+ * whose guards keep failing is deoptimized by {@link Predicate}.
+ */
+final class ExpressionSpecializer {
+
+    private ExpressionSpecializer() {
+    }
+
+    /**
+     * Attempts to specialize an expression.
+     *
+     * @param expression the boolean expression of a predicate
+     *
+     * @return the specialized expression, or null if there is nothing to specialize
+     */
+    static @Nullable Specialization specialize(final Expression expression) {
+        final Specialization specialization = new Specialization();
+        final BooleanEvaluator evaluator = booleanEvaluator(specialization, expression);
+        if (evaluator instanceof GenericEvaluator) {
+            return null;
+        }
+        specialization.evaluator = evaluator;
+        return specialization;
+    }
+
+    private static BooleanEvaluator booleanEvaluator(final Specialization specialization, final Expression expression) {
+        if (expression instanceof GeneralComparison comparison && comparison.isSpecializable()) {
+            final Kernel kernel = Kernel.forTypes(comparison.getLeft().returnsType(), comparison.getRight().returnsType());
+            if (kernel != null) {
+                return new ComparisonEvaluator(specialization, comparison, kernel,
+                        operand(comparison.getLeft()), operand(comparison.getRight()));
+            }
+        } else if ((expression instanceof OpAnd || expression instanceof OpOr) && ((LogicalOp) expression).getLength() == 2) {
+            final LogicalOp logicalOp = (LogicalOp) expression;
+            final BooleanEvaluator left = booleanEvaluator(specialization, unwrap(logicalOp.getLeft()));
+            final BooleanEvaluator right = booleanEvaluator(specialization, unwrap(logicalOp.getRight()));
+            if (!(left instanceof GenericEvaluator && right instanceof GenericEvaluator)) {
+                return new LogicalEvaluator(logicalOp, logicalOp instanceof OpAnd, logicalOp.isNodeSetOperation(), left, right);
+            }
+        }
+        return new GenericEvaluator(expression);
+    }
+
+    /**
+     * Unwraps the operand of a logical operator from a path of a single step,
+     * which evaluates the step for each item of its single item context.
+     */
+    private static Expression unwrap(final Expression expression) {
+        if (expression.getClass() == PathExpr.class && ((PathExpr) expression).getLength() == 1) {
+            return unwrap(((PathExpr) expression).getExpression(0));
+        }
+        return expression;
+    }
+
+    private static Operand operand(final Expression expression) {
+        if (expression instanceof LiteralValue literal) {
+            final Sequence value = literal.getValue();
+            return (contextSequence, contextItem) -> value;
+        }
+
+        if (expression instanceof ContextItemExpression) {
+            // persistent nodes are left to the location step, as it tracks their context
+            return (contextSequence, contextItem) -> contextItem != null && !(contextItem instanceof NodeProxy) ?
+                    contextItem.toSequence() : expression.eval(contextSequence, contextItem);
+        }
+
+        return expression::eval;
+    }
+
+    /**
+     * A specialized predicate expression.
+     */
+    static final class Specialization {
+        private final AtomicLong guardMisses = new AtomicLong();
+        private BooleanEvaluator evaluator;
+
+        /**
+         * Evaluates the effective boolean value of the predicate expression.
+         *
+         * @param contextSequence the context sequence
+         * @param contextItem the context item
+         *
+         * @return the effective boolean value
+         *
+         * @throws XPathException if an error occurs
+         */
+        boolean test(final Sequence contextSequence, final Item contextItem) throws XPathException {
+            return evaluator.test(contextSequence, contextItem);
+        }
+
+        /**
+         * Returns the number of times that the actual types of operands did not match those
+         * which the evaluation was specialized for.
+         *
+         * @return the number of failed guards
+         */
+        long getGuardMisses() {
+            return guardMisses.get();
+        }
+
+        private void guardMissed() {
+            guardMisses.incrementAndGet();
+        }
+    }
+
+    @FunctionalInterface
+    private interface BooleanEvaluator {
+        boolean test(Sequence contextSequence, @Nullable Item contextItem) throws XPathException;
+    }
+
+    @FunctionalInterface
+    private interface Operand {
+        Sequence eval(Sequence contextSequence, @Nullable Item contextItem) throws XPathException;
+    }
+
+    private record GenericEvaluator(Expression expression) implements BooleanEvaluator {
+        @Override
+        public boolean test(final Sequence contextSequence, @Nullable final Item contextItem) throws XPathException {
+            return expression.eval(contextSequence, contextItem).effectiveBooleanValue();
+        }
+    }
+
+    /**
+     * Evaluates and/or as {@link OpAnd} and {@link OpOr} do
+     * when they are not evaluated as node set operations.
+     */
+    private record LogicalEvaluator(LogicalOp logicalOp, boolean and, boolean nodeSetOperation,
+            BooleanEvaluator left, BooleanEvaluator right) implements BooleanEvaluator {
+        @Override
+        public boolean test(Sequence contextSequence, @Nullable final Item contextItem) throws XPathException {
+            if (contextItem != null) {
+                contextSequence = contextItem.toSequence();
+            }
+            if (nodeSetOperation && contextSequence != null && contextSequence.isPersistentSet()) {
+                return logicalOp.eval(contextSequence, null).effectiveBooleanValue();
+            }
+            // the operands are evaluated against the single context item
+            if (left.test(contextSequence, contextItem)) {
+                return !and || right.test(contextSequence, contextItem);
+            }
+            return !and && right.test(contextSequence, contextItem);
+        }
+    }
+
+    /**
+     * The comparison of operand values which a comparison is specialized for.
+     */
+    private enum Kernel {
+        /**
+         * Integers which fit into a long, or doubles, or for general comparisons
+         * also untyped values compared to numbers.
+         */
+        NUMERIC,
+
+        /**
+         * Strings or untyped values, compared with the default collation.
+         */
+        STRING;
+
+        static @Nullable Kernel forTypes(final int leftType, final int rightType) {
+            if (Type.subTypeOfUnion(leftType, Type.NUMERIC) || Type.subTypeOfUnion(rightType, Type.NUMERIC)) {
+                return NUMERIC;
+            }
+            if ((isStringLike(leftType) || isUnknown(leftType)) && (isStringLike(rightType) || isUnknown(rightType))
+                    && !(isUnknown(leftType) && isUnknown(rightType))) {
+                return STRING;
+            }
+            return null;
+        }
+
+        private static boolean isStringLike(final int type) {
+            return type == Type.UNTYPED_ATOMIC || Type.subTypeOf(type, Type.STRING) || Type.subTypeOf(type, Type.NODE);
+        }
+
+        private static boolean isUnknown(final int type) {
+            return type == Type.ITEM || type == Type.ANY_ATOMIC_TYPE;
+        }
+    }
+
+    private static final class ComparisonEvaluator implements BooleanEvaluator {
+        private static final int GUARD_FAILED = Integer.MIN_VALUE;
+        private static final int UNORDERED = Integer.MAX_VALUE;
+
+        /**
+         * Integers up to the magnitude of 2^53 can be represented exactly by a double.
+         */
+        private static final long LARGEST_EXACT_DOUBLE = 1L << 53;
+
+        private final Specialization specialization;
+        private final GeneralComparison comparison;
+        private final Kernel kernel;
+        private final Operand left;
+        private final Operand right;
+        private final boolean general;
+        private final boolean nodeSetComparison;
+
+        ComparisonEvaluator(final Specialization specialization, final GeneralComparison comparison, final Kernel kernel,
+                final Operand left, final Operand right) {
+            this.specialization = specialization;
+            this.comparison = comparison;
+            this.kernel = kernel;
+            this.left = left;
+            this.right = right;
+            this.general = !(comparison instanceof ValueComparison);
+            this.nodeSetComparison = comparison.isNodeSetComparison();
+        }
+
+        @Override
+        public boolean test(final Sequence contextSequence, @Nullable final Item contextItem) throws XPathException {
+            if (comparison.isPreselected() || (nodeSetComparison && (contextSequence == null || contextSequence.isPersistentSet()))) {
+                return comparison.eval(contextSequence, contextItem).effectiveBooleanValue();
+            }
+
+            final Sequence ls = left.eval(contextSequence, contextItem);
+            final Sequence rs = right.eval(contextSequence, contextItem);
+            if (ls.hasOne() && rs.hasOne()) {
+                final int cmp = kernel == Kernel.NUMERIC ?
+                        compareNumeric(ls.itemAt(0), rs.itemAt(0)) : compareStrings(ls.itemAt(0), rs.itemAt(0));
+                if (cmp != GUARD_FAILED) {
+                    switch (comparison.getRelation()) {
+                        case EQ:
+                            return cmp == 0;
+                        case NEQ:
+                            return cmp != 0;
+                        case LT:
+                            return cmp != UNORDERED && cmp < 0;
+                        case LTEQ:
+                            return cmp != UNORDERED && cmp <= 0;
+                        case GT:
+                            return cmp != UNORDERED && cmp > 0;
+                        case GTEQ:
+                            return cmp != UNORDERED && cmp >= 0;
+                        default:
+                            break;
+                    }
+                }
+            }
+
+            specialization.guardMissed();
+            return comparison.compareSequences(ls, rs, contextSequence).effectiveBooleanValue();
+        }
+
+        /**
+         * Compares as {@link GeneralComparison} and {@link ValueComparison} do after
+         * converting their operands: integers as longs, any other numbers as doubles.
+         */
+        private int compareNumeric(final Item l, final Item r) throws XPathException {
+            if (l instanceof IntegerValue li && r instanceof IntegerValue ri) {
+                return li.isLong() && ri.isLong() ? Long.compare(li.getLong(), ri.getLong()) : GUARD_FAILED;
+            }
+
+            final double ld;
+            final double rd;
+            if (l instanceof DoubleValue && r instanceof DoubleValue) {
+                ld = ((DoubleValue) l).getDouble();
+                rd = ((DoubleValue) r).getDouble();
+            } else if (general) {
+                // both are cast to xs:double, as at least one of them is untyped or an xs:double
+                final AtomicValue lu = untypedValue(l);
+                final AtomicValue ru = untypedValue(r);
+                if ((lu != null && ru != null) || (lu == null && !isExactDouble(l)) || (ru == null && !isExactDouble(r))) {
+                    return GUARD_FAILED;
+                }
+                try {
+                    ld = lu != null ? ((NumericValue) lu.convertTo(Type.DOUBLE)).getDouble() : ((NumericValue) l).getDouble();
+                    rd = ru != null ? ((NumericValue) ru.convertTo(Type.DOUBLE)).getDouble() : ((NumericValue) r).getDouble();
+                } catch (final XPathException e) {
+                    // let the generic comparison report it
+                    return GUARD_FAILED;
+                }
+            } else {
+                return GUARD_FAILED;
+            }
+
+            if (Double.isNaN(ld) || Double.isNaN(rd)) {
+                return UNORDERED;
+            }
+            // unlike Double.compare, 0.0 and -0.0 are equal
+            return ld < rd ? -1 : (ld > rd ? 1 : 0);
+        }
+
+        /**
+         * @return true if the item is an xs:double, or an integer which
+         *     can be represented exactly by a double
+         */
+        private static boolean isExactDouble(final Item item) {
+            if (item instanceof IntegerValue integer) {
+                return integer.isLong() && integer.getLong() >= -LARGEST_EXACT_DOUBLE && integer.getLong() <= LARGEST_EXACT_DOUBLE;
+            }
+            return item instanceof DoubleValue;
+        }
+
+        private static @Nullable AtomicValue untypedValue(final Item item) throws XPathException {
+            final AtomicValue value;
+            if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                value = item.atomize();
+            } else if (item instanceof AtomicValue) {
+                value = (AtomicValue) item;
+            } else {
+                return null;
+            }
+            return value.getType() == Type.UNTYPED_ATOMIC ? value : null;
+        }
+
+        /**
+         * Compares strings and untyped values, which both comparisons cast to strings.
+         */
+        private int compareStrings(final Item l, final Item r) throws XPathException {
+            final String ls = stringValue(l);
+            if (ls == null) {
+                return GUARD_FAILED;
+            }
+            final String rs = stringValue(r);
+            if (rs == null) {
+                return GUARD_FAILED;
+            }
+
+            final Collator collator = comparison.getContext().getDefaultCollator();
+            try {
+                return Integer.signum(Collations.compare(collator, ls, rs));
+            } catch (final UnsupportedOperationException e) {
+                // let the generic comparison report it
+                return GUARD_FAILED;
+            }
+        }
+
+        private static @Nullable String stringValue(final Item item) throws XPathException {
+            final AtomicValue value;
+            if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                value = item.atomize();
+            } else if (item instanceof AtomicValue) {
+                value = (AtomicValue) item;
+            } else {
+                return null;
+            }
+            final int type = value.getType();
+            return type == Type.STRING || type == Type.UNTYPED_ATOMIC ? value.getStringValue() : null;
+        }
+    }
+}
@@ -26,6 +26,8 @@ import java.util.List;
 
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.memtree.NodeImpl;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.functions.fn.FunPosition;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
@@ -45,6 +47,15 @@ public class FilteredExpression extends AbstractExpression {
     private final List<Predicate> predicates = new ArrayList<>(2);
     private Expression parent;
 
+    /**
+     * Set if the expression is a FLWOR expression and the first predicate only selects
+     * items up to a position, e.g. [position() le 20], so that the FLWOR expression only
+     * needs to return the items up to that position.
+     */
+    @Nullable private ForExpr limitableClause = null;
+    @Nullable private Expression positionalBound = null;
+    @Nullable private Comparison positionalRelation = null;
+
     public FilteredExpression(final XQueryContext context, final Expression expr) {
         super(context);
         this.expression = expr.simplify();
@@ -78,9 +89,88 @@ public class FilteredExpression extends AbstractExpression {
             for (final Predicate pred : predicates) {
                 pred.analyze(newContext);
             }
+
+            limitableClause = !abbreviated && analyzePositionalLimit(predicates.get(0)) ? ForExpr.getLimitableClause(expression) : null;
         }
     }
 
+    /**
+     * Determines if the predicate selects the items up to a position, i.e. if it is a
+     * numeric literal or compares position() to a literal or variable.
+     *
+     * @param pred the predicate
+     *
+     * @return true if the predicate selects the items up to a position
+     */
+    private boolean analyzePositionalLimit(final Predicate pred) {
+        positionalBound = null;
+        positionalRelation = null;
+        if (pred.getLength() != 1) {
+            return false;
+        }
+        final Expression expr = unwrap(pred.getExpression(0));
+        if (expr instanceof LiteralValue literal) {
+            if (Type.subTypeOfUnion(literal.getValue().getType(), Type.NUMERIC)) {
+                positionalBound = literal;
+                positionalRelation = Comparison.EQ;
+            }
+        } else if (expr instanceof GeneralComparison comparison && comparison.getLength() == 2) {
+            final Comparison relation = comparison.getRelation();
+            final Expression bound = unwrap(comparison.getRight());
+            if ((relation == Comparison.EQ || relation == Comparison.LT || relation == Comparison.LTEQ)
+                    && unwrap(comparison.getLeft()) instanceof FunPosition
+                    && (bound instanceof LiteralValue || bound instanceof VariableReference)) {
+                positionalBound = bound;
+                positionalRelation = relation;
+            }
+        }
+        return positionalBound != null;
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof DebuggableExpression debuggable) {
+                expr = debuggable.getFirst();
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else if (expr instanceof InternalFunctionCall functionCall) {
+                expr = functionCall.getFunction();
+            } else if (expr instanceof Atomize || expr instanceof UntypedValueCheck
+                    || expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck) {
+                expr = expr.getSubExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    /**
+     * Get the highest position which may be selected by the first predicate.
+     *
+     * @return the highest position, or {@link ForExpr#NO_RESULT_LIMIT} if it is unknown
+     *
+     * @throws XPathException if the position cannot be evaluated
+     */
+    private long getPositionalLimit() throws XPathException {
+        final Sequence bound = positionalBound.eval(null, null);
+        if (!bound.hasOne() || !Type.subTypeOfUnion(bound.itemAt(0).getType(), Type.NUMERIC)) {
+            return ForExpr.NO_RESULT_LIMIT;
+        }
+        final double value = ((NumericValue) bound.itemAt(0)).getDouble();
+        if (Double.isNaN(value)) {
+            return ForExpr.NO_RESULT_LIMIT;
+        }
+        final double limit = switch (positionalRelation) {
+            case LT -> Math.ceil(value) - 1;
+            case LTEQ -> Math.floor(value);
+            default -> value == Math.floor(value) ? value : 0;
+        };
+        if (limit < 1 || limit >= Integer.MAX_VALUE) {
+            return ForExpr.NO_RESULT_LIMIT;
+        }
+        return (long) limit;
+    }
+
     @Nullable
     public Sequence eval(Sequence contextSequence, final Item contextItem) throws XPathException {
         if (context.getProfiler().isEnabled()) {
@@ -99,7 +189,18 @@ public class FilteredExpression extends AbstractExpression {
         }
 
         final Sequence result;
-        final Sequence seq = expression.eval(contextSequence, contextItem);
+        final long limit = limitableClause != null ? getPositionalLimit() : ForExpr.NO_RESULT_LIMIT;
+        final Sequence seq;
+        if (limit != ForExpr.NO_RESULT_LIMIT) {
+            final long previousLimit = limitableClause.setResultLimit(limit);
+            try {
+                seq = expression.eval(contextSequence, contextItem);
+            } finally {
+                limitableClause.setResultLimit(previousLimit);
+            }
+        } else {
+            seq = expression.eval(contextSequence, contextItem);
+        }
         if (seq.isEmpty()) {
             result = Sequence.EMPTY_SEQUENCE;
         } else {
@@ -21,13 +21,36 @@
  */
 package org.exist.xquery;
 
+import org.exist.EXistException;
 import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.security.Subject;
+import org.exist.source.Source;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents an XQuery "for" expression.
@@ -36,10 +59,45 @@ import java.util.Set;
  */
 public class ForExpr extends BindingExpression {
 
+    /**
+     * The number of partitions per thread of the {@link ParallelEvaluationService},
+     * so that threads which finish early can pick up further partitions.
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    /**
+     * Indicates that the number of items returned by a "for" clause is not limited.
+     */
+    public static final long NO_RESULT_LIMIT = -1;
+
     private QName positionalVariable = null;
     private boolean allowEmpty = false;
     private boolean isOuterFor = true;
 
+    /**
+     * The index of this clause in {@link XQueryContext#getParallelForClause(int)},
+     * or -1 if the clause is evaluated sequentially.
+     */
+    private int parallelIndex = -1;
+
+    /**
+     * The copies of the compiled XQuery which are not in use by a parallel evaluation of this
+     * clause, only accessed by the thread which evaluates the XQuery, see {@link #getParallelWorker(XQueryContext, Source)}.
+     */
+    private final Deque<ParallelWorker> parallelWorkers = new ArrayDeque<>();
+
+    /**
+     * Set if the bindings of this clause are joined to those of the
+     * preceding "for" clause by an equality in the "where" clause.
+     */
+    @Nullable private HashJoin hashJoin = null;
+
+    /**
+     * The number of items after which the evaluation of the bindings may stop,
+     * as only those are used by the enclosing expression.
+     */
+    private long resultLimit = NO_RESULT_LIMIT;
+
     public ForExpr(XQueryContext context, boolean allowingEmpty) {
         super(context);
         this.allowEmpty = allowingEmpty;
@@ -60,6 +118,18 @@ public class ForExpr extends BindingExpression {
         positionalVariable = variable;
     }
 
+    @Nullable QName getPositionalVariable() {
+        return positionalVariable;
+    }
+
+    boolean isAllowingEmpty() {
+        return allowEmpty;
+    }
+
+    @Nullable HashJoin getHashJoin() {
+        return hashJoin;
+    }
+
 	/* (non-Javadoc)
      * @see org.exist.xquery.Expression#analyze(org.exist.xquery.Expression)
      */
@@ -69,7 +139,11 @@ public class ForExpr extends BindingExpression {
         final LocalVariable mark = context.markLocalVariables(false);
         try {
             contextInfo.setParent(this);
+            if (contextInfo.hasFlag(PARALLEL_EXECUTION) && parallelIndex < 0 && isParallelizable()) {
+                parallelIndex = context.getRootContext().registerParallelForClause(this);
+            }
             final AnalyzeContextInfo varContextInfo = new AnalyzeContextInfo(contextInfo);
+            varContextInfo.removeFlag(PARALLEL_EXECUTION);
             inputSequence.analyze(varContextInfo);
             // Declare the iteration variable
             final LocalVariable inVar = new LocalVariable(varName);
@@ -86,13 +160,40 @@ public class ForExpr extends BindingExpression {
 
             final AnalyzeContextInfo newContextInfo = new AnalyzeContextInfo(contextInfo);
             newContextInfo.addFlag(SINGLE_STEP_EXECUTION);
+            newContextInfo.removeFlag(PARALLEL_EXECUTION);
             returnExpr.analyze(newContextInfo);
+
+            hashJoin = HashJoin.detect(this);
+            if (hashJoin != null && LOG.isDebugEnabled()) {
+                LOG.debug("Evaluating for clause ${} as {}", varName, hashJoin);
+            }
         } finally {
             // restore the local variable stack
             context.popLocalVariables(mark);
         }
     }
 
+    /**
+     * The bindings can only be evaluated independently of each other
+     * if none of the following clauses operates on the whole tuple stream.
+     *
+     * @return true if the bindings may be evaluated in parallel
+     */
+    private boolean isParallelizable() {
+        Expression next = returnExpr;
+        while (next instanceof FLWORClause clause) {
+            switch (clause.getType()) {
+                case ORDERBY:
+                case GROUPBY:
+                case COUNT:
+                case WINDOW:
+                    return false;
+            }
+            next = clause.getReturnExpression();
+        }
+        return true;
+    }
+
     /**
      * This implementation tries to process the "where" clause in advance, i.e. in one single
      * step. This is possible if the input sequence is a node set and the where expression
@@ -102,6 +203,19 @@ public class ForExpr extends BindingExpression {
      */
     public Sequence eval(Sequence contextSequence, Item contextItem)
             throws XPathException {
+        final OrderByClause orderBy = resultLimit != NO_RESULT_LIMIT ? getFollowingOrderByClause() : null;
+        if (orderBy != null) {
+            // all bindings have to be evaluated to be ordered, but only the first items of the ordered result are needed
+            final long limit = setResultLimit(NO_RESULT_LIMIT);
+            final int previousOrderByLimit = orderBy.setResultLimit((int) limit);
+            try {
+                return eval(contextSequence, contextItem);
+            } finally {
+                orderBy.setResultLimit(previousOrderByLimit);
+                setResultLimit(limit);
+            }
+        }
+
         if (context.getProfiler().isEnabled()) {
             context.getProfiler().start(this);
             context.getProfiler().message(this, Profiler.DEPENDENCIES,
@@ -119,9 +233,15 @@ public class ForExpr extends BindingExpression {
         // Save the local variable stack
         LocalVariable mark = context.markLocalVariables(false);
         Sequence resultSequence = new ValueSequence(unordered);
+        final HashJoin innerJoin = returnExpr instanceof ForExpr innerFor ? innerFor.hashJoin : null;
+        final HashJoin.Table enclosingJoinTable = innerJoin != null ? innerJoin.enter() : null;
         try {
-            // Evaluate the "in" expression
-            in = inputSequence.eval(contextSequence, null);
+            // Evaluate the "in" expression, which is only evaluated once per evaluation
+            // of the preceding clause if this clause is evaluated as a hash join
+            in = hashJoin != null ? hashJoin.getInputSequence() : null;
+            if (in == null) {
+                in = inputSequence.eval(contextSequence, null);
+            }
             clearContext(getExpressionId(), in);
             // Declare the iteration variable
             var = createVariable(varName);
@@ -146,44 +266,61 @@ public class ForExpr extends BindingExpression {
             } else {
                 var.setContextDocs(null);
             }
-            // See if we can process the "where" clause in a single step (instead of
-            // calling the where expression for each item in the input sequence)
-            // This is possible if the input sequence is a node set and has no
-            // dependencies on the current context item.
-            if (isOuterFor) {
-                if (returnExpr instanceof WhereClause) {
-                    if (at == null) {
-                        in = ((WhereClause) returnExpr).preEval(in);
+            if (hashJoin != null && hashJoin.getInputSequence() == null) {
+                hashJoin.build(in, var);
+            }
+            final Sequence parallelResult = isOuterFor && parallelIndex >= 0 && resultLimit == NO_RESULT_LIMIT ? evalParallel(in) : null;
+            if (parallelResult != null) {
+                resultSequence.addAll(parallelResult);
+            } else if (hashJoin != null) {
+                // only evaluate the bindings which may satisfy the join condition of the "where" clause
+                final BitSet candidates = hashJoin.getCandidates();
+                for (int p = candidates.nextSetBit(0); p >= 0 && !isResultLimitReached(resultSequence); p = candidates.nextSetBit(p + 1)) {
+                    processItem(var, hashJoin.getItem(p), in, resultSequence, at, p);
+                }
+            } else {
+                // See if we can process the "where" clause in a single step (instead of
+                // calling the where expression for each item in the input sequence)
+                // This is possible if the input sequence is a node set and has no
+                // dependencies on the current context item.
+                if (isOuterFor) {
+                    if (returnExpr instanceof WhereClause) {
+                        if (at == null) {
+                            in = ((WhereClause) returnExpr).preEval(in);
+                        }
+                    } else if (returnExpr instanceof FLWORClause) {
+                        in = ((FLWORClause) returnExpr).preEval(in);
                     }
-                } else if (returnExpr instanceof FLWORClause) {
-                    in = ((FLWORClause) returnExpr).preEval(in);
                 }
-            }
 
-            final IntegerValue atVal = new IntegerValue(this, 1);
-            if (positionalVariable != null) {
-                at.setValue(atVal);
-            }
-            //Type.EMPTY is *not* a subtype of other types ;
-            //the tests below would fail without this prior cardinality check
-            if (in.isEmpty() && sequenceType != null &&
-                    !sequenceType.getCardinality().isSuperCardinalityOrEqualOf(Cardinality.EMPTY_SEQUENCE)) {
-                throw new XPathException(this, ErrorCodes.XPTY0004,
-                        "Invalid cardinality for variable $" + varName +
-                                ". Expected " + sequenceType.getCardinality().getHumanDescription() +
-                                ", got " + in.getCardinality().getHumanDescription());
-            }
-
-            // Loop through each variable binding
-            int p = 0;
-            if (in.isEmpty() && allowEmpty) {
-                processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
-            } else {
-                for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
-                    processItem(var, i.nextItem(), in, resultSequence, at, p);
+                final IntegerValue atVal = new IntegerValue(this, 1);
+                if (positionalVariable != null) {
+                    at.setValue(atVal);
+                }
+                //Type.EMPTY is *not* a subtype of other types ;
+                //the tests below would fail without this prior cardinality check
+                if (in.isEmpty() && sequenceType != null &&
+                        !sequenceType.getCardinality().isSuperCardinalityOrEqualOf(Cardinality.EMPTY_SEQUENCE)) {
+                    throw new XPathException(this, ErrorCodes.XPTY0004,
+                            "Invalid cardinality for variable $" + varName +
+                                    ". Expected " + sequenceType.getCardinality().getHumanDescription() +
+                                    ", got " + in.getCardinality().getHumanDescription());
+                }
+
+                // Loop through each variable binding
+                int p = 0;
+                if (in.isEmpty() && allowEmpty) {
+                    processItem(var, AtomicValue.EMPTY_VALUE, Sequence.EMPTY_SEQUENCE, resultSequence, at, p);
+                } else {
+                    for (final SequenceIterator i = in.iterate(); i.hasNext() && !isResultLimitReached(resultSequence); p++) {
+                        processItem(var, i.nextItem(), in, resultSequence, at, p);
+                    }
                 }
             }
         } finally {
+            if (innerJoin != null) {
+                innerJoin.exit(enclosingJoinTable);
+            }
             // restore the local variable stack 
             context.popLocalVariables(mark, resultSequence);
         }
@@ -239,11 +376,20 @@ public class ForExpr extends BindingExpression {
         //Reset the context position
         context.setContextSequencePosition(0, null);
 
+        // a nested "for" clause only needs to return the items still missing
+        final ForExpr nestedFor = resultLimit != NO_RESULT_LIMIT ? getNestedForClause() : null;
+        final long nestedLimit = nestedFor != null ? nestedFor.setResultLimit(resultLimit - resultSequence.getItemCount()) : NO_RESULT_LIMIT;
         final Sequence returnExprResult;
-        if (returnExpr instanceof OrderByClause) {
-            returnExprResult = returnExpr.eval(contextSequence, null);
-        } else {
-            returnExprResult = returnExpr.eval(null, null);
+        try {
+            if (returnExpr instanceof OrderByClause) {
+                returnExprResult = returnExpr.eval(contextSequence, null);
+            } else {
+                returnExprResult = returnExpr.eval(null, null);
+            }
+        } finally {
+            if (nestedFor != null) {
+                nestedFor.setResultLimit(nestedLimit);
+            }
         }
         resultSequence.addAll(returnExprResult);
 
@@ -251,6 +397,498 @@ public class ForExpr extends BindingExpression {
         var.destroy(context, resultSequence);
     }
 
+    private boolean isResultLimitReached(final Sequence resultSequence) {
+        return resultLimit != NO_RESULT_LIMIT && resultSequence.getItemCount() >= resultLimit;
+    }
+
+    private @Nullable OrderByClause getFollowingOrderByClause() {
+        Expression next = returnExpr;
+        while (next instanceof FLWORClause clause && !(next instanceof OrderByClause)) {
+            next = clause.getReturnExpression();
+        }
+        return next instanceof OrderByClause orderBy ? orderBy : null;
+    }
+
+    private @Nullable ForExpr getNestedForClause() {
+        Expression next = returnExpr;
+        while (next instanceof LetExpr || next instanceof WhereClause) {
+            next = ((FLWORClause) next).getReturnExpression();
+        }
+        return next instanceof ForExpr nestedFor ? nestedFor : null;
+    }
+
+    /**
+     * Limits the number of items returned by this clause. Once the limit is reached,
+     * the remaining bindings are not evaluated, which allows an enclosing expression
+     * that only uses the first items of a FLWOR expression, e.g. {@code fn:subsequence},
+     * to terminate its evaluation early.
+     *
+     * The limit must only be set on a clause returned by {@link #getLimitableClause(Expression)},
+     * and should be restored to the previous limit after the evaluation.
+     *
+     * @param limit the maximum number of items which need to be returned, or {@link #NO_RESULT_LIMIT}
+     *
+     * @return the previous limit
+     */
+    public long setResultLimit(final long limit) {
+        final long previousLimit = resultLimit;
+        resultLimit = limit;
+        return previousLimit;
+    }
+
+    /**
+     * Finds the first "for" clause of a FLWOR expression whose result may be limited
+     * by {@link #setResultLimit(long)}. This is the case if the FLWOR expression only
+     * consists of "for", "let" and "where" clauses, optionally followed by an "order by"
+     * clause, as any other clause operates on the whole tuple stream. If there is an
+     * "order by" clause, all bindings are evaluated, but only the first items of the
+     * ordered result are retained.
+     *
+     * @param expr the expression which is evaluated by the enclosing expression,
+     *     which must accept any number of items
+     *
+     * @return the first "for" clause of the FLWOR expression, or null if expr
+     *     is not a FLWOR expression whose result may be limited
+     */
+    public static @Nullable ForExpr getLimitableClause(Expression expr) {
+        while (true) {
+            if (expr instanceof DebuggableExpression debuggable) {
+                expr = debuggable.getFirst();
+            } else if (expr instanceof DynamicCardinalityCheck || expr instanceof DynamicTypeCheck) {
+                // the checks of the enclosing function, which accepts any number of items
+                expr = expr.getSubExpression(0);
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else {
+                break;
+            }
+        }
+
+        ForExpr first = null;
+        while (expr instanceof FLWORClause clause) {
+            switch (clause.getType()) {
+                case FOR:
+                    if (!(clause instanceof ForExpr forExpr)) {
+                        return null;
+                    }
+                    if (first == null) {
+                        first = forExpr;
+                    }
+                    break;
+                case LET:
+                    if (!(clause instanceof LetExpr)) {
+                        return null;
+                    }
+                    break;
+                case WHERE:
+                    if (first == null) {
+                        return null;
+                    }
+                    break;
+                case ORDERBY:
+                    if (first == null || !(clause instanceof OrderByClause) || clause.getReturnExpression() instanceof FLWORClause) {
+                        return null;
+                    }
+                    break;
+                default:
+                    return null;
+            }
+            expr = clause.getReturnExpression();
+        }
+        return first;
+    }
+
+    /**
+     * Evaluates the bindings of a node set in parallel.
+     *
+     * The node set is partitioned by document. The calling thread evaluates partitions
+     * with its own broker, and tasks on the fork-join pool of the {@link ParallelEvaluationService}
+     * help out, but only with a broker which is available without waiting. So the calling
+     * thread never waits for a task which itself waits for a broker.
+     *
+     * As the expression tree holds evaluation state, each task uses its own copy of the
+     * compiled XQuery, see {@link ParallelWorker}. Each task also receives its own copies
+     * of the global variables and of the in-scope local variables.
+     *
+     * @param in the input sequence
+     *
+     * @return the result of evaluating the bindings in the order of the input sequence,
+     *     or null if the input sequence cannot be evaluated in parallel
+     *
+     * @throws XPathException if an error occurs whilst evaluating a binding
+     */
+    private @Nullable Sequence evalParallel(final Sequence in) throws XPathException {
+        if (!(in instanceof NodeSet) || !in.isPersistentSet()) {
+            return null;
+        }
+
+        final XQueryContext rootContext = context.getRootContext();
+        final Source source = rootContext.getSource();
+        if (source == null) {
+            return null;
+        }
+
+        final Map<QName, Variable> globalVariables = rootContext.getGlobalVariables();
+        final List<ClosureVariable> closure = context.getLocalStack();
+        if (hasFunctionItems(globalVariables.values()) || (closure != null && hasFunctionItems(closure))) {
+            // function items are evaluated by the expression tree of this XQuery, which cannot be shared
+            return null;
+        }
+
+        final DBBroker broker = context.getBroker();
+        final BrokerPool brokerPool = broker.getBrokerPool();
+        final ParallelEvaluationService parallelEvaluationService = brokerPool.getParallelEvaluationService();
+        final List<NodeSet> partitions = partition((NodeSet) in, parallelEvaluationService.getParallelism() * PARTITIONS_PER_THREAD);
+        if (partitions.size() < 2) {
+            return null;
+        }
+
+        final ParallelEvaluation evaluation = new ParallelEvaluation(partitions, context.getWatchDog());
+        final Optional<Subject> subject = Optional.of(broker.getCurrentSubject());
+        final Set<XmldbURI> accessedCollections = broker.getAccessedCollections();
+
+        // the calling thread evaluates partitions too, so one task less than the parallelism is needed
+        final int tasks = Math.min(parallelEvaluationService.getParallelism() - 1, partitions.size() - 1);
+        final List<ParallelWorker> workers = new ArrayList<>(tasks);
+        try {
+            for (int i = 0; i < tasks; i++) {
+                final ParallelWorker worker = getParallelWorker(rootContext, source);
+                workers.add(worker);
+                worker.prepare(rootContext, globalVariables, closure, accessedCollections != null);
+                parallelEvaluationService.getForkJoinPool().execute(() -> evaluation.help(brokerPool, subject, worker));
+            }
+
+            evaluation.evaluate(this, null);
+        } finally {
+            // the tasks which have started evaluating a partition have to finish before the workers may be used again
+            evaluation.awaitCompletion();
+            parallelWorkers.addAll(workers);
+        }
+
+        if (accessedCollections != null) {
+            // the Collections accessed by the tasks are recorded as if accessed by the query
+            for (final ParallelWorker worker : workers) {
+                accessedCollections.addAll(worker.accessedCollections);
+            }
+        }
+        return evaluation.getResult(this, unordered);
+    }
+
+    /**
+     * Gets a copy of the compiled XQuery which is not in use, or compiles a new one.
+     *
+     * The workers are cached by this clause, and so by its compiled XQuery. The context
+     * of a worker is reset together with the context of the XQuery, as the result of the
+     * XQuery may refer to the state of the worker, e.g. to its binary values.
+     */
+    private ParallelWorker getParallelWorker(final XQueryContext rootContext, final Source source) throws XPathException {
+        ParallelWorker worker = parallelWorkers.poll();
+        if (worker == null) {
+            final XQueryContext workerContext = new XQueryContext(rootContext.getBroker().getBrokerPool());
+            workerContext.setModuleLoadPath(rootContext.getModuleLoadPath());
+            try {
+                workerContext.getBroker().getBrokerPool().getXQueryService().compile(workerContext, source);
+            } catch (final IOException | PermissionDeniedException e) {
+                throw new XPathException(this, ErrorCodes.ERROR, "Unable to compile the copy of: " + source.pathOrShortIdentifier() + ": " + e.getMessage(), e);
+            }
+
+            final ForExpr forExpr = workerContext.getParallelForClause(parallelIndex);
+            if (forExpr == null) {
+                throw new XPathException(this, ErrorCodes.ERROR, "Unable to find the for clause to evaluate in parallel within the copy of: " + source.pathOrShortIdentifier());
+            }
+            worker = new ParallelWorker(workerContext, forExpr);
+        }
+        rootContext.addImportedContext(worker.context);
+        return worker;
+    }
+
+    /**
+     * Partitions a node set by document. Consecutive documents are
+     * placed in the same partition until it holds at least
+     * {@code size / maxPartitions} nodes.
+     *
+     * The nodes are copied without their context, so that the
+     * partitions may be evaluated concurrently.
+     */
+    private static List<NodeSet> partition(final NodeSet in, final int maxPartitions) {
+        final int minPartitionSize = Math.max(1, in.getItemCount() / maxPartitions);
+        final List<NodeSet> partitions = new ArrayList<>();
+        NodeSet partition = null;
+        DocumentImpl lastDoc = null;
+        for (final NodeProxy node : in) {
+            if (partition == null || (node.getOwnerDocument() != lastDoc && partition.getItemCount() >= minPartitionSize)) {
+                partition = new NewArrayNodeSet();
+                partitions.add(partition);
+            }
+            lastDoc = node.getOwnerDocument();
+            partition.add(copyNode(node));
+        }
+        return partitions;
+    }
+
+    private static NodeProxy copyNode(final NodeProxy node) {
+        final NodeProxy copy = new NodeProxy(node.getExpression(), node.getOwnerDocument(), node.getNodeId(), node.getNodeType(), node.getInternalAddress());
+        copy.setMatches(node.getMatches());
+        return copy;
+    }
+
+    private static boolean hasFunctionItems(final Collection<? extends Variable> variables) throws XPathException {
+        for (final Variable var : variables) {
+            if (!(var instanceof VariableImpl)) {
+                continue;
+            }
+            final Sequence value = var.getValue();
+            if (value == null || value instanceof NodeSet) {
+                continue;
+            }
+            for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+                if (i.nextItem() instanceof FunctionReference) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the value of a variable for use by another thread. Persistent nodes
+     * are copied without their context, other items are immutable.
+     */
+    private static Sequence copyValue(final Sequence value) throws XPathException {
+        if (value instanceof NodeSet nodes) {
+            final NodeSet copy = new NewArrayNodeSet();
+            for (final NodeProxy node : nodes) {
+                copy.add(copyNode(node));
+            }
+            return copy;
+        }
+        if (value.isEmpty() || (!value.hasMany() && !(value.itemAt(0) instanceof NodeProxy))) {
+            return value;
+        }
+        final ValueSequence copy = new ValueSequence(value.getItemCount());
+        for (final SequenceIterator i = value.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            copy.add(item instanceof NodeProxy node ? copyNode(node) : item);
+        }
+        return copy;
+    }
+
+    private static <V extends VariableImpl> V copyVariable(final V copy, final Variable original) throws XPathException {
+        final Sequence value = original.getValue();
+        if (value != null) {
+            copy.setValue(copyValue(value));
+        }
+        copy.setIsInitialized(original.isInitialized());
+        return copy;
+    }
+
+    /**
+     * Evaluates the bindings of one partition of the input sequence,
+     * called on the copy of this clause which is held by a {@link ParallelWorker}.
+     *
+     * @param closure the in-scope local variables of the original clause
+     * @param in the partition of the input sequence
+     * @param offset the position of the partition within the input sequence
+     * @param watchDog the watchdog of the original query
+     *
+     * @return the result of evaluating the bindings
+     *
+     * @throws XPathException if an error occurs whilst evaluating a binding
+     */
+    private Sequence evalPartition(@Nullable final List<ClosureVariable> closure, final NodeSet in, final int offset,
+            final XQueryWatchDog watchDog) throws XPathException {
+        final LocalVariable mark = context.markLocalVariables(false);
+        final Sequence resultSequence = new ValueSequence(unordered);
+        final HashJoin innerJoin = returnExpr instanceof ForExpr innerFor ? innerFor.hashJoin : null;
+        final HashJoin.Table enclosingJoinTable = innerJoin != null ? innerJoin.enter() : null;
+        try {
+            if (closure != null) {
+                context.restoreStack(closure);
+            }
+
+            final LocalVariable var = createVariable(varName);
+            var.setSequenceType(sequenceType);
+            context.declareVariableBinding(var);
+            LocalVariable at = null;
+            if (positionalVariable != null) {
+                at = new LocalVariable(positionalVariable);
+                at.setSequenceType(POSITIONAL_VAR_TYPE);
+                context.declareVariableBinding(at);
+            }
+            var.setValue(in);
+            var.setContextDocs(in.getDocumentSet());
+
+            int p = offset;
+            for (final SequenceIterator i = in.iterate(); i.hasNext(); p++) {
+                watchDog.proceed(this);
+                processItem(var, i.nextItem(), in, resultSequence, at, p);
+            }
+        } finally {
+            if (innerJoin != null) {
+                innerJoin.exit(enclosingJoinTable);
+            }
+            context.popLocalVariables(mark, resultSequence);
+        }
+        return resultSequence;
+    }
+
+    /**
+     * The partitions of the input sequence of one parallel evaluation of a "for" clause.
+     * The calling thread and the tasks claim the partitions one at a time, until all
+     * partitions have been claimed.
+     */
+    private static class ParallelEvaluation {
+        private final List<NodeSet> partitions;
+        private final int[] offsets;
+        private final Sequence[] results;
+        private final XQueryWatchDog watchDog;
+        private final AtomicInteger nextPartition = new AtomicInteger();
+        private final CountDownLatch completed;
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        ParallelEvaluation(final List<NodeSet> partitions, final XQueryWatchDog watchDog) {
+            this.partitions = partitions;
+            this.offsets = new int[partitions.size()];
+            this.results = new Sequence[partitions.size()];
+            this.watchDog = watchDog;
+            this.completed = new CountDownLatch(partitions.size());
+            int offset = 0;
+            for (int p = 0; p < offsets.length; p++) {
+                offsets[p] = offset;
+                offset += partitions.get(p).getItemCount();
+            }
+        }
+
+        /**
+         * Evaluates partitions until all have been claimed. Once an error has
+         * occurred, the remaining partitions are claimed without evaluating them.
+         */
+        void evaluate(final ForExpr forExpr, @Nullable final List<ClosureVariable> closure) {
+            for (int p = nextPartition.getAndIncrement(); p < results.length; p = nextPartition.getAndIncrement()) {
+                try {
+                    if (error.get() == null) {
+                        results[p] = forExpr.evalPartition(closure, partitions.get(p), offsets[p], watchDog);
+                    }
+                } catch (final Throwable t) {
+                    error.compareAndSet(null, t);
+                } finally {
+                    completed.countDown();
+                }
+            }
+        }
+
+        /**
+         * Called by a task on the fork-join pool to help with the evaluation,
+         * if a broker is available without waiting.
+         */
+        void help(final BrokerPool brokerPool, final Optional<Subject> subject, final ParallelWorker worker) {
+            if (nextPartition.get() >= results.length) {
+                return;
+            }
+            try (final DBBroker broker = brokerPool.tryGet(subject).orElse(null)) {
+                if (broker == null) {
+                    // the calling thread evaluates the remaining partitions
+                    return;
+                }
+                final Set<XmldbURI> accessedCollections = broker.getAccessedCollections();
+                broker.setAccessedCollections(worker.accessedCollections);
+                try {
+                    evaluate(worker.forExpr, worker.closure);
+                } finally {
+                    broker.setAccessedCollections(accessedCollections);
+                }
+            } catch (final EXistException e) {
+                LOG.warn("Unable to help with the parallel evaluation of a for clause: {}", e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Waits until every partition which has been claimed is evaluated. Any partitions which
+         * have not been claimed, e.g. as the calling thread failed before evaluating partitions
+         * itself, are claimed without evaluating them, so that no task starts evaluating a partition
+         * after this method has returned.
+         */
+        void awaitCompletion() {
+            for (int p = nextPartition.getAndSet(results.length); p < results.length; p++) {
+                completed.countDown();
+            }
+
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    completed.await();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                    error.compareAndSet(null, e);
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Sequence getResult(final ForExpr forExpr, final boolean unordered) throws XPathException {
+            final Throwable t = error.get();
+            if (t instanceof XPathException e) {
+                throw e;
+            } else if (t instanceof InterruptedException) {
+                throw new XPathException(forExpr, ErrorCodes.ERROR, "Interrupted whilst evaluating the for clause in parallel", t);
+            } else if (t instanceof Error e) {
+                throw e;
+            } else if (t != null) {
+                throw new XPathException(forExpr, ErrorCodes.ERROR, "Error whilst evaluating the for clause in parallel: " + t.getMessage(), t);
+            }
+            final Sequence result = new ValueSequence(unordered);
+            for (final Sequence partitionResult : results) {
+                result.addAll(partitionResult);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A copy of the compiled XQuery, which is used by one task at a time.
+     */
+    private static class ParallelWorker {
+        final XQueryContext context;
+        final ForExpr forExpr;
+        @Nullable List<ClosureVariable> closure;
+        @Nullable Set<XmldbURI> accessedCollections;
+
+        ParallelWorker(final XQueryContext context, final ForExpr forExpr) {
+            this.context = context;
+            this.forExpr = forExpr;
+        }
+
+        /**
+         * Prepares the worker for the next evaluation, with its own copies of the variables.
+         * Must be called by the thread which evaluates the original XQuery.
+         */
+        void prepare(final XQueryContext rootContext, final Map<QName, Variable> globalVariables,
+                @Nullable final List<ClosureVariable> closure, final boolean trackAccessedCollections) throws XPathException {
+            context.setHttpContext(rootContext.getHttpContext());
+            context.setCalendar(rootContext.getCalendar());
+
+            // the copy does not evaluate the prolog, so use the values of the original
+            for (final Variable var : globalVariables.values()) {
+                context.declareGlobalVariable(var instanceof VariableImpl && var.getClass() == VariableImpl.class
+                        ? copyVariable(new VariableImpl((VariableImpl) var), var) : var);
+            }
+
+            if (closure == null) {
+                this.closure = null;
+            } else {
+                this.closure = new ArrayList<>(closure.size());
+                for (final ClosureVariable var : closure) {
+                    this.closure.add(copyVariable(new ClosureVariable(var), var));
+                }
+            }
+
+            this.accessedCollections = trackAccessedCollections ? new HashSet<>() : null;
+        }
+    }
+
     private boolean callPostEval() {
         FLWORClause prev = getPreviousClause();
         while (prev != null) {
@@ -267,10 +905,23 @@ public class ForExpr extends BindingExpression {
         return true;
     }
 
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        if (hashJoin != null) {
+            hashJoin.reset();
+        }
+    }
+
     @Override
     public Sequence preEval(Sequence seq) throws XPathException {
         // if preEval gets called, we know we're inside another FOR
         isOuterFor = false;
+        if (returnExpr instanceof final WhereClause where && where.mayReference(varName)) {
+            // the "where" clause cannot be evaluated in advance for the input of the outer
+            // clause, as the variable of this clause is not bound yet
+            return where.preEvalFollowingClauses(seq);
+        }
         return super.preEval(seq);
     }
 
@@ -43,11 +43,13 @@ import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.AtomicValue;
 import org.exist.xquery.value.BooleanValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericBatch;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
 import org.exist.xquery.value.StringValue;
 import org.exist.xquery.value.Type;
 
+import javax.annotation.Nullable;
 import java.util.Iterator;
 import java.util.List;
 
@@ -456,7 +458,7 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
                      * This works only inside a predicate. The node set will always be the left
                      * operand.
                      */
-                    if( inPredicate && !invalidNodeEvaluation && !Dependency.dependsOn( this, Dependency.CONTEXT_ITEM ) && Type.subTypeOf( getLeft().returnsType(), Type.NODE ) && ( ( contextSequence == null ) || contextSequence.isPersistentSet() ) ) {
+                    if( isNodeSetComparison() && ( ( contextSequence == null ) || contextSequence.isPersistentSet() ) ) {
 
                         if( contextItem != null ) {
                             contextSequence = contextItem.toSequence();
@@ -498,6 +500,42 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
     }
 
 
+    /**
+     * Determines whether, given a persistent context sequence, this comparison is evaluated
+     * against the whole node set of its left operand rather than for each context item.
+     *
+     * @return true if the node set of the left operand is compared
+     */
+    boolean isNodeSetComparison()
+    {
+        return( inPredicate && !invalidNodeEvaluation && !Dependency.dependsOn( this, Dependency.CONTEXT_ITEM ) && Type.subTypeOf( getLeft().returnsType(), Type.NODE ) );
+    }
+
+
+    /**
+     * Determines whether this comparison can be evaluated from the values of its
+     * operands alone, i.e. it neither truncates strings nor uses an explicit collation.
+     *
+     * @return true if the comparison may be replaced by a specialized evaluation
+     */
+    boolean isSpecializable()
+    {
+        return( ( truncation == StringTruncationOperator.NONE ) && ( collationArg == null ) );
+    }
+
+
+    /**
+     * Determines whether the nodes matching this comparison have been selected by an index
+     * beforehand, see {@link #preSelect(Sequence, boolean)}.
+     *
+     * @return true if the next evaluation returns the preselected nodes
+     */
+    boolean isPreselected()
+    {
+        return( preselectResult != null );
+    }
+
+
     /**
      * Generic, slow implementation. Applied if none of the possible optimizations can be used.
      *
@@ -522,9 +560,31 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
     {
         final long           start    = System.currentTimeMillis();
         final Sequence rs       = getRight().eval( contextSequence, contextItem );
+        final Sequence result   = compareSequences( ls, rs, contextSequence );
+
+        if( context.getProfiler().traceFunctions() ) {
+            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.IndexOptimizationLevel.NONE, System.currentTimeMillis() - start );
+        }
+        return( result );
+    }
+
+
+    /**
+     * Compares the already evaluated operands of this comparison.
+     *
+     * @param   ls the value of the left operand
+     * @param   rs the value of the right operand
+     * @param   contextSequence the context sequence
+     *
+     * @return  The Sequence resulting from the comparison
+     *
+     * @throws  XPathException in case of dynamic error
+     */
+    Sequence compareSequences( Sequence ls, Sequence rs, Sequence contextSequence ) throws XPathException
+    {
         final Collator collator = getCollator( contextSequence );
         Sequence       result   = BooleanValue.FALSE;
-
+        Boolean        batched;
 
         if( ls.isEmpty() && rs.isEmpty() ) {
             result = BooleanValue.valueOf( compareAtomic( collator, AtomicValue.EMPTY_VALUE, AtomicValue.EMPTY_VALUE ) );
@@ -549,6 +609,8 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
             }
         } else if( ls.hasOne() && rs.hasOne() && ls.itemAt(0).getType() != Type.ARRAY_ITEM && rs.itemAt(0).getType() != Type.ARRAY_ITEM) {
             result = BooleanValue.valueOf( compareAtomic( collator, ls.itemAt( 0 ).atomize(), rs.itemAt( 0 ).atomize() ) );
+        } else if( ( batched = compareBatch( ls, rs ) ) != null ) {
+            result = BooleanValue.valueOf( batched );
         } else {
 
             for( final SequenceIterator i1 = Atomize.atomize(ls).iterate(); i1.hasNext(); ) {
@@ -580,11 +642,33 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
                 }
             }
         }
+        return( result );
+    }
 
-        if( context.getProfiler().traceFunctions() ) {
-            context.getProfiler().traceIndexUsage( context, PerformanceStats.RANGE_IDX_TYPE, this, PerformanceStats.IndexOptimizationLevel.NONE, System.currentTimeMillis() - start );
+
+    /**
+     * Compares a single number with many numbers at once, see {@link NumericBatch}.
+     *
+     * @param ls the left operand
+     * @param rs the right operand
+     *
+     * @return the result of the comparison, or null if it has to be evaluated item by item
+     *
+     * @throws XPathException if an error occurs while reading the operands
+     */
+    private @Nullable Boolean compareBatch(final Sequence ls, final Sequence rs) throws XPathException {
+        if (truncation != StringTruncationOperator.NONE) {
+            return null;
         }
-        return( result );
+        if (ls.hasMany() && rs.hasOne() && NumericBatch.isApplicable(getLeft().returnsType())) {
+            final Item other = rs.itemAt(0);
+            return other.getType() == Type.ARRAY_ITEM ? null : NumericBatch.exists(ls, relation, other.atomize(), false);
+        }
+        if (ls.hasOne() && rs.hasMany() && NumericBatch.isApplicable(getRight().returnsType())) {
+            final Item other = ls.itemAt(0);
+            return other.getType() == Type.ARRAY_ITEM ? null : NumericBatch.exists(rs, relation, other.atomize(), true);
+        }
+        return null;
     }
 
 
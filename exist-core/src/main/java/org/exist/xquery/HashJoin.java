@@ -0,0 +1,609 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import com.ibm.icu.text.Collator;
+import org.exist.dom.QName;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.Constants.StringTruncationOperator;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericValue;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Type;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Joins the bindings of a "for" clause to those of the preceding "for" clause,
+ * if the "where" clause which follows them compares the two for equality, e.g.
+ *
+ * <pre>
+ * for $order in //order, $customer in //customer
+ * where $order/@cid = $customer/@id
+ * return ...
+ * </pre>
+ *
+ * Instead of evaluating the "where" clause for every combination of bindings, the input
+ * sequence of the inner clause is evaluated once for each evaluation of the outer clause,
+ * and its items are hashed by the atomized values of their join key. For each binding of
+ * the outer clause, the "where" clause is then only evaluated for those inner bindings
+ * whose keys may be equal.
+ *
+ * The hash table is only used as a filter: keys are derived such that values which compare
+ * equal under the rules of the general comparison, i.e. type promotion, the casting of
+ * untyped values and the collation, always have a key in common. Values of other types,
+ * and xs:float values, are never hashed, and are compared with every binding.
+ */
+final class HashJoin {
+
+    private final ForExpr inner;
+    private final GeneralComparison comparison;
+    private final Expression outerKey;
+    private final Expression innerKey;
+
+    /**
+     * The table of the current evaluation of the outer clause, or null if not yet built.
+     */
+    @Nullable private Table table = null;
+
+    private HashJoin(final ForExpr inner, final GeneralComparison comparison, final Expression outerKey, final Expression innerKey) {
+        this.inner = inner;
+        this.comparison = comparison;
+        this.outerKey = outerKey;
+        this.innerKey = innerKey;
+    }
+
+    /**
+     * Determines if a "for" clause can be evaluated as a hash join with the preceding "for" clause.
+     *
+     * @param inner the "for" clause, which must already have been analyzed
+     *
+     * @return the hash join, or null if the clause cannot be evaluated as a hash join
+     */
+    static @Nullable HashJoin detect(final ForExpr inner) {
+        if (inner.getPositionalVariable() != null || inner.isAllowingEmpty()
+                || !(inner.getPreviousClause() instanceof final ForExpr outer) || outer.getReturnExpression() != inner
+                || !(inner.getReturnExpression() instanceof final WhereClause where)) {
+            return null;
+        }
+
+        final Set<QName> outerVariables = new HashSet<>();
+        outerVariables.add(outer.getVariable());
+        if (outer.getPositionalVariable() != null) {
+            outerVariables.add(outer.getPositionalVariable());
+        }
+
+        // the input sequence of the inner clause must be independent of the bindings of the outer clause
+        final Set<QName> inputVariables = findVariables(inner.getInputSequence());
+        if (inputVariables == null || containsAny(inputVariables, outerVariables)) {
+            return null;
+        }
+
+        return detect(inner, unwrap(where.getWhereExpr()), outerVariables);
+    }
+
+    private static @Nullable HashJoin detect(final ForExpr inner, final Expression whereExpr, final Set<QName> outerVariables) {
+        if (whereExpr instanceof final OpAnd and) {
+            // a conjunction is true only if each of its operands is, so either operand can be used to join
+            final HashJoin join = detect(inner, unwrap(and.getLeft()), outerVariables);
+            return join != null ? join : detect(inner, unwrap(and.getRight()), outerVariables);
+        }
+
+        if (!(whereExpr instanceof final GeneralComparison comparison) || comparison.getRelation() != Comparison.EQ
+                || comparison.getTruncation() != StringTruncationOperator.NONE
+                || (comparison.collationArg instanceof Expression && findVariables((Expression) comparison.collationArg) == null)) {
+            return null;
+        }
+
+        final Set<QName> leftVariables = findVariables(comparison.getLeft());
+        final Set<QName> rightVariables = findVariables(comparison.getRight());
+        if (leftVariables == null || rightVariables == null) {
+            return null;
+        }
+
+        final QName innerVariable = inner.getVariable();
+        if (rightVariables.contains(innerVariable) && !containsAny(rightVariables, outerVariables)
+                && !leftVariables.contains(innerVariable)) {
+            return new HashJoin(inner, comparison, comparison.getLeft(), comparison.getRight());
+        } else if (leftVariables.contains(innerVariable) && !containsAny(leftVariables, outerVariables)
+                && !rightVariables.contains(innerVariable)) {
+            return new HashJoin(inner, comparison, comparison.getRight(), comparison.getLeft());
+        }
+        return null;
+    }
+
+    /**
+     * Called when the outer clause starts to evaluate its bindings.
+     *
+     * @return the table of the enclosing evaluation of the outer clause, if any,
+     *     which has to be passed to {@link #exit(Table)}
+     */
+    @Nullable Table enter() {
+        final Table enclosing = table;
+        table = null;
+        return enclosing;
+    }
+
+    /**
+     * Called when the outer clause has evaluated its bindings.
+     *
+     * @param enclosing the table returned by {@link #enter()}
+     */
+    void exit(@Nullable final Table enclosing) {
+        table = enclosing;
+    }
+
+    void reset() {
+        table = null;
+    }
+
+    /**
+     * Get the input sequence of the inner clause, if it has already been evaluated
+     * for the current evaluation of the outer clause.
+     *
+     * @return the input sequence, or null
+     */
+    @Nullable Sequence getInputSequence() {
+        return table != null ? table.input : null;
+    }
+
+    /**
+     * Hashes the items of the input sequence of the inner clause by the values of their join key.
+     *
+     * @param input the input sequence of the inner clause
+     * @param var the variable of the inner clause, which is bound to each item in turn
+     *
+     * @throws XPathException if the join key cannot be evaluated
+     */
+    void build(final Sequence input, final LocalVariable var) throws XPathException {
+        final Collator collator = comparison.getCollator(null);
+        final Table newTable = new Table(input, collator);
+        int position = 0;
+        for (final SequenceIterator i = input.iterate(); i.hasNext(); position++) {
+            final Item item = i.nextItem();
+            newTable.items[position] = item;
+            var.setValue(item.toSequence());
+            final Sequence keys = Atomize.atomize(innerKey.eval(null, null));
+            for (final SequenceIterator k = keys.iterate(); k.hasNext(); ) {
+                newTable.add(k.nextItem().atomize(), position);
+            }
+        }
+        var.setValue(input);
+        table = newTable;
+    }
+
+    /**
+     * Get the positions of the items of the inner input sequence
+     * which may join with the current binding of the outer clause.
+     *
+     * @return the positions in ascending order
+     *
+     * @throws XPathException if the join key cannot be evaluated
+     */
+    BitSet getCandidates() throws XPathException {
+        final Table current = table;
+        final BitSet candidates = new BitSet(current.items.length);
+        final Sequence keys = Atomize.atomize(outerKey.eval(null, null));
+        for (final SequenceIterator k = keys.iterate(); k.hasNext(); ) {
+            if (!current.probe(k.nextItem().atomize(), candidates)) {
+                // the key cannot be hashed, so compare it with every binding
+                candidates.set(0, current.items.length);
+                return candidates;
+            }
+        }
+        candidates.or(current.unhashed);
+        return candidates;
+    }
+
+    Item getItem(final int position) {
+        return table.items[position];
+    }
+
+    @Override
+    public String toString() {
+        return "hash join of " + ExpressionDumper.dump(outerKey) + " with " + ExpressionDumper.dump(innerKey);
+    }
+
+    /**
+     * The hashed items of the inner input sequence.
+     */
+    static class Table {
+        final Sequence input;
+        @Nullable final Collator collator;
+        final Item[] items;
+        final Map<Object, Positions> positions = new HashMap<>();
+        final BitSet unhashed = new BitSet();
+
+        Table(final Sequence input, @Nullable final Collator collator) {
+            this.input = input;
+            this.collator = collator;
+            this.items = new Item[input.getItemCount()];
+        }
+
+        void add(final AtomicValue value, final int position) throws XPathException {
+            if (!addKeys(value, key -> positions.computeIfAbsent(key, k -> new Positions()).add(position))) {
+                unhashed.set(position);
+            }
+        }
+
+        boolean probe(final AtomicValue value, final BitSet candidates) throws XPathException {
+            return addKeys(value, key -> {
+                final Positions matching = positions.get(key);
+                if (matching != null) {
+                    matching.addTo(candidates);
+                }
+            });
+        }
+
+        /**
+         * Derives the keys of a value.
+         *
+         * @return false if the value cannot be hashed
+         */
+        private boolean addKeys(final AtomicValue value, final KeyConsumer keys) throws XPathException {
+            final int type = value.getType();
+            if (type == Type.UNTYPED_ATOMIC) {
+                // an untyped value is cast to the type of the value it is compared with
+                final String str = value.getStringValue();
+                if (!keys.accept(stringKey(str))) {
+                    return false;
+                }
+                final String trimmed = str.trim();
+                if (!trimmed.isEmpty() && isNumericStart(trimmed.charAt(0))) {
+                    try {
+                        numericKey((NumericValue) value.convertTo(Type.DOUBLE), keys);
+                    } catch (final XPathException e) {
+                        // not a number
+                    }
+                }
+                if ("true".equals(trimmed) || "1".equals(trimmed)) {
+                    keys.accept(Boolean.TRUE);
+                } else if ("false".equals(trimmed) || "0".equals(trimmed)) {
+                    keys.accept(Boolean.FALSE);
+                }
+                return true;
+            } else if (Type.subTypeOf(type, Type.STRING) || type == Type.ANY_URI) {
+                return keys.accept(stringKey(value.getStringValue()));
+            } else if (type == Type.FLOAT) {
+                // an xs:float is compared with an xs:decimal as the decimal of its shortest representation
+                // (see FloatValue), not of the double it widens to, e.g. xs:float('0.1') = 0.1, so it is never hashed
+                return false;
+            } else if (Type.subTypeOfUnion(type, Type.NUMERIC)) {
+                numericKey((NumericValue) value, keys);
+                return true;
+            } else if (type == Type.BOOLEAN) {
+                return keys.accept(value.effectiveBooleanValue());
+            }
+            return false;
+        }
+
+        private @Nullable Object stringKey(final String str) {
+            if (collator == null) {
+                return str;
+            }
+            try {
+                return collator.getCollationKey(str);
+            } catch (final UnsupportedOperationException e) {
+                return null;
+            }
+        }
+
+        private static void numericKey(final NumericValue value, final KeyConsumer keys) throws XPathException {
+            // numeric values are promoted to a common type before they are compared, values
+            // other than xs:float which are equal after promotion are also equal as doubles
+            final double d = value.getDouble();
+            if (!Double.isNaN(d)) {
+                keys.accept(d == 0 ? 0.0d : d);
+            }
+        }
+
+        private static boolean isNumericStart(final char c) {
+            return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'I' || c == 'N';
+        }
+    }
+
+    @FunctionalInterface
+    private interface KeyConsumer {
+        /**
+         * @param key the key, or null if a key cannot be derived
+         *
+         * @return false if the key was null
+         */
+        default boolean accept(@Nullable final Object key) throws XPathException {
+            if (key == null) {
+                return false;
+            }
+            consume(key);
+            return true;
+        }
+
+        void consume(Object key) throws XPathException;
+    }
+
+    /**
+     * The positions of the items which have a key, in ascending order.
+     */
+    private static class Positions {
+        private int[] positions = new int[1];
+        private int size = 0;
+
+        void add(final int position) {
+            if (size > 0 && positions[size - 1] == position) {
+                return;
+            }
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        void addTo(final BitSet candidates) {
+            for (int i = 0; i < size; i++) {
+                candidates.set(positions[i]);
+            }
+        }
+    }
+
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if (expr instanceof final DebuggableExpression debuggable) {
+                expr = debuggable.getFirst();
+            } else if (expr.getClass() == PathExpr.class && expr.getSubExpressionCount() == 1) {
+                expr = expr.getSubExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    private static boolean containsAny(final Set<QName> variables, final Set<QName> names) {
+        for (final QName name : names) {
+            if (variables.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the variables referenced by an expression.
+     *
+     * @return the names of the variables, or null if the expression contains
+     *     expressions which cannot be inspected, e.g. inline functions
+     */
+    static @Nullable Set<QName> findVariables(final Expression expr) {
+        final VariableFinder finder = new VariableFinder();
+        expr.accept(finder);
+        return finder.unknown ? null : finder.variables;
+    }
+
+    /**
+     * Collects the names of referenced variables. Any expression which
+     * might hide a variable reference from the visitor is flagged as unknown.
+     */
+    private static class VariableFinder extends BasicExpressionVisitor {
+        private final Set<QName> variables = new HashSet<>();
+        private boolean unknown = false;
+
+        @Override
+        public void visit(final Expression expression) {
+            if (!(expression instanceof LiteralValue || expression instanceof RootNode)) {
+                unknown = true;
+            }
+        }
+
+        @Override
+        public void visitVariableReference(final VariableReference ref) {
+            variables.add(ref.getName());
+        }
+
+        @Override
+        public void visitPathExpr(final PathExpr expression) {
+            // subclasses of PathExpr may hold further expressions outside of their steps
+            final Class<?> clazz = expression.getClass();
+            if (clazz != PathExpr.class && clazz != OpNumeric.class && clazz != SequenceConstructor.class) {
+                unknown = true;
+                return;
+            }
+            visitSteps(expression);
+        }
+
+        @Override
+        public void visitPredicate(final Predicate predicate) {
+            visitSteps(predicate);
+        }
+
+        @Override
+        public void visitLocationStep(final LocationStep locationStep) {
+            @Nullable final Predicate[] predicates = locationStep.getPredicates();
+            if (predicates != null) {
+                for (final Predicate predicate : predicates) {
+                    predicate.accept(this);
+                }
+            }
+        }
+
+        @Override
+        public void visitFilteredExpr(final FilteredExpression filtered) {
+            filtered.getExpression().accept(this);
+            for (final Predicate predicate : filtered.getPredicates()) {
+                predicate.accept(this);
+            }
+        }
+
+        @Override
+        public void visitGeneralComparison(final GeneralComparison comparison) {
+            comparison.getLeft().accept(this);
+            comparison.getRight().accept(this);
+            if (comparison.collationArg instanceof Expression) {
+                ((Expression) comparison.collationArg).accept(this);
+            }
+        }
+
+        @Override
+        public void visitAndExpr(final OpAnd and) {
+            and.getLeft().accept(this);
+            and.getRight().accept(this);
+        }
+
+        @Override
+        public void visitOrExpr(final OpOr or) {
+            or.getLeft().accept(this);
+            or.getRight().accept(this);
+        }
+
+        @Override
+        public void visitUnionExpr(final Union union) {
+            union.left.accept(this);
+            union.right.accept(this);
+        }
+
+        @Override
+        public void visitIntersectionExpr(final Intersect intersect) {
+            intersect.left.accept(this);
+            intersect.right.accept(this);
+        }
+
+        @Override
+        public void visitCastExpr(final CastExpression expression) {
+            expression.getInnerExpression().accept(this);
+        }
+
+        @Override
+        public void visitBuiltinFunction(final Function function) {
+            for (int i = 0; i < function.getArgumentCount(); i++) {
+                function.getArgument(i).accept(this);
+            }
+        }
+
+        @Override
+        public void visitFunctionCall(final FunctionCall call) {
+            // the body of a named function cannot reference the local variables of the caller
+            for (int i = 0; i < call.getArgumentCount(); i++) {
+                call.getArgument(i).accept(this);
+            }
+        }
+
+        @Override
+        public void visitConditional(final ConditionalExpression conditional) {
+            conditional.getTestExpr().accept(this);
+            conditional.getThenExpr().accept(this);
+            conditional.getElseExpr().accept(this);
+        }
+
+        @Override
+        public void visitSimpleMapOperator(final OpSimpleMap simpleMap) {
+            simpleMap.getLeft().accept(this);
+            simpleMap.getRight().accept(this);
+        }
+
+        @Override
+        public void visitForExpression(final ForExpr forExpr) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitLetExpression(final LetExpr letExpr) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitDocumentConstructor(final DocumentConstructor constructor) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitElementConstructor(final ElementConstructor constructor) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitTextConstructor(final DynamicTextConstructor constructor) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitAttribConstructor(final AttributeConstructor constructor) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitAttribConstructor(final DynamicAttributeConstructor constructor) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitTryCatch(final TryCatchExpression tryCatch) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitWindowExpression(final WindowExpr windowExpr) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitCountClause(final CountClause count) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitOrderByClause(final OrderByClause orderBy) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitGroupByClause(final GroupByClause groupBy) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitWhereClause(final WhereClause where) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitUserFunction(final UserDefinedFunction function) {
+            unknown = true;
+        }
+
+        @Override
+        public void visitVariableDeclaration(final VariableDeclaration decl) {
+            unknown = true;
+        }
+
+        private void visitSteps(final PathExpr expression) {
+            for (int i = 0; i < expression.getSubExpressionCount(); i++) {
+                expression.getSubExpression(i).accept(this);
+            }
+        }
+    }
+}
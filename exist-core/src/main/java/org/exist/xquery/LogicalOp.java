@@ -103,6 +103,16 @@ public abstract class LogicalOp extends BinaryOp {
 			{return Dependency.CONTEXT_SET;}
 	}
 
+    /**
+     * Determines whether the operation is evaluated on the node sets of its
+     * operands, rather than on their effective boolean values.
+     *
+     * @return true if the operation may be evaluated as a node set operation
+     */
+    boolean isNodeSetOperation() {
+        return optimize;
+    }
+
     public Expression getParent() {
         return this.parent;
     }
@@ -332,6 +332,11 @@ public class ModuleContext extends XQueryContext {
         return parentContext.getProfiler();
     }
 
+    @Override
+    public boolean isSpecializationDue() {
+        return parentContext.isSpecializationDue();
+    }
+
     @Override
     public XMLGregorianCalendar getCalendar() {
         return parentContext.getCalendar();
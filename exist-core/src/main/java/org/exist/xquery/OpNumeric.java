@@ -30,6 +30,7 @@ import org.exist.storage.DBBroker;
 import org.exist.xquery.Constants.ArithmeticOperator;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.ComputableValue;
+import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
@@ -239,44 +240,49 @@ public class OpNumeric extends BinaryOp {
             Item lvalue = lseq.itemAt(0);
             Item rvalue = rseq.itemAt(0);
             try {
-                if (lvalue.getType() == Type.UNTYPED_ATOMIC || lvalue.getType() == Type.ANY_ATOMIC_TYPE)
-                    {lvalue = lvalue.convertTo(Type.NUMERIC);}
-                if (rvalue.getType() == Type.UNTYPED_ATOMIC || rvalue.getType() == Type.ANY_ATOMIC_TYPE)
-                    {rvalue = rvalue.convertTo(Type.NUMERIC);}
-                if (!(lvalue instanceof ComputableValue))
-                    {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                        Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " +
-                        operator.symbol);}
-                if (!(rvalue instanceof ComputableValue))
-                    {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                        Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " +
-                        operator.symbol);}
-                //TODO : move to implementations
-                if (operator == ArithmeticOperator.DIVISION_INTEGER) {
-                    if (!Type.subTypeOfUnion(lvalue.getType(), Type.NUMERIC))
+                if (lvalue instanceof IntegerValue && rvalue instanceof IntegerValue) {
+                    // the most common operands need neither conversion nor type checks
+                    result = applyIntegerOperator((IntegerValue) lvalue, (IntegerValue) rvalue);
+                } else {
+                    if (lvalue.getType() == Type.UNTYPED_ATOMIC || lvalue.getType() == Type.ANY_ATOMIC_TYPE)
+                        {lvalue = lvalue.convertTo(Type.NUMERIC);}
+                    if (rvalue.getType() == Type.UNTYPED_ATOMIC || rvalue.getType() == Type.ANY_ATOMIC_TYPE)
+                        {rvalue = rvalue.convertTo(Type.NUMERIC);}
+                    if (!(lvalue instanceof ComputableValue))
                         {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " + operator.symbol);}
-                    if (!Type.subTypeOfUnion(rvalue.getType(), Type.NUMERIC))
+                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " +
+                            operator.symbol);}
+                    if (!(rvalue instanceof ComputableValue))
                         {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
-                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " + operator.symbol);}
-                    //If the divisor is (positive or negative) zero, then an error is raised [err:FOAR0001]
-                    if (((NumericValue)rvalue).isZero())
-                        {throw new XPathException(this, ErrorCodes.FOAR0001, "Division by zero");}
-                    //If either operand is NaN then an error is raised [err:FOAR0002].
-                    if (((NumericValue)lvalue).isNaN())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
-                    //If either operand is NaN then an error is raised [err:FOAR0002].
-                    if (((NumericValue)rvalue).isNaN())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " + 
-                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")'");}
-                    //If $arg1 is INF or -INF then an error is raised [err:FOAR0002].
-                    if (((NumericValue)lvalue).isInfinite())
-                        {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
-                            Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
-                    result = ((NumericValue) lvalue).idiv((NumericValue) rvalue);
-                } else {
-                    result = applyOperator((ComputableValue) lvalue, (ComputableValue) rvalue);
+                            Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " +
+                            operator.symbol);}
+                    //TODO : move to implementations
+                    if (operator == ArithmeticOperator.DIVISION_INTEGER) {
+                        if (!Type.subTypeOfUnion(lvalue.getType(), Type.NUMERIC))
+                            {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")' can not be an operand for " + operator.symbol);}
+                        if (!Type.subTypeOfUnion(rvalue.getType(), Type.NUMERIC))
+                            {throw new XPathException(this, ErrorCodes.XPTY0004, "'" +
+                                Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")' can not be an operand for " + operator.symbol);}
+                        //If the divisor is (positive or negative) zero, then an error is raised [err:FOAR0001]
+                        if (((NumericValue)rvalue).isZero())
+                            {throw new XPathException(this, ErrorCodes.FOAR0001, "Division by zero");}
+                        //If either operand is NaN then an error is raised [err:FOAR0002].
+                        if (((NumericValue)lvalue).isNaN())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
+                        //If either operand is NaN then an error is raised [err:FOAR0002].
+                        if (((NumericValue)rvalue).isNaN())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " + 
+                                Type.getTypeName(rvalue.getType()) + "(" + rvalue + ")'");}
+                        //If $arg1 is INF or -INF then an error is raised [err:FOAR0002].
+                        if (((NumericValue)lvalue).isInfinite())
+                            {throw new XPathException(this, ErrorCodes.FOAR0002, "Division of " +
+                                Type.getTypeName(lvalue.getType()) + "(" + lvalue + ")'");}
+                        result = ((NumericValue) lvalue).idiv((NumericValue) rvalue);
+                    } else {
+                        result = applyOperator((ComputableValue) lvalue, (ComputableValue) rvalue);
+                    }
                 }
                 //TODO : type-checks on MOD operator : maybe the same ones than above -pb
             } catch (final XPathException e) {
@@ -293,6 +299,20 @@ public class OpNumeric extends BinaryOp {
         return result;
     }
 
+    private NumericValue applyIntegerOperator(final IntegerValue left, final IntegerValue right)
+            throws XPathException {
+        switch (operator) {
+            case SUBTRACTION: return (NumericValue) left.minus(right);
+            case ADDITION: return (NumericValue) left.plus(right);
+            case MULTIPLICATION: return (NumericValue) left.mult(right);
+            case DIVISION: return (NumericValue) left.div(right);
+            case DIVISION_INTEGER: return left.idiv(right);
+            case MODULUS: return left.mod(right);
+            default:
+                throw new RuntimeException("Unknown numeric operator " + operator);
+        }
+    }
+
     public ComputableValue applyOperator(ComputableValue left, ComputableValue right)
             throws XPathException {
         switch (operator) {
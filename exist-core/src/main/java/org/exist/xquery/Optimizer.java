@@ -27,6 +27,7 @@ import org.exist.xquery.pragmas.Optimize;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Type;
 
 import javax.annotation.Nullable;
 import java.util.*;
@@ -58,6 +59,7 @@ public class Optimizer extends DefaultExpressionVisitor {
     private final XQueryContext context;
     private final List<QueryRewriter> rewriters;
     private final FindOptimizable findOptimizable = new FindOptimizable();
+    private final CostModel costModel;
 
     private int predicates = 0;
 
@@ -67,6 +69,7 @@ public class Optimizer extends DefaultExpressionVisitor {
         this.context = context;
         final DBBroker broker = context.getBroker();
         this.rewriters = broker != null ? broker.getIndexController().getQueryRewriters(context) : Collections.emptyList();
+        this.costModel = new CostModel(context);
     }
 
     public boolean hasOptimized() {
@@ -77,6 +80,10 @@ public class Optimizer extends DefaultExpressionVisitor {
     public void visitLocationStep(final LocationStep locationStep) {
         super.visitLocationStep(locationStep);
 
+        if (costModel.isEnabled()) {
+            reorderPredicates(locationStep);
+        }
+
         // check query rewriters if they want to rewrite the location step
         Pragma optimizePragma = null;
         try {  // Keep try-catch out of loop
@@ -155,6 +162,64 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
     }
 
+    /**
+     * Sorts the predicates of a location step by their estimated cost, so that
+     * the cheapest, e.g. those which can use an index, are evaluated first and reduce
+     * the number of nodes the more expensive predicates have to be evaluated for.
+     *
+     * Predicates are only reordered if none of them is positional, as the result
+     * of a positional predicate depends on the predicates evaluated before it.
+     *
+     * @param locationStep the location step
+     */
+    private void reorderPredicates(final LocationStep locationStep) {
+        @Nullable final Predicate[] preds = locationStep.getPredicates();
+        if (preds == null || preds.length < 2) {
+            return;
+        }
+
+        final double[] costs = new double[preds.length];
+        final Integer[] order = new Integer[preds.length];
+        for (int i = 0; i < preds.length; i++) {
+            if (!isReorderable(preds[i])) {
+                return;
+            }
+            costs[i] = costModel.getCost(preds[i]);
+            order[i] = i;
+        }
+
+        // stable sort, predicates of equal cost keep their order
+        Arrays.sort(order, Comparator.comparingDouble(i -> costs[i]));
+
+        boolean reordered = false;
+        final Predicate[] sorted = new Predicate[preds.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = preds[order[i]];
+            reordered |= order[i] != i;
+        }
+
+        if (reordered) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reordering predicates of {} by estimated costs {}", ExpressionDumper.dump(locationStep), Arrays.toString(costs));
+            }
+            locationStep.setPredicates(sorted);
+            hasOptimized = true;
+        }
+    }
+
+    private static boolean isReorderable(final Predicate predicate) {
+        if (predicate.getSubExpressionCount() != 1 || Dependency.dependsOn(predicate, Dependency.CONTEXT_POSITION)) {
+            return false;
+        }
+        final int returnType = predicate.getSubExpression(0).returnsType();
+        return switch (predicate.getExecutionMode()) {
+            case NODE -> true;
+            // a boolean predicate may still turn out to be positional at runtime, unless its static type is known
+            case BOOLEAN -> returnType == Type.BOOLEAN || Type.subTypeOf(returnType, Type.NODE);
+            default -> false;
+        };
+    }
+
     @Override
     public void visitFilteredExpr(final FilteredExpression filtered) {
         super.visitFilteredExpr(filtered);
@@ -356,17 +421,19 @@ public class Optimizer extends DefaultExpressionVisitor {
         }
 
         for (final Optimizable optimizable : list) {
-            final int axis = optimizable.getOptimizeAxis();
-            if (!(axis == Constants.CHILD_AXIS || axis == Constants.DESCENDANT_AXIS ||
-                    axis == Constants.DESCENDANT_SELF_AXIS || axis == Constants.ATTRIBUTE_AXIS ||
-                    axis == Constants.DESCENDANT_ATTRIBUTE_AXIS || axis == Constants.SELF_AXIS
-            )) {
+            if (!canOptimizeAxis(optimizable.getOptimizeAxis())) {
                 return false;
             }
         }
         return true;
     }
 
+    static boolean canOptimizeAxis(final int axis) {
+        return axis == Constants.CHILD_AXIS || axis == Constants.DESCENDANT_AXIS ||
+                axis == Constants.DESCENDANT_SELF_AXIS || axis == Constants.ATTRIBUTE_AXIS ||
+                axis == Constants.DESCENDANT_ATTRIBUTE_AXIS || axis == Constants.SELF_AXIS;
+    }
+
     private int reverseAxis(final int axis) {
         return switch (axis) {
             case Constants.CHILD_AXIS -> Constants.PARENT_AXIS;
@@ -40,6 +40,11 @@ public class OrderByClause extends AbstractFLWORClause {
         to track state in a stack to avoid overwrites if we're called recursively. */
     private final Deque<OrderedValueSequence> stack = new ArrayDeque<>();
 
+    /**
+     * The number of items from the start of the ordered result which are needed.
+     */
+    private int resultLimit = OrderedValueSequence.NO_LIMIT;
+
     public OrderByClause(final XQueryContext context, final List<OrderSpec> orderSpecs) {
         super(context);
         this.orderSpecs = orderSpecs;
@@ -75,7 +80,7 @@ public class OrderByClause extends AbstractFLWORClause {
         final Sequence result = getReturnExpression().eval(contextSequence, contextItem);
 
         if (orderedResult == null) {
-            orderedResult = new OrderedValueSequence(orderSpecs, result != null ? result.getItemCount() : 100);
+            orderedResult = new OrderedValueSequence(orderSpecs, result != null ? result.getItemCount() : 100, resultLimit);
         }
 
         if (result != null) {
@@ -89,6 +94,20 @@ public class OrderByClause extends AbstractFLWORClause {
         return result;
     }
 
+    /**
+     * Limits the number of items from the start of the ordered result which are needed,
+     * so that only those have to be retained and sorted. Set by {@link ForExpr}.
+     *
+     * @param limit the number of items, or {@link OrderedValueSequence#NO_LIMIT}
+     *
+     * @return the previous limit
+     */
+    int setResultLimit(final int limit) {
+        final int previousLimit = resultLimit;
+        resultLimit = limit;
+        return previousLimit;
+    }
+
     @Override
     public Sequence postEval(final Sequence seq) throws XPathException {
         final OrderedValueSequence orderedResult = stack.pollFirst();
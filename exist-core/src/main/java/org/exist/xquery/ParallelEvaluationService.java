@@ -0,0 +1,104 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.BrokerPoolServiceException;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.exist.util.ThreadUtils.nameInstanceThread;
+
+/**
+ * Provides the fork-join pool on which XQuery expressions,
+ * such as "for" clauses within an {@code exist:parallel} extension
+ * expression, are evaluated in parallel.
+ *
+ * A task evaluated on the pool only holds a broker if one was available
+ * without waiting, see {@link BrokerPool#tryGet(java.util.Optional)}, as the thread
+ * which waits for the task already holds a broker. The parallelism is limited
+ * to half of the maximum number of brokers, to leave brokers available for
+ * other queries.
+ */
+@ThreadSafe
+public class ParallelEvaluationService implements BrokerPoolService {
+
+    private final AtomicInteger threadId = new AtomicInteger();
+
+    private BrokerPool brokerPool;
+    private int parallelism;
+    private volatile @Nullable ForkJoinPool forkJoinPool;
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) throws BrokerPoolServiceException {
+        this.brokerPool = brokerPool;
+        this.parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), brokerPool.getMax() / 2));
+    }
+
+    /**
+     * Get the maximum number of tasks which are evaluated concurrently.
+     *
+     * @return the parallelism of the pool
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Get the fork-join pool, the pool is created on first use.
+     *
+     * @return the fork-join pool
+     */
+    public ForkJoinPool getForkJoinPool() {
+        ForkJoinPool pool = forkJoinPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = forkJoinPool;
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism, this::newThread, null, false);
+                    forkJoinPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName(nameInstanceThread(brokerPool, "xquery.parallel-" + threadId.getAndIncrement()));
+        return thread;
+    }
+
+    @Override
+    public void shutdown() {
+        final ForkJoinPool pool = forkJoinPool;
+        if (pool != null) {
+            pool.shutdownNow();
+            forkJoinPool = null;
+        }
+    }
+}
@@ -66,6 +66,14 @@ public class Predicate extends PathExpr {
 
     private Expression parent;
 
+    /**
+     * Whether the specialization of the boolean evaluation has been attempted,
+     * see {@link XQueryContext#isSpecializationDue()}.
+     */
+    private volatile boolean specializationAttempted = false;
+
+    private volatile @Nullable ExpressionSpecializer.Specialization specialization = null;
+
     public Predicate(final XQueryContext context) {
         super(context);
     }
@@ -93,6 +101,8 @@ public class Predicate extends PathExpr {
     @Override
     public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
         parent = contextInfo.getParent();
+        specializationAttempted = false;
+        specialization = null;
         AnalyzeContextInfo newContextInfo = createContext(contextInfo);
         super.analyze(newContextInfo);
         final Expression inner = getSubExpression(0);
@@ -286,6 +296,7 @@ public class Predicate extends PathExpr {
     private Sequence evalBoolean(final Sequence contextSequence, final Expression inner, final int mode)
             throws XPathException {
         final Sequence result = new ValueSequence();
+        final ExpressionSpecializer.Specialization specialization;
         int p;
         if (contextSequence instanceof NodeSet
                 && ((NodeSet) contextSequence).getProcessInReverseOrder()) {
@@ -335,6 +346,8 @@ public class Predicate extends PathExpr {
                         result.add(contextSequence.itemAt(position));
                     }
                 }
+            } else if ((specialization = getSpecialization(inner)) != null) {
+                evalSpecialized(specialization, contextSequence, reverseAxis, result);
             } else {
                 final Set<NumericValue> positions = new TreeSet<>();
                 for (final SequenceIterator i = contextSequence.iterate(); i.hasNext(); p++) {
@@ -365,6 +378,48 @@ public class Predicate extends PathExpr {
         return result;
     }
 
+    private @Nullable ExpressionSpecializer.Specialization getSpecialization(final Expression inner) {
+        if (!specializationAttempted && context.isSpecializationDue()) {
+            specialization = ExpressionSpecializer.specialize(inner);
+            specializationAttempted = true;
+        }
+        return context.getProfiler().isEnabled() ? null : specialization;
+    }
+
+    /**
+     * Boolean evaluation of the predicate by its specialized expression.
+     * If the types of most items do not match those the expression was
+     * specialized for, it is dropped and the predicate is evaluated
+     * generically from then on.
+     *
+     * @param specialization the specialized expression
+     * @param contextSequence the context sequence
+     * @param reverseAxis true if the context sequence was selected by a reverse axis
+     * @param result the sequence to add the matching items to
+     *
+     * @throws XPathException if an error occurs
+     */
+    private void evalSpecialized(final ExpressionSpecializer.Specialization specialization,
+            final Sequence contextSequence, final boolean reverseAxis, final Sequence result) throws XPathException {
+        final long guardMisses = specialization.getGuardMisses();
+        final int count = contextSequence.getItemCount();
+        int p = 0;
+        for (final SequenceIterator i = contextSequence.iterate(); i.hasNext(); p++) {
+            context.setContextSequencePosition((reverseAxis ? count - p - 1 : p), contextSequence);
+            final Item item = i.nextItem();
+            if (specialization.test(contextSequence, item)) {
+                result.add(item);
+            }
+        }
+
+        if (specialization.getGuardMisses() - guardMisses > p / 2) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Deoptimizing predicate {}, the types of its operands vary", this);
+            }
+            this.specialization = null;
+        }
+    }
+
     /**
      * @param contextSequence the context sequence
      *
@@ -609,7 +664,9 @@ public class Predicate extends PathExpr {
     }
 
     private static int calculatePos(final boolean reverseAxis, final Sequence contextSequence, final NumericValue v) throws XPathException {
-        return (reverseAxis ? contextSequence.getItemCount() - v.getInt() : v.getInt() - 1);
+        // positions are computed as longs, so that a large position is not truncated into the bounds of the sequence
+        final long pos = (reverseAxis ? contextSequence.getItemCountLong() - v.getLong() : v.getLong() - 1);
+        return pos < 0 || pos > Integer.MAX_VALUE ? -1 : (int) pos;
     }
 
     private static boolean withinBounds(final Sequence contextSequence, final int pos) {
@@ -628,6 +685,10 @@ public class Predicate extends PathExpr {
         return executionMode;
     }
 
+    boolean isSpecialized() {
+        return specialization != null;
+    }
+
     @Override
     public void resetState(final boolean postOptimization) {
         super.resetState(postOptimization);
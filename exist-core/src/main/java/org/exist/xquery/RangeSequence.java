@@ -40,10 +40,14 @@ public class RangeSequence extends AbstractSequence {
 
     private final IntegerValue start;
     private final IntegerValue end;
+    private final long startLong;
+    private final long endLong;
 
     public RangeSequence(final IntegerValue start, final IntegerValue end) {
         this.start = start;
         this.end = end;
+        this.startLong = start.getLong();
+        this.endLong = end.getLong();
     }
 
     @Override
@@ -62,16 +66,16 @@ public class RangeSequence extends AbstractSequence {
 
     @Override
     public SequenceIterator iterate() {
-        return new RangeSequenceIterator(start.getLong(), end.getLong());
+        return new RangeSequenceIterator(startLong, endLong);
     }
 
     @Override
     public SequenceIterator unorderedIterator() {
-        return new RangeSequenceIterator(start.getLong(), end.getLong());
+        return new RangeSequenceIterator(startLong, endLong);
     }
 
     public SequenceIterator iterateInReverse() {
-        return new ReverseRangeSequenceIterator(start.getLong(), end.getLong());
+        return new ReverseRangeSequenceIterator(startLong, endLong);
     }
 
     private static class RangeSequenceIterator implements SequenceIterator {
@@ -148,15 +152,12 @@ public class RangeSequence extends AbstractSequence {
 
     @Override
     public long getItemCountLong() {
-        if (start.compareTo(end) > 0) {
-            return 0;
-        }
-        try {
-            return ((IntegerValue) end.minus(start)).getLong() + 1;
-        } catch (final XPathException e) {
-            LOG.warn("Unexpected exception when processing result of range expression: {}", e.getMessage(), e);
+        if (startLong > endLong) {
             return 0;
         }
+        final long count = endLong - startLong + 1;
+        // the range may span more than Long.MAX_VALUE items
+        return count > 0 ? count : Long.MAX_VALUE;
     }
 
     @Override
@@ -189,7 +190,7 @@ public class RangeSequence extends AbstractSequence {
     @Override
     public Item itemAt(final int pos) {
         if (pos < getItemCountLong()) {
-            return new IntegerValue(start.getLong() + pos);
+            return new IntegerValue(startLong + pos);
         }
         return null;
     }
@@ -218,10 +219,15 @@ public class RangeSequence extends AbstractSequence {
     @Override
     public boolean contains(final Item item) {
         if (item instanceof IntegerValue) {
+            final IntegerValue other = (IntegerValue) item;
+            if (other.isLong() && start.isLong() && end.isLong()) {
+                final long value = other.getLong();
+                return value >= startLong && value <= endLong;
+            }
             try {
-                final BigInteger other = item.toJavaObject(BigInteger.class);
-                return other.compareTo(start.toJavaObject(BigInteger.class)) >= 0
-                        && other.compareTo(end.toJavaObject(BigInteger.class)) <= 0;
+                final BigInteger value = item.toJavaObject(BigInteger.class);
+                return value.compareTo(start.toJavaObject(BigInteger.class)) >= 0
+                        && value.compareTo(end.toJavaObject(BigInteger.class)) <= 0;
             } catch (final XPathException e) {
                 LOG.warn(e.getMessage(), e);
                 return false;
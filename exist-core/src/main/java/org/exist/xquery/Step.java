@@ -90,6 +90,16 @@ public abstract class Step extends AbstractExpression {
         predicates = newPredicates;
     }
 
+    /**
+     * Replace the predicates of this step, e.g. to change the order in which
+     * they are evaluated. The step must be re-analyzed afterwards.
+     *
+     * @param predicates the new predicates
+     */
+    public void setPredicates(final Predicate[] predicates) {
+        this.predicates = predicates;
+    }
+
     public boolean hasPredicates() {
         return predicates != null;
     }
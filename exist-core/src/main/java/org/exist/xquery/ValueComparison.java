@@ -72,6 +72,11 @@ public class ValueComparison extends GeneralComparison {
             {context.getProfiler().message(this, Profiler.OPTIMIZATION_FLAGS, "OPTIMIZATION CHOICE", "genericCompare");}  
 		final Sequence ls = getLeft().eval(contextSequence, contextItem);
 		final Sequence rs = getRight().eval(contextSequence, contextItem);
+		return compareSequences(ls, rs, contextSequence);
+	}
+
+	@Override
+	Sequence compareSequences(final Sequence ls, final Sequence rs, final Sequence contextSequence) throws XPathException {
 		if(ls.isEmpty() || rs.isEmpty())
 			{return Sequence.EMPTY_SEQUENCE;}
 		if (ls.hasOne() && rs.hasOne()) {
@@ -126,6 +126,30 @@ public class WhereClause extends AbstractFLWORClause {
         return super.preEval(in);
     }
 
+    /**
+     * Skips the evaluation of this clause in advance, but
+     * still calls {@link #preEval(Sequence)} on the following clauses.
+     *
+     * @param in the input sequence
+     *
+     * @return the input sequence as returned by the following clauses
+     *
+     * @throws XPathException if an error occurs in the following clauses
+     */
+    Sequence preEvalFollowingClauses(final Sequence in) throws XPathException {
+        return super.preEval(in);
+    }
+
+    /**
+     * @param variable the name of a variable
+     *
+     * @return true if the where expression references, or might reference, the variable
+     */
+    boolean mayReference(final QName variable) {
+        final Set<QName> variables = HashJoin.findVariables(whereExpr);
+        return variables == null || variables.contains(variable);
+    }
+
     @Override
     public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
         if (applyWhereExpression()) {
@@ -83,6 +83,7 @@ import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.UpdateListener;
+import org.exist.storage.XQueryPool;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.LockedDocumentMap;
 import org.exist.storage.txn.Txn;
@@ -127,6 +128,7 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String XQUERY_BACKWARD_COMPATIBLE_ATTRIBUTE = "backwardCompatible";
     public static final String XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_ATTRIBUTE = "raise-error-on-failed-retrieval";
     public static final String ENFORCE_INDEX_USE_ATTRIBUTE = "enforce-index-use";
+    public static final String SPECIALIZATION_THRESHOLD_ATTRIBUTE = "specialization-threshold";
 
     //TODO : move elsewhere ?
     public static final String BUILT_IN_MODULE_URI_ATTRIBUTE = "uri";
@@ -138,6 +140,8 @@ public class XQueryContext implements BinaryValueManager, Context {
     public static final String PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL = "xquery.raise-error-on-failed-retrieval";
     public static final boolean XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT = false;
     public static final String PROPERTY_ENFORCE_INDEX_USE = "xquery.enforce-index-use";
+    public static final String PROPERTY_SPECIALIZATION_THRESHOLD = "xquery.specialization-threshold";
+    public static final int SPECIALIZATION_THRESHOLD_DEFAULT = 10;
 
     //TODO : move elsewhere ?
     public static final String PROPERTY_BUILT_IN_MODULES = "xquery.modules";
@@ -364,6 +368,11 @@ public class XQueryContext implements BinaryValueManager, Context {
      */
     private Expression rootExpression;
 
+    /**
+     * The "for" clauses of the XQuery which may be evaluated in parallel, in the order in which they were analyzed.
+     */
+    private final List<ForExpr> parallelForClauses = new ArrayList<>();
+
     /**
      * An incremental counter to count the expressions in the current XQuery. Used during compilation to assign a unique ID to every expression.
      */
@@ -385,6 +394,14 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private boolean raiseErrorOnFailedRetrieval = XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL_DEFAULT;
 
+    private int specializationThreshold = SPECIALIZATION_THRESHOLD_DEFAULT;
+
+    /**
+     * The number of times the query of this context has been prepared for execution.
+     * Unlike the rest of the dynamic context, it is not reset between executions.
+     */
+    private int executions = 0;
+
     private boolean isShared = false;
 
     private Source source = null;
@@ -757,6 +774,21 @@ public class XQueryContext implements BinaryValueManager, Context {
         //Reset current context position
         setContextSequencePosition(0, null);
         //Note that, for some reasons, an XQueryContext might be used without calling this method
+
+        if (executions < Integer.MAX_VALUE) {
+            executions++;
+        }
+    }
+
+    /**
+     * Determines whether the query of this context has been executed often enough
+     * for its expressions to be specialized for the types they have seen,
+     * see {@link Predicate}.
+     *
+     * @return true if the expressions of the query should be specialized
+     */
+    public boolean isSpecializationDue() {
+        return specializationThreshold > 0 && executions >= specializationThreshold;
     }
 
     public void setContextItem(final Sequence contextItem) {
@@ -800,6 +832,31 @@ public class XQueryContext implements BinaryValueManager, Context {
         return rootExpression;
     }
 
+    /**
+     * Registers a "for" clause which may be evaluated in parallel. As a copy of the
+     * compiled XQuery registers its "for" clauses in the same order, the returned
+     * index identifies the corresponding clause within the copy.
+     *
+     * @param forExpr the "for" clause
+     *
+     * @return the index of the "for" clause
+     */
+    int registerParallelForClause(final ForExpr forExpr) {
+        parallelForClauses.add(forExpr);
+        return parallelForClauses.size() - 1;
+    }
+
+    /**
+     * Get a "for" clause which may be evaluated in parallel.
+     *
+     * @param index the index returned by {@link #registerParallelForClause(ForExpr)}
+     *
+     * @return the "for" clause, or null if there is no such clause
+     */
+    @Nullable ForExpr getParallelForClause(final int index) {
+        return index < parallelForClauses.size() ? parallelForClauses.get(index) : null;
+    }
+
     /**
      * Returns the next unique expression id. Every expression in the XQuery is identified by a unique id. During compilation, expressions are
      * assigned their id by calling this method.
@@ -2735,32 +2792,96 @@ public class XQueryContext implements BinaryValueManager, Context {
             LOG.debug("Loading module from {}", location);
         }
 
-        try (final Reader reader = source.getReader()) {
-            if (reader == null) {
-                throw moduleLoadException("failed to load module: '" + namespaceURI + "' from: " +
-                        "'" + source + "', location: '" + location + "'. Source not found. ", location);
-            }
-
-            if (namespaceURI == null) {
+        if (namespaceURI == null) {
+            try {
                 final QName qname = source.isModule();
                 if (qname == null) {
                     return null;
                 }
                 namespaceURI = qname.getNamespaceURI();
+            } catch (final IOException e) {
+                throw moduleLoadException("IO exception while loading module '" + namespaceURI + "'" + " from '" + source + "'", location, e);
             }
+        }
+
+        @Nullable final XQueryPool xqueryPool = db instanceof BrokerPool ? ((BrokerPool) db).getXQueryPool() : null;
+        AST ast = xqueryPool != null ? xqueryPool.getModuleSyntaxTree(source) : null;
+        final boolean parsed = ast == null;
+        if (parsed) {
+            ast = parseModule(source, namespaceURI, location);
+        }
 
-            final ExternalModuleImpl modExternal = new ExternalModuleImpl(namespaceURI, prefix);
+        final ExternalModuleImpl modExternal = new ExternalModuleImpl(namespaceURI, prefix);
 
-            // NOTE(AR) this is needed to support cyclic imports in XQuery 3.1, see: https://github.com/eXist-db/exist/pull/4996
-            addModule(namespaceURI, modExternal);
-            addModuleVertex(new ModuleVertex(namespaceURI, location));
+        // NOTE(AR) this is needed to support cyclic imports in XQuery 3.1, see: https://github.com/eXist-db/exist/pull/4996
+        addModule(namespaceURI, modExternal);
+        addModuleVertex(new ModuleVertex(namespaceURI, location));
 
-            final XQueryContext modContext = new ModuleContext(this, namespaceURI, prefix, location);
-            modExternal.setContext(modContext);
-            final XQueryLexer lexer = new XQueryLexer(modContext, reader);
-            final XQueryParser parser = new XQueryParser(lexer);
-            final XQueryTreeParser astParser = new XQueryTreeParser(modContext, modExternal);
+        final XQueryContext modContext = new ModuleContext(this, namespaceURI, prefix, location);
+        modExternal.setContext(modContext);
+        final XQueryTreeParser astParser = new XQueryTreeParser(modContext, modExternal);
 
+        try {
+            final PathExpr path = new PathExpr(modContext);
+            astParser.xpath(ast, path);
+
+            if (astParser.foundErrors()) {
+                throw new XPathException(rootExpression, ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + astParser.getErrorMessage(), astParser.getLastException());
+            }
+
+            modExternal.setRootExpression(path);
+
+            if (namespaceURI != null && !modExternal.getNamespaceURI().equals(namespaceURI)) {
+                throw new XPathException(rootExpression, ErrorCodes.XQST0059, "namespace URI declared by module (" + modExternal.getNamespaceURI() + ") does not match namespace URI in import statement, which was: " + namespaceURI);
+            }
+
+            // Set source information on module context
+//            String sourceClassName = source.getClass().getName();
+//            modContext.setSourceKey(source.getKey().toString());
+            // Extract the source type from the classname by removing the package prefix and the "Source" suffix
+//            modContext.setSourceType( sourceClassName.substring( 17, sourceClassName.length() - 6 ) );
+
+            modExternal.setSource(source);
+            modContext.setSource(source);
+            modExternal.setIsReady(true);
+
+            // the syntax tree is only shared once it is known to describe a valid module
+            if (parsed && xqueryPool != null) {
+                xqueryPool.returnModuleSyntaxTree(source, ast);
+            }
+
+            return modExternal;
+        } catch (final RecognitionException e) {
+            throw new XPathException(e.getLine(), e.getColumn(), ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + e.getMessage());
+        } catch (final XPathException e) {
+            e.prependMessage("Error while loading module " + location + ": ");
+            throw e;
+        }
+    }
+
+    /**
+     * Parse the source of an XQuery Module into a syntax tree.
+     *
+     * The syntax tree only depends on the source, so it may be shared
+     * between the contexts of all queries which import the module.
+     *
+     * @param source the source of the module.
+     * @param namespaceURI the namespace URI of the module, used for error reporting.
+     * @param location the location of the module, used for error reporting.
+     *
+     * @return the syntax tree of the module.
+     *
+     * @throws XPathException if the module could not be loaded (XQST0059) or parsed (XPST0003)
+     */
+    private AST parseModule(final Source source, @Nullable final String namespaceURI, final String location) throws XPathException {
+        try (final Reader reader = source.getReader()) {
+            if (reader == null) {
+                throw moduleLoadException("failed to load module: '" + namespaceURI + "' from: " +
+                        "'" + source + "', location: '" + location + "'. Source not found. ", location);
+            }
+
+            final XQueryLexer lexer = new XQueryLexer(null, reader);
+            final XQueryParser parser = new XQueryParser(lexer);
             try {
                 parser.xpath();
 
@@ -2771,31 +2892,7 @@ public class XQueryContext implements BinaryValueManager, Context {
                     throw new XPathException(rootExpression, ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + parser.getErrorMessage());
                 }
 
-                final AST ast = parser.getAST();
-
-                final PathExpr path = new PathExpr(modContext);
-                astParser.xpath(ast, path);
-
-                if (astParser.foundErrors()) {
-                    throw new XPathException(rootExpression, ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + astParser.getErrorMessage(), astParser.getLastException());
-                }
-
-                modExternal.setRootExpression(path);
-
-                if (namespaceURI != null && !modExternal.getNamespaceURI().equals(namespaceURI)) {
-                    throw new XPathException(rootExpression, ErrorCodes.XQST0059, "namespace URI declared by module (" + modExternal.getNamespaceURI() + ") does not match namespace URI in import statement, which was: " + namespaceURI);
-                }
-
-                // Set source information on module context
-//            String sourceClassName = source.getClass().getName();
-//            modContext.setSourceKey(source.getKey().toString());
-                // Extract the source type from the classname by removing the package prefix and the "Source" suffix
-//            modContext.setSourceType( sourceClassName.substring( 17, sourceClassName.length() - 6 ) );
-
-                modExternal.setSource(source);
-                modContext.setSource(source);
-                modExternal.setIsReady(true);
-                return modExternal;
+                return parser.getAST();
             } catch (final RecognitionException e) {
                 throw new XPathException(e.getLine(), e.getColumn(), ErrorCodes.XPST0003, "error found while loading module from " + location + ": " + e.getMessage());
             } catch (final TokenStreamException e) {
@@ -2920,8 +3017,9 @@ public class XQueryContext implements BinaryValueManager, Context {
             importedContexts = new HashSet<>();
             importedContextsCleanupTasksFns = new ArrayList<>();
         }
-        importedContexts.add(importedContext);
-        importedContextsCleanupTasksFns.add(importedContext::runCleanupTasks);
+        if (importedContexts.add(importedContext)) {
+            importedContextsCleanupTasksFns.add(importedContext::runCleanupTasks);
+        }
     }
 
     /**
@@ -3096,6 +3194,7 @@ public class XQueryContext implements BinaryValueManager, Context {
             case ProfilePragma.PROFILING_PRAGMA_LOCAL_NAME -> new ProfilePragma(rootExpression, qname, sanitizedContents);
             case ForceIndexUse.FORCE_INDEX_USE_PRAGMA_LOCAL_NAME -> new ForceIndexUse(rootExpression, qname, sanitizedContents);
             case NoIndexPragma.NO_INDEX_PRAGMA_LOCAL_NAME -> new NoIndexPragma(rootExpression, qname, sanitizedContents);
+            case ParallelPragma.PARALLEL_PRAGMA_LOCAL_NAME -> new ParallelPragma(rootExpression, qname, sanitizedContents);
             default -> null;
         };
     }
@@ -3150,6 +3249,9 @@ public class XQueryContext implements BinaryValueManager, Context {
         this.raiseErrorOnFailedRetrieval =
                 config.getProperty(PROPERTY_XQUERY_RAISE_ERROR_ON_FAILED_RETRIEVAL, Boolean.FALSE);
 
+        this.specializationThreshold =
+                config.getProperty(PROPERTY_SPECIALIZATION_THRESHOLD, SPECIALIZATION_THRESHOLD_DEFAULT);
+
         // Get map of built-in modules
         final Map<String, Class<Module>> builtInModules =
                 (Map<String, Class<Module>>) config.getProperty(PROPERTY_BUILT_IN_MODULES);
@@ -0,0 +1,526 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.http.servlets.HttpResponseWrapper;
+import org.exist.http.servlets.ResponseWrapper;
+import org.exist.numbering.NodeId;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.BrokerPoolServiceException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NotificationService;
+import org.exist.storage.UpdateListener;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global cache for the serialized results of XQueries which are executed
+ * over HTTP.
+ *
+ * A query opts in to caching with {@code declare option exist:result-cache "yes";},
+ * which asserts that its result only depends on its source, the requesting user,
+ * the parameters of the request, and the documents it reads. Only the content type
+ * and the content of the response are cached, so the result of a query which sets
+ * the status or headers of the response, or writes to it directly, is not cached.
+ *
+ * Whilst a query is executed, the Collections which it opens are recorded (see
+ * {@link DBBroker#setAccessedCollections(Set)}). The cached result is then invalidated
+ * by any change to one of those Collections, or to the source of the query or one
+ * of its modules, of which this cache is notified through the
+ * {@link NotificationService}.
+ *
+ * The versions at which Collections changed are kept for as long as they
+ * can invalidate a cached result, i.e. they are pruned once they are older
+ * than the oldest cached result.
+ *
+ * The cache is disabled unless it is given a size in the configuration.
+ */
+@ThreadSafe
+public class XQueryResultCache implements BrokerPoolService, UpdateListener {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryResultCache.class);
+
+    public static final String CONFIGURATION_ELEMENT_NAME = "query-result-cache";
+    public static final String SIZE_ATTRIBUTE = "size";
+    public static final String MAX_ENTRY_SIZE_ATTRIBUTE = "max-entry-size";
+
+    public static final String PROPERTY_SIZE = "db-connection.query-result-cache.size";
+    public static final String PROPERTY_MAX_ENTRY_SIZE = "db-connection.query-result-cache.max-entry-size";
+
+    /**
+     * The size of the cache in megabytes, the cache is disabled by default
+     */
+    private static final int DEFAULT_SIZE = 0;
+
+    /**
+     * The maximum size of a cached result in kilobytes
+     */
+    private static final int DEFAULT_MAX_ENTRY_SIZE = 1024;
+
+    /**
+     * The approximate size of a cache entry, excluding its content
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+
+    /**
+     * The number of recorded Collection versions above which they are pruned
+     */
+    static final int PRUNE_THRESHOLD = 4096;
+
+    private long maxSize;
+    private int maxEntrySize;
+
+    private @Nullable Cache<Key, Entry> cache;
+    private @Nullable NotificationService notificationService;
+
+    /**
+     * Incremented by each change to the database
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Collection URI -> the version at which the Collection, or one of its descendants, last changed
+     */
+    private final ConcurrentMap<XmldbURI, Long> collectionVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Collection URI -> the version at which the Collection and all of its descendants last changed
+     */
+    private final ConcurrentMap<XmldbURI, Long> subtreeVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Results from before this version may have been invalidated
+     * by changes of which the versions have since been pruned
+     */
+    private volatile long prunedVersion = 0;
+
+    /**
+     * The number of recorded Collection versions at which they are next pruned
+     */
+    private volatile int nextPruneSize = PRUNE_THRESHOLD;
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final Integer size = (Integer) configuration.getProperty(PROPERTY_SIZE);
+        final Integer maxEntrySz = (Integer) configuration.getProperty(PROPERTY_MAX_ENTRY_SIZE);
+
+        this.maxSize = (size != null ? size : DEFAULT_SIZE) * 1024L * 1024L;
+        this.maxEntrySize = (maxEntrySz != null ? maxEntrySz : DEFAULT_MAX_ENTRY_SIZE) * 1024;
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) throws BrokerPoolServiceException {
+        if (maxSize <= 0) {
+            LOG.info("XQueryResultCache: disabled");
+            return;
+        }
+
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((Key key, Entry entry) -> entry.result.content.length + ENTRY_OVERHEAD)
+                .build();
+
+        this.notificationService = brokerPool.getNotificationService();
+        notificationService.subscribe(this);
+
+        LOG.info("XQueryResultCache: size = {} bytes; maxEntrySize = {} bytes", maxSize, maxEntrySize);
+    }
+
+    @Override
+    public void stopSystem(final DBBroker systemBroker) {
+        if (notificationService != null) {
+            notificationService.unsubscribe(this);
+            notificationService = null;
+        }
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Determine if the cache is enabled.
+     *
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Get the maximum size of a cached result.
+     *
+     * @return the maximum size of a cached result in bytes
+     */
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Determine if the results of a query may be cached, i.e. the cache is
+     * enabled and the query declares the option {@code exist:result-cache}.
+     *
+     * @param query the compiled query
+     *
+     * @return true if the results of the query may be cached
+     */
+    public boolean isCacheable(final CompiledXQuery query) {
+        if (cache == null) {
+            return false;
+        }
+        final Option option = query.getContext().getOption(Option.RESULT_CACHE_QNAME);
+        return option != null && "yes".equals(option.getContents().trim());
+    }
+
+    /**
+     * Get the cached result of a query.
+     *
+     * @param key the key of the result
+     *
+     * @return the cached result, or null if there is no valid cached result
+     */
+    public @Nullable CachedResult get(final Key key) {
+        if (cache == null) {
+            return null;
+        }
+
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (!isValid(entry)) {
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+
+        return entry.result;
+    }
+
+    /**
+     * Start recording the Collections which are accessed by the broker,
+     * this should be called before the query is executed, and the recording
+     * closed after its result has been serialized.
+     *
+     * @param broker the broker which executes the query
+     * @param context the context of the query, with the HTTP response if any
+     *
+     * @return the recording
+     */
+    public Recording record(final DBBroker broker, final XQueryContext context) {
+        final XQueryContext.HttpContext httpContext = context.getHttpContext();
+        return new Recording(broker, version.get(), httpContext != null ? httpContext.getResponse() : null);
+    }
+
+    /**
+     * Cache the result of a query.
+     *
+     * The result is not cached if it is too large, if the database
+     * changed whilst the query was executed, or if the query changed
+     * the HTTP response other than by its content.
+     *
+     * @param key the key of the result
+     * @param recording the recording of the execution of the query
+     * @param context the context of the query
+     * @param contentType the content type of the result, or null
+     * @param content the serialized result
+     */
+    public void put(final Key key, final Recording recording, final XQueryContext context,
+            @Nullable final String contentType, final byte[] content) {
+        if (cache == null || content.length > maxEntrySize || isResponseModified(recording)) {
+            return;
+        }
+
+        final Set<XmldbURI> collections = new HashSet<>(recording.accessedCollections);
+        final List<Source> sources = new ArrayList<>();
+        addSource(key.source, collections, sources);
+        for (final Iterator<Module> it = context.getAllModules(); it.hasNext(); ) {
+            final Module module = it.next();
+            if (!module.isInternalModule()) {
+                final Source moduleSource = ((ExternalModule) module).getSource();
+                if (moduleSource != null) {
+                    addSource(moduleSource, collections, sources);
+                }
+            }
+        }
+
+        final Entry entry = new Entry(new CachedResult(contentType, content), recording.version, collections, sources);
+        if (isValid(entry)) {
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * Only the content type and the content of the response are cached,
+     * any status, headers or cookies which the query set would be lost.
+     */
+    private static boolean isResponseModified(final Recording recording) {
+        if (recording.response == null) {
+            return false;
+        }
+        return !(recording.response instanceof HttpResponseWrapper) || ((HttpResponseWrapper) recording.response).isModified();
+    }
+
+    /**
+     * A Source held in the database changes with its Collection,
+     * any other Source has to be checked for validity.
+     */
+    private static void addSource(final Source source, final Set<XmldbURI> collections, final List<Source> sources) {
+        if (source instanceof DBSource) {
+            collections.add(((DBSource) source).getDocumentPath().removeLastSegment());
+        } else {
+            sources.add(source);
+        }
+    }
+
+    private boolean isValid(final Entry entry) {
+        if (entry.version < prunedVersion) {
+            return false;
+        }
+
+        for (final XmldbURI collectionUri : entry.collections) {
+            if (collectionVersions.getOrDefault(collectionUri, 0L) > entry.version) {
+                return false;
+            }
+
+            for (XmldbURI uri = collectionUri; uri.numSegments() > 0; uri = uri.removeLastSegment()) {
+                if (subtreeVersions.getOrDefault(uri, 0L) > entry.version) {
+                    return false;
+                }
+            }
+        }
+
+        for (final Source source : entry.sources) {
+            if (source.isValid() != Source.Validity.VALID) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Records the version of a change of a Collection, and all of its ancestors.
+     */
+    private long changed(final XmldbURI collectionUri) {
+        final long changeVersion = version.incrementAndGet();
+        for (XmldbURI uri = collectionUri; uri.numSegments() > 0; uri = uri.removeLastSegment()) {
+            collectionVersions.put(uri, changeVersion);
+        }
+        if (getVersionCount() > nextPruneSize) {
+            prune();
+        }
+        return changeVersion;
+    }
+
+    /**
+     * Removes the versions of the changes which are older than any valid cached result,
+     * and so can no longer invalidate one. A result of a query which was executed
+     * before the oldest of the remaining versions is not cached.
+     */
+    private synchronized void prune() {
+        if (getVersionCount() <= nextPruneSize) {
+            // pruned by another thread
+            return;
+        }
+
+        long oldestVersion = version.get();
+        if (cache != null) {
+            for (final Iterator<Entry> it = cache.asMap().values().iterator(); it.hasNext(); ) {
+                final Entry entry = it.next();
+                if (!isValid(entry)) {
+                    it.remove();
+                } else if (entry.version < oldestVersion) {
+                    oldestVersion = entry.version;
+                }
+            }
+        }
+
+        final long pruneVersion = oldestVersion;
+        prunedVersion = pruneVersion;
+        collectionVersions.values().removeIf(changeVersion -> changeVersion <= pruneVersion);
+        subtreeVersions.values().removeIf(changeVersion -> changeVersion <= pruneVersion);
+
+        nextPruneSize = Math.max(PRUNE_THRESHOLD, getVersionCount() * 2);
+    }
+
+    /**
+     * Get the number of recorded Collection versions.
+     *
+     * @return the number of recorded versions
+     */
+    int getVersionCount() {
+        return collectionVersions.size() + subtreeVersions.size();
+    }
+
+    @Override
+    public void documentUpdated(final DocumentImpl document, final int event) {
+        changed(document.getURI().removeLastSegment());
+    }
+
+    @Override
+    public void collectionUpdated(final XmldbURI collectionUri) {
+        subtreeVersions.put(collectionUri, changed(collectionUri));
+    }
+
+    @Override
+    public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+        // no-op
+    }
+
+    @Override
+    public void unsubscribe() {
+        // no-op
+    }
+
+    @Override
+    public void debug() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("XQueryResultCache: {} entries", cache != null ? cache.estimatedSize() : 0);
+        }
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    public static final class Key {
+        private final Source source;
+        private final String user;
+        private final String parameters;
+
+        /**
+         * @param source the source of the query
+         * @param user the name of the user who executes the query
+         * @param parameters the parameters of the request
+         */
+        public Key(final Source source, final String user, final String parameters) {
+            this.source = source;
+            this.user = user;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (other == null || getClass() != other.getClass()) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return source.equals(key.source) && user.equals(key.user) && parameters.equals(key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, user, parameters);
+        }
+    }
+
+    /**
+     * The serialized result of a query.
+     */
+    public static final class CachedResult {
+        private final @Nullable String contentType;
+        private final byte[] content;
+
+        CachedResult(@Nullable final String contentType, final byte[] content) {
+            this.contentType = contentType;
+            this.content = content;
+        }
+
+        public @Nullable String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+
+    /**
+     * Records the Collections which are accessed by a broker,
+     * closing the recording stops the recording.
+     */
+    public static final class Recording implements AutoCloseable {
+        private final DBBroker broker;
+        private final long version;
+        private final @Nullable ResponseWrapper response;
+        private final @Nullable Set<XmldbURI> previousAccessedCollections;
+        private final Set<XmldbURI> accessedCollections;
+
+        private Recording(final DBBroker broker, final long version, @Nullable final ResponseWrapper response) {
+            this.broker = broker;
+            this.version = version;
+            this.response = response;
+            this.previousAccessedCollections = broker.getAccessedCollections();
+
+            // an enclosing recording also sees the accesses of this one
+            if (previousAccessedCollections != null) {
+                this.accessedCollections = previousAccessedCollections;
+            } else {
+                this.accessedCollections = ConcurrentHashMap.newKeySet();
+                broker.setAccessedCollections(accessedCollections);
+            }
+        }
+
+        @Override
+        public void close() {
+            broker.setAccessedCollections(previousAccessedCollections);
+        }
+    }
+
+    private static final class Entry {
+        private final CachedResult result;
+        private final long version;
+        private final Set<XmldbURI> collections;
+        private final List<Source> sources;
+
+        private Entry(final CachedResult result, final long version, final Set<XmldbURI> collections,
+                final List<Source> sources) {
+            this.result = result;
+            this.version = version;
+            this.collections = collections;
+            this.sources = sources;
+        }
+    }
+}
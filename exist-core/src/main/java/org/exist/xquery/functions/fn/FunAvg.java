@@ -40,6 +40,7 @@ import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericBatch;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -86,9 +87,13 @@ public class FunAvg extends Function {
                 "CONTEXT ITEM", contextItem.toSequence());}
         }
         Sequence result;
+        AtomicValue batched;
         final Sequence inner = getArgument(0).eval(contextSequence, contextItem);
         if (inner.isEmpty()) {
             result = Sequence.EMPTY_SEQUENCE;
+        } else if (inner.hasMany() && NumericBatch.isApplicable(getArgument(0).returnsType())
+                && (batched = NumericBatch.avg(this, inner)) != null) {
+            result = batched;
         } else {
             final SequenceIterator iter = inner.iterate();
             Item item = iter.nextItem();
@@ -27,15 +27,19 @@ import org.exist.xquery.BasicFunction;
 import org.exist.xquery.Cardinality;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.Function;
+import org.exist.xquery.ForExpr;
 import org.exist.xquery.FunctionSignature;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
+import org.exist.xquery.value.Item;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceType;
 import org.exist.xquery.value.Type;
 
+import javax.annotation.Nullable;
+
 public class FunHeadTail extends BasicFunction {
 
 	public final static FunctionSignature[] signatures = {
@@ -56,6 +60,12 @@ public class FunHeadTail extends BasicFunction {
                     },
                 new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the resulting sequence")) };
 	
+	/**
+	 * The FLWOR expression of the argument of fn:head, which only
+	 * needs to be evaluated until it returns its first item.
+	 */
+	@Nullable private ForExpr limitableClause = null;
+
 	public FunHeadTail(XQueryContext context, FunctionSignature signature) {
 		super(context, signature);
 	}
@@ -67,6 +77,20 @@ public class FunHeadTail extends BasicFunction {
 			throw new XPathException(this, ErrorCodes.EXXQDY0003, "Function " + 
 					getSignature().getName() + " is only supported for xquery version \"3.0\" and later.");
 		}
+		limitableClause = isCalledAs("head") ? ForExpr.getLimitableClause(getArgument(0)) : null;
+	}
+
+	@Override
+	public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+		if (limitableClause == null) {
+			return super.eval(contextSequence, contextItem);
+		}
+		final long previousLimit = limitableClause.setResultLimit(1);
+		try {
+			return super.eval(contextSequence, contextItem);
+		} finally {
+			limitableClause.setResultLimit(previousLimit);
+		}
 	}
 	
 	@Override
@@ -40,6 +40,7 @@ import org.exist.xquery.value.FloatValue;
 import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericBatch;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.QNameValue;
 import org.exist.xquery.value.Sequence;
@@ -129,9 +130,13 @@ public class FunMax extends CollatingFunction {
         } 
         
         Sequence result;
+        AtomicValue batched;
 		final Sequence arg = getArgument(0).eval(contextSequence, contextItem);
 		if(arg.isEmpty())
             {result = Sequence.EMPTY_SEQUENCE;}
+        else if (arg.hasMany() && NumericBatch.isApplicable(getArgument(0).returnsType())
+                && (batched = NumericBatch.max(this, arg)) != null)
+            {result = batched;}
         else {
         	boolean computableProcessing = false;
         	//TODO : test if a range index is defined *iff* it is compatible with the collator
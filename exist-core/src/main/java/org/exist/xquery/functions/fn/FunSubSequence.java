@@ -57,6 +57,12 @@ public class FunSubSequence extends Function {
                     },
                     new FunctionReturnSequenceType(Type.ITEM, Cardinality.ZERO_OR_MORE, "the subsequence"))};
 
+    /**
+     * The FLWOR expression of the source sequence, if its evaluation may stop
+     * after the items of the subsequence have been returned.
+     */
+    @Nullable private ForExpr limitableClause = null;
+
     public FunSubSequence(final XQueryContext context, final FunctionSignature signature) {
         super(context, signature);
     }
@@ -89,6 +95,8 @@ public class FunSubSequence extends Function {
             }
         }
         argumentsChecked = true;
+
+        limitableClause = getArgumentCount() == 3 ? ForExpr.getLimitableClause(getArgument(0)) : null;
     }
 
     @Override
@@ -109,14 +117,28 @@ public class FunSubSequence extends Function {
         }
 
         final Sequence result;
-        final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
-        if (seq.isEmpty()) {
-            result = Sequence.EMPTY_SEQUENCE;
+        if (limitableClause != null) {
+            // evaluate the positions first, so that the evaluation of the source can stop after the subsequence
+            final DoubleValue startLoc = (DoubleValue) getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final DoubleValue length = (DoubleValue) getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE);
+            final long previousLimit = limitableClause.setResultLimit(getResultLimit(startLoc, length));
+            final Sequence seq;
+            try {
+                seq = getArgument(0).eval(contextSequence, contextItem);
+            } finally {
+                limitableClause.setResultLimit(previousLimit);
+            }
+            result = seq.isEmpty() ? Sequence.EMPTY_SEQUENCE : subsequence(seq, startLoc, length);
         } else {
-            return subsequence(seq,
-                    ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
-                    getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
-            );
+            final Sequence seq = getArgument(0).eval(contextSequence, contextItem);
+            if (seq.isEmpty()) {
+                result = Sequence.EMPTY_SEQUENCE;
+            } else {
+                return subsequence(seq,
+                        ((DoubleValue)getArgument(1).eval(contextSequence, contextItem).convertTo(Type.DOUBLE)),
+                        getArgumentCount() != 3 ? null : ((DoubleValue)getArgument(2).eval(contextSequence, contextItem).convertTo(Type.DOUBLE))
+                );
+            }
         }
 
         if (context.getProfiler().isEnabled()) {
@@ -126,6 +148,26 @@ public class FunSubSequence extends Function {
         return result;
     }
 
+    /**
+     * Get the number of items of the source sequence that are needed for the subsequence.
+     *
+     * @param startLoc the starting location value as passed to {@code fn:subsequence}
+     * @param length the length value as passed to {@code fn:subsequence}
+     *
+     * @return the position of the last item of the subsequence, or {@link ForExpr#NO_RESULT_LIMIT}
+     *     if the subsequence is empty or extends to the end of the source sequence
+     */
+    private static long getResultLimit(final DoubleValue startLoc, final DoubleValue length) {
+        if (startLoc.isNaN() || startLoc.isInfinite() || length.isNaN() || length.isInfinite()) {
+            return ForExpr.NO_RESULT_LIMIT;
+        }
+        final double lastPosition = (double) startLoc.getLong() + (double) length.getLong() - 1;
+        if (lastPosition < 1 || lastPosition >= Integer.MAX_VALUE) {
+            return ForExpr.NO_RESULT_LIMIT;
+        }
+        return (long) lastPosition;
+    }
+
     /**
      * Creates a Subsequence from a sequence
      *
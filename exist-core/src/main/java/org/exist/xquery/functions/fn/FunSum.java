@@ -38,6 +38,7 @@ import org.exist.xquery.value.FunctionParameterSequenceType;
 import org.exist.xquery.value.FunctionReturnSequenceType;
 import org.exist.xquery.value.IntegerValue;
 import org.exist.xquery.value.Item;
+import org.exist.xquery.value.NumericBatch;
 import org.exist.xquery.value.NumericValue;
 import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.SequenceIterator;
@@ -89,6 +90,7 @@ public class FunSum extends Function {
         }
         
         Sequence result;
+        AtomicValue batched;
         
 		final Sequence inner = getArgument(0).eval(contextSequence, contextItem);	
 		if (inner.isEmpty()) {
@@ -97,6 +99,9 @@ public class FunSum extends Function {
 			if(getSignature().getArgumentCount() == 2)
 				{zero = getArgument(1).eval(contextSequence, contextItem);}
 			result = zero;
+		} else if (inner.hasMany() && NumericBatch.isApplicable(getArgument(0).returnsType())
+				&& (batched = NumericBatch.sum(this, inner)) != null) {
+			result = batched;
 		} else {
     		final SequenceIterator iter = inner.iterate();
     		Item item = iter.nextItem();
@@ -56,6 +56,7 @@ public class Optimize extends AbstractPragma {
     private NodeSet cachedContext = null;
     private int cachedTimestamp;
     private boolean cachedOptimize;
+    @Nullable private CostModel costModel = null;
 
     public Optimize(@Nullable final Expression expression, final XQueryContext context, final QName pragmaName, @Nullable final String contents, final boolean explicit) throws XPathException {
         super(expression, pragmaName, contents);
@@ -121,6 +122,9 @@ public class Optimize extends AbstractPragma {
                         }
                     }
                 }
+                if (optimize && preferNavigation(originalContext)) {
+                    optimize = false;
+                }
             }
         }
         if (optimize) {
@@ -193,6 +197,35 @@ public class Optimize extends AbstractPragma {
         }
     }
 
+    /**
+     * Use the statistics of the cost model to decide if navigating from the
+     * context nodes is cheaper than the index lookup, e.g. because the
+     * context is small and each context node only has a few children to test.
+     *
+     * @param originalContext the context of the optimized step
+     *
+     * @return true if the step should be evaluated without using the index
+     */
+    private boolean preferNavigation(@Nullable final NodeSet originalContext) {
+        if (originalContext == null || contextStep == null || contextStep.getAxis() != Constants.CHILD_AXIS) {
+            return false;
+        }
+        if (costModel == null) {
+            costModel = new CostModel(context);
+        }
+        if (!costModel.isEnabled()) {
+            return false;
+        }
+        final double navigationCost = originalContext.getItemCount() * costModel.getSelectivity(contextStep);
+        if (navigationCost < CostModel.INDEX_LOOKUP_COST) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("exist:optimize: navigating {} nodes is cheaper than an index lookup", navigationCost);
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public void before(final XQueryContext context, final Expression expression, final Sequence contextSequence) throws XPathException {
         if (innerExpr != null) {
@@ -0,0 +1,69 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.AbstractPragma;
+import org.exist.xquery.AnalyzeContextInfo;
+import org.exist.xquery.Expression;
+import org.exist.xquery.XPathException;
+
+/**
+ * Allows the bindings of a "for" clause to be evaluated in parallel, e.g.
+ *
+ * <pre>
+ * (# exist:parallel #) {
+ *     for $record in collection('/db/big')//record
+ *     return local:transform($record)
+ * }
+ * </pre>
+ *
+ * The input node set is partitioned by document, and the partitions are evaluated on
+ * a fork-join pool, each with its own copy of the compiled query and its own
+ * {@link org.exist.xquery.XQueryContext}. The results are returned in the order of the
+ * input sequence.
+ *
+ * By using the pragma, the query author asserts that the "for" clause has no side effects.
+ * The clause is evaluated sequentially if it is followed by an "order by", "group by",
+ * "count" or window clause.
+ */
+public class ParallelPragma extends AbstractPragma {
+    public static final String PARALLEL_PRAGMA_LOCAL_NAME = "parallel";
+    public static final QName PARALLEL_PRAGMA = new QName(PARALLEL_PRAGMA_LOCAL_NAME, Namespaces.EXIST_NS, "exist");
+
+    private static final Logger LOG = LogManager.getLogger(ParallelPragma.class);
+
+    public ParallelPragma(final Expression expression, final QName qname, final String contents) {
+        super(expression, qname, contents);
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Enabling parallel evaluation of for clauses ...");
+        }
+        contextInfo.addFlag(Expression.PARALLEL_EXECUTION);
+    }
+}
@@ -162,13 +162,14 @@ public class DoubleValue extends NumericValue {
         } else if (other.isNegativeInfinity()) {
             comparison = () -> Constants.SUPERIOR;
         } else if (other instanceof IntegerValue iv) {
-            comparison = () -> BigDecimal.valueOf(value).compareTo(new BigDecimal(iv.value));
+            comparison = () -> -iv.compareToDouble(value);
         } else if (other instanceof DecimalValue dv) {
             comparison = () -> BigDecimal.valueOf(value).compareTo(dv.value);
         } else if (other instanceof DoubleValue dv) {
-            comparison = () -> Double.compare(value, dv.value);
+            // unlike Double.compare, 0.0 and -0.0 are equal
+            comparison = () -> value < dv.value ? Constants.INFERIOR : (value > dv.value ? Constants.SUPERIOR : Constants.EQUAL);
         } else if (other instanceof FloatValue fv) {
-            comparison = () -> Double.compare(value, fv.value);
+            comparison = () -> value < fv.value ? Constants.INFERIOR : (value > fv.value ? Constants.SUPERIOR : Constants.EQUAL);
         } else {
             comparison = null;
         }
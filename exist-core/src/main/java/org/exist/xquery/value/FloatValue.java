@@ -165,14 +165,15 @@ public class FloatValue extends NumericValue {
         } else if (other.isNegativeInfinity()) {
             comparison = () -> Constants.SUPERIOR;
         } else if (other instanceof IntegerValue iv) {
-            comparison = () -> BigDecimal.valueOf(value).compareTo(new BigDecimal(iv.value));
+            comparison = () -> -iv.compareToDouble(value);
         } else if (other instanceof DecimalValue dv) {
             final BigDecimal promoted = new BigDecimal(Float.toString(value));
             comparison = () -> promoted.compareTo(dv.value);
         } else if (other instanceof DoubleValue dv) {
             comparison = () -> BigDecimal.valueOf(value).compareTo(BigDecimal.valueOf(dv.value));
         } else if (other instanceof FloatValue fv) {
-            comparison = () -> Float.compare(value, fv.value);
+            // unlike Float.compare, 0.0 and -0.0 are equal
+            comparison = () -> value < fv.value ? Constants.INFERIOR : (value > fv.value ? Constants.SUPERIOR : Constants.EQUAL);
         } else {
             return null;
         }
@@ -49,31 +49,24 @@ public class IntegerValue extends NumericValue {
 
     public static final IntegerValue ZERO = new IntegerValue(0);
 
-    private static final BigInteger ZERO_BIGINTEGER = new BigInteger("0");
-    private static final BigInteger ONE_BIGINTEGER = new BigInteger("1");
-    private static final BigInteger MINUS_ONE_BIGINTEGER = new BigInteger("-1");
-
-    private static final BigInteger LARGEST_LONG = new BigInteger("9223372036854775807");
-    private static final BigInteger SMALLEST_LONG = new BigInteger("-9223372036854775808");
-
     private static final BigInteger LARGEST_UNSIGNED_LONG = new BigInteger("18446744073709551615");
 
-    private static final BigInteger LARGEST_INT = new BigInteger("2147483647");
-    private static final BigInteger SMALLEST_INT = new BigInteger("-2147483648");
-
-    private static final BigInteger LARGEST_UNSIGNED_INT = new BigInteger("4294967295");
-
-    private static final BigInteger LARGEST_SHORT = new BigInteger("32767");
-    private static final BigInteger SMALLEST_SHORT = new BigInteger("-32768");
+    private static final long LARGEST_UNSIGNED_INT = 4294967295L;
+    private static final long LARGEST_UNSIGNED_SHORT = 65535L;
+    private static final long LARGEST_UNSIGNED_BYTE = 255L;
 
-    private static final BigInteger LARGEST_UNSIGNED_SHORT = new BigInteger("65535");
-
-    private static final BigInteger LARGEST_BYTE = new BigInteger("127");
-    private static final BigInteger SMALLEST_BYTE = new BigInteger("-128");
-
-    private static final BigInteger LARGEST_UNSIGNED_BYTE = new BigInteger("255");
+    /**
+     * Integers up to the magnitude of 2^53 can be represented exactly by a double.
+     */
+    private static final long LARGEST_EXACT_DOUBLE = 1L << 53;
 
-    final BigInteger value;
+    /*
+     * Most integers fit into a long, for which arithmetic and comparisons do not allocate.
+     * Only values outside the range of a long are held as a BigInteger, i.e. a value
+     * has exactly one representation: bigValue is null if and only if the value fits into a long.
+     */
+    private final long longValue;
+    @Nullable private final BigInteger bigValue;
     private final int type;
 
     public IntegerValue(final long value) {
@@ -82,7 +75,8 @@ public class IntegerValue extends NumericValue {
 
     public IntegerValue(final Expression expression, final long value) {
         super(expression);
-        this.value = BigInteger.valueOf(value);
+        this.longValue = value;
+        this.bigValue = null;
         this.type = Type.INTEGER;
     }
 
@@ -92,7 +86,13 @@ public class IntegerValue extends NumericValue {
 
     public IntegerValue(final Expression expression, final BigInteger integer) {
         super(expression);
-        this.value = integer;
+        if (integer.bitLength() < Long.SIZE) {
+            this.longValue = integer.longValue();
+            this.bigValue = null;
+        } else {
+            this.longValue = 0;
+            this.bigValue = integer;
+        }
         this.type = Type.INTEGER;
     }
 
@@ -101,7 +101,15 @@ public class IntegerValue extends NumericValue {
     }
 
     public IntegerValue(final Expression expression, final long value, final int type) throws XPathException {
-        this(expression, BigInteger.valueOf(value), type);
+        super(expression);
+        this.longValue = value;
+        this.bigValue = null;
+        this.type = type;
+
+        if (!checkType()) {
+            throw new XPathException(getExpression(), ErrorCodes.FORG0001, "can not convert '" +
+                    value + "' to " + Type.getTypeName(type));
+        }
     }
 
     public IntegerValue(final BigInteger value, final int requiredType) throws XPathException {
@@ -109,19 +117,17 @@ public class IntegerValue extends NumericValue {
     }
 
     public IntegerValue(final Expression expression, final BigInteger value, final int requiredType) throws XPathException {
-        this(expression, value, requiredType, true);
-    }
-
-    private IntegerValue(final BigInteger value, final int requiredType, final boolean checkType) throws XPathException {
-        this(null, value, requiredType, checkType);
-    }
-
-    private IntegerValue(final Expression expression, final BigInteger value, final int requiredType, boolean checkType) throws XPathException {
         super(expression);
-        this.value = value;
+        if (value.bitLength() < Long.SIZE) {
+            this.longValue = value.longValue();
+            this.bigValue = null;
+        } else {
+            this.longValue = 0;
+            this.bigValue = value;
+        }
         this.type = requiredType;
 
-        if (checkType && !checkType()) {
+        if (!checkType()) {
             throw new XPathException(getExpression(), ErrorCodes.FORG0001, "can not convert '" +
                     value + "' to " + Type.getTypeName(type));
         }
@@ -142,7 +148,21 @@ public class IntegerValue extends NumericValue {
     public IntegerValue(final Expression expression, final String stringValue, final int requiredType) throws XPathException {
         super(expression);
         try {
-            this.value = new BigInteger(StringValue.trimWhitespace(stringValue));
+            final String trimmed = StringValue.trimWhitespace(stringValue);
+            long parsedLong = 0;
+            BigInteger parsedBig = null;
+            try {
+                parsedLong = Long.parseLong(trimmed);
+            } catch (final NumberFormatException e) {
+                // either not an integer, or outside the range of a long
+                parsedBig = new BigInteger(trimmed);
+                if (parsedBig.bitLength() < Long.SIZE) {
+                    parsedLong = parsedBig.longValue();
+                    parsedBig = null;
+                }
+            }
+            this.longValue = parsedLong;
+            this.bigValue = parsedBig;
             this.type = requiredType;
             if (!(checkType())) {
                 throw new XPathException(getExpression(), ErrorCodes.FORG0001, "can not convert '" +
@@ -154,60 +174,119 @@ public class IntegerValue extends NumericValue {
         }
     }
 
-    private boolean checkType() throws XPathException {
-        switch (type) {
+    /**
+     * Creates an integer of the same type as this integer.
+     *
+     * @param value the value of the integer
+     *
+     * @return the integer
+     *
+     * @throws XPathException if the value is not valid for the type of this integer
+     */
+    private IntegerValue sameType(final long value) throws XPathException {
+        return type == Type.INTEGER ? new IntegerValue(getExpression(), value) : new IntegerValue(getExpression(), value, type);
+    }
 
-            case Type.LONG:
-                // jmv: add test since now long is not the default implementation anymore:
-                return value.compareTo(SMALLEST_LONG) >= 0 &&
-                        value.compareTo(LARGEST_LONG) <= 0;
+    private IntegerValue sameType(final BigInteger value) throws XPathException {
+        return type == Type.INTEGER ? new IntegerValue(getExpression(), value) : new IntegerValue(getExpression(), value, type);
+    }
 
-            case Type.UNSIGNED_LONG:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_LONG) <= 0;
+    private boolean checkType() throws XPathException {
+        if (bigValue != null) {
+            // outside the range of a long
+            switch (type) {
+                case Type.LONG:
+                    return false;
+
+                case Type.UNSIGNED_LONG:
+                    return bigValue.signum() >= 0 && bigValue.compareTo(LARGEST_UNSIGNED_LONG) <= 0;
+
+                case Type.INTEGER:
+                case Type.DECIMAL:
+                    return true;
+
+                case Type.POSITIVE_INTEGER:
+                case Type.NON_NEGATIVE_INTEGER:
+                    return bigValue.signum() > 0;
+
+                case Type.NEGATIVE_INTEGER:
+                case Type.NON_POSITIVE_INTEGER:
+                    return bigValue.signum() < 0;
+
+                case Type.INT:
+                case Type.UNSIGNED_INT:
+                case Type.SHORT:
+                case Type.UNSIGNED_SHORT:
+                case Type.BYTE:
+                case Type.UNSIGNED_BYTE:
+                    return false;
+            }
+        } else {
+            switch (type) {
+                case Type.LONG:
+                case Type.INTEGER:
+                case Type.DECIMAL:
+                    return true;
 
-            case Type.INTEGER:
-            case Type.DECIMAL:
-                return true;
+                case Type.UNSIGNED_LONG:
+                    return longValue >= 0;
 
-            case Type.POSITIVE_INTEGER:
-                return value.compareTo(ZERO_BIGINTEGER) == 1; // >0
-            case Type.NON_NEGATIVE_INTEGER:
-                return value.compareTo(MINUS_ONE_BIGINTEGER) == 1; // > -1
+                case Type.POSITIVE_INTEGER:
+                    return longValue > 0;
+                case Type.NON_NEGATIVE_INTEGER:
+                    return longValue >= 0;
 
-            case Type.NEGATIVE_INTEGER:
-                return value.compareTo(ZERO_BIGINTEGER) == -1; // <0
-            case Type.NON_POSITIVE_INTEGER:
-                return value.compareTo(ONE_BIGINTEGER) == -1; // <1
+                case Type.NEGATIVE_INTEGER:
+                    return longValue < 0;
+                case Type.NON_POSITIVE_INTEGER:
+                    return longValue <= 0;
 
-            case Type.INT:
-                return value.compareTo(SMALLEST_INT) >= 0 &&
-                        value.compareTo(LARGEST_INT) <= 0;
+                case Type.INT:
+                    return longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE;
 
-            case Type.UNSIGNED_INT:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_INT) <= 0;
+                case Type.UNSIGNED_INT:
+                    return longValue >= 0 && longValue <= LARGEST_UNSIGNED_INT;
 
-            case Type.SHORT:
-                return value.compareTo(SMALLEST_SHORT) >= 0 &&
-                        value.compareTo(LARGEST_SHORT) <= 0;
+                case Type.SHORT:
+                    return longValue >= Short.MIN_VALUE && longValue <= Short.MAX_VALUE;
 
-            case Type.UNSIGNED_SHORT:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_SHORT) <= 0;
+                case Type.UNSIGNED_SHORT:
+                    return longValue >= 0 && longValue <= LARGEST_UNSIGNED_SHORT;
 
-            case Type.BYTE:
-                return value.compareTo(SMALLEST_BYTE) >= 0 &&
-                        value.compareTo(LARGEST_BYTE) <= 0;
+                case Type.BYTE:
+                    return longValue >= Byte.MIN_VALUE && longValue <= Byte.MAX_VALUE;
 
-            case Type.UNSIGNED_BYTE:
-                return value.compareTo(ZERO_BIGINTEGER) >= 0 &&
-                        value.compareTo(LARGEST_UNSIGNED_BYTE) <= 0;
+                case Type.UNSIGNED_BYTE:
+                    return longValue >= 0 && longValue <= LARGEST_UNSIGNED_BYTE;
+            }
         }
 
         throw new XPathException(getExpression(), "Unknown type: " + Type.getTypeName(type));
     }
 
+    /**
+     * Determines if the value fits into a long, in which case it can be retrieved
+     * by {@link #getLong()} without loss of precision.
+     *
+     * @return true if the value is within the range of a long
+     */
+    public boolean isLong() {
+        return bigValue == null;
+    }
+
+    /**
+     * Get the value as a BigInteger.
+     *
+     * @return the value
+     */
+    public BigInteger toBigInteger() {
+        return bigValue != null ? bigValue : BigInteger.valueOf(longValue);
+    }
+
+    private BigDecimal toBigDecimal() {
+        return bigValue != null ? new BigDecimal(bigValue) : BigDecimal.valueOf(longValue);
+    }
+
     @Override
     public int getType() {
         return type;
@@ -224,13 +303,12 @@ public class IntegerValue extends NumericValue {
     }
 
     public long getValue() {
-        return value.longValue();
+        return getLong();
     }
 
     @Override
     public String getStringValue() {
-        return // Long.toString(value);
-                value.toString();
+        return bigValue != null ? bigValue.toString() : Long.toString(longValue);
     }
 
     @Override
@@ -245,37 +323,85 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public boolean isZero() {
-        return value.signum() == 0;
-        //return value.compareTo(ZERO_BIGINTEGER) == Constants.EQUAL;
+        return bigValue == null && longValue == 0;
     }
 
     @Override
     public boolean isNegative() {
-        return value.signum() < 0;
+        return bigValue != null ? bigValue.signum() < 0 : longValue < 0;
     }
 
     @Override
     public boolean isPositive() {
-        return value.signum() > 0;
+        return bigValue != null ? bigValue.signum() > 0 : longValue > 0;
     }
 
     @Override
     protected @Nullable IntSupplier createComparisonWith(final NumericValue other) {
         final IntSupplier comparison;
         if (other instanceof IntegerValue) {
-            comparison = () -> value.compareTo(((IntegerValue)other).value);
+            comparison = () -> compareTo((IntegerValue) other);
         } else if (other instanceof DecimalValue) {
-            comparison = () -> new BigDecimal(value).compareTo(((DecimalValue)other).value);
+            comparison = () -> toBigDecimal().compareTo(((DecimalValue)other).value);
         } else if (other instanceof DoubleValue) {
-            comparison = () -> new BigDecimal(value).compareTo(BigDecimal.valueOf(((DoubleValue)other).value));
+            comparison = () -> compareToDouble(((DoubleValue)other).value);
         } else if (other instanceof FloatValue) {
-            comparison = () -> new BigDecimal(value).compareTo(BigDecimal.valueOf(((FloatValue)other).value));
+            comparison = () -> compareToDouble(((FloatValue)other).value);
         } else {
             return null;
         }
         return comparison;
     }
 
+    private int compareTo(final IntegerValue other) {
+        if (bigValue == null && other.bigValue == null) {
+            return Long.compare(longValue, other.longValue);
+        }
+        return toBigInteger().compareTo(other.toBigInteger());
+    }
+
+    /**
+     * Compares this integer to a double as if both were xs:decimal values.
+     *
+     * @param other the double, which must not be NaN
+     *
+     * @return a negative integer, zero, or a positive integer as this integer
+     *     is less than, equal to, or greater than the double
+     */
+    int compareToDouble(final double other) {
+        if (bigValue == null) {
+            return compareToDouble(longValue, other);
+        }
+        if (Double.isInfinite(other)) {
+            return other > 0 ? -1 : 1;
+        }
+        return toBigDecimal().compareTo(new BigDecimal(other));
+    }
+
+    /**
+     * Compares a long to a double as if both were xs:decimal values.
+     *
+     * The double is converted to its exact decimal value, whereas
+     * {@link BigDecimal#valueOf(double)} would round it to its shortest decimal string.
+     *
+     * @param value the long
+     * @param other the double, which must not be NaN
+     *
+     * @return a negative integer, zero, or a positive integer as the long
+     *     is less than, equal to, or greater than the double
+     */
+    static int compareToDouble(final long value, final double other) {
+        if (Double.isInfinite(other)) {
+            return other > 0 ? -1 : 1;
+        }
+        if (value >= -LARGEST_EXACT_DOUBLE && value <= LARGEST_EXACT_DOUBLE) {
+            // the value is exactly representable as a double, so the comparison of doubles is exact
+            final double d = value;
+            return d < other ? -1 : (d > other ? 1 : 0);
+        }
+        return BigDecimal.valueOf(value).compareTo(new BigDecimal(other));
+    }
+
     @Override
     public AtomicValue convertTo(final int requiredType) throws XPathException {
         if (this.type == requiredType || requiredType == Type.NUMERIC) {
@@ -287,7 +413,7 @@ public class IntegerValue extends NumericValue {
             case Type.ITEM:
                 return this;
             case Type.DECIMAL:
-                return new DecimalValue(getExpression(), new BigDecimal(value));
+                return new DecimalValue(getExpression(), toBigDecimal());
             case Type.UNTYPED_ATOMIC:
                 return new UntypedAtomicValue(getExpression(), getStringValue());
             case Type.LONG:
@@ -303,21 +429,21 @@ public class IntegerValue extends NumericValue {
             case Type.UNSIGNED_SHORT:
             case Type.UNSIGNED_BYTE:
             case Type.POSITIVE_INTEGER:
-                return new IntegerValue(getExpression(), value, requiredType);
+                return bigValue != null ? new IntegerValue(getExpression(), bigValue, requiredType) : new IntegerValue(getExpression(), longValue, requiredType);
             case Type.DOUBLE:
-                return new DoubleValue(getExpression(), value.doubleValue());
+                return new DoubleValue(getExpression(), getDouble());
             case Type.FLOAT:
-                return new FloatValue(getExpression(), value.floatValue());
+                return new FloatValue(getExpression(), bigValue != null ? bigValue.floatValue() : (float) longValue);
             case Type.STRING:
                 return new StringValue(getExpression(), getStringValue());
             case Type.BOOLEAN:
-                return (value.compareTo(ZERO_BIGINTEGER) == 0) ? BooleanValue.FALSE : BooleanValue.TRUE;
+                return isZero() ? BooleanValue.FALSE : BooleanValue.TRUE;
             default:
                 throw new XPathException(getExpression(), ErrorCodes.FORG0001,
                         "cannot convert '"
                                 + Type.getTypeName(this.getType())
                                 + " ("
-                                + value
+                                + getStringValue()
                                 + ")' into "
                                 + Type.getTypeName(requiredType));
         }
@@ -325,17 +451,17 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public int getInt() {
-        return value.intValue();
+        return bigValue != null ? bigValue.intValue() : (int) longValue;
     }
 
     @Override
     public long getLong() {
-        return value.longValue();
+        return bigValue != null ? bigValue.longValue() : longValue;
     }
 
     @Override
     public double getDouble() {
-        return value.doubleValue();
+        return bigValue != null ? bigValue.doubleValue() : (double) longValue;
     }
 
     @Override
@@ -375,10 +501,16 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public ComputableValue minus(final ComputableValue other) throws XPathException {
-        if (Type.subTypeOf(other.getType(), Type.INTEGER))
-        // return new IntegerValue(value - ((IntegerValue) other).value, type);
-        {
-            return new IntegerValue(getExpression(), value.subtract(((IntegerValue) other).value), type);
+        if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                final long r = longValue - o.longValue;
+                // overflow iff the operands have different signs and the sign of the result differs from this value
+                if (((longValue ^ o.longValue) & (longValue ^ r)) >= 0) {
+                    return sameType(r);
+                }
+            }
+            return sameType(toBigInteger().subtract(o.toBigInteger()));
         } else {
             return ((ComputableValue) convertTo(other.getType())).minus(other);
         }
@@ -386,10 +518,16 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public ComputableValue plus(final ComputableValue other) throws XPathException {
-        if (Type.subTypeOf(other.getType(), Type.INTEGER))
-        // return new IntegerValue(value + ((IntegerValue) other).value, type);
-        {
-            return new IntegerValue(getExpression(), value.add(((IntegerValue) other).value), type);
+        if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                final long r = longValue + o.longValue;
+                // overflow iff both operands have the same sign and the sign of the result differs
+                if (((longValue ^ r) & (o.longValue ^ r)) >= 0) {
+                    return sameType(r);
+                }
+            }
+            return sameType(toBigInteger().add(o.toBigInteger()));
         } else {
             return ((ComputableValue) convertTo(other.getType())).plus(other);
         }
@@ -398,7 +536,16 @@ public class IntegerValue extends NumericValue {
     @Override
     public ComputableValue mult(final ComputableValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(getExpression(), value.multiply(((IntegerValue) other).value), type);
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                final long hi = Math.multiplyHigh(longValue, o.longValue);
+                final long lo = longValue * o.longValue;
+                // no overflow iff the high word is only the sign extension of the low word
+                if ((hi == 0 && lo >= 0) || (hi == -1 && lo < 0)) {
+                    return sameType(lo);
+                }
+            }
+            return sameType(toBigInteger().multiply(o.toBigInteger()));
         } else if (Type.subTypeOf(other.getType(), Type.DURATION)) {
             return other.mult(this);
         } else {
@@ -418,8 +565,8 @@ public class IntegerValue extends NumericValue {
                 throw new XPathException(getExpression(), ErrorCodes.FOAR0001, "division by zero");
             }
             //http://www.w3.org/TR/xpath20/#mapping : numeric; but xs:decimal if both operands are xs:integer
-            final BigDecimal d = new BigDecimal(value);
-            final BigDecimal od = new BigDecimal(((IntegerValue) other).value);
+            final BigDecimal d = toBigDecimal();
+            final BigDecimal od = ((IntegerValue) other).toBigDecimal();
             final int scale = Math.max(18, Math.max(d.scale(), od.scale()));
             return new DecimalValue(getExpression(), d.divide(od, scale, RoundingMode.HALF_DOWN));
         } else {
@@ -435,6 +582,14 @@ public class IntegerValue extends NumericValue {
         {
             throw new XPathException(getExpression(), ErrorCodes.FOAR0001, "division by zero");
         }
+        if (other instanceof IntegerValue) {
+            final IntegerValue o = (IntegerValue) other;
+            // integer division truncates towards zero, the only overflow is Long.MIN_VALUE idiv -1
+            if (bigValue == null && o.bigValue == null && (longValue != Long.MIN_VALUE || o.longValue != -1)) {
+                return new IntegerValue(getExpression(), longValue / o.longValue);
+            }
+            return new IntegerValue(getExpression(), toBigInteger().divide(o.toBigInteger()));
+        }
         final ComputableValue result = div(other);
         return new IntegerValue(getExpression(), ((IntegerValue) result.convertTo(Type.INTEGER)).getLong());
     }
@@ -446,9 +601,12 @@ public class IntegerValue extends NumericValue {
                 throw new XPathException(getExpression(), ErrorCodes.FOAR0001, "division by zero");
             }
 
-            // long ov = ((IntegerValue) other).value.longValue();
-            final BigInteger ov = ((IntegerValue) other).value;
-            return new IntegerValue(getExpression(), value.remainder(ov), type);
+            final IntegerValue o = (IntegerValue) other;
+            if (bigValue == null && o.bigValue == null) {
+                // the sign of the remainder is that of the dividend, as for BigInteger#remainder
+                return sameType(longValue % o.longValue);
+            }
+            return sameType(toBigInteger().remainder(o.toBigInteger()));
         } else {
             return ((NumericValue) convertTo(other.getType())).mod(other);
         }
@@ -456,18 +614,25 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public NumericValue negate() {
-        return new IntegerValue(getExpression(), value.negate());
+        if (bigValue == null && longValue != Long.MIN_VALUE) {
+            return new IntegerValue(getExpression(), -longValue);
+        }
+        return new IntegerValue(getExpression(), toBigInteger().negate());
     }
 
     @Override
     public NumericValue abs() throws XPathException {
-        return new IntegerValue(getExpression(), value.abs(), type);
+        if (bigValue == null && longValue != Long.MIN_VALUE) {
+            return longValue >= 0 ? sameType(longValue) : sameType(-longValue);
+        }
+        return sameType(toBigInteger().abs());
     }
 
     @Override
     public AtomicValue max(final Collator collator, final AtomicValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(getExpression(), value.max(((IntegerValue) other).value));
+            final IntegerValue o = (IntegerValue) other;
+            return asInteger(compareTo(o) >= 0 ? this : o);
         } else {
             return convertTo(other.getType()).max(collator, other);
         }
@@ -476,12 +641,24 @@ public class IntegerValue extends NumericValue {
     @Override
     public AtomicValue min(final Collator collator, final AtomicValue other) throws XPathException {
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return new IntegerValue(getExpression(), value.min(((IntegerValue) other).value));
+            final IntegerValue o = (IntegerValue) other;
+            return asInteger(compareTo(o) <= 0 ? this : o);
         } else {
             return convertTo(other.getType()).min(collator, other);
         }
     }
 
+    /**
+     * Get the given value as an xs:integer, without creating
+     * a {@link BigInteger} if the value fits in a long.
+     */
+    private IntegerValue asInteger(final IntegerValue value) {
+        if (value.bigValue == null) {
+            return new IntegerValue(getExpression(), value.longValue);
+        }
+        return new IntegerValue(getExpression(), value.bigValue);
+    }
+
     @Override
     public int conversionPreference(final Class<?> javaClass) {
         if (javaClass.isAssignableFrom(IntegerValue.class)) {
@@ -524,16 +701,16 @@ public class IntegerValue extends NumericValue {
         if (target.isAssignableFrom(IntegerValue.class)) {
             return (T) this;
         } else if (target == Long.class || target == long.class) {
-            return (T) Long.valueOf(value.longValue());
+            return (T) Long.valueOf(getLong());
         } else if (target == Integer.class || target == int.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.INT);
-            return (T) Integer.valueOf(v.value.intValue());
+            return (T) Integer.valueOf(v.getInt());
         } else if (target == Short.class || target == short.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.SHORT);
-            return (T) Short.valueOf(v.value.shortValue());
+            return (T) Short.valueOf((short) v.getInt());
         } else if (target == Byte.class || target == byte.class) {
             final IntegerValue v = (IntegerValue) convertTo(Type.BYTE);
-            return (T) Byte.valueOf(v.value.byteValue());
+            return (T) Byte.valueOf((byte) v.getInt());
         } else if (target == Double.class || target == double.class) {
             final DoubleValue v = (DoubleValue) convertTo(Type.DOUBLE);
             return (T) Double.valueOf(v.getValue());
@@ -547,11 +724,11 @@ public class IntegerValue extends NumericValue {
         } else if (target == ByteBuffer.class) {
             return (T) ByteBuffer.wrap(serialize());
         } else if (target == String.class) {
-            return (T) value.toString();
+            return (T) getStringValue();
         } else if (target == BigInteger.class) {
-            return (T) new BigInteger(value.toByteArray());
+            return (T) toBigInteger();
         } else if (target == Object.class) {
-            return (T) value;
+            return (T) toBigInteger();
         }
 
         throw new XPathException(getExpression(), "cannot convert value of type " + Type.getTypeName(getType()) +
@@ -562,7 +739,7 @@ public class IntegerValue extends NumericValue {
     public int compareTo(final Object o) {
         final AtomicValue other = (AtomicValue) o;
         if (Type.subTypeOf(other.getType(), Type.INTEGER)) {
-            return value.compareTo(((IntegerValue) other).value);
+            return compareTo((IntegerValue) other);
         } else {
             return getType() > other.getType() ? 1 : -1;
         }
@@ -570,7 +747,15 @@ public class IntegerValue extends NumericValue {
 
     @Override
     public int hashCode() {
-        return value.hashCode();
+        if (bigValue != null) {
+            return bigValue.hashCode();
+        }
+        // the same as BigInteger#hashCode
+        final long magnitude = Math.abs(longValue);  // Long.MIN_VALUE has the correct unsigned magnitude
+        final int high = (int) (magnitude >>> 32);
+        final int low = (int) magnitude;
+        final int hash = high != 0 ? 31 * high + low : low;
+        return Long.signum(longValue) * hash;
     }
 
     //TODO(AR) this is not a very good serialization method, the size of the IntegerValue is unbounded and may not fit in 8 bytes.
@@ -583,7 +768,7 @@ public class IntegerValue extends NumericValue {
      */
     public byte[] serialize() {
         final byte[] buf = new byte[8];
-        final long l = value.longValue() - Long.MIN_VALUE;
+        final long l = getLong() - Long.MIN_VALUE;
         ByteConversion.longToByte(l, buf, 0);
         return buf;
     }
@@ -597,7 +782,7 @@ public class IntegerValue extends NumericValue {
      * @param buf the ByteBuffer to serialize to.
      */
     public void serialize(final ByteBuffer buf) throws IOException {
-        final long l = value.longValue() - Long.MIN_VALUE;
+        final long l = getLong() - Long.MIN_VALUE;
         ByteConversion.longToByte(l, buf);
     }
 
@@ -0,0 +1,442 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.Expression;
+import org.exist.xquery.XPathException;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+
+/**
+ * Batch-at-a-time kernels for aggregating and comparing sequences of numbers.
+ *
+ * The values of a sequence are read in batches into a column of primitive longs or
+ * doubles, depending on the type of its first value, and the kernels then loop over
+ * the column, instead of promoting each value and allocating a new value for every
+ * intermediate result.
+ *
+ * Only sequences of xs:integer values which fit into a long, or of xs:double and
+ * xs:untypedAtomic values, the latter cast to xs:double as the aggregate functions and
+ * the general comparisons do, are read into columns. Nodes are atomized first. For any
+ * other sequence, or if a value cannot be cast, the kernels return null and the caller
+ * has to evaluate generically, which then also reports any error.
+ */
+public final class NumericBatch {
+
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * Integers up to the magnitude of 2^53 can be represented exactly by a double.
+     */
+    private static final long LARGEST_EXACT_DOUBLE = 1L << 53;
+
+    private NumericBatch() {
+    }
+
+    /**
+     * Determines if a kernel may apply to the values of an expression with the
+     * given static type.
+     *
+     * @param staticType the type returned by the expression
+     * @return true if the values might be read into a column
+     */
+    public static boolean isApplicable(final int staticType) {
+        return Type.subTypeOfUnion(staticType, Type.NUMERIC)
+                || staticType == Type.UNTYPED_ATOMIC
+                || staticType == Type.ANY_ATOMIC_TYPE
+                || staticType == Type.ITEM
+                || Type.subTypeOf(staticType, Type.NODE);
+    }
+
+    /**
+     * Sums up the values, as fn:sum does.
+     *
+     * @param expression the expression to report in the result
+     * @param values a non-empty sequence
+     * @return the sum, or null if the values cannot be read into a column
+     * @throws XPathException if the values cannot be read
+     */
+    public static @Nullable AtomicValue sum(final Expression expression, final Sequence values) throws XPathException {
+        final Column column = Column.read(values);
+        if (column == null) {
+            return null;
+        }
+        return column.integers ? sumLongs(expression, column) : sumDoubles(expression, column);
+    }
+
+    /**
+     * Averages the values, as fn:avg does.
+     *
+     * @param expression the expression to report in the result
+     * @param values a non-empty sequence
+     * @return the average, or null if the values cannot be read into a column
+     * @throws XPathException if the values cannot be read
+     */
+    public static @Nullable AtomicValue avg(final Expression expression, final Sequence values) throws XPathException {
+        final Column column = Column.read(values);
+        if (column == null) {
+            return null;
+        }
+        final ComputableValue sum = column.integers ? sumLongs(expression, column) : sumDoubles(expression, column);
+        if (sum == null) {
+            return null;
+        }
+        return sum.div(new IntegerValue(expression, column.count));
+    }
+
+    /**
+     * Selects the smallest value, as fn:min does.
+     *
+     * @param expression the expression to report in the result
+     * @param values a non-empty sequence
+     * @return the smallest value, or null if the values cannot be read into a column
+     * @throws XPathException if the values cannot be read
+     */
+    public static @Nullable AtomicValue min(final Expression expression, final Sequence values) throws XPathException {
+        return extremum(expression, values, false);
+    }
+
+    /**
+     * Selects the largest value, as fn:max does.
+     *
+     * @param expression the expression to report in the result
+     * @param values a non-empty sequence
+     * @return the largest value, or null if the values cannot be read into a column
+     * @throws XPathException if the values cannot be read
+     */
+    public static @Nullable AtomicValue max(final Expression expression, final Sequence values) throws XPathException {
+        return extremum(expression, values, true);
+    }
+
+    /**
+     * Determines if the relation holds between any of the values and another value,
+     * as a general comparison does.
+     *
+     * @param values the values to compare
+     * @param relation the relation to test
+     * @param other the atomized value to compare with
+     * @param otherOnLeft true if the other value is the left operand of the relation
+     * @return true if the relation holds for any of the values, or null if the values
+     *     cannot be read into a column, or compared numerically with the other value
+     * @throws XPathException if the values cannot be read
+     */
+    public static @Nullable Boolean exists(final Sequence values, final Comparison relation, final AtomicValue other,
+            final boolean otherOnLeft) throws XPathException {
+        if (relation == Comparison.IN) {
+            return null;
+        }
+
+        final Column column;
+        if (other instanceof IntegerValue && ((IntegerValue) other).isLong()) {
+            column = Column.read(values);
+            final long otherLong = ((IntegerValue) other).getLong();
+            if (column != null && column.integers) {
+                return existsLong(column, relation, otherLong, otherOnLeft);
+            }
+            // the integer is compared with the doubles as a double, which is only exact up to 2^53
+            if (otherLong < -LARGEST_EXACT_DOUBLE || otherLong > LARGEST_EXACT_DOUBLE) {
+                return null;
+            }
+        } else if (other.getType() == Type.DOUBLE || other.getType() == Type.UNTYPED_ATOMIC) {
+            column = Column.read(values);
+        } else {
+            return null;
+        }
+        if (column == null) {
+            return null;
+        }
+
+        final boolean otherUntyped = other.getType() == Type.UNTYPED_ATOMIC;
+        final double otherDouble;
+        if (otherUntyped) {
+            try {
+                otherDouble = ((DoubleValue) other.convertTo(Type.DOUBLE)).getDouble();
+            } catch (final XPathException e) {
+                return null;
+            }
+        } else {
+            otherDouble = ((NumericValue) other).getDouble();
+        }
+        return existsDouble(column, relation, otherDouble, otherUntyped, otherOnLeft);
+    }
+
+    private static @Nullable IntegerValue sumLongs(final Expression expression, final Column column) throws XPathException {
+        long sum = 0;
+        BigInteger bigSum = null;
+        for (int length = column.length; length > 0; length = column.next()) {
+            final long[] longs = column.longs;
+            int i = 0;
+            if (bigSum == null) {
+                for (; i < length; i++) {
+                    final long value = longs[i];
+                    final long result = sum + value;
+                    if (((sum ^ result) & (value ^ result)) < 0) {
+                        bigSum = BigInteger.valueOf(sum);
+                        break;
+                    }
+                    sum = result;
+                }
+            }
+            for (; i < length; i++) {
+                bigSum = bigSum.add(BigInteger.valueOf(longs[i]));
+            }
+        }
+        if (column.length < 0) {
+            return null;
+        }
+        return bigSum != null ? new IntegerValue(expression, bigSum) : new IntegerValue(expression, sum);
+    }
+
+    private static @Nullable DoubleValue sumDoubles(final Expression expression, final Column column) throws XPathException {
+        // summed in order, to round as the generic evaluation does
+        double sum = column.doubles[0];
+        int start = 1;
+        for (int length = column.length; length > 0; length = column.next()) {
+            final double[] doubles = column.doubles;
+            for (int i = start; i < length; i++) {
+                sum += doubles[i];
+            }
+            start = 0;
+        }
+        if (column.length < 0) {
+            return null;
+        }
+        return new DoubleValue(expression, sum);
+    }
+
+    private static @Nullable AtomicValue extremum(final Expression expression, final Sequence values, final boolean max)
+            throws XPathException {
+        final Column column = Column.read(values);
+        if (column == null) {
+            return null;
+        }
+
+        if (column.integers) {
+            long extremum = column.longs[0];
+            for (int length = column.length; length > 0; length = column.next()) {
+                final long[] longs = column.longs;
+                for (int i = 0; i < length; i++) {
+                    extremum = max ? Math.max(extremum, longs[i]) : Math.min(extremum, longs[i]);
+                }
+            }
+            return column.length < 0 ? null : new IntegerValue(expression, extremum);
+        }
+
+        double extremum = column.doubles[0];
+        for (int length = column.length; length > 0; length = column.next()) {
+            final double[] doubles = column.doubles;
+            for (int i = 0; i < length; i++) {
+                extremum = max ? Math.max(extremum, doubles[i]) : Math.min(extremum, doubles[i]);
+            }
+        }
+        return column.length < 0 ? null : new DoubleValue(expression, extremum);
+    }
+
+    private static @Nullable Boolean existsLong(final Column column, final Comparison relation, final long other,
+            final boolean otherOnLeft) throws XPathException {
+        for (int length = column.length; length > 0; length = column.next()) {
+            final long[] longs = column.longs;
+            for (int i = 0; i < length; i++) {
+                final int cmp = otherOnLeft ? Long.compare(other, longs[i]) : Long.compare(longs[i], other);
+                if (holds(relation, cmp)) {
+                    return Boolean.TRUE;
+                }
+            }
+        }
+        return column.length < 0 ? null : Boolean.FALSE;
+    }
+
+    private static @Nullable Boolean existsDouble(final Column column, final Comparison relation, final double other,
+            final boolean otherUntyped, final boolean otherOnLeft) throws XPathException {
+        for (int length = column.length; length > 0; length = column.next()) {
+            // two untyped values are compared as strings
+            if (otherUntyped && column.untyped) {
+                return null;
+            }
+            // NaN never equals any value, but is unequal to all of them
+            if (Double.isNaN(other)) {
+                return relation == Comparison.NEQ;
+            }
+
+            if (column.integers) {
+                final long[] longs = column.longs;
+                for (int i = 0; i < length; i++) {
+                    // a long beyond 2^53 is not exactly representable as a double
+                    final int cmp = otherOnLeft ? -IntegerValue.compareToDouble(longs[i], other) : IntegerValue.compareToDouble(longs[i], other);
+                    if (holds(relation, cmp)) {
+                        return Boolean.TRUE;
+                    }
+                }
+            } else {
+                final double[] doubles = column.doubles;
+                for (int i = 0; i < length; i++) {
+                    final double value = doubles[i];
+                    if (Double.isNaN(value)) {
+                        if (relation == Comparison.NEQ) {
+                            return Boolean.TRUE;
+                        }
+                        continue;
+                    }
+                    final int cmp = otherOnLeft ? compare(other, value) : compare(value, other);
+                    if (holds(relation, cmp)) {
+                        return Boolean.TRUE;
+                    }
+                }
+            }
+        }
+        return column.length < 0 ? null : Boolean.FALSE;
+    }
+
+    /**
+     * Compares two doubles, neither of which is NaN, as numbers:
+     * unlike {@link Double#compare(double, double)}, 0.0 and -0.0 are equal.
+     */
+    private static int compare(final double d1, final double d2) {
+        return d1 < d2 ? -1 : (d1 > d2 ? 1 : 0);
+    }
+
+    private static boolean holds(final Comparison relation, final int cmp) {
+        return switch (relation) {
+            case EQ -> cmp == 0;
+            case NEQ -> cmp != 0;
+            case LT -> cmp < 0;
+            case LTEQ -> cmp <= 0;
+            case GT -> cmp > 0;
+            case GTEQ -> cmp >= 0;
+            default -> false;
+        };
+    }
+
+    /**
+     * A column which is filled with one batch of values at a time.
+     */
+    private static final class Column {
+        private static final int NOT_NUMERIC = -1;
+
+        private final SequenceIterator iterator;
+        private final boolean integers;
+        private final long[] longs;
+        private final double[] doubles;
+
+        /**
+         * The number of values in the current batch, 0 after the last batch,
+         * or {@link #NOT_NUMERIC} if a value could not be read into the column.
+         */
+        private int length;
+        private long count;
+        private boolean untyped;
+
+        private Column(final SequenceIterator iterator, final boolean integers, final int capacity) {
+            this.iterator = iterator;
+            this.integers = integers;
+            this.longs = integers ? new long[capacity] : null;
+            this.doubles = integers ? null : new double[capacity];
+        }
+
+        /**
+         * Reads the first batch of values from a sequence.
+         *
+         * @return the column, or null if the sequence is empty or the first batch
+         *     contains a value which cannot be read into the column
+         */
+        static @Nullable Column read(final Sequence values) throws XPathException {
+            final SequenceIterator iterator = values.iterate();
+            if (!iterator.hasNext()) {
+                return null;
+            }
+
+            final AtomicValue first = atomize(iterator.nextItem());
+            if (first == null) {
+                return null;
+            }
+            final boolean integers = first.getType() == Type.INTEGER;
+            final long itemCount = values.getItemCountLong();
+            final int capacity = itemCount > 0 && itemCount < BATCH_SIZE ? (int) itemCount : BATCH_SIZE;
+
+            final Column column = new Column(iterator, integers, capacity);
+            if (!column.add(0, first)) {
+                return null;
+            }
+            column.length = column.fill(1);
+            return column.length < 0 ? null : column;
+        }
+
+        /**
+         * Reads the next batch of values.
+         *
+         * @return the number of values read, 0 if there are no more values,
+         *     or {@link #NOT_NUMERIC}
+         */
+        int next() throws XPathException {
+            length = fill(0);
+            return length;
+        }
+
+        private int fill(final int offset) throws XPathException {
+            final int capacity = integers ? longs.length : doubles.length;
+            int i = offset;
+            while (i < capacity && iterator.hasNext()) {
+                final AtomicValue value = atomize(iterator.nextItem());
+                if (value == null || !add(i, value)) {
+                    return NOT_NUMERIC;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        private boolean add(final int i, final AtomicValue value) {
+            final int type = value.getType();
+            if (integers) {
+                if (type != Type.INTEGER || !((IntegerValue) value).isLong()) {
+                    return false;
+                }
+                longs[i] = ((IntegerValue) value).getLong();
+            } else if (type == Type.DOUBLE) {
+                doubles[i] = ((DoubleValue) value).getDouble();
+            } else if (type == Type.UNTYPED_ATOMIC) {
+                try {
+                    doubles[i] = ((DoubleValue) value.convertTo(Type.DOUBLE)).getDouble();
+                } catch (final XPathException e) {
+                    return false;
+                }
+                untyped = true;
+            } else {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        private static @Nullable AtomicValue atomize(final Item item) throws XPathException {
+            if (item instanceof AtomicValue) {
+                return (AtomicValue) item;
+            }
+            if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                return item.atomize();
+            }
+            return null;
+        }
+    }
+}
@@ -52,22 +52,58 @@ import java.util.stream.IntStream;
  * all order expressions are evaluated once for each item in the sequence
  * <b>while</b> items are added.
  *
+ * If only the first items of the sorted sequence are needed, a limit may be given.
+ * The sequence then periodically sorts the items added so far and discards those which
+ * cannot be amongst the first items, so that memory and sorting time are bounded by the
+ * limit rather than by the number of items added. As the types of the order values may
+ * still have to be coerced once all items are added, items are only discarded whilst the
+ * values of each order spec are of a single primitive type, and items whose order might
+ * change by a (lossy) coercion of xs:decimal values are kept.
+ *
  * @author wolf
  */
 public class OrderedValueSequence extends AbstractSequence {
 
+    /**
+     * Indicates that all items of the sequence are needed.
+     */
+    public static final int NO_LIMIT = -1;
+
+    /**
+     * The minimum number of items added between discarding items.
+     */
+    private static final int MIN_ITEMS_BETWEEN_COMPACTIONS = 64;
+
     private final List<OrderSpec> orderSpecs;
     private final List<BitSet> encounteredPrimitiveTypesForOrderSpecs;
     private Entry[] items;
     private int count = 0;
     private int state = 0;
 
+    private final int limit;
+    private int nextCompaction;
+
     // used to keep track of the type of added items.
     private int itemType = Type.ANY_TYPE;
     private Sequence contextSequence;
 
+    // the position of the next added item, which differs from count once items have been discarded
+    private int position = 0;
+
     public OrderedValueSequence(final List<OrderSpec> orderSpecs, final int size) {
+        this(orderSpecs, size, NO_LIMIT);
+    }
+
+    /**
+     * @param orderSpecs the order specs of the "order by" clause
+     * @param size the initial capacity
+     * @param limit the number of items which are needed from the start of the sorted sequence,
+     *     or {@link #NO_LIMIT} if all items are needed. Items after the limit may be discarded.
+     */
+    public OrderedValueSequence(final List<OrderSpec> orderSpecs, final int size, final int limit) {
         this.orderSpecs = orderSpecs;
+        this.limit = limit;
+        this.nextCompaction = limit > 0 ? limit + Math.max(limit, MIN_ITEMS_BETWEEN_COMPACTIONS) : Integer.MAX_VALUE;
         this.encounteredPrimitiveTypesForOrderSpecs = new ArrayList<>(orderSpecs.size());
         for (int i = 0; i < orderSpecs.size(); i++) {
             this.encounteredPrimitiveTypesForOrderSpecs.add(new BitSet(Type.ARRAY_ITEM + 1));
@@ -116,9 +152,41 @@ public class OrderedValueSequence extends AbstractSequence {
             System.arraycopy(items, 0, newItems, 0, count);
             items = newItems;
         }
-        items[count] = Entry.create(encounteredPrimitiveTypesForOrderSpecs, orderSpecs, item, count++, contextSequence);
+        items[count] = Entry.create(encounteredPrimitiveTypesForOrderSpecs, orderSpecs, item, position++, contextSequence);
+        count++;
         checkItemType(item.getType());
         setHasChanged();
+
+        if (count >= nextCompaction) {
+            compact();
+        }
+    }
+
+    /**
+     * Discards the items which cannot be amongst the first {@link #limit} items
+     * of the sorted sequence.
+     */
+    private void compact() {
+        for (final BitSet encounteredPrimitiveTypesForOrderSpec : encounteredPrimitiveTypesForOrderSpecs) {
+            if (encounteredPrimitiveTypesForOrderSpec.cardinality() > 1) {
+                // the values have to be coerced before they can be compared
+                nextCompaction = Integer.MAX_VALUE;
+                return;
+            }
+        }
+
+        Arrays.sort(items, 0, count);
+
+        final Entry last = items[limit - 1];
+        int retained = limit;
+        for (int i = limit; i < count; i++) {
+            if (last.mayEqualAfterCoercion(items[i])) {
+                items[retained++] = items[i];
+            }
+        }
+        Arrays.fill(items, retained, count, null);
+        count = retained;
+        nextCompaction = count + Math.max(limit, MIN_ITEMS_BETWEEN_COMPACTIONS);
     }
 
     @Override
@@ -481,60 +549,107 @@ public class OrderedValueSequence extends AbstractSequence {
         public int compareTo(final Entry other) {
             int cmp = 0;
             for (int i = 0; i < values.size(); i++) {
-                try {
-                    final AtomicValue a = values.get(i);
-                    final AtomicValue b = other.values.get(i);
-
-                    final boolean aIsEmpty = (a.isEmpty() || (Type.subTypeOfUnion(a.getType(), Type.NUMERIC) && ((NumericValue) a).isNaN()));
-                    final boolean bIsEmpty = (b.isEmpty() || (Type.subTypeOfUnion(b.getType(), Type.NUMERIC) && ((NumericValue) b).isNaN()));
-                    if (aIsEmpty) {
-                        if (bIsEmpty)
+                if (isEmpty(values.get(i)) && isEmpty(other.values.get(i))) {
+                    // both values are empty
+                    return Constants.EQUAL;
+                }
+                cmp = compareValues(i, other);
+                if (cmp != Constants.EQUAL) {
+                    break;
+                }
+            }
+            // if the sort keys are equal, we need to order by the original position in the result sequence
+            if (cmp == Constants.EQUAL) {
+                cmp = (pos > other.pos ? Constants.SUPERIOR : (pos == other.pos ? Constants.EQUAL : Constants.INFERIOR));
+            }
+            return cmp;
+        }
+
+        private static boolean isEmpty(final AtomicValue value) {
+            return value.isEmpty() || (Type.subTypeOfUnion(value.getType(), Type.NUMERIC) && ((NumericValue) value).isNaN());
+        }
+
+        private int compareValues(final int i, final Entry other) {
+            int cmp = Constants.EQUAL;
+            try {
+                final AtomicValue a = values.get(i);
+                final AtomicValue b = other.values.get(i);
+
+                final boolean aIsEmpty = isEmpty(a);
+                final boolean bIsEmpty = isEmpty(b);
+                if (aIsEmpty) {
+                    if (bIsEmpty) {
                         // both values are empty
-                        {
-                            return Constants.EQUAL;
-                        } else if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
-                            cmp = Constants.INFERIOR;
-                        } else {
-                            cmp = Constants.SUPERIOR;
-                        }
-                    } else if (bIsEmpty) {
-                        // we don't need to check for equality since we know a is not empty
-                        if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
-                            cmp = Constants.SUPERIOR;
-                        } else {
-                            cmp = Constants.INFERIOR;
-                        }
-                    } else if (a == AtomicValue.EMPTY_VALUE && b != AtomicValue.EMPTY_VALUE) {
-                        if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
-                            cmp = Constants.INFERIOR;
-                        } else {
-                            cmp = Constants.SUPERIOR;
-                        }
-                    } else if (b == AtomicValue.EMPTY_VALUE && a != AtomicValue.EMPTY_VALUE) {
-                        if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
-                            cmp = Constants.SUPERIOR;
-                        } else {
-                            cmp = Constants.INFERIOR;
-                        }
+                        return Constants.EQUAL;
+                    } else if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
+                        cmp = Constants.INFERIOR;
+                    } else {
+                        cmp = Constants.SUPERIOR;
+                    }
+                } else if (bIsEmpty) {
+                    // we don't need to check for equality since we know a is not empty
+                    if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
+                        cmp = Constants.SUPERIOR;
                     } else {
-                        cmp = a.compareTo(orderSpecs.get(i).getCollator(), b);
+                        cmp = Constants.INFERIOR;
                     }
-                    if ((orderSpecs.get(i).getModifiers() & OrderSpec.DESCENDING_ORDER) != 0) {
-                        cmp = cmp * -1;
+                } else if (a == AtomicValue.EMPTY_VALUE && b != AtomicValue.EMPTY_VALUE) {
+                    if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
+                        cmp = Constants.INFERIOR;
+                    } else {
+                        cmp = Constants.SUPERIOR;
                     }
-                    if (cmp != Constants.EQUAL) {
-                        break;
+                } else if (b == AtomicValue.EMPTY_VALUE && a != AtomicValue.EMPTY_VALUE) {
+                    if ((orderSpecs.get(i).getModifiers() & OrderSpec.EMPTY_LEAST) != 0) {
+                        cmp = Constants.SUPERIOR;
+                    } else {
+                        cmp = Constants.INFERIOR;
                     }
-                } catch (final XPathException e) {
+                } else {
+                    cmp = a.compareTo(orderSpecs.get(i).getCollator(), b);
                 }
-            }
-            // if the sort keys are equal, we need to order by the original position in the result sequence
-            if (cmp == Constants.EQUAL) {
-                cmp = (pos > other.pos ? Constants.SUPERIOR : (pos == other.pos ? Constants.EQUAL : Constants.INFERIOR));
+                if ((orderSpecs.get(i).getModifiers() & OrderSpec.DESCENDING_ORDER) != 0) {
+                    cmp = cmp * -1;
+                }
+            } catch (final XPathException e) {
+                return Constants.EQUAL;
             }
             return cmp;
         }
 
+        /**
+         * Determines if an entry which is ordered after this entry might be ordered
+         * before it once the values are coerced by {@link #coerceTypesForOrderBy()}.
+         * This is only the case if the first values in which the entries differ are
+         * xs:decimal values which become equal when they are cast to xs:float or xs:double,
+         * as all other coercions preserve the order of the values of a single type.
+         *
+         * @param other an entry which is ordered after this entry
+         *
+         * @return true if the order of the entries might change
+         */
+        boolean mayEqualAfterCoercion(final Entry other) {
+            for (int i = 0; i < values.size(); i++) {
+                final AtomicValue a = values.get(i);
+                final AtomicValue b = other.values.get(i);
+                if (isEmpty(a) && isEmpty(b)) {
+                    return false;
+                }
+                if (compareValues(i, other) != Constants.EQUAL) {
+                    if (!Type.subTypeOf(a.getType(), Type.DECIMAL) || !Type.subTypeOf(b.getType(), Type.DECIMAL)) {
+                        return false;
+                    }
+                    try {
+                        return a.convertTo(Type.FLOAT).compareTo(null, b.convertTo(Type.FLOAT)) == Constants.EQUAL
+                                || a.convertTo(Type.DOUBLE).compareTo(null, b.convertTo(Type.DOUBLE)) == Constants.EQUAL;
+                    } catch (final XPathException e) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
         @Override
         public String toString() {
             if (values == null) {
@@ -68,6 +68,7 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
@@ -807,6 +808,28 @@ try {
         doStoredQuery(true, true);
     }
 
+    @Test
+    public void storedQueryResultCache() throws IOException {
+        doPut("<value>1</value>", "result-cache.xml", HttpStatus.CREATED_201);
+        doPut("declare option exist:result-cache \"yes\";\n" +
+                "util:uuid() || ' ' || doc('/db/test/result-cache.xml')/value", "result-cache.xq", HttpStatus.CREATED_201);
+
+        final String first = doGetQueryResult(getCollectionUri() + "/result-cache.xq?p=1");
+        assertTrue("Server returned response: " + first, first.endsWith(" 1\r\n"));
+
+        // cached
+        assertEquals(first, doGetQueryResult(getCollectionUri() + "/result-cache.xq?p=1"));
+
+        // different parameters
+        assertNotEquals(first, doGetQueryResult(getCollectionUri() + "/result-cache.xq?p=2"));
+
+        // invalidated by the update of the document
+        doPut("<value>2</value>", "result-cache.xml", HttpStatus.CREATED_201);
+        final String updated = doGetQueryResult(getCollectionUri() + "/result-cache.xq?p=1");
+        assertTrue("Server returned response: " + updated, updated.endsWith(" 2\r\n"));
+        assertEquals(updated, doGetQueryResult(getCollectionUri() + "/result-cache.xq?p=1"));
+    }
+
     @Test
     public void execQueryWithNoAuth() throws IOException {
         doPut(AUTH_QUERY, "auth.xq", HttpStatus.CREATED_201);
@@ -1564,6 +1587,21 @@ try {
         }
     }
 
+    private String doGetQueryResult(final String uri) throws IOException {
+        final HttpURLConnection connect = getConnection(uri);
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + credentials);
+            connect.setRequestMethod("GET");
+            connect.connect();
+
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+            return readResponse(connect.getInputStream());
+        } finally {
+            connect.disconnect();
+        }
+    }
+
     private int uploadData() throws IOException {
         final HttpURLConnection connect = getConnection(getResourceUri());
         try {
@@ -0,0 +1,175 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LatencyHistogram;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the hand-off of brokers to waiting threads.
+ */
+public class BrokerPoolQueueTest {
+
+    private static final int MAX_BROKERS = 2;
+    private static final long BROKER_WAIT_TIMEOUT = 500;
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(config(), true, true);
+
+    private static Properties config() {
+        final Properties properties = new Properties();
+        properties.put(BrokerPoolConstants.PROPERTY_MAX_CONNECTIONS, MAX_BROKERS);
+        properties.put(BrokerPoolConstants.PROPERTY_BROKER_WAIT_TIMEOUT, BROKER_WAIT_TIMEOUT);
+        return properties;
+    }
+
+    @Test
+    public void timeoutWhenSaturated() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = leaseAll(pool, releaseLatch);
+        try {
+            assertEquals(0, pool.available());
+
+            final long start = System.currentTimeMillis();
+            try (final DBBroker broker = pool.getBroker()) {
+                fail("Expected a timeout whilst waiting for a broker");
+            } catch (final EXistException e) {
+                assertTrue(System.currentTimeMillis() - start >= BROKER_WAIT_TIMEOUT);
+            }
+            assertEquals(1, pool.getBrokerWaitTimeouts());
+        } finally {
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+        }
+
+        // the pool is usable again
+        try (final DBBroker broker = pool.getBroker()) {
+            assertNotNull(broker);
+        }
+        assertEquals(MAX_BROKERS, pool.available());
+
+        final LatencyHistogram.Snapshot waitTime = pool.getBrokerWaitTime().snapshot();
+        assertTrue(waitTime.getCount() >= MAX_BROKERS + 2);
+        assertTrue(waitTime.getMaxMicros() >= BROKER_WAIT_TIMEOUT * 1000);
+    }
+
+    @Test
+    public void waitersAreServedInOrder() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = leaseAll(pool, releaseLatch);
+
+        final int waiterCount = 4;
+        final List<Integer> served = Collections.synchronizedList(new ArrayList<>());
+        final List<Thread> waiters = new ArrayList<>();
+        try {
+            for (int i = 0; i < waiterCount; i++) {
+                final int id = i;
+                final Thread waiter = new Thread(() -> {
+                    try (final DBBroker broker = pool.getBroker()) {
+                        served.add(id);
+                    } catch (final EXistException e) {
+                        served.add(-1);
+                    }
+                }, "waiter-" + i);
+                waiters.add(waiter);
+                waiter.start();
+
+                // ensure that each waiter is queued before the next arrives
+                final long deadline = System.currentTimeMillis() + 5000;
+                while (pool.getBrokerQueueLength() < i + 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertEquals(i + 1, pool.getBrokerQueueLength());
+            }
+        } finally {
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+        }
+
+        for (final Thread waiter : waiters) {
+            waiter.join();
+        }
+        // two brokers are handed over at a time, so only the order of the pairs is deterministic
+        assertEquals(waiterCount, served.size());
+        assertEquals(Set.of(0, 1), new HashSet<>(served.subList(0, 2)));
+        assertEquals(Set.of(2, 3), new HashSet<>(served.subList(2, 4)));
+        assertEquals(0, pool.getBrokerQueueLength());
+    }
+
+    @Test
+    public void tryGetDoesNotWait() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final List<Thread> holders = leaseAll(pool, releaseLatch);
+        try {
+            final long start = System.currentTimeMillis();
+            assertFalse(pool.tryGet(Optional.empty()).isPresent());
+            assertTrue(System.currentTimeMillis() - start < BROKER_WAIT_TIMEOUT);
+            assertEquals(0, pool.getBrokerWaitTimeouts());
+        } finally {
+            releaseLatch.countDown();
+            for (final Thread holder : holders) {
+                holder.join();
+            }
+        }
+
+        try (final DBBroker broker = pool.tryGet(Optional.empty()).orElseThrow()) {
+            // a thread which holds a broker is given the same broker
+            try (final DBBroker nested = pool.tryGet(Optional.empty()).orElseThrow()) {
+                assertSame(broker, nested);
+            }
+        }
+        assertEquals(MAX_BROKERS, pool.available());
+    }
+
+    private static List<Thread> leaseAll(final BrokerPool pool, final CountDownLatch releaseLatch) throws InterruptedException {
+        final CountDownLatch acquiredLatch = new CountDownLatch(MAX_BROKERS);
+        final List<Thread> holders = new ArrayList<>();
+        for (int i = 0; i < MAX_BROKERS; i++) {
+            final Thread holder = new Thread(new BrokerPoolTest.BrokerUser(pool, acquiredLatch, releaseLatch), "brokerUser-" + i);
+            holders.add(holder);
+            holder.start();
+        }
+        acquiredLatch.await();
+        return holders;
+    }
+}
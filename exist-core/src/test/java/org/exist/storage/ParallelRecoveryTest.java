@@ -0,0 +1,129 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.recovery.RecoveryManager;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.util.io.InputStreamUtil;
+import org.exist.xmldb.XmldbURI;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.exist.samples.Samples.SAMPLES;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test recovery after a forced database corruption,
+ * with the redo pass performed by several threads.
+ */
+public class ParallelRecoveryTest {
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(createConfigProperties(), true, true);
+
+    private static Properties createConfigProperties() {
+        final Properties configProperties = new Properties();
+        configProperties.put(RecoveryManager.PROPERTY_RECOVERY_REDO_THREADS, 4);
+        return configProperties;
+    }
+
+    @After
+    public void cleanup() {
+        // restore the flag in-case of a test failure
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void storeCommit_removeNoCommit() throws PermissionDeniedException, DatabaseConfigurationException, IOException, LockException, SAXException, EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Collection test2;
+            try (final Txn transaction = transact.beginTransaction()) {
+                test2 = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI2);
+                broker.saveCollection(transaction, test2);
+
+                for (final String sampleName : SAMPLES.getShakespeareXmlSampleNames()) {
+                    final String sample;
+                    try (final InputStream is = SAMPLES.getShakespeareSample(sampleName)) {
+                        sample = InputStreamUtil.readString(is, UTF_8);
+                    }
+                    broker.storeDocument(transaction, XmldbURI.create(sampleName), new StringInputSource(sample), MimeType.XML_TYPE, test2);
+                }
+
+                broker.storeDocument(transaction, XmldbURI.create("test_string.xml"), new StringInputSource("<test><para>Hello World!</para></test>"), MimeType.XML_TYPE, test2);
+
+                transact.commit(transaction);
+            }
+
+            // the following transaction will not be committed. It will thus be rolled back by recovery
+            final Txn transaction = transact.beginTransaction();
+            test2.removeXMLResource(transaction, broker, XmldbURI.create("test_string.xml"));
+        }
+
+        // flush journal
+        pool.getJournalManager().get().flush(true, false);
+
+        // restart with no Journal checkpoint, forces recovery to run at startup
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.restart();
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        final BrokerPool recoveredPool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = recoveredPool.get(Optional.of(recoveredPool.getSecurityManager().getSystemSubject()))) {
+            for (final String sampleName : SAMPLES.getShakespeareXmlSampleNames()) {
+                try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append(sampleName), LockMode.READ_LOCK)) {
+                    assertNotNull("Document '" + sampleName + "' should have been recovered", lockedDoc);
+                }
+            }
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append("test_string.xml"), LockMode.READ_LOCK)) {
+                assertNotNull("Removal of 'test_string.xml' should have been undone", lockedDoc);
+            }
+
+            try (final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI2.append("no-such-document.xml"), LockMode.READ_LOCK)) {
+                assertNull(lockedDoc);
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BrokerPool;
+import org.exist.storage.BrokerPoolConstants;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.PropertiesBuilder;
+import org.exist.xquery.TerminatedException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests on the B+tree when pages are read via memory mapped regions.
+ */
+public class MemoryMappedBTreeTest {
+
+    private final static byte BTREE_TEST_FILE_ID = 0x7F;
+    private final static short BTREE_TEST_FILE_VERSION = Short.MIN_VALUE;
+
+    private static final int COUNT = 5000;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            PropertiesBuilder.propertiesBuilder()
+                    .set(BrokerPoolConstants.PROPERTY_PAGE_IO, BrokerPoolConstants.PAGE_IO_MMAP)
+                    .build(),
+            true,
+            true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void memoryMappedPageIO() {
+        assertTrue(existEmbeddedServer.getBrokerPool().isMemoryMappedPageIO());
+    }
+
+    @Test
+    public void readAfterReopen() throws DBException, IOException, TerminatedException {
+        final Path file = temporaryFolder.newFile("test.dbx").toPath();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            // small regions, so that many regions are mapped and some pages straddle two regions
+            btree.setMappedRegionSize(pool.getPageSize() * 3 + 7);
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("K" + i), i);
+            }
+            btree.flush();
+
+            // pages which have been written since the file was opened are also visible
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("K" + i)));
+            }
+        }
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.setMappedRegionSize(pool.getPageSize() * 3 + 7);
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("K" + i)));
+            }
+
+            final int[] count = { 0 };
+            btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value("K")), (value, pointer) -> {
+                count[0]++;
+                return true;
+            });
+            assertEquals(COUNT, count[0]);
+        }
+    }
+
+    @Test
+    public void closeAndRemove() throws DBException, IOException, TerminatedException {
+        final Path file = temporaryFolder.newFile("remove.dbx").toPath();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("K" + i), i);
+            }
+            btree.flush();
+        }
+
+        final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file);
+        btree.setMappedRegionSize(pool.getPageSize() * 3 + 7);
+        assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+        for (int i = 1; i <= COUNT; i++) {
+            assertEquals(i, btree.findValue(new Value("K" + i)));
+        }
+        assertTrue(btree.getMappedRegionCount() > 0);
+
+        // the regions are released before the file is deleted, which some platforms require
+        btree.closeAndRemove();
+        assertEquals(0, btree.getMappedRegionCount());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void closeWhilstReading() throws Exception {
+        final Path file = temporaryFolder.newFile("close.dbx").toPath();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        try (final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("K" + i), i);
+            }
+            btree.flush();
+        }
+
+        final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file);
+        btree.setMappedRegionSize(pool.getPageSize() * 3 + 7);
+        assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+        final long pages = btree.getFileHeader().getTotalCount();
+
+        // readers keep reading pages from the mapped regions whilst the file is closed,
+        // they may fail once it is closed, but must never read from a released region
+        final int readers = 4;
+        final CountDownLatch reading = new CountDownLatch(readers);
+        final AtomicLong pagesRead = new AtomicLong();
+        final ExecutorService executorService = Executors.newFixedThreadPool(readers);
+        try {
+            final Future<?>[] futures = new Future<?>[readers];
+            for (int i = 0; i < readers; i++) {
+                futures[i] = executorService.submit(() -> {
+                    reading.countDown();
+                    try {
+                        while (true) {
+                            for (long pageNum = 1; pageNum < pages; pageNum++) {
+                                btree.getPage(pageNum).read();
+                                pagesRead.incrementAndGet();
+                            }
+                        }
+                    } catch (final IOException e) {
+                        // the file was closed
+                    }
+                    return null;
+                });
+            }
+
+            assertTrue(reading.await(10, TimeUnit.SECONDS));
+            while (pagesRead.get() < pages) {
+                Thread.sleep(1);
+            }
+            btree.close();
+
+            for (final Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(0, btree.getMappedRegionCount());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.btree;
+
+import org.exist.storage.BrokerPool;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests on the page I/O of {@link Paged}.
+ */
+public class PagedTest {
+
+    private final static short PAGED_TEST_FILE_VERSION = Short.MIN_VALUE;
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int PAGES_PER_WRITER = 8;
+    private static final int STABLE_PAGES = 32;
+    private static final int ROUNDS = 200;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Pages are read by several threads, while other pages are written
+     * at the same time by several threads.
+     */
+    @Test
+    public void concurrentReadWrite() throws Exception {
+        final Path file = temporaryFolder.newFile("paged.dbx").toPath();
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+
+        try (final TestPaged paged = new TestPaged(pool, file)) {
+            final int writtenPages = WRITERS * PAGES_PER_WRITER;
+            final long[] pageNums = new long[writtenPages + STABLE_PAGES];
+            for (int i = 0; i < pageNums.length; i++) {
+                pageNums[i] = paged.newPage().getPageNum();
+                paged.write(pageNums[i], 0);
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+            try {
+                final CountDownLatch start = new CountDownLatch(1);
+                final List<Future<Void>> tasks = new ArrayList<>();
+                for (int w = 0; w < WRITERS; w++) {
+                    final int writer = w;
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        for (int round = 1; round <= ROUNDS; round++) {
+                            for (int i = 0; i < PAGES_PER_WRITER; i++) {
+                                final long pageNum = pageNums[writer * PAGES_PER_WRITER + i];
+                                paged.write(pageNum, round);
+                                // the page is only written by this thread
+                                assertEquals(round, paged.read(pageNum));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (int r = 0; r < READERS; r++) {
+                    tasks.add(executor.submit(() -> {
+                        start.await();
+                        for (int round = 0; round < ROUNDS; round++) {
+                            for (int i = 0; i < STABLE_PAGES; i++) {
+                                assertEquals(0, paged.read(pageNums[writtenPages + i]));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+
+                start.countDown();
+                for (final Future<Void> task : tasks) {
+                    task.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            for (int i = 0; i < writtenPages; i++) {
+                assertEquals(ROUNDS, paged.read(pageNums[i]));
+            }
+            for (int i = 0; i < STABLE_PAGES; i++) {
+                assertEquals(0, paged.read(pageNums[writtenPages + i]));
+            }
+        }
+    }
+
+    /**
+     * A paged file which fills whole pages with a byte derived from
+     * the page number and a version.
+     */
+    private static class TestPaged extends Paged {
+
+        TestPaged(final BrokerPool pool, final Path file) throws DBException {
+            super(pool, PAGED_TEST_FILE_VERSION);
+            setFile(file);
+            create();
+        }
+
+        Page newPage() throws IOException {
+            return getFreePage();
+        }
+
+        void write(final long pageNum, final int version) throws IOException {
+            final byte[] data = new byte[getFileHeader().getWorkSize()];
+            Arrays.fill(data, fill(pageNum, version));
+            writeValue(getPage(pageNum), data);
+        }
+
+        /**
+         * @return the version of the page, checking that the page is not torn
+         */
+        int read(final long pageNum) throws IOException {
+            final byte[] data = getPage(pageNum).read();
+            assertEquals(getFileHeader().getWorkSize(), data.length);
+            for (final byte b : data) {
+                assertEquals(data[0], b);
+            }
+            for (int version = 0; version <= ROUNDS; version++) {
+                if (fill(pageNum, version) == data[0]) {
+                    return version;
+                }
+            }
+            fail("Unexpected content of page " + pageNum + ": " + data[0]);
+            return -1;
+        }
+
+        private static byte fill(final long pageNum, final int version) {
+            return (byte) (pageNum * 31 + version);
+        }
+
+        @Override
+        public FileHeader createFileHeader(final int pageSize) {
+            return new FileHeader(1024, pageSize) {
+            };
+        }
+
+        @Override
+        public PageHeader createPageHeader() {
+            return new PageHeader() {
+            };
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.DefaultCacheManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the database with the W-TinyLFU cache policy for all files except dom.dbx.
+ */
+public class CachePolicyTest {
+
+    private static final XmldbURI TEST_COLLECTION = XmldbURI.create("/db/cache-policy-test");
+    private static final int DOCUMENTS = 200;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(config(), true, true);
+
+    private static Properties config() {
+        final Properties properties = new Properties();
+        properties.put(DefaultCacheManager.PROPERTY_CACHE_POLICY, DefaultCacheManager.CACHE_POLICY_W_TINY_LFU);
+        final Map<String, String> fileCachePolicies = new HashMap<>();
+        fileCachePolicies.put("dom.dbx", DefaultCacheManager.CACHE_POLICY_LRU);
+        properties.put(DefaultCacheManager.PROPERTY_CACHE_POLICY_FILES, fileCachePolicies);
+        return properties;
+    }
+
+    @Test
+    public void cachePolicies() {
+        final DefaultCacheManager cacheManager = existEmbeddedServer.getBrokerPool().getCacheManager();
+        assertEquals(DefaultCacheManager.CACHE_POLICY_W_TINY_LFU, cacheManager.getCachePolicy("collections.dbx"));
+        assertEquals(DefaultCacheManager.CACHE_POLICY_W_TINY_LFU, cacheManager.getCachePolicy("structure.dbx"));
+        assertEquals(DefaultCacheManager.CACHE_POLICY_LRU, cacheManager.getCachePolicy("dom.dbx"));
+
+        assertEquals(WTinyLFUCache.class, cacheManager.createDataCache("values.dbx", 16, 0.0, 1.0).getClass());
+        assertEquals(LRUCache.class, cacheManager.createDataCache("dom.dbx", 16, 0.0, 1.0).getClass());
+        assertEquals(BTreeCache.class, cacheManager.createBTreeCache("dom.dbx", 16, 1.5, 0).getClass());
+    }
+
+    @Test
+    public void storeAndQuery() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.getOrCreateCollection(transaction, TEST_COLLECTION)) {
+
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final String xml = "<doc id='" + i + "'><title>Title " + i + "</title><para>" + "text ".repeat(i) + "</para></doc>";
+                broker.storeDocument(transaction, XmldbURI.create("doc" + i + ".xml"), new StringInputSource(xml), MimeType.XML_TYPE, collection);
+            }
+            broker.saveCollection(transaction, collection);
+
+            transaction.commit();
+        }
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            for (int i = 0; i < 3; i++) {
+                final Sequence result = xquery.execute(broker, "count(collection('" + TEST_COLLECTION + "')//title[starts-with(., 'Title 1')])", null);
+                assertEquals(111, result.itemAt(0).toJavaObject(Integer.class).intValue());
+            }
+        }
+    }
+}
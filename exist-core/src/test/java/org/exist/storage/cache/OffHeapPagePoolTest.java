@@ -0,0 +1,240 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OffHeapPagePoolTest {
+
+    private static final int PAGE_SIZE = 4096;
+
+    @Test
+    public void putAndRead() {
+        final OffHeapPagePool pool = new OffHeapPagePool(16 * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = pool.registerFile();
+        final byte[] dst = new byte[PAGE_SIZE];
+
+        assertFalse(pool.read(fileId, 1, dst));
+        assertEquals(0, pool.getAllocatedSize());
+
+        pool.put(fileId, 1, page(1, 0));
+        assertTrue(pool.read(fileId, 1, dst));
+        assertArrayEquals(page(1, 0), dst);
+
+        // overwrite
+        pool.put(fileId, 1, page(1, 1));
+        assertTrue(pool.read(fileId, 1, dst));
+        assertArrayEquals(page(1, 1), dst);
+
+        // pages of another file are distinct
+        final int otherFileId = pool.registerFile();
+        assertFalse(pool.read(otherFileId, 1, dst));
+
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getFails());
+        assertEquals(PAGE_SIZE, pool.getUsedSize());
+        assertEquals(16 * PAGE_SIZE, pool.getAllocatedSize());
+    }
+
+    @Test
+    public void clockEviction() {
+        final int frames = 8;
+        final OffHeapPagePool pool = new OffHeapPagePool(frames * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = pool.registerFile();
+        final byte[] dst = new byte[PAGE_SIZE];
+
+        for (int i = 0; i < frames; i++) {
+            pool.put(fileId, i, page(i, 0));
+        }
+        assertEquals(frames * PAGE_SIZE, pool.getUsedSize());
+
+        // clear the reference bits of all frames, then reference page 0
+        pool.put(fileId, frames, page(frames, 0));
+        assertTrue(pool.read(fileId, frames, dst));
+        assertEquals(1, pool.getEvictions());
+        assertTrue(pool.read(fileId, 1, dst));
+
+        for (int i = frames + 1; i < frames + 4; i++) {
+            pool.put(fileId, i, page(i, 0));
+        }
+        assertEquals(frames * PAGE_SIZE, pool.getUsedSize());
+        assertEquals(4, pool.getEvictions());
+
+        // the recently referenced page survived
+        assertTrue(pool.read(fileId, 1, dst));
+        assertArrayEquals(page(1, 0), dst);
+    }
+
+    @Test
+    public void invalidateFile() {
+        final OffHeapPagePool pool = new OffHeapPagePool(16 * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = pool.registerFile();
+        final int otherFileId = pool.registerFile();
+        for (int i = 0; i < 4; i++) {
+            pool.put(fileId, i, page(i, 0));
+            pool.put(otherFileId, i, page(i, 1));
+        }
+
+        pool.invalidateFile(fileId);
+
+        final byte[] dst = new byte[PAGE_SIZE];
+        for (int i = 0; i < 4; i++) {
+            assertFalse(pool.read(fileId, i, dst));
+            assertTrue(pool.read(otherFileId, i, dst));
+            assertArrayEquals(page(i, 1), dst);
+        }
+        assertEquals(4 * PAGE_SIZE, pool.getUsedSize());
+
+        // the freed frames are reused
+        for (int i = 0; i < 4; i++) {
+            pool.put(fileId, 100 + i, page(i, 2));
+        }
+        assertEquals(0, pool.getEvictions());
+    }
+
+    @Test
+    public void shrink() {
+        final int framesPerSlab = OffHeapPagePool.SLAB_SIZE / PAGE_SIZE;
+        final OffHeapPagePool pool = new OffHeapPagePool(2L * OffHeapPagePool.SLAB_SIZE, PAGE_SIZE);
+        final int fileId = pool.registerFile();
+        for (int i = 0; i < framesPerSlab + 10; i++) {
+            pool.put(fileId, i, page(i, 0));
+        }
+        assertEquals(2L * OffHeapPagePool.SLAB_SIZE, pool.getAllocatedSize());
+
+        pool.shrink(OffHeapPagePool.SLAB_SIZE);
+        assertEquals(OffHeapPagePool.SLAB_SIZE, pool.getAllocatedSize());
+        assertEquals((long) framesPerSlab * PAGE_SIZE, pool.getUsedSize());
+
+        final byte[] dst = new byte[PAGE_SIZE];
+        assertTrue(pool.read(fileId, 0, dst));
+        assertArrayEquals(page(0, 0), dst);
+        assertFalse(pool.read(fileId, framesPerSlab, dst));
+
+        // and grows again
+        pool.put(fileId, framesPerSlab, page(framesPerSlab, 0));
+        assertTrue(pool.read(fileId, framesPerSlab, dst));
+        assertEquals(2L * OffHeapPagePool.SLAB_SIZE, pool.getAllocatedSize());
+
+        pool.shrink(0);
+        assertEquals(0, pool.getAllocatedSize());
+        assertEquals(0, pool.getUsedSize());
+        assertFalse(pool.read(fileId, 0, dst));
+    }
+
+    @Test
+    public void replaceAndRemoveMany() {
+        final int frames = 64;
+        final OffHeapPagePool pool = new OffHeapPagePool(frames * PAGE_SIZE, PAGE_SIZE);
+        final int[] fileIds = { pool.registerFile(), pool.registerFile(), pool.registerFile() };
+        final Map<Long, Integer> versions = new HashMap<>();
+        final Random random = new Random(42);
+        final byte[] dst = new byte[PAGE_SIZE];
+        for (int i = 0; i < 50_000; i++) {
+            final int file = random.nextInt(fileIds.length);
+            final int pageNum = random.nextInt(500);
+            final long key = ((long) file << 32) | pageNum;
+            final int op = random.nextInt(100);
+            if (op == 0) {
+                pool.invalidateFile(fileIds[file]);
+                versions.keySet().removeIf(k -> (k >>> 32) == file);
+            } else if (op < 40) {
+                final int version = random.nextInt(100);
+                pool.put(fileIds[file], pageNum, page(pageNum, version));
+                versions.put(key, version);
+                assertTrue(pool.read(fileIds[file], pageNum, dst));
+                assertArrayEquals(page(pageNum, version), dst);
+            } else if (pool.read(fileIds[file], pageNum, dst)) {
+                // a page which is found is the last version that was put
+                assertTrue(versions.containsKey(key));
+                assertArrayEquals(page(pageNum, versions.get(key)), dst);
+            }
+        }
+
+        int found = 0;
+        for (int file = 0; file < fileIds.length; file++) {
+            for (int pageNum = 0; pageNum < 500; pageNum++) {
+                if (pool.read(fileIds[file], pageNum, dst)) {
+                    found++;
+                }
+            }
+        }
+        assertEquals(found * PAGE_SIZE, pool.getUsedSize());
+        assertTrue(found <= frames);
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final OffHeapPagePool pool = new OffHeapPagePool(64 * PAGE_SIZE, PAGE_SIZE);
+        final int fileId = pool.registerFile();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    final Random random = new Random(seed);
+                    final byte[] dst = new byte[PAGE_SIZE];
+                    for (int i = 0; i < 20_000; i++) {
+                        final int pageNum = random.nextInt(256);
+                        if (pool.read(fileId, pageNum, dst)) {
+                            // a page read from the pool is never torn or the wrong page
+                            final int version = dst[1];
+                            assertArrayEquals(page(pageNum, version), dst);
+                        } else {
+                            pool.put(fileId, pageNum, page(pageNum, random.nextInt(4)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(pool.getUsedSize() <= 64 * PAGE_SIZE);
+    }
+
+    private static byte[] page(final int pageNum, final int version) {
+        final byte[] page = new byte[PAGE_SIZE];
+        Arrays.fill(page, (byte) (pageNum + version));
+        page[0] = (byte) pageNum;
+        page[1] = (byte) version;
+        return page;
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WTinyLFUCacheTest {
+
+    @Test
+    public void addAndGet() {
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final TestItem item = new TestItem(1);
+        cache.add(item);
+        assertSame(item, cache.get(1));
+        assertSame(item, cache.get(item));
+        assertNull(cache.get(2));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getFails());
+
+        cache.remove(item);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void capacityIsRespected() {
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", 100, 0.0, 1.0, Cache.CacheType.DATA);
+        final List<TestItem> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            final TestItem item = new TestItem(i);
+            items.add(item);
+            cache.add(item);
+            assertTrue(cache.getUsedBuffers() <= 100);
+        }
+        assertEquals(100, cache.getUsedBuffers());
+
+        // every evicted item must have been synced
+        int synced = 0;
+        for (final TestItem item : items) {
+            if (item.syncedForUnload) {
+                synced++;
+                assertNull(cache.get(item.getKey()));
+            }
+        }
+        assertEquals(900, synced);
+    }
+
+    @Test
+    public void hotItemsSurviveScan() {
+        final int size = 1000;
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", size, 0.0, 1.0, Cache.CacheType.DATA);
+
+        // a hot set of half the cache, accessed repeatedly
+        final int hot = size / 2;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < hot; i++) {
+                if (cache.get(i) == null) {
+                    cache.add(new TestItem(i));
+                }
+            }
+        }
+
+        // a large scan, each page is only accessed once
+        for (int i = 100_000; i < 110_000; i++) {
+            if (cache.get(i) == null) {
+                cache.add(new TestItem(i));
+            }
+        }
+
+        int survivors = 0;
+        for (int i = 0; i < hot; i++) {
+            if (cache.get(i) != null) {
+                survivors++;
+            }
+        }
+        assertTrue("hot items should survive the scan, survivors: " + survivors, survivors >= hot * 0.9);
+
+        // whereas an LRU cache is flushed by the same scan
+        final LRUCache<TestItem> lru = new LRUCache<>("test", size, 0.0, 1.0, Cache.CacheType.DATA);
+        for (int i = 0; i < hot; i++) {
+            lru.add(new TestItem(i));
+        }
+        for (int i = 100_000; i < 110_000; i++) {
+            lru.add(new TestItem(i));
+        }
+        for (int i = 0; i < hot; i++) {
+            assertNull(lru.get(i));
+        }
+    }
+
+    @Test
+    public void pinnedItemsAreNotEvicted() {
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final List<TestItem> pinned = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final TestItem item = new TestItem(i);
+            item.allowUnload = false;
+            pinned.add(item);
+            cache.add(item);
+        }
+
+        // the cache may temporarily exceed its size, rather than evict a pinned item
+        cache.add(new TestItem(10));
+        for (final TestItem item : pinned) {
+            assertSame(item, cache.get(item.getKey()));
+        }
+
+        for (final TestItem item : pinned) {
+            item.allowUnload = true;
+        }
+        cache.add(new TestItem(11));
+        assertTrue(cache.getUsedBuffers() <= 10);
+    }
+
+    @Test
+    public void leafPagesAreEvictedBeforeInnerPages() {
+        final WTinyLFUCache<TestBTreeItem> cache = new WTinyLFUCache<>("test", 50, 0.0, 1.0, Cache.CacheType.BTREE);
+        for (int i = 0; i < 10; i++) {
+            cache.add(new TestBTreeItem(i, true));
+        }
+        for (int i = 10; i < 1000; i++) {
+            cache.add(new TestBTreeItem(i, false));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.get(i));
+        }
+    }
+
+    @Test
+    public void resize() {
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", 100, 0.0, 1.0, Cache.CacheType.DATA);
+        for (int i = 0; i < 100; i++) {
+            cache.add(new TestItem(i));
+        }
+        cache.resize(200);
+        assertEquals(200, cache.getBuffers());
+        for (int i = 100; i < 200; i++) {
+            cache.add(new TestItem(i));
+        }
+        assertEquals(200, cache.getUsedBuffers());
+
+        cache.resize(50);
+        assertEquals(50, cache.getBuffers());
+        assertEquals(50, cache.getUsedBuffers());
+    }
+
+    @Test
+    public void flush() {
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", 10, 0.0, 1.0, Cache.CacheType.DATA);
+        final TestItem item = new TestItem(1);
+        cache.add(item);
+        assertFalse(cache.hasDirtyItems());
+        item.dirty = true;
+        assertTrue(cache.hasDirtyItems());
+        assertTrue(cache.flush());
+        assertFalse(cache.hasDirtyItems());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final int size = 256;
+        final WTinyLFUCache<TestItem> cache = new WTinyLFUCache<>("test", size, 0.0, 1.0, Cache.CacheType.DATA);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    final Random random = new Random(seed);
+                    for (int i = 0; i < 50_000; i++) {
+                        final long key = random.nextInt(1024);
+                        final TestItem cached = cache.get(key);
+                        if (cached == null) {
+                            cache.add(new TestItem(key));
+                        } else {
+                            assertEquals(key, cached.getKey());
+                        }
+                        if (i % 100 == 0) {
+                            cache.remove(new TestItem(random.nextInt(1024)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.getUsedBuffers() <= size);
+    }
+
+    @Test
+    public void frequencySketch() {
+        final FrequencySketch sketch = new FrequencySketch(64);
+        assertEquals(0, sketch.frequency(42));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+        assertEquals(5, sketch.frequency(42));
+
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(7));
+
+        // aging halves the counters
+        for (int i = 0; i < sketch.getWidth() * 10; i++) {
+            sketch.increment(1_000_000 + i);
+        }
+        assertTrue(sketch.frequency(7) < FrequencySketch.MAX_FREQUENCY);
+    }
+
+    private static class TestItem implements Cacheable {
+        private final long key;
+        private int refCount = 0;
+        private int timestamp = 0;
+        volatile boolean dirty = false;
+        volatile boolean allowUnload = true;
+        volatile boolean syncedForUnload = false;
+
+        TestItem(final long key) {
+            this.key = key;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            if (syncJournal) {
+                syncedForUnload = true;
+            }
+            final boolean wasDirty = dirty;
+            dirty = false;
+            return wasDirty;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return allowUnload;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+    }
+
+    private static class TestBTreeItem extends TestItem implements BTreeCacheable {
+        private final boolean innerPage;
+
+        TestBTreeItem(final long key, final boolean innerPage) {
+            super(key);
+            this.innerPage = innerPage;
+        }
+
+        @Override
+        public boolean isInnerPage() {
+            return innerPage;
+        }
+    }
+}
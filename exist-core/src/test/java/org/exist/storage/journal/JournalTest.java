@@ -26,6 +26,7 @@ import org.easymock.CaptureType;
 import org.exist.EXistException;
 import org.exist.scheduler.Scheduler;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.txn.Checkpoint;
 import org.exist.util.Configuration;
 import org.exist.util.FileUtils;
 import org.exist.util.ReadOnlyException;
@@ -39,9 +40,14 @@ import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -287,6 +293,8 @@ public class JournalTest {
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH);
         expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
 
         replay(mockBrokerPool, mockConfiguration);
@@ -331,6 +339,8 @@ public class JournalTest {
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH);
         expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
 
         replay(mockBrokerPool, mockConfiguration);
@@ -373,6 +383,8 @@ public class JournalTest {
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
         expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH);
         expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
 
         replay(mockBrokerPool, mockConfiguration);
@@ -412,6 +424,118 @@ public class JournalTest {
         verify(mockBrokerPool, mockConfiguration);
     }
 
+    @Test
+    public void groupCommit() throws EXistException, IOException, ReadOnlyException, InterruptedException, ExecutionException {
+        final BrokerPool mockBrokerPool = mock(BrokerPool.class);
+        final Configuration mockConfiguration = mock(Configuration.class);
+        final Scheduler mockScheduler = createNiceMock(Scheduler.class);
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, Journal.DEFAULT_SYNC_ON_COMMIT)).andReturn(true);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY)).andReturn(10L);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH);
+        expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
+
+        replay(mockBrokerPool, mockConfiguration);
+
+        final Path tempJournalDir = TEMPORARY_FOLDER.newFolder().toPath();
+        Files.createDirectories(tempJournalDir);
+
+        final Journal journal = new Journal(mockBrokerPool, tempJournalDir);
+        journal.initialize();
+        journal.switchFiles();
+
+        final int committers = 8;
+        final ExecutorService executorService = Executors.newFixedThreadPool(committers);
+        try {
+            final List<Future<Lsn>> futures = new ArrayList<>();
+            for (int i = 0; i < committers; i++) {
+                final long txnId = i;
+                futures.add(executorService.submit(() -> {
+                    final Checkpoint entry = new Checkpoint(txnId);
+                    journal.writeToLog(entry);
+                    journal.groupCommit(entry.getLsn());
+                    return entry.getLsn();
+                }));
+            }
+
+            for (final Future<Lsn> future : futures) {
+                final Lsn committedLsn = future.get();
+                assertTrue(journal.lastWrittenLsn().compareTo(committedLsn) >= 0);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        // every commit was made durable by a group sync, and at least some were batched together
+        assertEquals(committers, journal.getGroupSyncedCommits());
+        assertTrue(journal.getGroupSyncs() >= 1);
+        assertTrue(journal.getGroupSyncs() <= committers);
+
+        journal.shutdown(committers, false);
+
+        verify(mockBrokerPool, mockConfiguration);
+    }
+
+    @Test
+    public void groupCommitBatchesDuringSync() throws EXistException, IOException, ReadOnlyException, InterruptedException, ExecutionException {
+        final BrokerPool mockBrokerPool = mock(BrokerPool.class);
+        final Configuration mockConfiguration = mock(Configuration.class);
+        final Scheduler mockScheduler = createNiceMock(Scheduler.class);
+        expect(mockBrokerPool.getConfiguration()).andReturn(mockConfiguration);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SYNC_ON_COMMIT, Journal.DEFAULT_SYNC_ON_COMMIT)).andReturn(true);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_JOURNAL_DIR)).andReturn(null);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_MIN, Journal.DEFAULT_MIN_SIZE)).andReturn(Journal.DEFAULT_MIN_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_SIZE_LIMIT, Journal.DEFAULT_MAX_SIZE)).andReturn(Journal.DEFAULT_MAX_SIZE);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_DELAY, Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_DELAY);
+        expect(mockConfiguration.getProperty(Journal.PROPERTY_RECOVERY_GROUP_COMMIT_MAX_BATCH, Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH)).andReturn(Journal.DEFAULT_GROUP_COMMIT_MAX_BATCH);
+        expect(mockBrokerPool.getScheduler()).andReturn(mockScheduler);
+
+        replay(mockBrokerPool, mockConfiguration);
+
+        final Path tempJournalDir = TEMPORARY_FOLDER.newFolder().toPath();
+        Files.createDirectories(tempJournalDir);
+
+        final Journal journal = new Journal(mockBrokerPool, tempJournalDir);
+        journal.initialize();
+        journal.switchFiles();
+
+        // without a delay, batches only form from the commits which arrive whilst a sync is in progress
+        final int committers = 16;
+        final int commitsPerCommitter = 50;
+        final ExecutorService executorService = Executors.newFixedThreadPool(committers);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < committers; i++) {
+                final long txnId = i;
+                futures.add(executorService.submit(() -> {
+                    for (int j = 0; j < commitsPerCommitter; j++) {
+                        final Checkpoint entry = new Checkpoint(txnId);
+                        journal.writeToLog(entry);
+                        journal.groupCommit(entry.getLsn());
+                    }
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        final int commits = committers * commitsPerCommitter;
+        assertEquals(commits, journal.getGroupSyncedCommits());
+        assertTrue(journal.getGroupSyncs() < commits);
+
+        journal.shutdown(committers, false);
+
+        verify(mockBrokerPool, mockConfiguration);
+    }
+
     private static Path createTempDirWithFiles(final List<String> fileNames) throws IOException {
         final Path tempFolder = TEMPORARY_FOLDER.newFolder().toPath();
         Files.createDirectories(tempFolder);
@@ -0,0 +1,203 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.Lock.LockType;
+import org.exist.storage.lock.LockContentionMonitor.ContendedLock;
+import org.exist.storage.lock.LockTable.LockEventType;
+import org.exist.util.LatencyHistogram;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LockTableContentionTest {
+
+    @Test
+    public void recentEvents() {
+        final LockTable lockTable = new LockTable(false, 0, 64, 1, 0);
+        lockTable.attempt(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.acquired(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.released(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+
+        final List<LockEventRingBuffer.Event> events = lockTable.getRecentEvents();
+        assertEquals(3, events.size());
+        assertEquals(LockEventType.Attempt, events.get(0).getEventType());
+        assertEquals(LockEventType.Acquired, events.get(1).getEventType());
+        assertEquals(LockEventType.Released, events.get(2).getEventType());
+        for (final LockEventRingBuffer.Event event : events) {
+            assertEquals("/db/test", event.getId());
+            assertEquals(LockType.COLLECTION, event.getLockType());
+            assertEquals(LockMode.READ_LOCK, event.getLockMode());
+            assertEquals(Thread.currentThread().getName(), event.getThreadName());
+        }
+    }
+
+    @Test
+    public void eventBufferWrapsAround() {
+        final LockEventRingBuffer eventBuffer = new LockEventRingBuffer(64);
+        final int capacity = eventBuffer.getCapacity();
+        final Thread thread = Thread.currentThread();
+        for (int i = 0; i < capacity * 10; i++) {
+            eventBuffer.record(LockEventType.Attempt, i, i, "doc" + i, LockType.DOCUMENT, LockMode.WRITE_LOCK, thread);
+        }
+
+        final List<LockEventRingBuffer.Event> events = eventBuffer.snapshot();
+        assertTrue(events.size() <= capacity);
+        assertEquals("doc" + (capacity * 10 - 1), events.get(events.size() - 1).getId());
+    }
+
+    @Test
+    public void eventBufferDisabled() {
+        final LockTable lockTable = new LockTable(false, 0, 0, 1, 0);
+        lockTable.attempt(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        assertTrue(lockTable.getRecentEvents().isEmpty());
+    }
+
+    @Test
+    public void acquiredOnlyTracedWithStackDepth() {
+        final LockTable lockTable = new LockTable(false, 0, 64, 1, 0);
+        lockTable.attempt(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.acquired(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        assertTrue(lockTable.getAcquired().isEmpty());
+        lockTable.released(1, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+
+        // the wait time is still sampled without tracing
+        assertEquals(1, lockTable.getWaitTimes().get(LockType.COLLECTION).getCount());
+
+        lockTable.setTraceStackDepth(5);
+        lockTable.attempt(2, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        lockTable.acquired(2, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        final LockTable.LockCountTraces traces = lockTable.getAcquired().get("/db/test").get(LockType.COLLECTION)
+                .get(LockMode.READ_LOCK).get(Thread.currentThread().getName());
+        assertEquals(1, traces.getCount());
+        assertEquals(1, traces.getTraces().size());
+        lockTable.released(2, "/db/test", LockType.COLLECTION, LockMode.READ_LOCK);
+        assertTrue(lockTable.getAcquired().isEmpty());
+    }
+
+    @Test
+    public void concurrentEvents() throws Exception {
+        final LockTable lockTable = new LockTable(false, 0, 1024, 1, 0);
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final String id = "/db/test/" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        lockTable.attempt(i, id, LockType.DOCUMENT, LockMode.WRITE_LOCK);
+                        lockTable.acquired(i, id, LockType.DOCUMENT, LockMode.WRITE_LOCK);
+                        lockTable.released(i, id, LockType.DOCUMENT, LockMode.WRITE_LOCK);
+                    }
+                }));
+            }
+
+            // read whilst writing
+            long previous = Long.MIN_VALUE;
+            for (final LockEventRingBuffer.Event event : lockTable.getRecentEvents()) {
+                assertTrue(event.getTimestamp() >= previous);
+                previous = event.getTimestamp();
+            }
+
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads * 10_000, lockTable.getWaitTimes().get(LockType.DOCUMENT).getCount());
+        assertTrue(lockTable.getAcquired().isEmpty());
+    }
+
+    @Test
+    public void sampling() {
+        final LockTable lockTable = new LockTable(false, 0, 0, 4, 1_000_000);
+        for (int i = 0; i < 100; i++) {
+            lockTable.attempt(i, "BTREE", LockType.BTREE, LockMode.READ_LOCK);
+            lockTable.acquired(i, "BTREE", LockType.BTREE, LockMode.READ_LOCK);
+            lockTable.released(i, "BTREE", LockType.BTREE, LockMode.READ_LOCK);
+        }
+
+        final Map<LockType, LatencyHistogram.Snapshot> waitTimes = lockTable.getWaitTimes();
+        assertEquals(25, waitTimes.get(LockType.BTREE).getCount());
+        assertFalse(waitTimes.containsKey(LockType.COLLECTION));
+        assertTrue(lockTable.getTopContended(10).isEmpty());
+    }
+
+    @Test
+    public void contendedDocumentLock() throws Exception {
+        final LockManager lockManager = new LockManager(16);
+        final XmldbURI docUri = XmldbURI.create("/db/contended/doc.xml");
+
+        // warm up, so that only the wait of the second thread counts as contended
+        try (final ManagedDocumentLock lock = lockManager.acquireDocumentWriteLock(docUri)) {
+            assertNotNull(lock);
+        }
+        lockManager.getLockTable().getContentionMonitor().reset();
+
+        final CountDownLatch attempting = new CountDownLatch(1);
+        final Thread waiter;
+        try (final ManagedDocumentLock lock = lockManager.acquireDocumentWriteLock(docUri)) {
+            waiter = new Thread(() -> {
+                attempting.countDown();
+                try (final ManagedDocumentLock waiterLock = lockManager.acquireDocumentWriteLock(docUri)) {
+                    assertNotNull(waiterLock);
+                } catch (final Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            waiter.start();
+            attempting.await();
+            Thread.sleep(50);
+        }
+        waiter.join();
+
+        final List<ContendedLock> contended = lockManager.getLockTable().getTopContended(10);
+        assertEquals(1, contended.size());
+        assertEquals(docUri.toString(), contended.get(0).getId());
+        assertEquals(LockType.DOCUMENT, contended.get(0).getLockType());
+        assertEquals(1, contended.get(0).getCount());
+        assertTrue(contended.get(0).getMaxWaitMicros() >= 1000);
+
+        // only the first acquisition of the second thread is sampled
+        final LatencyHistogram.Snapshot documentWaitTime = lockManager.getLockTable().getWaitTimes().get(LockType.DOCUMENT);
+        assertEquals(1, documentWaitTime.getCount());
+        assertTrue(documentWaitTime.getPercentile99Micros() >= 1000);
+
+        lockManager.getLockTable().getContentionMonitor().reset();
+        assertTrue(lockManager.getLockTable().getTopContended(10).isEmpty());
+        assertTrue(lockManager.getLockTable().getWaitTimes().isEmpty());
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Test;
+import uk.ac.ic.doc.slurp.multilock.MultiLock;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the intention locking of ancestor Collections
+ * in Multi-Writer/Multi-Reader mode.
+ */
+public class PathsMultiWriterTest {
+
+    private static final int CONCURRENCY_LEVEL = 16;
+    private static final int TIMEOUT = 500;
+
+    private static final XmldbURI COLLECTION_A = XmldbURI.create("/db/apps/a");
+    private static final XmldbURI COLLECTION_B = XmldbURI.create("/db/apps/b");
+
+    @Test
+    public void siblingWritersDoNotBlock() throws Exception {
+        final LockManager lockManager = new LockManager(null, CONCURRENCY_LEVEL, true, TIMEOUT);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (final ManagedCollectionLock lockA = lockManager.acquireCollectionWriteLock(COLLECTION_A)) {
+            final Future<Boolean> writerB = executor.submit(() -> {
+                try (final ManagedCollectionLock lockB = lockManager.acquireCollectionWriteLock(COLLECTION_B)) {
+                    return lockManager.isCollectionLockedForWrite(COLLECTION_B);
+                }
+            });
+            assertTrue(writerB.get(5, TimeUnit.SECONDS));
+
+            // the ancestors are only intention locked
+            final MultiLock apps = lockManager.getPathLock("/db/apps");
+            assertEquals(0, apps.getWriteLockCount());
+            assertEquals(1, apps.getIntentionWriteLockCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void siblingWritersBlockInSingleWriterMode() throws Exception {
+        final LockManager lockManager = new LockManager(null, CONCURRENCY_LEVEL, false, TIMEOUT);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writerB;
+            try (final ManagedCollectionLock lockA = lockManager.acquireCollectionWriteLock(COLLECTION_A)) {
+                writerB = executor.submit(() -> {
+                    try (final ManagedCollectionLock lockB = lockManager.acquireCollectionWriteLock(COLLECTION_B)) {
+                        return null;
+                    }
+                });
+                try {
+                    writerB.get(200, TimeUnit.MILLISECONDS);
+                    fail("Writer of a sibling Collection should be blocked");
+                } catch (final TimeoutException e) {
+                    // expected
+                }
+            }
+            writerB.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ancestorReaderBlocksDescendantWriter() throws Exception {
+        final LockManager lockManager = new LockManager(null, CONCURRENCY_LEVEL, true, TIMEOUT);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> writer;
+            try (final ManagedCollectionLock readLock = lockManager.acquireCollectionReadLock(XmldbURI.create("/db/apps"))) {
+                writer = executor.submit(() -> {
+                    try (final ManagedCollectionLock writeLock = lockManager.acquireCollectionWriteLock(COLLECTION_A)) {
+                        return null;
+                    }
+                });
+                try {
+                    writer.get(200, TimeUnit.MILLISECONDS);
+                    fail("Writer of a descendant Collection should be blocked by a reader of its ancestor");
+                } catch (final TimeoutException e) {
+                    // expected
+                }
+            }
+            writer.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void nestedAcquisitionAvoidsDeadlock() throws Exception {
+        final LockManager lockManager = new LockManager(null, CONCURRENCY_LEVEL, true, TIMEOUT);
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Boolean> ab = executor.submit(() -> lockInOrder(lockManager, barrier, COLLECTION_A, COLLECTION_B));
+            final Future<Boolean> ba = executor.submit(() -> lockInOrder(lockManager, barrier, COLLECTION_B, COLLECTION_A));
+
+            final boolean abAcquired = ab.get(10, TimeUnit.SECONDS);
+            final boolean baAcquired = ba.get(10, TimeUnit.SECONDS);
+
+            // at least one of the threads must have given up, and so allowed the other to proceed
+            assertFalse(abAcquired && baAcquired);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // all locks were released
+        assertEquals(0, lockManager.getPathLock("/db").getIntentionWriteLockCount());
+        assertEquals(0, lockManager.getPathLock(COLLECTION_A.toString()).getWriteLockCount());
+        assertEquals(0, lockManager.getPathLock(COLLECTION_B.toString()).getWriteLockCount());
+    }
+
+    @Test
+    public void nestedAcquisitionOfDescendant() throws Exception {
+        final LockManager lockManager = new LockManager(null, CONCURRENCY_LEVEL, true, TIMEOUT);
+        try (final ManagedCollectionLock parentLock = lockManager.acquireCollectionWriteLock(COLLECTION_A);
+             final ManagedCollectionLock childLock = lockManager.acquireCollectionWriteLock(COLLECTION_A.append("child"))) {
+            assertTrue(lockManager.isCollectionLockedForWrite(COLLECTION_A.append("child")));
+        }
+    }
+
+    private static boolean lockInOrder(final LockManager lockManager, final CyclicBarrier barrier,
+            final XmldbURI first, final XmldbURI second) throws Exception {
+        try (final ManagedCollectionLock firstLock = lockManager.acquireCollectionWriteLock(first)) {
+            barrier.await();
+            try (final ManagedCollectionLock secondLock = lockManager.acquireCollectionWriteLock(second)) {
+                return true;
+            } catch (final LockException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.exist.Database;
+import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+import org.exist.storage.journal.Lsn;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class ParallelRedoTest {
+
+    @Test
+    public void redoPreservesOrderPerStorageFile() throws LogException, InterruptedException {
+        final Database mockDatabase = createNiceMock(Database.class);
+        expect(mockDatabase.getId()).andReturn("test").anyTimes();
+        replay(mockDatabase);
+
+        final Map<Integer, List<Integer>> redone = new ConcurrentHashMap<>();
+        final int storageFiles = 5;
+        final int entriesPerFile = 10_000;
+
+        try (final ParallelRedo parallelRedo = new ParallelRedo(mockDatabase, 3)) {
+            for (int i = 0; i < entriesPerFile; i++) {
+                for (int storageFileId = 0; storageFileId < storageFiles; storageFileId++) {
+                    parallelRedo.redo(new TestLoggable(storageFileId, i, redone));
+                }
+            }
+            parallelRedo.awaitDrained();
+        }
+
+        assertEquals(storageFiles, redone.size());
+        for (int storageFileId = 0; storageFileId < storageFiles; storageFileId++) {
+            final List<Integer> sequence = redone.get(storageFileId);
+            assertEquals(entriesPerFile, sequence.size());
+            for (int i = 0; i < entriesPerFile; i++) {
+                assertEquals(i, sequence.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void entryWithoutStorageFileIsBarrier() throws LogException, InterruptedException {
+        final Database mockDatabase = createNiceMock(Database.class);
+        expect(mockDatabase.getId()).andReturn("test").anyTimes();
+        replay(mockDatabase);
+
+        final Map<Integer, List<Integer>> redone = new ConcurrentHashMap<>();
+        final AtomicInteger redoneBeforeBarrier = new AtomicInteger(-1);
+
+        try (final ParallelRedo parallelRedo = new ParallelRedo(mockDatabase, 2)) {
+            for (int i = 0; i < 1000; i++) {
+                parallelRedo.redo(new TestLoggable(i % 2, i, redone));
+            }
+
+            parallelRedo.redo(new TestLoggable(Loggable.NO_STORAGE_FILE_ID, -1, redone) {
+                @Override
+                public void redo() {
+                    redoneBeforeBarrier.set(redone.get(0).size() + redone.get(1).size());
+                }
+            });
+        }
+
+        // all previously submitted entries must have been redone before the barrier entry
+        assertEquals(1000, redoneBeforeBarrier.get());
+    }
+
+    @Test
+    public void redoFailureIsReported() throws InterruptedException {
+        final Database mockDatabase = createNiceMock(Database.class);
+        expect(mockDatabase.getId()).andReturn("test").anyTimes();
+        replay(mockDatabase);
+
+        final Map<Integer, List<Integer>> redone = new ConcurrentHashMap<>();
+        final TestLoggable failing = new TestLoggable(1, 1, redone) {
+            @Override
+            public void redo() throws LogException {
+                throw new LogException("failed");
+            }
+        };
+
+        try (final ParallelRedo parallelRedo = new ParallelRedo(mockDatabase, 2)) {
+            parallelRedo.redo(new TestLoggable(0, 0, redone));
+            parallelRedo.redo(failing);
+            parallelRedo.awaitDrained();
+            fail("Expected LogException");
+        } catch (final LogException e) {
+            // expected
+        }
+    }
+
+    private static class TestLoggable extends AbstractLoggable {
+        private final int storageFileId;
+        private final int sequence;
+        private final Map<Integer, List<Integer>> redone;
+
+        TestLoggable(final int storageFileId, final int sequence, final Map<Integer, List<Integer>> redone) {
+            super((byte) 0, 1);
+            this.storageFileId = storageFileId;
+            this.sequence = sequence;
+            this.redone = redone;
+            setLsn(new Lsn((short) 0, sequence + 1));
+        }
+
+        @Override
+        public int getStorageFileId() {
+            return storageFileId;
+        }
+
+        @Override
+        public void redo() throws LogException {
+            redone.computeIfAbsent(storageFileId, k -> Collections.synchronizedList(new ArrayList<>())).add(sequence);
+        }
+
+        @Override
+        public void write(final ByteBuffer out) {
+        }
+
+        @Override
+        public void read(final ByteBuffer in) {
+        }
+
+        @Override
+        public int getLogSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.CostModel;
+import org.exist.xquery.Expression;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the statistics based decisions of the query optimizer.
+ */
+public class CostModelTest {
+
+    private static final int ITEMS = 200;
+
+    private static Path configFile;
+
+    static {
+        try {
+            configFile = Paths.get(CostModelTest.class.getResource("conf.xml").toURI());
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(null, configFile, null, true, true);
+
+    @BeforeClass
+    public static void storeData() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder data = new StringBuilder("<items>");
+        for (int i = 0; i < ITEMS; i++) {
+            data.append("<item id='").append(i).append("'><name>item ").append(i).append("</name>");
+            for (int j = 0; j < 3; j++) {
+                data.append("<tag>t").append(j).append("</tag>");
+            }
+            data.append("</item>");
+        }
+        data.append("</items>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection test = broker.getOrCreateCollection(transaction, XmldbURI.ROOT_COLLECTION_URI.append("test"));
+            broker.storeDocument(transaction, XmldbURI.create("items.xml"), new StringInputSource(data.toString()), MimeType.XML_TYPE, test);
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void statistics() throws EXistException, QName.IllegalQNameException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CostModel costModel = new CostModel(new XQueryContext(pool));
+            assertTrue(costModel.isEnabled());
+            assertEquals(ITEMS, costModel.getNodeCount(new QName("item")));
+            assertEquals(ITEMS * 3, costModel.getNodeCount(new QName("tag")));
+            assertEquals(0, costModel.getNodeCount(new QName("unknown")));
+
+            final IndexStatistics statistics = (IndexStatistics) pool.getIndexManager().getIndexById(IndexStatistics.ID);
+            assertEquals(ITEMS, statistics.getAverageFanout(new QName("item")), 0.001);
+            assertEquals(3, statistics.getAverageFanout(new QName("tag")), 0.001);
+            assertEquals(1, statistics.getAverageFanout(new QName("items")), 0.001);
+        }
+    }
+
+    @Test
+    public void reorderPredicates() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "collection('/db/test')/items/item[count(tag) = 3][@id = '42']";
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(context, query);
+            final String plan = ExpressionDumper.dump((Expression) compiled);
+            // the comparison which can use the index is evaluated first
+            assertTrue(plan, plan.indexOf("@id") < plan.indexOf("count("));
+
+            final Sequence result = xquery.execute(broker, compiled, null);
+            assertEquals(1, result.getItemCount());
+            assertEquals("42", xquery.execute(broker, query + "/string(@id)", null).getStringValue());
+        }
+    }
+
+    @Test
+    public void sameResultsWithoutOptimizer() throws EXistException, PermissionDeniedException, XPathException {
+        final String[] queries = {
+                "collection('/db/test')//item[tag = 't1'][starts-with(name, 'item 1')]",
+                "collection('/db/test')//item[starts-with(name, 'item 1')][@id = ('10', '11', '150')]",
+                "collection('/db/test')/items/item[name][@id = '7']/tag[. = 't2']",
+                "collection('/db/test')/items/item[@id = '5']",
+                "for $i in collection('/db/test')/items/item[@id = ('1', '2')] return $i/tag[. = 't0']"
+        };
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            for (final String query : queries) {
+                final Sequence optimized = xquery.execute(broker, query, null);
+                final Sequence unoptimized = xquery.execute(broker, "declare option exist:optimize 'enable=no'; " + query, null);
+                assertEquals(query, unoptimized.getItemCount(), optimized.getItemCount());
+                for (int i = 0; i < optimized.getItemCount(); i++) {
+                    assertEquals(query, unoptimized.itemAt(i).getStringValue(), optimized.itemAt(i).getStringValue());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+public class ExpressionSpecializerTest {
+
+    private static final int THRESHOLD = 2;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder().put(XQueryContext.PROPERTY_SPECIALIZATION_THRESHOLD, THRESHOLD).build(), true, true);
+
+    private static final String ITEMS = "let $items := <items>{\n" +
+            "    for $i in 1 to 50\n" +
+            "    return <item n=\"{$i}\" s=\"{codepoints-to-string(97 + $i mod 26)}\" t=\"{$i mod 7}\"/>\n" +
+            "}</items>/item\n" +
+            "return ";
+
+    @Test
+    public void specializedAfterThreshold() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = pool.getXQueryService().compile(new XQueryContext(pool), ITEMS + "count($items[@n > 25])");
+            final Predicate predicate = predicates(compiled).get(0);
+
+            for (int i = 1; i <= THRESHOLD; i++) {
+                assertEquals(i == THRESHOLD, isSpecializedAfterExecution(broker, compiled, predicate, "25"));
+            }
+        }
+    }
+
+    @Test
+    public void deoptimizedWhenTypesVary() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // the comparison is specialized for integers, but the items are decimals
+            final CompiledXQuery compiled = pool.getXQueryService().compile(new XQueryContext(pool),
+                    "count((1 to 20)[. > 5] ! xs:decimal(.)[. > 10])");
+            final List<Predicate> predicates = predicates(compiled);
+            assertEquals(2, predicates.size());
+
+            for (int i = 1; i <= THRESHOLD; i++) {
+                assertEquals("10", pool.getXQueryService().execute(broker, compiled, null).getStringValue());
+            }
+            assertTrue(predicates.get(0).isSpecialized());
+            assertFalse(predicates.get(1).isSpecialized());
+        }
+    }
+
+    @Test
+    public void generalComparisons() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n > 25");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n = 10");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n != 10");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "25 >= @n");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n = 3.0");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n < 1e1");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@s = 'c'");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@s < 'k'");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@t = @s");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@t > @n");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@t = (1, 2)");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "number(@n) > 40e0");
+        assertSameAsGeneric("", "(1 to 100)[%s]", ". mod 7 = 0");
+        assertSameAsGeneric("", "(1 to 100)[%s]", ". > 90");
+        assertSameAsGeneric("", "(1 to 20)[%s]", ". = 10.0");
+        assertSameAsGeneric("", "(for $i in 1 to 20 return $i div 2)[%s]", ". = 5");
+        assertSameAsGeneric("", "(9223372036854775807, 9223372036854775808, 1)[%s]", ". > 9223372036854775806");
+        assertSameAsGeneric("", "(xs:double('NaN'), 1e0, 2e0)[%s]", ". != 1e0");
+        assertSameAsGeneric("", "(xs:double('NaN'), 1e0, 2e0)[%s]", ". = .");
+        assertSameAsGeneric("", "(xs:double('-0'), 0e0, 1)[%s]", ". < 0");
+        assertSameAsGeneric("", "('a', 'b', 'c')[%s]", ". > 'a'");
+        assertSameAsGeneric("", "('a', xs:untypedAtomic('b'), 'c')[%s]", ". = 'b'");
+    }
+
+    @Test
+    public void valueComparisons() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "xs:integer(@n) eq 7");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "xs:integer(@n) lt 7");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@s eq 'c'");
+        assertSameAsGeneric("", "(1 to 100)[%s]", ". ge 95");
+        assertSameAsGeneric("", "(xs:double('NaN'), 1e0, 2e0)[%s]", ". ne 1e0");
+        assertSameAsGeneric("", "(1, 2e0, 3)[%s]", ". gt 1.5e0");
+    }
+
+    @Test
+    public void exactNumericComparisons() throws EXistException, PermissionDeniedException, XPathException {
+        // 2^53 + 1 is not representable as a double, and is not equal to 2^53
+        assertSameAsGeneric("", "(9007199254740993, 9007199254740992, 1)[%s]", ". = 9007199254740992e0");
+        assertSameAsGeneric("", "(9007199254740993, 9007199254740992, 1)[%s]", ". > 9007199254740992e0");
+        assertSameAsGeneric("", "(<a>9007199254740992</a>, <a>1</a>)[%s]", ". = 9007199254740993");
+        assertSameAsGeneric("", "(9007199254740993, 1)[%s]", "xs:double(9007199254740992) lt .");
+
+        // 0 and -0 are equal
+        assertSameAsGeneric("", "(0, 1, 2)[%s]", ". = -0.0e0");
+        assertSameAsGeneric("", "(xs:double('-0'), 0e0, 1e0)[%s]", ". = 0e0");
+        assertSameAsGeneric("", "(xs:double('-0'), 0e0, 1e0)[%s]", ". ge 0e0");
+        assertSameAsGeneric("", "(<a>-0</a>, <a>1</a>)[%s]", ". = 0");
+    }
+
+    @Test
+    public void logicalOperators() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n > 10 and @n < 20");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n < 5 or @s = 'z'");
+        assertSameAsGeneric(ITEMS, "$items[%s]/@n", "@n < 5 or exists(@s[. = 'z'])");
+        assertSameAsGeneric("", "(1 to 30)[%s]", ". mod 2 = 0 and (. > 20 or . < 5)");
+    }
+
+    @Test
+    public void errors() throws EXistException, PermissionDeniedException {
+        assertError(ErrorCodes.FORG0001, "(<a>1</a>, <a>abc</a>)[. > 0]");
+        assertError(ErrorCodes.XPTY0004, "(<a>1</a>, <a>2</a>)[. eq 1]");
+        assertError(ErrorCodes.XPTY0004, "(1, 'a')[. = 1]");
+    }
+
+    /**
+     * Executes a query with a predicate past the specialization threshold, and compares
+     * its results with those of the generic evaluation, where the condition is wrapped in
+     * a function call which is not specialized.
+     */
+    private static void assertSameAsGeneric(final String prolog, final String query, final String condition)
+            throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final String generic = executeRepeatedly(broker, prolog + "string-join(" + String.format(query, "boolean(" + condition + ")") + ", ',')");
+
+            final CompiledXQuery compiled = pool.getXQueryService().compile(new XQueryContext(pool),
+                    prolog + "string-join(" + String.format(query, condition) + ", ',')");
+            for (int i = 1; i <= THRESHOLD + 1; i++) {
+                assertEquals(condition, generic, pool.getXQueryService().execute(broker, compiled, null).getStringValue());
+            }
+        }
+    }
+
+    private static boolean isSpecializedAfterExecution(final DBBroker broker, final CompiledXQuery compiled,
+            final Predicate predicate, final String expected) throws XPathException, PermissionDeniedException {
+        final String result = broker.getBrokerPool().getXQueryService().execute(broker, compiled, null).getStringValue();
+        assertEquals(expected, result);
+        return predicate.isSpecialized();
+    }
+
+    private static String executeRepeatedly(final DBBroker broker, final String query) throws XPathException, PermissionDeniedException {
+        final BrokerPool pool = broker.getBrokerPool();
+        final CompiledXQuery compiled = pool.getXQueryService().compile(new XQueryContext(pool), query);
+        String result = null;
+        for (int i = 1; i <= THRESHOLD; i++) {
+            result = pool.getXQueryService().execute(broker, compiled, null).getStringValue();
+        }
+        return result;
+    }
+
+    private static void assertError(final ErrorCodes.ErrorCode errorCode, final String query) throws EXistException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery compiled = pool.getXQueryService().compile(new XQueryContext(pool), query);
+            for (int i = 1; i <= THRESHOLD; i++) {
+                try {
+                    pool.getXQueryService().execute(broker, compiled, null);
+                    fail("Expected " + errorCode);
+                } catch (final XPathException e) {
+                    assertEquals(errorCode, e.getErrorCode());
+                }
+            }
+        } catch (final XPathException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<Predicate> predicates(final CompiledXQuery compiled) {
+        final List<Predicate> predicates = new ArrayList<>();
+        ((Expression) compiled).accept(new DefaultExpressionVisitor() {
+            @Override
+            public void visitFilteredExpr(final FilteredExpression filtered) {
+                if (filtered.getExpression() != null) {
+                    filtered.getExpression().accept(this);
+                }
+                for (final Predicate predicate : filtered.getPredicates()) {
+                    predicate.accept(this);
+                }
+            }
+
+            @Override
+            public void visitPredicate(final Predicate predicate) {
+                predicates.add(predicate);
+                super.visitPredicate(predicate);
+            }
+        });
+        return predicates;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that FLWOR expressions stop evaluating their bindings once an enclosing
+ * fn:subsequence, fn:head or positional predicate has all of its items, and that
+ * an "order by" clause only retains those items.
+ *
+ * Bindings which are evaluated although they are not needed raise an error.
+ */
+public class ForExprResultLimitTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void subsequence() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("1,2,3,4,5,6,7,8,9,10", execute(
+                "subsequence(for $i in 1 to 1000000 return if ($i gt 10) then error() else $i, 1, 10)"));
+        assertEquals("6,7,8", execute(
+                "subsequence(for $i in 1 to 1000000 return if ($i gt 8) then error() else $i, 6, 3)"));
+    }
+
+    @Test
+    public void subsequenceWithVariablePositions() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("21,22,23,24,25", execute(
+                "let $page := 5 let $per-page := 5 " +
+                "return subsequence(for $i in 1 to 1000000 return if ($i gt 25) then error() else $i, " +
+                "($page - 1) * $per-page + 1, $per-page)"));
+    }
+
+    @Test
+    public void head() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("3", execute(
+                "head(for $i in 1 to 1000000 where $i mod 3 = 0 return if ($i gt 3) then error() else $i)"));
+        assertEquals("", execute("head(for $i in () return $i)"));
+    }
+
+    @Test
+    public void whereAndLetClauses() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("8,16,24", execute(
+                "subsequence(let $n := 4 for $i in 1 to 1000000 let $j := $i * $n where $j mod 8 = 0 " +
+                "return if ($i gt 6) then error() else $j, 1, 3)"));
+    }
+
+    @Test
+    public void nestedForClauses() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("1-1,1-2,1-3,2-1,2-2", execute(
+                "subsequence(for $i in 1 to 1000000, $j in 1 to 3 " +
+                "return if ($i gt 2 or ($i eq 2 and $j gt 2)) then error() else $i || '-' || $j, 1, 5)"));
+    }
+
+    @Test
+    public void multipleItemsPerBinding() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("1,1,2", execute(
+                "subsequence(for $i in 1 to 1000000 return if ($i gt 2) then error() else ($i, $i), 1, 3)"));
+    }
+
+    @Test
+    public void positionalPredicate() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("1,2,3", execute(
+                "(for $i in 1 to 1000000 return if ($i gt 3) then error() else $i)[position() le 3]"));
+        assertEquals("1,2", execute(
+                "(for $i in 1 to 1000000 return if ($i gt 2) then error() else $i)[position() lt 3]"));
+        assertEquals("2", execute(
+                "(for $i in 1 to 1000000 return if ($i gt 2) then error() else $i)[2]"));
+        assertEquals("2", execute(
+                "let $n := 2 return (for $i in 1 to 1000000 return if ($i gt 2) then error() else $i)[position() = $n]"));
+        assertEquals("2", execute(
+                "(for $i in 1 to 10 return $i)[position() le 3][2]"));
+        assertEquals("", execute(
+                "(for $i in 1 to 10 return $i)[2.5]"));
+    }
+
+    @Test
+    public void orderBy() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("100,99,98", execute(
+                "subsequence(for $i in 1 to 100 order by $i descending return $i, 1, 3)"));
+        assertEquals("10000,9999", execute(
+                "head(for $i in 1 to 10000 order by $i descending return $i), " +
+                "(for $i in 1 to 10000 order by $i descending return $i)[2]"));
+    }
+
+    @Test
+    public void orderByIsSameAsUnlimited() throws EXistException, PermissionDeniedException, XPathException {
+        final String[] orderSpecs = {
+                "$i mod 17",
+                "$i mod 17 descending, $i",
+                "$i mod 13, -$i",
+                "if ($i mod 5 = 0) then () else $i mod 11 empty greatest",
+                "if ($i mod 5 = 0) then () else $i mod 11 descending empty least",
+                "string($i mod 23)",
+                // mixed xs:decimal and xs:double values which are only equal as xs:double
+                "if ($i mod 100 = 0) then xs:double(1) else 1 + 1.0E-20 * ($i mod 7)"
+        };
+        final String[] returns = { "$i", "($i, -$i)" };
+        for (final String orderSpec : orderSpecs) {
+            for (final String ret : returns) {
+                final String flwor = "for $i in 1 to 2000 order by " + orderSpec + " return " + ret;
+                final String expected = execute("let $all := " + flwor + " return $all[position() le 25]");
+                assertEquals(orderSpec, expected, execute("(" + flwor + ")[position() le 25]"));
+                assertEquals(orderSpec, expected, execute("subsequence(" + flwor + ", 1, 25)"));
+            }
+        }
+    }
+
+    @Test
+    public void recursion() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("3,2,1,2,1", execute(
+                "declare function local:f($n) { subsequence(for $i in ($n, if ($n gt 1) then local:f($n - 1) else ()) return $i, 1, $n + 2) }; ",
+                "local:f(3), local:f(2)"));
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        return execute("", query);
+    }
+
+    private static String execute(final String prolog, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, prolog + "string-join((" + query + "), ',')", null);
+            return result.getStringValue();
+        }
+    }
+}
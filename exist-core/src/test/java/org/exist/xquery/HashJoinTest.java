@@ -0,0 +1,231 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class HashJoinTest {
+
+    private static final int CUSTOMERS = 50;
+    private static final int ORDERS = 200;
+
+    private static final String CUSTOMERS_PATH = "collection('" + TestConstants.TEST_COLLECTION_URI + "/customers')//customer";
+    private static final String ORDERS_PATH = "collection('" + TestConstants.TEST_COLLECTION_URI + "/orders')//order";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder customers = new StringBuilder("<customers>");
+        for (int i = 0; i < CUSTOMERS; i++) {
+            // some ids are zero-padded, which only matters when they are compared as numbers
+            customers.append("<customer id=\"").append(i % 7 == 0 ? "0" + i : String.valueOf(i)).append("\">")
+                    .append("<name>").append(i % 2 == 0 ? "Customer " : "CUSTOMER ").append(i).append("</name>")
+                    .append("</customer>");
+        }
+        customers.append("</customers>");
+
+        final StringBuilder orders = new StringBuilder("<orders>");
+        for (int i = 0; i < ORDERS; i++) {
+            orders.append("<order n=\"").append(i).append("\" cid=\"").append((i * 13) % (CUSTOMERS + 10)).append("\">")
+                    .append("<customer-name>customer ").append(i % CUSTOMERS).append("</customer-name>")
+                    .append("</order>");
+        }
+        orders.append("</orders>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection customersCollection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI.append("customers"));
+            broker.saveCollection(transaction, customersCollection);
+            broker.storeDocument(transaction, XmldbURI.create("customers.xml"), new StringInputSource(customers.toString()), MimeType.XML_TYPE, customersCollection);
+
+            final Collection ordersCollection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI.append("orders"));
+            broker.saveCollection(transaction, ordersCollection);
+            broker.storeDocument(transaction, XmldbURI.create("orders.xml"), new StringInputSource(orders.toString()), MimeType.XML_TYPE, ordersCollection);
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void joinIsDetected() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals(1, countHashJoins("for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " where $o/@cid = $c/@id return $o"));
+        assertEquals(1, countHashJoins("for $o in " + ORDERS_PATH + " for $c in " + CUSTOMERS_PATH + " where $c/@id eq $o/@cid and $o/@n > 5 return $o"));
+
+        // the input of the inner clause depends on the outer clause
+        assertEquals(0, countHashJoins("for $o in " + ORDERS_PATH + ", $c in $o/root()//order where $o/@cid = $c/@n return $o"));
+        // both sides of the comparison depend on the inner clause
+        assertEquals(0, countHashJoins("for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " where $c/@id = $c/@id return $o"));
+        // not an equality
+        assertEquals(0, countHashJoins("for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " where $o/@cid != $c/@id return $o"));
+        // positional variable
+        assertEquals(0, countHashJoins("for $o in " + ORDERS_PATH + ", $c at $p in " + CUSTOMERS_PATH + " where $o/@cid = $c/@id return $p"));
+    }
+
+    @Test
+    public void untypedValues() throws EXistException, PermissionDeniedException, XPathException {
+        final String result = assertSameAsNestedLoop(
+                "for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " %s return $o/@n || '=' || $c/@id",
+                "$o/@cid = $c/@id");
+        assertFalse(result.isEmpty());
+    }
+
+    @Test
+    public void numericPromotion() throws EXistException, PermissionDeniedException, XPathException {
+        // the zero-padded ids are only equal when compared as numbers
+        final String result = assertSameAsNestedLoop(
+                "for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " %s return $o/@n || '=' || $c/@id",
+                "xs:integer($o/@cid) = $c/@id");
+        assertTrue(result.contains("=07"));
+
+        assertSameAsNestedLoop(
+                "for $n in (1, 2.0, 3e0, xs:float(4), xs:decimal('14.0'), 'x'), $c in " + CUSTOMERS_PATH + " %s return $n || '=' || $c/@id",
+                "$c/@id = $n");
+
+        assertSameAsNestedLoop(
+                "for $n in (1, 2.0, 3e0, xs:float(4), 0), $m in (1.0, xs:float(2), 3, 4e0, -0.0, xs:double('NaN')) %s return $n || '=' || $m",
+                "$n = $m");
+    }
+
+    @Test
+    public void floatValues() throws EXistException, PermissionDeniedException, XPathException {
+        // an xs:float is not equal to an xs:decimal as the double it widens to, but as its shortest representation
+        assertEquals("1", assertSameAsNestedLoop("for $a in xs:float('0.1'), $b in (0.1) %s return 1", "$a = $b"));
+        assertEquals("1", assertSameAsNestedLoop("for $b in (0.1), $a in xs:float('0.1') %s return 1", "$a = $b"));
+
+        // an untyped value is cast to xs:double when compared with an xs:float
+        assertSameAsNestedLoop(
+                "for $a in xs:float('0.1'), $b in (<v>0.1</v>, <v>0.2</v>)/text() %s return 1", "$a = $b");
+        assertSameAsNestedLoop(
+                "for $b in (<v>0.1</v>, <v>0.2</v>)/text(), $a in (xs:float('0.1'), xs:float('0.5'), 0.3) %s return 1", "$a = $b");
+        assertEquals("1", assertSameAsNestedLoop(
+                "for $a in xs:float('0.5'), $b in (<v>0.5</v>, <v>0.2</v>)/text() %s return 1", "$a = $b"));
+
+        assertSameAsNestedLoop(
+                "for $n in (xs:float('0.1'), xs:float('0.7'), 0.7e0, 1.1), $m in (0.1, 0.1e0, xs:float('1.1'), 0.7) %s return $n || '=' || $m",
+                "$n = $m");
+    }
+
+    @Test
+    public void sequences() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsNestedLoop(
+                "for $n in ((1, 2), (3, 4), 5), $m in ((5, 1), (2, 6), (7, 8)) %s return $n || '=' || $m",
+                "$n = $m");
+        assertSameAsNestedLoop(
+                "for $o in " + ORDERS_PATH + "[@n < 20], $c in " + CUSTOMERS_PATH + " %s return $o/@n || '=' || $c/@id",
+                "($o/@cid, $o/@n) = $c/@id");
+    }
+
+    @Test
+    public void collation() throws EXistException, PermissionDeniedException, XPathException {
+        final String result = assertSameAsNestedLoop(
+                "declare default collation '?strength=primary'; ",
+                "for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " %s return $o/@n || '=' || $c/@id",
+                "$o/customer-name = $c/name");
+        assertFalse(result.isEmpty());
+
+        // without the collation, only some names are equal
+        final String codepoints = assertSameAsNestedLoop(
+                "for $o in " + ORDERS_PATH + ", $c in " + CUSTOMERS_PATH + " %s return $o/@n || '=' || $c/@id",
+                "$o/customer-name = $c/name");
+        assertTrue(codepoints.length() < result.length());
+    }
+
+    @Test
+    public void innerInputDependsOnOuterVariables() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsNestedLoop(
+                "declare function local:join($customers, $depth) {\n" +
+                "    string-join(for $o in " + ORDERS_PATH + "[@n < 30], $c in $customers\n" +
+                "    %s\n" +
+                "    return ($o/@n || '=' || $c/@id, if ($depth > 0) then local:join($customers[position() mod 2 = 0], $depth - 1) else ()), ',')\n" +
+                "};\n",
+                "for $i in 1 to 2 return local:join(" + CUSTOMERS_PATH + "[@id > $i * 10], 2)",
+                "$o/@cid = $c/@id");
+    }
+
+    private static String assertSameAsNestedLoop(final String query, final String condition)
+            throws EXistException, PermissionDeniedException, XPathException {
+        return assertSameAsNestedLoop("", query, condition);
+    }
+
+    private static String assertSameAsNestedLoop(final String prolog, final String query, final String condition)
+            throws EXistException, PermissionDeniedException, XPathException {
+        final String join = "where " + condition;
+        final String joined = execute(String.format(prolog, join), String.format(query, join));
+        // the hash join is not used if the comparison is wrapped in a function call
+        final String nestedLoop = "where boolean(" + condition + ")";
+        final String nestedLoopResult = execute(String.format(prolog, nestedLoop), String.format(query, nestedLoop));
+        assertEquals(nestedLoopResult, joined);
+        return joined;
+    }
+
+    private static String execute(final String prolog, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, prolog + "string-join(" + query + ", ',')", null);
+            return result.getStringValue();
+        }
+    }
+
+    private static int countHashJoins(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = pool.getXQueryService().compile(context, query);
+            final List<HashJoin> joins = new ArrayList<>();
+            ((Expression) compiled).accept(new DefaultExpressionVisitor() {
+                @Override
+                public void visitForExpression(final ForExpr forExpr) {
+                    if (forExpr.getHashJoin() != null) {
+                        joins.add(forExpr.getHashJoin());
+                    }
+                    super.visitForExpression(forExpr);
+                }
+            });
+            return joins.size();
+        }
+    }
+}
@@ -32,12 +32,16 @@
  */
 package org.exist.xquery;
 
+import antlr.collections.AST;
 import com.evolvedbinary.j8fu.function.Function2E;
 import com.evolvedbinary.j8fu.tuple.Tuple2;
 import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.PermissionDeniedException;
+import org.exist.source.DBSource;
 import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.BrokerPool;
@@ -1576,6 +1580,62 @@ public class ImportModuleTest {
         }
     }
 
+    /**
+     * Checks that the syntax tree of a library module is shared by the queries which import it,
+     * and that it is parsed again when the module changes.
+     */
+    @Test
+    public void moduleSyntaxTreeSharedUntilModuleChanges() throws EXistException, IOException, PermissionDeniedException, LockException, SAXException, XPathException, InterruptedException {
+        final String module1 =
+                "xquery version \"1.0\";\n" +
+                "module namespace impl = \"http://example.com/impl\";\n" +
+                "declare function impl:f1() as xs:string {\n" +
+                "    \"version 1\"\n" +
+                "};\n";
+
+        final String module2 = module1.replace("version 1", "version 2");
+
+        final String query1 =
+                "import module namespace impl = \"http://example.com/impl\" at \"xmldb:exist:///db/impl1.xqm\";\n" +
+                "impl:f1()";
+        final String query2 = "(: another query :)\n" + query1;
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryPool xqueryPool = pool.getXQueryPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+
+            storeModules(broker, transaction, "/db", Tuple("impl1.xqm", module1));
+            final Source moduleSource1 = moduleSource(broker, "/db/impl1.xqm");
+
+            assertEquals("version 1", withCompiledQuery(broker, new StringSource(query1), compiledXQuery -> executeQuery(broker, compiledXQuery).getStringValue()));
+            final AST ast = xqueryPool.getModuleSyntaxTree(moduleSource1);
+            assertNotNull(ast);
+
+            // another query which imports the module shares its syntax tree
+            assertEquals("version 1", withCompiledQuery(broker, new StringSource(query2), compiledXQuery -> executeQuery(broker, compiledXQuery).getStringValue()));
+            assertSame(ast, xqueryPool.getModuleSyntaxTree(moduleSource1));
+
+            // ensure that the last modified time of the module changes
+            Thread.sleep(5);
+            storeModules(broker, transaction, "/db", Tuple("impl1.xqm", module2));
+            final Source moduleSource2 = moduleSource(broker, "/db/impl1.xqm");
+            assertNull(xqueryPool.getModuleSyntaxTree(moduleSource2));
+
+            assertEquals("version 2", withCompiledQuery(broker, new StringSource(query1), compiledXQuery -> executeQuery(broker, compiledXQuery).getStringValue()));
+            assertNotNull(xqueryPool.getModuleSyntaxTree(moduleSource2));
+            assertNotSame(ast, xqueryPool.getModuleSyntaxTree(moduleSource2));
+
+            transaction.commit();
+        }
+    }
+
+    private static Source moduleSource(final DBBroker broker, final String path) throws PermissionDeniedException {
+        try (final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.create(path), Lock.LockMode.READ_LOCK)) {
+            return new DBSource(broker.getBrokerPool(), (BinaryDocument) lockedDocument.getDocument(), true);
+        }
+    }
+
     private void storeModules(final DBBroker broker, final Txn transaction, final String collectionUri, final Tuple2<String, String>... modules) throws PermissionDeniedException, IOException, SAXException, LockException, EXistException {
         // store modules
         try (final Collection collection = broker.openCollection(XmldbURI.create(collectionUri), Lock.LockMode.WRITE_LOCK)) {
@@ -0,0 +1,223 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ParallelForTest {
+
+    private static final int DOCUMENTS = 20;
+    private static final int RECORDS = 10;
+
+    private static final String PROLOG =
+            "declare variable $local:offset := 1000;\n" +
+            "declare function local:transform($record, $factor) {\n" +
+            "    <result n=\"{$record/@n}\">{xs:integer($record/@n) * $factor + $local:offset}</result>\n" +
+            "};\n";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            for (int d = 0; d < DOCUMENTS; d++) {
+                final StringBuilder records = new StringBuilder("<records>");
+                for (int r = 0; r < RECORDS; r++) {
+                    records.append("<record n=\"").append(d * RECORDS + r).append("\"/>");
+                }
+                records.append("</records>");
+                broker.storeDocument(transaction, XmldbURI.create("records" + d + ".xml"), new StringInputSource(records.toString()), MimeType.XML_TYPE, collection);
+            }
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void forClauseIsRegistered() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            pool.getXQueryService().compile(context, new StringSource(
+                    "(# exist:parallel #) { for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return for $n in $r/@n return string($n) }"));
+            assertNotNull(context.getParallelForClause(0));
+            // the nested for clause is evaluated sequentially
+            assertNull(context.getParallelForClause(1));
+        }
+    }
+
+    @Test
+    public void orderOfResults() throws EXistException, PermissionDeniedException, XPathException {
+        final String result = assertSameAsSequential(
+                "string-join(%s for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return string($r/@n) %s, ',')");
+        assertEquals(DOCUMENTS * RECORDS, result.split(",").length);
+    }
+
+    @Test
+    public void variablesAndFunctions() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsSequential(PROLOG +
+                "let $factor := 3\n" +
+                "return string-join(%s for $r at $p in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record\n" +
+                "    let $result := local:transform($r, $factor)\n" +
+                "    where $result/@n mod 2 = 0\n" +
+                "    return $p || ':' || $result %s, ',')");
+    }
+
+    @Test
+    public void orderByIsSequential() throws EXistException, PermissionDeniedException, XPathException {
+        final String result = assertSameAsSequential(
+                "string-join(%s for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record order by xs:integer($r/@n) descending return string($r/@n) %s, ',')");
+        assertTrue(result.startsWith(String.valueOf(DOCUMENTS * RECORDS - 1)));
+    }
+
+    @Test
+    public void errorInPartition() throws EXistException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            pool.getXQueryService().execute(broker,
+                    "(# exist:parallel #) { for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return if ($r/@n = '150') then error(xs:QName('local:failed'), 'failed') else $r }", null);
+            fail("Expected the error raised by a partition");
+        } catch (final XPathException e) {
+            assertEquals("failed", e.getDetailMessage());
+        }
+    }
+
+    @Test
+    public void functionItems() throws EXistException, PermissionDeniedException, XPathException {
+        assertSameAsSequential(
+                "let $f := function($r) { string($r/@n) }\n" +
+                "return string-join(%s for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return $f($r) %s, ',')");
+    }
+
+    @Test
+    public void reuseCompiledQuery() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final String query = "declare variable $factor external;\n" +
+                "string-join(%s for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return xs:integer($r/@n) * $factor %s, ',')";
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(context, new StringSource(String.format(query, "(# exist:parallel #) {", "}")));
+            for (int factor = 1; factor <= 3; factor++) {
+                context.declareVariable("factor", factor);
+                final String sequential;
+                try (final DBBroker sequentialBroker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                    final XQueryContext sequentialContext = new XQueryContext(pool);
+                    sequentialContext.declareVariable("factor", factor);
+                    sequential = xquery.execute(sequentialBroker, xquery.compile(sequentialContext, new StringSource(String.format(query, "(", ")"))), null).getStringValue();
+                }
+                assertEquals(sequential, xquery.execute(broker, compiled, null).getStringValue());
+            }
+        }
+    }
+
+    /**
+     * The calling thread evaluates all partitions itself if no other broker is available.
+     */
+    @Test(timeout = 60_000)
+    public void noBrokerAvailable() throws EXistException, PermissionDeniedException, XPathException, InterruptedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final String sequential = execute("string-join(for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return string($r/@n), ',')");
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CountDownLatch done = new CountDownLatch(1);
+            final List<Thread> holders = new ArrayList<>();
+            while (true) {
+                final CountDownLatch leased = new CountDownLatch(1);
+                final AtomicBoolean available = new AtomicBoolean();
+                final Thread holder = new Thread(() -> {
+                    try (final DBBroker held = pool.tryGet(Optional.empty()).orElse(null)) {
+                        available.set(held != null);
+                        leased.countDown();
+                        if (held != null) {
+                            done.await();
+                        }
+                    } catch (final EXistException | InterruptedException e) {
+                        leased.countDown();
+                    }
+                });
+                holder.start();
+                leased.await();
+                if (!available.get()) {
+                    break;
+                }
+                holders.add(holder);
+            }
+
+            try {
+                final Sequence result = pool.getXQueryService().execute(broker,
+                        "string-join((# exist:parallel #) { for $r in collection('" + TestConstants.TEST_COLLECTION_URI + "')//record return string($r/@n) }, ',')", null);
+                assertEquals(sequential, result.getStringValue());
+            } finally {
+                done.countDown();
+                for (final Thread holder : holders) {
+                    holder.join();
+                }
+            }
+        }
+    }
+
+    private static String assertSameAsSequential(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final String sequential = execute(String.format(query, "(", ")"));
+        final String parallel = execute(String.format(query, "(# exist:parallel #) {", "}"));
+        assertEquals(sequential, parallel);
+        return parallel;
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            assertEquals(1, result.getItemCount());
+            return result.getStringValue();
+        }
+    }
+}
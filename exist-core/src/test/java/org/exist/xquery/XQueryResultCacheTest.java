@@ -0,0 +1,262 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.http.servlets.HttpResponseWrapper;
+import org.exist.http.servlets.ResponseWrapper;
+import org.exist.security.PermissionDeniedException;
+import org.exist.source.Source;
+import org.exist.source.StringSource;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.util.serializer.XQuerySerializer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import jakarta.servlet.http.HttpServletResponse;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.*;
+
+public class XQueryResultCacheTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder().put(XQueryResultCache.PROPERTY_SIZE, 1).build(), true, true);
+
+    private static final XmldbURI TEST_COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("result-cache-test");
+    private static final XmldbURI COLLECTION_A_URI = TEST_COLLECTION_URI.append("a");
+    private static final XmldbURI COLLECTION_B_URI = TEST_COLLECTION_URI.append("b");
+
+    private static final String QUERY_A = "declare option exist:result-cache \"yes\";\n" +
+            "count(collection('" + COLLECTION_A_URI + "')//item)";
+    private static final String QUERY_B = "declare option exist:result-cache \"yes\";\n" +
+            "count(collection('" + COLLECTION_B_URI + "')//item)";
+
+    @Test
+    public void cachedUntilCollectionChanges() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException {
+        assertEquals("1", execute(QUERY_A));
+        assertEquals("1", cached(QUERY_A));
+        assertEquals("1", execute(QUERY_B));
+        assertEquals("1", cached(QUERY_B));
+
+        // a change of a document in a only invalidates the query of a
+        store(COLLECTION_A_URI, "2.xml");
+        assertNull(cached(QUERY_A));
+        assertEquals("1", cached(QUERY_B));
+
+        assertEquals("2", execute(QUERY_A));
+        assertEquals("2", cached(QUERY_A));
+    }
+
+    @Test
+    public void removeCollectionInvalidatesDescendants() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException, TriggerException {
+        assertEquals("1", execute(QUERY_A));
+        assertEquals("1", cached(QUERY_A));
+
+        removeTestCollection();
+        assertNull(cached(QUERY_A));
+
+        assertEquals("0", execute(QUERY_A));
+        assertEquals("0", cached(QUERY_A));
+    }
+
+    @Test
+    public void differentParametersAreCachedSeparately() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQueryResultCache resultCache = pool.getXQueryResultCache();
+        assertEquals("1", execute(QUERY_A));
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertNull(resultCache.get(key(broker, new StringSource(QUERY_A), "?other")));
+        }
+    }
+
+    @Test
+    public void onlyCacheableWithOption() throws EXistException, PermissionDeniedException, XPathException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        final XQueryResultCache resultCache = pool.getXQueryResultCache();
+        assertTrue(resultCache.isEnabled());
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final CompiledXQuery cacheable = xquery.compile(new XQueryContext(pool), new StringSource(QUERY_A));
+            assertTrue(resultCache.isCacheable(cacheable));
+
+            final CompiledXQuery notCacheable = xquery.compile(new XQueryContext(pool), new StringSource("count(collection('" + COLLECTION_A_URI + "')//item)"));
+            assertFalse(resultCache.isCacheable(notCacheable));
+        }
+    }
+
+    @Test
+    public void notCachedIfResponseIsModified() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException {
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        replay(response);
+
+        final String query = "import module namespace response = \"http://exist-db.org/xquery/response\";\n" +
+                "declare option exist:result-cache \"yes\";\n" +
+                "response:set-header('X-Items', 'counted'), count(collection('" + COLLECTION_A_URI + "')//item)";
+        assertEquals("1", execute(query, new HttpResponseWrapper(response)));
+        assertNull(cached(query));
+
+        // reading from the response does not change it
+        final String readingQuery = "import module namespace response = \"http://exist-db.org/xquery/response\";\n" +
+                "declare option exist:result-cache \"yes\";\n" +
+                "count(collection('" + COLLECTION_A_URI + "')//item[response:exists()])";
+        assertEquals("1", execute(readingQuery, new HttpResponseWrapper(response)));
+        assertEquals("1", cached(readingQuery));
+    }
+
+    @Test
+    public void versionsArePruned() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException {
+        final XQueryResultCache resultCache = existEmbeddedServer.getBrokerPool().getXQueryResultCache();
+        final XmldbURI otherUri = TEST_COLLECTION_URI.append("other");
+
+        // the versions of changes after a valid cached result are kept
+        assertEquals("1", execute(QUERY_A));
+        for (int i = 0; i < XQueryResultCache.PRUNE_THRESHOLD; i++) {
+            resultCache.collectionUpdated(otherUri.append(String.valueOf(i)));
+        }
+        assertTrue(resultCache.getVersionCount() > XQueryResultCache.PRUNE_THRESHOLD);
+        assertEquals("1", cached(QUERY_A));
+
+        // once the cached result is invalidated, they are pruned
+        store(COLLECTION_A_URI, "2.xml");
+        for (int i = 0; i < XQueryResultCache.PRUNE_THRESHOLD * 4; i++) {
+            resultCache.collectionUpdated(otherUri.append(String.valueOf(i)));
+        }
+        assertTrue(resultCache.getVersionCount() <= XQueryResultCache.PRUNE_THRESHOLD * 2);
+
+        // changes are still seen after pruning
+        assertEquals("2", execute(QUERY_A));
+        assertEquals("2", cached(QUERY_A));
+        store(COLLECTION_A_URI, "3.xml");
+        assertNull(cached(QUERY_A));
+    }
+
+    /**
+     * Executes a query and caches its result.
+     */
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException {
+        return execute(query, null);
+    }
+
+    /**
+     * Executes a query with an HTTP response and caches its result.
+     */
+    private static String execute(final String query, @Nullable final ResponseWrapper response) throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final XQuery xquery = pool.getXQueryService();
+        final XQueryResultCache resultCache = pool.getXQueryResultCache();
+        final Source source = new StringSource(query);
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            if (response != null) {
+                context.setHttpContext(new XQueryContext.HttpContext(null, response, null));
+            }
+            final CompiledXQuery compiled = xquery.compile(context, source);
+            assertTrue(resultCache.isCacheable(compiled));
+
+            final Sequence result;
+            try (final XQueryResultCache.Recording recording = resultCache.record(broker, context)) {
+                result = xquery.execute(broker, compiled, null);
+
+                final StringWriter writer = new StringWriter();
+                new XQuerySerializer(broker, new Properties(), writer).serialize(result);
+                final String serialized = writer.toString();
+
+                resultCache.put(key(broker, source, ""), recording, context, "text/plain", serialized.getBytes(UTF_8));
+                return serialized;
+            }
+        }
+    }
+
+    private static @Nullable String cached(final String query) throws EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryResultCache.CachedResult cachedResult = pool.getXQueryResultCache().get(key(broker, new StringSource(query), ""));
+            return cachedResult != null ? new String(cachedResult.getContent(), UTF_8) : null;
+        }
+    }
+
+    private static XQueryResultCache.Key key(final DBBroker broker, final Source source, final String parameters) {
+        return new XQueryResultCache.Key(source, broker.getCurrentSubject().getName(), parameters);
+    }
+
+    private static void store(final XmldbURI collectionUri, final String docName) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            try (final Collection collection = broker.getOrCreateCollection(transaction, collectionUri)) {
+                broker.storeDocument(transaction, XmldbURI.create(docName), new StringInputSource("<items><item/></items>"), MimeType.XML_TYPE, collection);
+            }
+            transaction.commit();
+        }
+    }
+
+    @Before
+    public void setUp() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        store(COLLECTION_A_URI, "1.xml");
+        store(COLLECTION_B_URI, "1.xml");
+    }
+
+    @After
+    public void tearDown() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        removeTestCollection();
+    }
+
+    private static void removeTestCollection() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            try (final Collection collection = broker.openCollection(TEST_COLLECTION_URI, LockMode.WRITE_LOCK)) {
+                if (collection != null) {
+                    broker.removeCollection(transaction, collection);
+                }
+            }
+            transaction.commit();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.XPathException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class IntegerValueTest {
+
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    @Test
+    public void plusOverflowsIntoBigInteger() throws XPathException {
+        final IntegerValue result = (IntegerValue) new IntegerValue(Long.MAX_VALUE).plus(new IntegerValue(1));
+        assertFalse(result.isLong());
+        assertEquals(LONG_MAX.add(BigInteger.ONE), result.toBigInteger());
+
+        // and back again
+        final IntegerValue back = (IntegerValue) result.minus(new IntegerValue(1));
+        assertTrue(back.isLong());
+        assertEquals(Long.MAX_VALUE, back.getLong());
+    }
+
+    @Test
+    public void minusOverflowsIntoBigInteger() throws XPathException {
+        final IntegerValue result = (IntegerValue) new IntegerValue(Long.MIN_VALUE).minus(new IntegerValue(1));
+        assertFalse(result.isLong());
+        assertEquals(LONG_MIN.subtract(BigInteger.ONE), result.toBigInteger());
+    }
+
+    @Test
+    public void multOverflowsIntoBigInteger() throws XPathException {
+        final IntegerValue result = (IntegerValue) new IntegerValue(Long.MAX_VALUE).mult(new IntegerValue(-2));
+        assertEquals(LONG_MAX.multiply(BigInteger.valueOf(-2)), result.toBigInteger());
+
+        final IntegerValue fits = (IntegerValue) new IntegerValue(1L << 31).mult(new IntegerValue(-(1L << 32)));
+        assertTrue(fits.isLong());
+        assertEquals(Long.MIN_VALUE, fits.getLong());
+    }
+
+    @Test
+    public void negateAndAbsOfLongMinValue() throws XPathException {
+        final IntegerValue min = new IntegerValue(Long.MIN_VALUE);
+        assertEquals(LONG_MIN.negate(), ((IntegerValue) min.negate()).toBigInteger());
+        assertEquals(LONG_MIN.negate(), ((IntegerValue) min.abs()).toBigInteger());
+    }
+
+    @Test
+    public void idiv() throws XPathException {
+        assertEquals(-3, new IntegerValue(-7).idiv(new IntegerValue(2)).getLong());
+        assertEquals(LONG_MIN.negate(), new IntegerValue(Long.MIN_VALUE).idiv(new IntegerValue(-1)).toBigInteger());
+        final IntegerValue big = new IntegerValue(LONG_MAX.multiply(BigInteger.TEN));
+        assertEquals(Long.MAX_VALUE, big.idiv(new IntegerValue(10)).getLong());
+    }
+
+    @Test
+    public void mod() throws XPathException {
+        assertEquals(-1, ((IntegerValue) new IntegerValue(-7).mod(new IntegerValue(2))).getLong());
+        assertEquals(1, ((IntegerValue) new IntegerValue(7).mod(new IntegerValue(-2))).getLong());
+    }
+
+    @Test
+    public void arithmeticKeepsDerivedType() throws XPathException {
+        final IntegerValue result = (IntegerValue) new IntegerValue(100, Type.BYTE).plus(new IntegerValue(27, Type.BYTE));
+        assertEquals(Type.BYTE, result.getType());
+    }
+
+    @Test(expected = XPathException.class)
+    public void arithmeticChecksDerivedType() throws XPathException {
+        new IntegerValue(100, Type.BYTE).plus(new IntegerValue(28, Type.BYTE));
+    }
+
+    @Test(expected = XPathException.class)
+    public void unsignedLongOverflow() throws XPathException {
+        new IntegerValue("18446744073709551616", Type.UNSIGNED_LONG);
+    }
+
+    @Test
+    public void unsignedLongLimit() throws XPathException {
+        final IntegerValue value = new IntegerValue("18446744073709551615", Type.UNSIGNED_LONG);
+        assertFalse(value.isLong());
+        assertEquals("18446744073709551615", value.getStringValue());
+    }
+
+    @Test
+    public void equalValuesHaveEqualHashCodes() throws XPathException {
+        final IntegerValue fromLong = new IntegerValue(42);
+        final IntegerValue fromBig = new IntegerValue(BigInteger.valueOf(42));
+        final IntegerValue fromString = new IntegerValue("+0042");
+        assertEquals(fromLong, fromBig);
+        assertEquals(fromLong, fromString);
+        assertEquals(fromLong.hashCode(), fromBig.hashCode());
+        assertEquals(fromLong.hashCode(), fromString.hashCode());
+        assertEquals(BigInteger.valueOf(-42).hashCode(), new IntegerValue(-42).hashCode());
+        assertEquals(LONG_MAX.add(BigInteger.ONE).hashCode(), new IntegerValue(LONG_MAX.add(BigInteger.ONE)).hashCode());
+    }
+
+    @Test
+    public void compare() throws XPathException {
+        final IntegerValue big = new IntegerValue(LONG_MAX.add(BigInteger.ONE));
+        assertTrue(big.compareTo(null, new IntegerValue(Long.MAX_VALUE)) > 0);
+        assertEquals(0, new IntegerValue(Long.MIN_VALUE).compareTo(null, big.negate()));
+        assertTrue(new IntegerValue(Long.MIN_VALUE).compareTo(null, ((IntegerValue) big.negate()).minus(new IntegerValue(1))) > 0);
+        assertEquals(0, new IntegerValue(3).compareTo(null, new IntegerValue(BigInteger.valueOf(3))));
+    }
+
+    @Test
+    public void compareToDouble() throws XPathException {
+        assertTrue(new IntegerValue(1).compareTo(null, new DoubleValue(1.5)) < 0);
+        assertEquals(0, new IntegerValue(2).compareTo(null, new DoubleValue(2.0)));
+        assertTrue(new IntegerValue(Long.MAX_VALUE).compareTo(null, new DoubleValue(Double.POSITIVE_INFINITY)) < 0);
+
+        // 2^63 - 1 is not exactly representable as a double
+        assertTrue(new IntegerValue(Long.MAX_VALUE).compareTo(null, new DoubleValue(0x1p63)) < 0);
+        assertTrue(new IntegerValue(Long.MAX_VALUE).compareTo(null, new DoubleValue(0x1p62)) > 0);
+
+        // the shortest decimal strings of these doubles are not their exact values
+        assertEquals(-1, new IntegerValue(6862045628013069309L).compareTo(null, new DoubleValue(6.8620456280130693E18)));
+        assertEquals(-1, IntegerValue.compareToDouble(6862045628013069309L, 6.8620456280130693E18));
+        assertEquals(-1, new IntegerValue(2958714311370805225L).compareTo(null, new DoubleValue(2.9587143113708052E18)));
+        assertEquals(-1, IntegerValue.compareToDouble(2958714311370805225L, 2.9587143113708052E18));
+        assertEquals(1, new IntegerValue(new BigInteger("18446744073709551617")).compareTo(null, new DoubleValue(0x1p64)));
+        assertEquals(0, new IntegerValue(new BigInteger("18446744073709551616")).compareTo(null, new DoubleValue(0x1p64)));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.value;
+
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.XPathException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class NumericBatchTest {
+
+    @Test
+    public void sumOfIntegers() throws XPathException {
+        // more values than fit into one batch
+        final ValueSequence values = integers(1, 3000);
+        final IntegerValue sum = (IntegerValue) NumericBatch.sum(null, values);
+        assertNotNull(sum);
+        assertEquals(3000L * 3001 / 2, sum.getLong());
+    }
+
+    @Test
+    public void sumOverflowsIntoBigInteger() throws XPathException {
+        final ValueSequence values = new ValueSequence(new IntegerValue(Long.MAX_VALUE), new IntegerValue(1), new IntegerValue(-2));
+        final IntegerValue sum = (IntegerValue) NumericBatch.sum(null, values);
+        assertNotNull(sum);
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).subtract(BigInteger.ONE), sum.toBigInteger());
+    }
+
+    @Test
+    public void sumOfDoubles() throws XPathException {
+        final ValueSequence values = new ValueSequence(new DoubleValue(0.1), new UntypedAtomicValue("0.2"), new DoubleValue(0.3));
+        final AtomicValue sum = NumericBatch.sum(null, values);
+        assertNotNull(sum);
+        assertEquals(Type.DOUBLE, sum.getType());
+        assertEquals(0.1 + 0.2 + 0.3, ((DoubleValue) sum).getDouble(), 0);
+
+        final AtomicValue negativeZero = NumericBatch.sum(null, new ValueSequence(new DoubleValue(-0.0), new DoubleValue(-0.0)));
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(((DoubleValue) negativeZero).getDouble()));
+    }
+
+    @Test
+    public void avg() throws XPathException {
+        final AtomicValue integerAvg = NumericBatch.avg(null, integers(1, 4));
+        assertNotNull(integerAvg);
+        assertEquals(Type.DECIMAL, integerAvg.getType());
+        assertEquals(0, new BigDecimal("2.5").compareTo(((DecimalValue) integerAvg).getValue()));
+
+        final AtomicValue doubleAvg = NumericBatch.avg(null, new ValueSequence(new DoubleValue(1), new DoubleValue(2)));
+        assertEquals(1.5, ((DoubleValue) doubleAvg).getDouble(), 0);
+    }
+
+    @Test
+    public void minAndMax() throws XPathException {
+        final ValueSequence values = new ValueSequence(new IntegerValue(5), new IntegerValue(-7), new IntegerValue(3));
+        assertEquals(-7, ((IntegerValue) NumericBatch.min(null, values)).getLong());
+        assertEquals(5, ((IntegerValue) NumericBatch.max(null, values)).getLong());
+
+        final ValueSequence withNaN = new ValueSequence(new DoubleValue(1), DoubleValue.NaN, new DoubleValue(2));
+        assertTrue(((DoubleValue) NumericBatch.max(null, withNaN)).isNaN());
+        assertTrue(((DoubleValue) NumericBatch.min(null, withNaN)).isNaN());
+    }
+
+    @Test
+    public void notNumeric() throws XPathException {
+        // mixed integers and doubles are promoted by the generic evaluation
+        assertNull(NumericBatch.sum(null, new ValueSequence(new IntegerValue(1), new DoubleValue(2))));
+        assertNull(NumericBatch.sum(null, new ValueSequence(new IntegerValue(1), new DecimalValue(2))));
+        assertNull(NumericBatch.max(null, new ValueSequence(new StringValue("a"), new StringValue("b"))));
+        // the generic evaluation reports the error
+        assertNull(NumericBatch.sum(null, new ValueSequence(new UntypedAtomicValue("1"), new UntypedAtomicValue("a"))));
+    }
+
+    @Test
+    public void exists() throws XPathException {
+        final ValueSequence values = integers(1, 3000);
+        assertTrue(NumericBatch.exists(values, Comparison.EQ, new IntegerValue(2500), false));
+        assertFalse(NumericBatch.exists(values, Comparison.GT, new IntegerValue(3000), false));
+        assertTrue(NumericBatch.exists(values, Comparison.GT, new IntegerValue(3000), true));
+        assertTrue(NumericBatch.exists(values, Comparison.LT, new IntegerValue(3000), false));
+        assertFalse(NumericBatch.exists(values, Comparison.LT, new IntegerValue(1), false));
+        assertTrue(NumericBatch.exists(values, Comparison.LT, new IntegerValue(2), true));
+
+        // integers are compared with doubles as numbers
+        assertTrue(NumericBatch.exists(values, Comparison.EQ, new DoubleValue(2), false));
+        assertTrue(NumericBatch.exists(values, Comparison.EQ, new UntypedAtomicValue("2"), false));
+        assertFalse(NumericBatch.exists(values, Comparison.EQ, new DoubleValue(2.5), false));
+    }
+
+    @Test
+    public void existsExact() throws XPathException {
+        // 2^53 + 1 is not representable as a double, and is not equal to 2^53
+        final ValueSequence large = new ValueSequence(new IntegerValue(9007199254740993L));
+        assertFalse(NumericBatch.exists(large, Comparison.EQ, new DoubleValue(9007199254740992e0), false));
+        assertTrue(NumericBatch.exists(large, Comparison.GT, new DoubleValue(9007199254740992e0), false));
+        assertTrue(NumericBatch.exists(large, Comparison.LT, new DoubleValue(9007199254740992e0), true));
+        assertNull(NumericBatch.exists(new ValueSequence(new DoubleValue(9007199254740992e0)), Comparison.EQ, new IntegerValue(9007199254740993L), false));
+
+        // the shortest decimal strings of these doubles are not their exact values
+        final ValueSequence rounded = new ValueSequence(new IntegerValue(6862045628013069309L), new IntegerValue(2958714311370805225L));
+        assertFalse(NumericBatch.exists(rounded, Comparison.EQ, new DoubleValue(6.8620456280130693E18), false));
+        assertFalse(NumericBatch.exists(rounded, Comparison.GT, new DoubleValue(6.8620456280130693E18), false));
+        assertTrue(NumericBatch.exists(rounded, Comparison.GT, new DoubleValue(6.8620456280130693E18), true));
+        assertFalse(NumericBatch.exists(rounded, Comparison.EQ, new DoubleValue(2.9587143113708052E18), false));
+        assertTrue(NumericBatch.exists(rounded, Comparison.LT, new DoubleValue(2.9587143113708052E18), false));
+
+        // 0 and -0 are equal
+        assertTrue(NumericBatch.exists(new ValueSequence(new IntegerValue(0)), Comparison.EQ, new DoubleValue(-0.0), false));
+        assertTrue(NumericBatch.exists(new ValueSequence(new IntegerValue(0)), Comparison.EQ, new DoubleValue(-0.0), true));
+        assertFalse(NumericBatch.exists(new ValueSequence(new IntegerValue(0)), Comparison.NEQ, new DoubleValue(-0.0), false));
+        assertTrue(NumericBatch.exists(new ValueSequence(new DoubleValue(0.0)), Comparison.EQ, new DoubleValue(-0.0), false));
+        assertFalse(NumericBatch.exists(new ValueSequence(new DoubleValue(-0.0)), Comparison.LT, new DoubleValue(0.0), false));
+    }
+
+    @Test
+    public void existsWithNaN() throws XPathException {
+        final ValueSequence values = new ValueSequence(DoubleValue.NaN, new DoubleValue(1));
+        assertFalse(NumericBatch.exists(values, Comparison.EQ, DoubleValue.NaN, false));
+        assertTrue(NumericBatch.exists(values, Comparison.NEQ, DoubleValue.NaN, false));
+        assertFalse(NumericBatch.exists(values, Comparison.GT, new DoubleValue(1), false));
+        assertTrue(NumericBatch.exists(values, Comparison.NEQ, new DoubleValue(1), false));
+    }
+
+    @Test
+    public void existsNotNumeric() throws XPathException {
+        final ValueSequence untyped = new ValueSequence(new UntypedAtomicValue("1"), new UntypedAtomicValue("2"));
+        // untyped values are compared with each other as strings
+        assertNull(NumericBatch.exists(untyped, Comparison.EQ, new UntypedAtomicValue("1"), false));
+        assertTrue(NumericBatch.exists(untyped, Comparison.EQ, new IntegerValue(1), false));
+        assertNull(NumericBatch.exists(untyped, Comparison.EQ, new StringValue("1"), false));
+        assertNull(NumericBatch.exists(integers(1, 10), Comparison.EQ, new DecimalValue(1), false));
+    }
+
+    private static ValueSequence integers(final long from, final long to) throws XPathException {
+        final ValueSequence values = new ValueSequence();
+        for (long i = from; i <= to; i++) {
+            values.add(new IntegerValue(i));
+        }
+        return values;
+    }
+}
@@ -25,14 +25,19 @@ package org.exist.xquery.value;
 import org.exist.xquery.Expression;
 import org.exist.xquery.OrderSpec;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class OrderedValueSequenceTest {
 
@@ -98,6 +103,45 @@ public class OrderedValueSequenceTest {
         assertEquals(69, count);
     }
 
+    @Test
+    public void limit() throws XPathException {
+        final int size = 1000;
+        final int limit = 10;
+
+        final XQueryContext mockContext = createMock(XQueryContext.class);
+        expect(mockContext.getDefaultCollator()).andReturn(null).anyTimes();
+        replay(mockContext);
+
+        // many items have the same sort key, so that they are ordered by their position
+        final Expression mockSortExpr = createMock(Expression.class);
+        for (int i = 0; i < size; i++) {
+            expect(mockSortExpr.eval(null, null)).andReturn(new IntegerValue(sortKey(i)));
+        }
+        replay(mockSortExpr);
+
+        final OrderedValueSequence orderedValueSequence = new OrderedValueSequence(Arrays.asList(new OrderSpec(mockContext, mockSortExpr)), 1, limit);
+        for (int i = 0; i < size; i++) {
+            orderedValueSequence.add(new IntegerValue(i));
+        }
+        assertTrue(orderedValueSequence.getItemCount() < size / 2);
+
+        orderedValueSequence.coerceTypesForOrderBy();
+        orderedValueSequence.sort();
+
+        final List<Integer> expected = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            expected.add(i);
+        }
+        expected.sort(Comparator.comparingInt(OrderedValueSequenceTest::sortKey));
+        for (int i = 0; i < limit; i++) {
+            assertEquals(expected.get(i).longValue(), ((IntegerValue) orderedValueSequence.itemAt(i)).getLong());
+        }
+    }
+
+    private static int sortKey(final int i) {
+        return (i * 7919) % 101;
+    }
+
     private static OrderedValueSequence mockOrderedValueSequence(final int size) throws XPathException {
         final Expression mockSortExpr = createMock(Expression.class);
         expect(mockSortExpr.eval(null, null)).andReturn(Sequence.EMPTY_SEQUENCE).anyTimes();
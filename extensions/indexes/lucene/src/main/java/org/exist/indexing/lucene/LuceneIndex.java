@@ -31,6 +31,10 @@ import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
@@ -47,10 +51,20 @@ import org.exist.xquery.XPathException;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
@@ -64,6 +78,19 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 	private static final String DIR_NAME = "lucene";
 	private static final String TAXONOMY_DIR_NAME = "taxonomy";
 
+    private static final String MAX_STALENESS_ATTRIBUTE = "max-staleness";
+    private static final String SEARCH_THREADS_ATTRIBUTE = "search-threads";
+    private static final String MERGE_POLICY_ATTRIBUTE = "merge-policy";
+    private static final String MERGE_FACTOR_ATTRIBUTE = "merge-factor";
+    private static final String MAX_MERGED_SEGMENT_ATTRIBUTE = "max-merged-segment";
+    private static final String MERGE_THREADS_ATTRIBUTE = "merge-threads";
+    private static final String INDEXING_THREADS_ATTRIBUTE = "indexing-threads";
+    private static final String COMMIT_INTERVAL_ATTRIBUTE = "commit-interval";
+
+    private static final String MERGE_POLICY_TIERED = "tiered";
+    private static final String MERGE_POLICY_LOG_BYTE_SIZE = "log-byte-size";
+    private static final String MERGE_POLICY_LOG_DOC = "log-doc";
+
     protected Directory directory;
     protected Directory taxoDirectory;
 
@@ -77,6 +104,84 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected SearcherTaxonomyManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    /**
+     * The time in milliseconds by which searches may lag behind the writes of
+     * other transactions. If 0, every search waits until all writes are visible.
+     */
+    protected long maxStaleness = 0;
+
+    /**
+     * Counts the writes released by {@link #releaseWriter(IndexWriter)}.
+     */
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    /**
+     * The write generation which was last made visible to searches.
+     */
+    private volatile long searchableGeneration = 0;
+    private final Object refreshLock = new Object();
+
+    /**
+     * Runs the background refreshes and the timed commits.
+     */
+    private ScheduledExecutorService scheduler = null;
+
+    /**
+     * The number of threads the segments of the index are searched with in parallel.
+     * If 1 or less, queries search all segments on the calling thread.
+     */
+    protected int searchThreads = 0;
+    private ExecutorService searchExecutor = null;
+
+    /**
+     * The merge policy of the index writer: {@value #MERGE_POLICY_TIERED}, {@value #MERGE_POLICY_LOG_BYTE_SIZE}
+     * or {@value #MERGE_POLICY_LOG_DOC}.
+     */
+    protected String mergePolicy = MERGE_POLICY_TIERED;
+
+    /**
+     * The number of segments merged at once, or -1 for the default of the merge policy.
+     */
+    protected int mergeFactor = -1;
+
+    /**
+     * The size in megabytes beyond which segments are no longer merged, or -1 for the default
+     * of the merge policy. Not used by the {@value #MERGE_POLICY_LOG_DOC} policy.
+     */
+    protected double maxMergedSegment = -1;
+
+    /**
+     * The maximum number of threads running merges at once, or -1 for the default
+     * of the merge scheduler.
+     */
+    protected int mergeThreads = -1;
+
+    /**
+     * The number of threads documents are analyzed and added to the index with, in the
+     * background of the broker that stores them. If 0, documents are added by the broker itself.
+     */
+    protected int indexingThreads = 0;
+    private ThreadPoolExecutor indexingExecutor = null;
+
+    /**
+     * The number of documents handed to the indexing threads, which are not yet added.
+     */
+    private int pendingWrites = 0;
+    private final Object pendingWritesLock = new Object();
+
+    /**
+     * The time in milliseconds between commits of the index. If 0, the index is committed
+     * on every sync, otherwise by a background thread and on syncs not within the interval
+     * since the last commit.
+     */
+    protected long commitInterval = 0;
+    private long lastCommit = 0;
+
+    @Override
+    public String getIndexId() {
+        return ID;
+    }
+
     public String getDirName() {
         return DIR_NAME;
     }
@@ -97,6 +202,72 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: {}", bufferSize);
+
+        final String maxStalenessParam = config.getAttribute(MAX_STALENESS_ATTRIBUTE);
+        if (maxStalenessParam != null)
+            try {
+                maxStaleness = Long.parseLong(maxStalenessParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid max staleness setting for Lucene index: {}", maxStalenessParam, e);
+            }
+
+        final String searchThreadsParam = config.getAttribute(SEARCH_THREADS_ATTRIBUTE);
+        if (searchThreadsParam != null)
+            try {
+                searchThreads = Integer.parseInt(searchThreadsParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid search threads setting for Lucene index: {}", searchThreadsParam, e);
+            }
+
+        final String mergePolicyParam = config.getAttribute(MERGE_POLICY_ATTRIBUTE);
+        if (mergePolicyParam != null) {
+            if (MERGE_POLICY_TIERED.equals(mergePolicyParam) || MERGE_POLICY_LOG_BYTE_SIZE.equals(mergePolicyParam)
+                    || MERGE_POLICY_LOG_DOC.equals(mergePolicyParam)) {
+                mergePolicy = mergePolicyParam;
+            } else {
+                LOG.warn("Invalid merge policy setting for Lucene index: {}", mergePolicyParam);
+            }
+        }
+
+        final String mergeFactorParam = config.getAttribute(MERGE_FACTOR_ATTRIBUTE);
+        if (mergeFactorParam != null)
+            try {
+                mergeFactor = Integer.parseInt(mergeFactorParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid merge factor setting for Lucene index: {}", mergeFactorParam, e);
+            }
+
+        final String maxMergedSegmentParam = config.getAttribute(MAX_MERGED_SEGMENT_ATTRIBUTE);
+        if (maxMergedSegmentParam != null)
+            try {
+                maxMergedSegment = Double.parseDouble(maxMergedSegmentParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid max merged segment setting for Lucene index: {}", maxMergedSegmentParam, e);
+            }
+
+        final String mergeThreadsParam = config.getAttribute(MERGE_THREADS_ATTRIBUTE);
+        if (mergeThreadsParam != null)
+            try {
+                mergeThreads = Integer.parseInt(mergeThreadsParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid merge threads setting for Lucene index: {}", mergeThreadsParam, e);
+            }
+
+        final String indexingThreadsParam = config.getAttribute(INDEXING_THREADS_ATTRIBUTE);
+        if (indexingThreadsParam != null)
+            try {
+                indexingThreads = Integer.parseInt(indexingThreadsParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid indexing threads setting for Lucene index: {}", indexingThreadsParam, e);
+            }
+
+        final String commitIntervalParam = config.getAttribute(COMMIT_INTERVAL_ATTRIBUTE);
+        if (commitIntervalParam != null)
+            try {
+                commitInterval = Long.parseLong(commitIntervalParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid commit interval setting for Lucene index: {}", commitIntervalParam, e);
+            }
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -132,11 +303,59 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
             final IndexWriterConfig idxWriterConfig = new IndexWriterConfig(LUCENE_VERSION_IN_USE, defaultAnalyzer);
             idxWriterConfig.setRAMBufferSizeMB(bufferSize);
+            idxWriterConfig.setMergePolicy(createMergePolicy());
+            if (mergeThreads > 0) {
+                final ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+                mergeScheduler.setMaxMergesAndThreads(Math.max(mergeThreads, mergeScheduler.getMaxMergeCount()), mergeThreads);
+                idxWriterConfig.setMergeScheduler(mergeScheduler);
+            }
             cachedWriter = new IndexWriter(directory, idxWriterConfig);
             cachedTaxonomyWriter = new DirectoryTaxonomyWriter(taxoDirectory);
 
-            searcherManager = new SearcherTaxonomyManager(cachedWriter, true, null, cachedTaxonomyWriter);
+            SearcherFactory searcherFactory = null;
+            if (searchThreads > 1) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                searchExecutor = Executors.newFixedThreadPool(searchThreads, runnable -> {
+                    final Thread thread = new Thread(runnable, getDirName() + "-index-search-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                searcherFactory = new SearcherFactory() {
+                    @Override
+                    public IndexSearcher newSearcher(final IndexReader reader) {
+                        return new IndexSearcher(reader, searchExecutor);
+                    }
+                };
+            }
+            searcherManager = new SearcherTaxonomyManager(cachedWriter, true, searcherFactory, cachedTaxonomyWriter);
             readerManager = new ReaderManager(cachedWriter, true);
+
+            if (indexingThreads > 0) {
+                final AtomicInteger threadCount = new AtomicInteger();
+                // a bounded queue: if the threads cannot keep up, the brokers add the documents themselves
+                indexingExecutor = new ThreadPoolExecutor(indexingThreads, indexingThreads, 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(indexingThreads * 64), runnable -> {
+                            final Thread thread = new Thread(runnable, getDirName() + "-index-writer-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+
+            if (maxStaleness > 0 || commitInterval > 0) {
+                scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, getDirName() + "-index-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                if (maxStaleness > 0) {
+                    // refresh twice within the staleness, so that the refresh itself is covered
+                    final long interval = Math.max(1, maxStaleness / 2);
+                    scheduler.scheduleWithFixedDelay(this::refreshInBackground, interval, interval, TimeUnit.MILLISECONDS);
+                }
+                if (commitInterval > 0) {
+                    scheduler.scheduleWithFixedDelay(this::commitInBackground, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+                }
+            }
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading Lucene index directory: " +
                 e.getMessage(), e);
@@ -145,9 +364,70 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    private MergePolicy createMergePolicy() {
+        switch (mergePolicy) {
+            case MERGE_POLICY_LOG_BYTE_SIZE:
+                final LogByteSizeMergePolicy logByteSizePolicy = new LogByteSizeMergePolicy();
+                if (mergeFactor > 1) {
+                    logByteSizePolicy.setMergeFactor(mergeFactor);
+                }
+                if (maxMergedSegment > 0) {
+                    logByteSizePolicy.setMaxMergeMB(maxMergedSegment);
+                }
+                return logByteSizePolicy;
+
+            case MERGE_POLICY_LOG_DOC:
+                final LogDocMergePolicy logDocPolicy = new LogDocMergePolicy();
+                if (mergeFactor > 1) {
+                    logDocPolicy.setMergeFactor(mergeFactor);
+                }
+                return logDocPolicy;
+
+            default:
+                final TieredMergePolicy tieredPolicy = new TieredMergePolicy();
+                if (mergeFactor > 1) {
+                    tieredPolicy.setMaxMergeAtOnce(mergeFactor);
+                    tieredPolicy.setSegmentsPerTier(mergeFactor);
+                }
+                if (maxMergedSegment > 0) {
+                    tieredPolicy.setMaxMergedSegmentMB(maxMergedSegment);
+                }
+                return tieredPolicy;
+        }
+    }
+
+    /**
+     * Searches the index and passes the hits to the collector. With more than one
+     * search thread configured, the segments of the index are searched in parallel.
+     *
+     * @param searcher the searcher to use
+     * @param query the query
+     * @param collector the collector of the hits, only called from the current thread
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void search(final IndexSearcher searcher, final Query query, final Collector collector) throws IOException {
+        ParallelSegmentSearch.search(searchExecutor, searcher, query, collector);
+    }
+
     @Override
     public synchronized void close() throws DBException {
         try {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+                scheduler = null;
+            }
+            if (indexingExecutor != null) {
+                indexingExecutor.shutdown();
+                indexingExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                indexingExecutor = null;
+            }
+            if (searchExecutor != null) {
+                searchExecutor.shutdown();
+                searchExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                searchExecutor = null;
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -168,12 +448,18 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
             directory.close();
         } catch (IOException e) {
             throw new DBException("Caught exception while closing Lucene indexes: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DBException("Interrupted while closing Lucene indexes: " + e.getMessage());
         }
     }
 
     @Override
     public synchronized void sync() throws DBException {
-        //Nothing special to do
+        if (commitInterval > 0 && System.currentTimeMillis() - lastCommit < commitInterval) {
+            // committed recently, the next timed commit follows within the interval
+            return;
+        }
         commit();
     }
 
@@ -217,16 +503,27 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         return cachedTaxonomyWriter;
     }
 
-    public synchronized void releaseWriter(IndexWriter writer) {
+    /**
+     * Releases the writer after a write.
+     *
+     * @param writer the writer, or null if none was obtained
+     *
+     * @return the generation of the write, which can be passed to
+     *     {@link #withSearcher(long, Function2E)} or {@link #withReader(long, FunctionE)}
+     *     to read it, or 0 if there was no writer
+     */
+    public synchronized long releaseWriter(IndexWriter writer) {
         if (writer == null)
-            return;
+            return 0;
         needsCommit = true;
+        return writeGeneration.incrementAndGet();
     }
 
     protected void commit() {
     	if (!needsCommit) {
             return;
         }
+        awaitPendingWrites();
         try {
             if(LOG.isDebugEnabled()) {
                 LOG.debug("Committing Lucene index");
@@ -236,6 +533,7 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
                 cachedWriter.commit();
             }
             needsCommit = false;
+            lastCommit = System.currentTimeMillis();
         } catch(CorruptIndexException cie) {
             LOG.error("Detected corrupt Lucene index on writer release and commit: {}", cie.getMessage(), cie);
         } catch(IOException ioe) {
@@ -243,8 +541,136 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    /**
+     * Makes the writes up to the given generation visible to searches, unless they
+     * already are. Concurrent callers share a single reopen of the searchers.
+     *
+     * @param generation the write generation to wait for
+     */
+    private void refresh(final long generation) throws IOException {
+        if (searchableGeneration >= generation) {
+            return;
+        }
+        synchronized (refreshLock) {
+            if (searchableGeneration >= generation) {
+                return;
+            }
+            // writes are counted after they were made, or handed to the indexing threads,
+            // so all writes up to this generation will be visible
+            final long current = writeGeneration.get();
+            awaitPendingWrites();
+            searcherManager.maybeRefreshBlocking();
+            readerManager.maybeRefreshBlocking();
+            searchableGeneration = current;
+        }
+    }
+
+    private synchronized void commitInBackground() {
+        commit();
+    }
+
+    /**
+     * Adds a document to the index. With indexing threads configured, the document is
+     * analyzed and added by one of them, and this method returns before. Call
+     * {@link #awaitPendingWrites()} before deleting documents which might still be added.
+     *
+     * @param writer the writer obtained from {@link #getWriter()}
+     * @param document the document to add
+     * @param analyzer the analyzer to use, or null for the default analyzer of the writer
+     *
+     * @throws IOException if an I/O error occurs while adding the document on the current thread
+     */
+    public void addDocument(final IndexWriter writer, final Iterable<? extends IndexableField> document,
+            @Nullable final Analyzer analyzer) throws IOException {
+        final ThreadPoolExecutor executor = indexingExecutor;
+        if (executor == null) {
+            addDocumentNow(writer, document, analyzer);
+            return;
+        }
+
+        synchronized (pendingWritesLock) {
+            pendingWrites++;
+        }
+        executor.execute(() -> {
+            try {
+                addDocumentNow(writer, document, analyzer);
+            } catch (final IOException | RuntimeException e) {
+                LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
+            } finally {
+                synchronized (pendingWritesLock) {
+                    if (--pendingWrites == 0) {
+                        pendingWritesLock.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+    private static void addDocumentNow(final IndexWriter writer, final Iterable<? extends IndexableField> document,
+            @Nullable final Analyzer analyzer) throws IOException {
+        if (analyzer == null) {
+            writer.addDocument(document);
+        } else {
+            writer.addDocument(document, analyzer);
+        }
+    }
+
+    /**
+     * Waits until the documents handed to the indexing threads by {@link #addDocument(IndexWriter, Iterable, Analyzer)}
+     * are added to the index.
+     */
+    public void awaitPendingWrites() {
+        synchronized (pendingWritesLock) {
+            boolean interrupted = false;
+            while (pendingWrites > 0) {
+                try {
+                    pendingWritesLock.wait();
+                } catch (final InterruptedException e) {
+                    // the writes have to complete before the index may be read or changed further
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void refreshInBackground() {
+        try {
+            refresh(writeGeneration.get());
+        } catch (final IOException | RuntimeException e) {
+            LOG.warn("Failed to refresh {} index searchers: {}", getDirName(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Determines the write generation a search has to wait for.
+     *
+     * @param ownGeneration the generation of the caller's own last write
+     */
+    private long requiredGeneration(final long ownGeneration) {
+        return maxStaleness > 0 ? ownGeneration : writeGeneration.get();
+    }
+
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        return withReader(0, fn);
+    }
+
+    /**
+     * Reads from the index, seeing at least the writes up to the given generation.
+     *
+     * @param ownGeneration the generation of the caller's own last write, as returned
+     *     by {@link #releaseWriter(IndexWriter)}, or 0
+     * @param fn the function to apply to the reader
+     * @param <R> the type of the result
+     *
+     * @return the result of the function
+     *
+     * @throws IOException if the reader cannot be refreshed or read from
+     */
+    public <R> R withReader(final long ownGeneration, FunctionE<IndexReader, R, IOException> fn) throws IOException {
+        refresh(requiredGeneration(ownGeneration));
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -254,7 +680,24 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(final Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        return withSearcher(0, consumer);
+    }
+
+    /**
+     * Searches the index, seeing at least the writes up to the given generation.
+     *
+     * @param ownGeneration the generation of the caller's own last write, as returned
+     *     by {@link #releaseWriter(IndexWriter)}, or 0
+     * @param consumer the function to apply to the searcher
+     * @param <R> the type of the result
+     *
+     * @return the result of the function
+     *
+     * @throws IOException if the searcher cannot be refreshed or searched
+     * @throws XPathException if the function fails
+     */
+    public <R> R withSearcher(final long ownGeneration, final Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
+        refresh(requiredGeneration(ownGeneration));
         final SearcherTaxonomyManager.SearcherAndTaxonomy searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -123,6 +123,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     
     private Analyzer analyzer;
 
+    /**
+     * The generation of the last write of this worker, so that its searches see it.
+     */
+    private long writeGeneration = 0;
+
     public static final String FIELD_DOC_ID = "docId";
     public static final String FIELD_DOC_URI = "docUri";
 
@@ -310,9 +315,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return matchListener;
     }
 
+    private void releaseWriter(final IndexWriter writer) {
+        writeGeneration = Math.max(writeGeneration, index.releaseWriter(writer));
+    }
+
     protected void removeDocument(int docId) {
     	IndexWriter writer = null;
         try {
+            index.awaitPendingWrites();
             writer = index.getWriter();
             final BytesRefBuilder bytes = new BytesRefBuilder();
             NumericUtils.intToPrefixCoded(docId, 0, bytes);
@@ -321,7 +331,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -329,6 +339,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     protected void removePlainTextIndexes() {
     	IndexWriter writer = null;
         try {
+            index.awaitPendingWrites();
             writer = index.getWriter();
             String uri = currentDoc.getURI().toString();
             Term dt = new Term(FIELD_DOC_URI, uri);
@@ -336,7 +347,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -347,6 +358,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.debug("Removing collection {}", collection.getURI());
         IndexWriter writer = null;
         try {
+            index.awaitPendingWrites();
             writer = index.getWriter();
             for (Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
                 DocumentImpl doc = i.next();
@@ -358,7 +370,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -382,6 +394,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             return;
         IndexWriter writer = null;
         try {
+            index.awaitPendingWrites();
             writer = index.getWriter();
 
             final BytesRefBuilder bytes = new BytesRefBuilder();
@@ -406,7 +419,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while deleting lucene index entries: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToRemove = null;
         }
     }
@@ -434,9 +447,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(final int contextId, final DocumentSet docs, @Nullable final NodeSet contextSet,
                          final List<QName> qnames, final String queryStr, final int axis, final QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
+            final List<LuceneHitCollector> collectors = new ArrayList<>(definedIndexes.size());
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
             for (final QName qname : definedIndexes) {
                 final String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
@@ -454,9 +468,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 if (facets.isPresent() && config != null) {
                     query = drilldown(facets.get(), query, config);
                 }
-                searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, config);
+                collectors.add(searchAndProcess(contextId, qname, docs, contextSet, resultSet,
+                        returnAncestor, searcher, query, config, options));
             }
+            addTopHits(collectors, searcher, options);
             return resultSet;
         });
     }
@@ -484,9 +499,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet,
                          List<QName> qnames, Element queryRoot, int axis, QueryOptions options)
             throws IOException, ParseException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final List<QName> definedIndexes = getDefinedIndexes(qnames);
             final NodeSet resultSet = new NewArrayNodeSet();
+            final List<LuceneHitCollector> collectors = new ArrayList<>(definedIndexes.size());
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
             for (QName qname : definedIndexes) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
@@ -498,10 +514,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     query = drilldown(facets.get(), query, config);
                 }
                 if (query != null) {
-                    searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, config);
+                    collectors.add(searchAndProcess(contextId, qname, docs, contextSet, resultSet,
+                            returnAncestor, searcher, query, config, options));
                 }
             }
+            addTopHits(collectors, searcher, options);
             return resultSet;
         });
     }
@@ -509,15 +526,16 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet,
                               String field, Element queryRoot, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             final NodeSet resultSet = new NewArrayNodeSet();
             final boolean returnAncestor = axis == NodeSet.ANCESTOR;
             final LuceneConfig config = getLuceneConfig(broker, docs);
             analyzer = getQueryAnalyzer(config, field, null, options);
             final Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
             if (query != null) {
-                searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, config);
+                final LuceneHitCollector collector = searchAndProcess(contextId, null, docs, contextSet, resultSet,
+                        returnAncestor, searcher, query, config, options);
+                addTopHits(Collections.singletonList(collector), searcher, options);
             }
             return resultSet;
         });
@@ -532,17 +550,58 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return drillDownQuery;
     }
 
-    private void searchAndProcess(final int contextId, final QName qname, final DocumentSet docs,
+    private LuceneHitCollector searchAndProcess(final int contextId, final QName qname, final DocumentSet docs,
                                   @Nullable final NodeSet contextSet, final NodeSet resultSet, final boolean returnAncestor,
                                   final SearcherTaxonomyManager.SearcherAndTaxonomy searcher, final Query query,
-                                  final LuceneConfig config) throws IOException {
+                                  final LuceneConfig config, final QueryOptions options) throws IOException {
         final LuceneFacets facets = new LuceneFacets();
         final FacetsCollector facetsCollector = new FacetsCollector();
-        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector);
-        searcher.searcher.search(query, collector);
+        // with a limit, only the best scoring hits are kept, to be added by addTopHits
+        final int maxDoc = searcher.searcher.getIndexReader().maxDoc();
+        final TopScoreDocCollector topHits = options.getLimit()
+                .map(limit -> TopScoreDocCollector.create((int) Math.max(1, Math.min(maxDoc, (long) options.getOffset() + limit)), true))
+                .orElse(null);
+        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, topHits);
+        index.search(searcher.searcher, query, collector);
 
         // compute facets
         facets.compute(searcher.taxonomyReader, config.facetsConfig, facetsCollector);
+        return collector;
+    }
+
+    /**
+     * Adds the page of best scoring hits selected by the limit and offset options to the results,
+     * resolving only those hits to nodes.
+     *
+     * @param collectors the collectors of the searches, one for each field searched
+     * @param searcher the searcher the collectors were used with
+     * @param options the query options
+     */
+    private void addTopHits(final List<LuceneHitCollector> collectors, final SearcherTaxonomyManager.SearcherAndTaxonomy searcher,
+                            final QueryOptions options) throws IOException {
+        if (options.getLimit().isEmpty()) {
+            return;
+        }
+
+        final List<TopHit> hits = new ArrayList<>();
+        for (final LuceneHitCollector collector : collectors) {
+            for (final ScoreDoc scoreDoc : collector.topHits.topDocs().scoreDocs) {
+                hits.add(new TopHit(collector, scoreDoc));
+            }
+        }
+        hits.sort((h1, h2) -> Float.compare(h2.scoreDoc.score, h1.scoreDoc.score));
+
+        final List<AtomicReaderContext> leaves = searcher.searcher.getIndexReader().leaves();
+        final int end = (int) Math.min(hits.size(), (long) options.getOffset() + options.getLimit().get());
+        for (int i = options.getOffset(); i < end; i++) {
+            final TopHit hit = hits.get(i);
+            final AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(hit.scoreDoc.doc, leaves));
+            hit.collector.setLeaf(leaf);
+            hit.collector.add(hit.scoreDoc.doc - leaf.docBase, hit.scoreDoc.score);
+        }
+    }
+
+    private record TopHit(LuceneHitCollector collector, ScoreDoc scoreDoc) {
     }
 
     /**
@@ -580,7 +639,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      * @throws IOException in case of Lucene IO error
      */
     public Map<Object, Query> getTerms(final Query query) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             final Map<Object, Query> termMap = new TreeMap<>();
             LuceneUtil.extractTerms(query, termMap, reader, false);
             return termMap;
@@ -590,7 +649,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet queryField(XQueryContext context, int contextId, DocumentSet docs, NodeSet contextSet,
             String field, String queryString, int axis, QueryOptions options)
             throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             NodeSet resultSet = new NewArrayNodeSet();
             boolean returnAncestor = axis == NodeSet.ANCESTOR;
             LuceneConfig config = getLuceneConfig(context.getBroker(), docs);
@@ -599,8 +658,9 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             QueryParserWrapper parser = getQueryParser(field, analyzer, docs);
             options.configureParser(parser.getConfiguration());
             Query query = parser.parse(queryString);
-            searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                    returnAncestor, searcher, query, config);
+            LuceneHitCollector collector = searchAndProcess(contextId, null, docs, contextSet, resultSet,
+                    returnAncestor, searcher, query, config, options);
+            addTopHits(Collections.singletonList(collector), searcher, options);
             return resultSet;
         });
     }
@@ -682,12 +742,12 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         try {
             writer = index.getWriter();
             
-            writer.addDocument(pendingDoc);
+            index.addDocument(writer, pendingDoc, null);
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
 
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             pendingDoc = null;
             cachedNodesSize = 0;
         }
@@ -709,7 +769,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      */
     public NodeImpl search(final XQueryContext context, final List<String> toBeMatchedURIs, String queryText, String[] fieldsToGet, QueryOptions options) throws XPathException, IOException {
 
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             // Get analyzer : to be retrieved from configuration
             final Analyzer searchAnalyzer = new StandardAnalyzer(LuceneIndex.LUCENE_VERSION_IN_USE);
 
@@ -738,7 +798,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
                 // Perform actual search
                 final BinarySearchCollector collector = new BinarySearchCollector(toBeMatchedURIs, builder, fields, searchAnalyzer, highlighter);
-                searcher.searcher.search(query, collector);
+                index.search(searcher.searcher, query, collector);
 
                 // finish root element
                 builder.endElement();
@@ -845,7 +905,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
                 AtomicReader atomicReader = context.reader();
@@ -863,7 +923,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public @Nullable BytesRef getBinaryField(final int docId, final String field) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             final List<AtomicReaderContext> leaves = reader.leaves();
             for (final AtomicReaderContext context : leaves) {
                 final int id = docId - context.docBase;
@@ -883,7 +943,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public IndexableField[] getField(final int docId, final String field) throws IOException {
         final Set<String> fields = ObjectArraySet.of(field);
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             final Document doc = reader.document(docId, fields);
             return doc.getFields(field);
         });
@@ -894,7 +954,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         NumericUtils.intToPrefixCoded(docId, 0, bytes);
         Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
 
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             boolean found = false;
             List<AtomicReaderContext> leaves = reader.leaves();
             for (AtomicReaderContext context : leaves) {
@@ -953,8 +1013,9 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final Query query;
         private final LuceneFacets facets;
         private final FacetsCollector chainedCollector;
+        private @Nullable final TopScoreDocCollector topHits;
 
-        private LuceneHitCollector(final QName qname, final Query query, final DocumentSet docs, @Nullable final NodeSet contextSet, final NodeSet resultSet, final boolean returnAncestor, final int contextId, final LuceneFacets facets, final FacetsCollector nextCollector) {
+        private LuceneHitCollector(final QName qname, final Query query, final DocumentSet docs, @Nullable final NodeSet contextSet, final NodeSet resultSet, final boolean returnAncestor, final int contextId, final LuceneFacets facets, final FacetsCollector nextCollector, @Nullable final TopScoreDocCollector topHits) {
             this.qname = qname;
             this.docs = docs;
             this.contextSet = contextSet;
@@ -964,21 +1025,32 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             this.query = query;
             this.facets = facets;
             this.chainedCollector = nextCollector;
+            this.topHits = topHits;
         }
 
         @Override
         public void setScorer(Scorer scorer) throws IOException {
             this.scorer = scorer;
             chainedCollector.setScorer(scorer);
+            if (topHits != null) {
+                topHits.setScorer(scorer);
+            }
         }
 
         @Override
         public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            setLeaf(atomicReaderContext);
+            chainedCollector.setNextReader(atomicReaderContext);
+            if (topHits != null) {
+                topHits.setNextReader(atomicReaderContext);
+            }
+        }
+
+        private void setLeaf(final AtomicReaderContext atomicReaderContext) throws IOException {
             AtomicReader reader = atomicReaderContext.reader();
             this.docBase = atomicReaderContext.docBase;
             this.docIdValues = reader.getNumericDocValues(FIELD_DOC_ID);
             this.nodeIdValues = reader.getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
-            chainedCollector.setNextReader(atomicReaderContext);
         }
 
         @Override
@@ -989,48 +1061,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         @Override
         public void collect(int doc) {
             try {
-                float score = scorer.score();
-                int docId = (int) this.docIdValues.get(doc);
-                DocumentImpl storedDocument = docs.getDoc(docId);
-                if (storedDocument == null)
-                    return;
-                final BytesRef ref = this.nodeIdValues.get(doc);
-                int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-                NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
-                //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
-
-                NodeProxy storedNode = new NodeProxy(null, storedDocument, nodeId);
-                if (qname != null) {
-                    storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
-                }
-                // if a context set is specified, we can directly check if the
-                // matching node is a descendant of one of the nodes
-                // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = createMatch(doc, score, nodeId);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                            chainedCollector.collect(doc);
-                        }
-                    } else {
-                        LuceneMatch match = createMatch(doc, score, nodeId);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
+                if (topHits != null) {
+                    // only remember the hit, the best ones are resolved to nodes by addTopHits
+                    final NodeProxy storedNode = storedNode(doc);
+                    if (storedNode != null && (contextSet == null || !returnAncestor || contextSet.get(storedNode) != null)) {
+                        topHits.collect(doc);
                         chainedCollector.collect(doc);
                     }
-                } else {
-                    LuceneMatch match = createMatch(doc, score, nodeId);
-                    storedNode.addMatch(match);
-                    resultSet.add(storedNode);
+                } else if (add(doc, scorer.score())) {
                     chainedCollector.collect(doc);
                 }
             } catch (final IOException e) {
@@ -1038,6 +1076,66 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             }
         }
 
+        private @Nullable NodeProxy storedNode(final int doc) {
+            int docId = (int) this.docIdValues.get(doc);
+            DocumentImpl storedDocument = docs.getDoc(docId);
+            if (storedDocument == null)
+                return null;
+            final BytesRef ref = this.nodeIdValues.get(doc);
+            int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+            NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+            //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
+
+            NodeProxy storedNode = new NodeProxy(null, storedDocument, nodeId);
+            if (qname != null) {
+                storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
+            }
+            return storedNode;
+        }
+
+        /**
+         * Adds the node of a hit in the current segment to the results.
+         *
+         * @return true if the hit was added, false if it is not in the document or context set
+         */
+        private boolean add(final int doc, final float score) {
+            final NodeProxy storedNode = storedNode(doc);
+            if (storedNode == null) {
+                return false;
+            }
+            final DocumentImpl storedDocument = storedNode.getOwnerDocument();
+            final NodeId nodeId = storedNode.getNodeId();
+            // if a context set is specified, we can directly check if the
+            // matching node is a descendant of one of the nodes
+            // in the context set.
+            if (contextSet != null) {
+                int sizeHint = contextSet.getSizeHint(storedDocument);
+                if (returnAncestor) {
+                    NodeProxy parentNode = contextSet.get(storedNode);
+                    // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
+                    if (parentNode == null) {
+                        return false;
+                    }
+                    LuceneMatch match = createMatch(doc, score, nodeId);
+                    parentNode.addMatch(match);
+                    resultSet.add(parentNode, sizeHint);
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        parentNode.deepCopyContext(storedNode, contextId);
+                    } else
+                        parentNode.copyContext(storedNode);
+                } else {
+                    LuceneMatch match = createMatch(doc, score, nodeId);
+                    storedNode.addMatch(match);
+                    resultSet.add(storedNode, sizeHint);
+                }
+            } else {
+                LuceneMatch match = createMatch(doc, score, nodeId);
+                storedNode.addMatch(match);
+                resultSet.add(storedNode);
+            }
+            return true;
+        }
+
         private LuceneMatch createMatch(final int docId, final float score, final NodeId nodeId) {
             final LuceneMatch match = new LuceneMatch(contextId, docId + docBase, nodeId, query, facets);
             match.setScore(score);
@@ -1073,7 +1171,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private void getDefinedIndexesFor(final QName qname, final List<QName> indexes) throws IOException {
-        index.<Void>withReader(reader -> {
+        index.<Void>withReader(writeGeneration, reader -> {
             for (final FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     final QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -1222,7 +1320,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(writeGeneration, reader -> {
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
                 doScanIndex(docs, nodes, start, end, max, map, reader, field);
@@ -1235,7 +1333,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private Occurrences[] scanIndexByField(String field, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
         final TreeMap<String, Occurrences> map = new TreeMap<>();
-        index.withReader(reader -> {
+        index.withReader(writeGeneration, reader -> {
             doScanIndex(docs, nodes, start, end, max, map, reader, field);
             return null;
         });
@@ -1370,14 +1468,15 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
-            // docId and nodeId are stored as doc value
-            NumericDocValuesField fDocId = new NumericDocValuesField(FIELD_DOC_ID, 0);
-            BinaryDocValuesField fNodeId = new BinaryDocValuesField(LuceneUtil.FIELD_NODE_ID, new BytesRef(8));
-            // docId also needs to be indexed
-            IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
 
             for (PendingDoc pending : nodesToWrite) {
                 final Document doc = new Document();
+                // the fields are not reused between documents, which may be added in the background
+                // docId and nodeId are stored as doc value
+                NumericDocValuesField fDocId = new NumericDocValuesField(FIELD_DOC_ID, 0);
+                BinaryDocValuesField fNodeId = new BinaryDocValuesField(LuceneUtil.FIELD_NODE_ID, new BytesRef(8));
+                // docId also needs to be indexed
+                IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
 
 
                 List<AbstractFieldConfig> facetConfigs = pending.idxConf.getFacetsAndFields();
@@ -1424,16 +1523,13 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 fDocIdIdx.setIntValue(currentDoc.getDocId());
                 doc.add(fDocIdIdx);
 
-                if (pending.idxConf.getAnalyzer() == null) {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc));
-                } else {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc), pending.idxConf.getAnalyzer());
-		        }
+                // analysis is left to the index, which may run it on one of its indexing threads
+                index.addDocument(writer, config.facetsConfig.build(index.getTaxonomyWriter(), doc), pending.idxConf.getAnalyzer());
 	        }
         } catch (final IOException e) {
             LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToWrite = new ArrayList<>();
             cachedNodesSize = 0;
         }
@@ -1446,13 +1542,14 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public void optimize() {
         IndexWriter writer = null;
         try {
+            index.awaitPendingWrites();
             writer = index.getWriter(true);
             writer.forceMerge(1, true);
             writer.commit();
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
         }
     }
 
@@ -0,0 +1,190 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches the segments of an index in parallel.
+ *
+ * {@link IndexSearcher#search(Query, Collector)} ignores the executor of the searcher and
+ * runs on the calling thread. Here, the segments are matched and scored by the tasks of an
+ * executor instead, each into a buffer of hits. The hits are then passed to the collector
+ * from the calling thread, segment after segment in the order of the index, so that collectors
+ * need not be thread-safe and see the same calls as with a sequential search.
+ */
+final class ParallelSegmentSearch {
+
+    private ParallelSegmentSearch() {
+    }
+
+    /**
+     * Searches the index and passes the hits to the collector.
+     *
+     * @param executor the executor to search the segments with, or null to search on the calling thread
+     * @param searcher the searcher
+     * @param query the query
+     * @param collector the collector of the hits
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    static void search(final ExecutorService executor, final IndexSearcher searcher, final Query query,
+            final Collector collector) throws IOException {
+        final List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        if (executor == null || leaves.size() < 2) {
+            searcher.search(query, collector);
+            return;
+        }
+
+        final Weight weight = searcher.createNormalizedWeight(query);
+        final boolean inOrder = !collector.acceptsDocsOutOfOrder();
+        final List<Future<SegmentHits>> segments = new ArrayList<>(leaves.size());
+        try {
+            for (final AtomicReaderContext leaf : leaves) {
+                segments.add(executor.submit(() -> SegmentHits.collect(weight, leaf, inOrder)));
+            }
+
+            final ReplayScorer scorer = new ReplayScorer(weight);
+            for (int i = 0; i < leaves.size(); i++) {
+                final SegmentHits hits = segments.get(i).get();
+                try {
+                    collector.setNextReader(leaves.get(i));
+                    collector.setScorer(scorer);
+                    for (int j = 0; j < hits.count; j++) {
+                        scorer.doc = hits.docs[j];
+                        scorer.score = hits.scores[j];
+                        collector.collect(scorer.doc);
+                    }
+                } catch (final CollectionTerminatedException e) {
+                    // collector wants no more hits from this segment
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching Lucene index");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error while searching Lucene index: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (final Future<SegmentHits> segment : segments) {
+                segment.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The documents and scores of the hits in one segment.
+     */
+    private static class SegmentHits extends Collector {
+        private int[] docs = new int[16];
+        private float[] scores = new float[16];
+        private int count = 0;
+        private Scorer scorer;
+
+        static SegmentHits collect(final Weight weight, final AtomicReaderContext leaf, final boolean inOrder) throws IOException {
+            final SegmentHits hits = new SegmentHits();
+            final BulkScorer scorer = weight.bulkScorer(leaf, inOrder, leaf.reader().getLiveDocs());
+            if (scorer != null) {
+                scorer.score(hits);
+            }
+            return hits;
+        }
+
+        @Override
+        public void setScorer(final Scorer scorer) {
+            this.scorer = scorer;
+        }
+
+        @Override
+        public void collect(final int doc) throws IOException {
+            if (count == docs.length) {
+                docs = ArrayUtil.grow(docs, count + 1);
+                scores = ArrayUtil.grow(scores, count + 1);
+            }
+            docs[count] = doc;
+            scores[count++] = scorer.score();
+        }
+
+        @Override
+        public void setNextReader(final AtomicReaderContext context) {
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
+        }
+    }
+
+    /**
+     * Gives the collector the score of the hit being replayed.
+     */
+    private static class ReplayScorer extends Scorer {
+        private int doc = -1;
+        private float score;
+
+        ReplayScorer(final Weight weight) {
+            super(weight);
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int advance(final int target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long cost() {
+            return 1;
+        }
+    }
+}
@@ -59,7 +59,8 @@ public class Query extends Function implements Optimizable {
             returnsOptMany(Type.NODE, """
                     all nodes from the input node set matching the query. match highlighting information
                     will be available for all returned nodes. Lucene's match score can be retrieved via
-                    the ft:score function."""),
+                    the ft:score function. With the limit option, only that many of the best scoring
+                    matches are returned, after skipping as many as the offset option gives."""),
             arities(
                     arity(
                         FS_PARAM_NODES,
@@ -77,6 +78,8 @@ public class Query extends Function implements Optimizable {
                                            <leading-wildcard>yes|no</leading-wildcard>
                                            <filter-rewrite>yes|no</filter-rewrite>
                                            <lowercase-expanded-terms>yes|no</lowercase-expanded-terms>
+                                           <limit>number</limit>
+                                           <offset>number</offset>
                                         </options>"""
                         )
                     )
@@ -63,6 +63,8 @@ public class QueryField extends Query implements Optimizable {
                                        <phrase-slop>number</phrase-slop>
                                        <leading-wildcard>yes|no</leading-wildcard>
                                        <filter-rewrite>yes|no</filter-rewrite>
+                                       <limit>number</limit>
+                                       <offset>number</offset>
                                     </options>"""
                             )
                     )
@@ -54,6 +54,8 @@ public class QueryOptions {
     public static final String OPTION_LOWERCASE_EXPANDED_TERMS = "lowercase-expanded-terms";
     public static final String OPTION_FACETS = "facets";
     public static final String OPTION_QUERY_ANALYZER_ID = "query-analyzer-id";
+    public static final String OPTION_LIMIT = "limit";
+    public static final String OPTION_OFFSET = "offset";
 
     protected enum DefaultOperator {
         OR,
@@ -69,6 +71,8 @@ public class QueryOptions {
     protected boolean lowercaseExpandedTerms = false;
     protected Optional<Map<String, FacetQuery>> facets = Optional.empty();
     protected Set<String> fields = null;
+    protected Optional<Integer> limit = Optional.empty();
+    protected int offset = 0;
 
     public QueryOptions() {
         // default options
@@ -207,6 +211,26 @@ public class QueryOptions {
         return filterRewrite;
     }
 
+    /**
+     * Get the maximum number of hits to return. If set, only the best scoring
+     * hits are resolved to nodes, instead of all of them.
+     *
+     * @return the maximum number of hits, or empty to return all hits
+     */
+    public Optional<Integer> getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the number of best scoring hits to skip before the {@link #getLimit() limit}
+     * applies, to page through the hits.
+     *
+     * @return the number of hits to skip
+     */
+    public int getOffset() {
+        return offset;
+    }
+
     private void set(String key, String value) throws XPathException {
         switch (key) {
             case OPTION_DEFAULT_OPERATOR:
@@ -230,6 +254,12 @@ public class QueryOptions {
             case OPTION_LOWERCASE_EXPANDED_TERMS:
                 lowercaseExpandedTerms = value.equalsIgnoreCase("yes");
                 break;
+            case OPTION_LIMIT:
+                limit = Optional.of(parseNonNegative(OPTION_LIMIT, value));
+                break;
+            case OPTION_OFFSET:
+                offset = parseNonNegative(OPTION_OFFSET, value);
+                break;
             case OPTION_QUERY_ANALYZER_ID:
                 queryAnalyzerId = value;
             default:
@@ -238,6 +268,18 @@ public class QueryOptions {
         }
     }
 
+    private static int parseNonNegative(final String option, final String value) throws XPathException {
+        try {
+            final int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new XPathException((Expression) null, LuceneModule.EXXQDYFT0004, "Option " + option + " must be a non-negative integer");
+    }
+
     public void configureParser(CommonQueryParserConfiguration parser) {
         if (parser instanceof QueryParserBase) {
             switch (defaultOperator) {
@@ -24,13 +24,19 @@ package org.exist.indexing.lucene;
 import static org.exist.util.PropertiesBuilder.propertiesBuilder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
 import org.exist.EXistException;
 import org.exist.Indexer;
 import org.exist.TestUtils;
@@ -48,6 +54,7 @@ import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.ElementValue;
+import org.exist.storage.btree.DBException;
 import org.exist.storage.txn.TransactionManager;
 import org.exist.storage.txn.Txn;
 import org.exist.test.ExistEmbeddedServer;
@@ -294,6 +301,174 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void readOwnWritesWhenStale() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, LockException, IOException, XPathException, InterruptedException, ExecutionException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final LuceneIndex index = (LuceneIndex) pool.getIndexManager().getIndexById(LuceneIndex.ID);
+        final long savedMaxStaleness = index.maxStaleness;
+        // no background refresh is running, so searches only see the writes they wait for
+        index.maxStaleness = Long.MAX_VALUE;
+        final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            // warm up the searcher of the other thread's broker
+            countMatches(otherThread, "/section[ft:query(p, 'content')]");
+
+            configureAndStore(COLLECTION_CONFIG1, XML1, "test.xml");
+
+            // the searchers are shared, so the other thread has to search before they are refreshed for this one
+            assertEquals(0, countMatches(otherThread, "/section[ft:query(p, 'content')]"));
+
+            final Sequence seq = pool.getXQueryService().execute(broker, "/section[ft:query(p, 'content')]", null);
+            assertEquals(1, seq.getItemCount());
+        } finally {
+            index.maxStaleness = savedMaxStaleness;
+        }
+        try {
+            assertEquals(1, countMatches(otherThread, "/section[ft:query(p, 'content')]"));
+        } finally {
+            otherThread.shutdownNow();
+        }
+    }
+
+    private static int countMatches(final ExecutorService executor, final String query) throws InterruptedException, ExecutionException {
+        return executor.submit(() -> {
+            final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                return pool.getXQueryService().execute(broker, query, null).getItemCount();
+            }
+        }).get();
+    }
+
+    @Test
+    public void parallelSegmentSearch() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException, DBException, DatabaseConfigurationException {
+        final LuceneIndex index = luceneIndex();
+        final int savedSearchThreads = index.searchThreads;
+        try {
+            configureAndStore(COLLECTION_CONFIG1, XML1, "test.xml");
+            for (int i = 1; i <= 6; i++) {
+                // the number of matches varies, so that the scores differ
+                final StringBuilder p = new StringBuilder();
+                for (int j = 0; j < i; j++) {
+                    p.append("content ");
+                }
+                configureAndStore(null, "<section><head>Segment " + i + "</head><p>" + p + "of paragraph " + i + "</p></section>", "segment" + i + ".xml");
+                // the refresh flushes the document into a new segment
+                index.withReader(IndexReader::numDocs);
+            }
+
+            final String query = "string-join(for $p in collection('" + TestConstants.TEST_COLLECTION_URI + "')//p[ft:query(., 'content paragraph')]\n" +
+                    "order by ft:score($p) descending return util:document-name($p) || ':' || ft:score($p), ',')";
+
+            reopen(index, () -> index.searchThreads = 1);
+            assertTrue(index.withReader(reader -> reader.leaves().size()) > 1);
+            final String sequential = execute(query);
+
+            reopen(index, () -> index.searchThreads = 4);
+            assertTrue(index.withReader(reader -> reader.leaves().size()) > 1);
+            final String parallel = execute(query);
+
+            assertTrue(sequential.contains("segment6.xml"));
+            assertEquals(sequential, parallel);
+        } finally {
+            reopen(index, () -> index.searchThreads = savedSearchThreads);
+        }
+    }
+
+    @Test
+    public void indexInBackground() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException, DBException, DatabaseConfigurationException {
+        final LuceneIndex index = luceneIndex();
+        final int savedIndexingThreads = index.indexingThreads;
+        reopen(index, () -> index.indexingThreads = 2);
+        try {
+            configureAndStore(COLLECTION_CONFIG1, SAMPLES.getShakespeareXmlSampleNames());
+            // the search waits for the documents still being added by the indexing threads
+            assertEquals("6", execute("count(//LINE[ft:query(., 'bark')])"));
+        } finally {
+            reopen(index, () -> index.indexingThreads = savedIndexingThreads);
+        }
+    }
+
+    @Test
+    public void removeWhileIndexingInBackground() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, DBException, DatabaseConfigurationException {
+        final LuceneIndex index = luceneIndex();
+        final int savedIndexingThreads = index.indexingThreads;
+        reopen(index, () -> index.indexingThreads = 1);
+        try {
+            final int indexedBefore = index.withReader(IndexReader::numDocs);
+
+            final String[] sampleNames = SAMPLES.getShakespeareXmlSampleNames();
+            configureAndStore(COLLECTION_CONFIG1, sampleNames);
+            // the documents are likely still queued for the single indexing thread
+            final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+            final TransactionManager transact = pool.getTransactionManager();
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                    final Txn transaction = transact.beginTransaction()) {
+                for (final String sampleName : sampleNames) {
+                    root.removeXMLResource(transaction, broker, XmldbURI.create(sampleName));
+                }
+                transact.commit(transaction);
+            }
+
+            // the queued documents were added before they were deleted, none of them remains
+            assertEquals(indexedBefore, (int) index.withReader(IndexReader::numDocs));
+        } finally {
+            reopen(index, () -> index.indexingThreads = savedIndexingThreads);
+        }
+    }
+
+    @Test
+    public void timedCommit() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, DBException, DatabaseConfigurationException, InterruptedException {
+        final LuceneIndex index = luceneIndex();
+        final long savedCommitInterval = index.commitInterval;
+        reopen(index, () -> index.commitInterval = 1000);
+        try {
+            // a sync within the interval since this commit does not commit again
+            index.needsCommit = true;
+            index.commit();
+            final int committedBefore = committedDocs(index);
+
+            configureAndStore(COLLECTION_CONFIG1, XML1, "test.xml");
+            assertTrue(index.withReader(IndexReader::numDocs) > committedBefore);
+
+            final long deadline = System.currentTimeMillis() + 30_000;
+            while (committedDocs(index) == committedBefore && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(committedDocs(index) > committedBefore);
+        } finally {
+            reopen(index, () -> index.commitInterval = savedCommitInterval);
+        }
+    }
+
+    private static LuceneIndex luceneIndex() {
+        return (LuceneIndex) existEmbeddedServer.getBrokerPool().getIndexManager().getIndexById(LuceneIndex.ID);
+    }
+
+    /**
+     * Closes the index, changes its settings, and opens it again.
+     */
+    private static void reopen(final LuceneIndex index, final Runnable settings) throws DBException, DatabaseConfigurationException {
+        index.close();
+        settings.run();
+        index.open();
+    }
+
+    /**
+     * @return the number of documents in the last commit of the index
+     */
+    private static int committedDocs(final LuceneIndex index) throws IOException {
+        try (final DirectoryReader reader = DirectoryReader.open(index.directory)) {
+            return reader.numDocs();
+        }
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return pool.getXQueryService().execute(broker, query, null).getStringValue();
+        }
+    }
+
     @Test
     public void moreElaborateQueries() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, LockException, IOException, XPathException, QName.IllegalQNameException {
         final String XML10 =
@@ -578,6 +753,27 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void limitAndOffset() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG6, XML6, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "ft:query((//b|//c), 'AAA', map { 'limit': 1 })/local-name(.)", null);
+            assertEquals(1, seq.getItemCount());
+            assertEquals("c", seq.getStringValue());
+
+            seq = xquery.execute(broker, "ft:query((//b|//c), 'AAA', map { 'limit': 5, 'offset': 1 })/local-name(.)", null);
+            assertEquals(2, seq.getItemCount());
+            assertEquals("b", seq.itemAt(0).getStringValue());
+
+            seq = xquery.execute(broker, "ft:query(//b, 'AAA', map { 'limit': 0 })", null);
+            assertEquals(0, seq.getItemCount());
+        }
+    }
+
     @Test
     public void queryTranslation() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
         configureAndStore(COLLECTION_CONFIG1, XML7, "test.xml");
@@ -107,6 +107,11 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private int maxCachedNodesSize = 4096 * 1024;
 
+    /**
+     * The generation of the last write of this worker, so that its searches see it.
+     */
+    private long writeGeneration = 0;
+
     public RangeIndexWorker(RangeIndex index, DBBroker broker) {
         this.index = index;
         this.broker = broker;
@@ -371,7 +376,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException | PermissionDeniedException | LockException e) {
             LOG.error("Error while removing lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             if (reindex) {
                 try {
                     index.sync();
@@ -385,6 +390,10 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.debug("Collection removed.");
     }
 
+    private void releaseWriter(final IndexWriter writer) {
+        writeGeneration = Math.max(writeGeneration, index.releaseWriter(writer));
+    }
+
     protected void removeDocument(int docId) {
         IndexWriter writer = null;
         try {
@@ -396,7 +405,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("Error while removing lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             mode = ReindexMode.STORE;
         }
     }
@@ -428,7 +437,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             LOG.warn("Error while deleting lucene index entries: {}", e.getMessage(), e);
         } finally {
             nodesToRemove = null;
-            index.releaseWriter(writer);
+            releaseWriter(writer);
         }
     }
 
@@ -509,14 +518,14 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
             nodesToWrite = new ArrayList<>();
             cachedNodesSize = 0;
         }
     }
 
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet, List<QName> qnames, AtomicValue[] keys, RangeIndex.Operator operator, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             List<QName> definedIndexes = getDefinedIndexes(qnames);
             NodeSet resultSet = new NewArrayNodeSet();
             for (QName qname : definedIndexes) {
@@ -541,7 +550,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, int axis) throws IOException, XPathException {
-        return index.withSearcher(searcher -> {
+        return index.withSearcher(writeGeneration, searcher -> {
             BooleanQuery query = new BooleanQuery();
             int j = 0;
             for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
@@ -709,7 +718,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private List<QName> getDefinedIndexesFor(QName qname, final List<QName> indexes) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             for (FieldInfo info: MultiFields.getMergedFieldInfos(reader)) {
                 if (!FIELD_DOC_ID.equals(info.name)) {
                     QName name = LuceneUtil.decodeQName(info.name, index.getBrokerPool().getSymbols());
@@ -913,7 +922,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         } catch (IOException e) {
             LOG.warn("An exception was caught while optimizing the lucene index: {}", e.getMessage(), e);
         } finally {
-            index.releaseWriter(writer);
+            releaseWriter(writer);
         }
     }
 
@@ -956,7 +965,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public Occurrences[] scanIndexByField(String field, DocumentSet docs, String start, long max) {
         try {
-            return index.withReader(reader -> {
+            return index.withReader(writeGeneration, reader -> {
                 TreeMap<String, Occurrences> map = new TreeMap<>();
                 scan(docs, null, start, null, max, map, reader, field);
 
@@ -970,7 +979,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     private Occurrences[] scanIndexByQName(List<QName> qnames, DocumentSet docs, NodeSet nodes, String start, String end, long max) throws IOException {
-        return index.withReader(reader -> {
+        return index.withReader(writeGeneration, reader -> {
             TreeMap<String, Occurrences> map = new TreeMap<>();
             for (QName qname : qnames) {
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
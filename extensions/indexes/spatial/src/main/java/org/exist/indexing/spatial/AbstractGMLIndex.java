@@ -0,0 +1,92 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.util.HashMap;
+
+import org.exist.indexing.AbstractIndex;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.storage.DBBroker;
+
+/**
+ * The base class of the GML indexes, whatever the engine which stores the geometries.
+ *
+ * @author <a href="mailto:pierrick.brihaye@free.fr">Pierrick Brihaye</a>
+ */
+public abstract class AbstractGMLIndex extends AbstractIndex {
+
+    /**
+     * Holds the index ID. Notice that we delegate this task to the abstract class,
+     * not to the concrete HSQL (or whatever) one. This allows spatial functions to use
+     * the available GML index, whatever its underlying engine is.
+     */
+    public final static String ID = AbstractGMLIndex.class.getName();
+
+    /**
+     * An IndexWorker "pool"
+     */
+    protected HashMap<DBBroker, AbstractGMLIndexWorker> workers = new HashMap<>();
+
+    /**
+     * The spatial operators to test spatial relationshipds beween geometries.
+     * See http://www.vividsolutions.com/jts/bin/JTS%20Technical%20Specs.pdf (chapter 11).
+     */
+    public interface SpatialOperator {
+        public static int UNKNOWN = -1;
+        public static int EQUALS = 1;
+        public static int DISJOINT = 2;
+        public static int INTERSECTS = 3;
+        public static int TOUCHES = 4;
+        public static int CROSSES = 5;
+        public static int WITHIN = 6;
+        public static int CONTAINS = 7;
+        public static int OVERLAPS = 8;
+    }
+
+    protected int max_docs_in_context_to_refine_query = 10;
+
+    public int getMaxDocsInContextToRefineQuery() {
+        return max_docs_in_context_to_refine_query;
+    }
+
+    /**
+     * Flushes the pending geometries of the workers and resets their state.
+     * To be called before the index is closed or removed.
+     */
+    protected void flushWorkers() {
+        for (AbstractGMLIndexWorker worker : workers.values()) {
+            //Flush any pending stuff
+            worker.flush();
+            //Reset state
+            worker.setDocument(null, ReindexMode.UNKNOWN);
+        }
+    }
+
+    @Override
+    public boolean checkIndex(DBBroker broker) {
+        return getWorker(broker).checkIndex(broker);
+    }
+
+    @Override
+    public abstract IndexWorker getWorker(DBBroker broker);
+}
@@ -0,0 +1,529 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.locationtech.jts.io.WKTReader;
+import org.locationtech.jts.io.WKTWriter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.*;
+import org.exist.indexing.AbstractStreamListener;
+import org.exist.indexing.Index;
+import org.exist.indexing.IndexController;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.MatchListener;
+import org.exist.indexing.StreamListener;
+import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.numbering.NodeId;
+import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.storage.txn.Txn;
+import org.exist.util.*;
+import org.exist.util.serializer.Receiver;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.NodeValue;
+import org.exist.xquery.value.ValueSequence;
+import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.geotools.gml.GMLFilterDocument;
+import org.geotools.gml.GMLFilterGeometry;
+import org.geotools.gml.GMLHandlerJTS;
+import org.geotools.gml.producer.GeometryTransformer;
+import org.geotools.referencing.CRS;
+import org.geotools.api.referencing.FactoryException;
+import org.geotools.api.referencing.operation.MathTransform;
+import org.geotools.api.referencing.operation.OperationNotFoundException;
+import org.geotools.api.referencing.operation.TransformException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * @author <a href="mailto:pierrick.brihaye@free.fr">Pierrick Brihaye</a>
+ */
+public abstract class AbstractGMLIndexWorker implements IndexWorker {
+
+    public static final String GML_NS = "http://www.opengis.net/gml";
+    //The general configuration's element name to configure this kind of worker
+    protected final static String INDEX_ELEMENT = "gml";
+    
+    public static final String START_KEY = "start_key";
+    public static final String END_KEY = "end_key";
+    
+    private static final Logger LOG = LogManager.getLogger(AbstractGMLIndexWorker.class);
+
+    protected IndexController controller;
+    protected AbstractGMLIndex index;
+    protected DBBroker broker;
+    protected ReindexMode currentMode = ReindexMode.UNKNOWN;
+    protected DocumentImpl currentDoc = null;  
+    protected boolean isDocumentGMLAware = false;
+    protected Map<NodeId, SRSGeometry> geometries = new TreeMap<>();
+    NodeId currentNodeId = null;
+    Geometry streamedGeometry = null;
+    boolean documentDeleted = false;
+    int flushAfter = -1;
+    protected GMLHandlerJTS geometryHandler = new GeometryHandler(); 
+    protected GMLFilterGeometry geometryFilter = new GMLFilterGeometry(geometryHandler); 
+    protected GMLFilterDocument geometryDocument = new GMLFilterDocument(geometryFilter);
+    protected GMLStreamListener gmlStreamListener = new GMLStreamListener();
+    protected TreeMap<String, MathTransform> transformations = new TreeMap<>();
+    protected boolean useLenientMode = false;
+    protected GeometryCoordinateSequenceTransformer coordinateTransformer = new GeometryCoordinateSequenceTransformer();
+    protected final GeometryTransformer gmlTransformer;
+    protected WKBWriter wkbWriter = new WKBWriter();
+    protected WKBReader wkbReader = new WKBReader();
+    protected WKTWriter wktWriter = new WKTWriter();
+    protected WKTReader wktReader = new WKTReader();
+
+    public AbstractGMLIndexWorker(AbstractGMLIndex index, DBBroker broker) {
+        this.index = index;
+        this.broker = broker;
+        this.gmlTransformer = new GeometryTransformer();
+        gmlTransformer.setEncoding(StandardCharsets.UTF_8);
+        gmlTransformer.setIndentation(4);
+        gmlTransformer.setNamespaceDeclarationEnabled(true);
+        gmlTransformer.setOmitXMLDeclaration(false);
+    }
+
+    protected DBBroker getBroker() {
+        return broker;
+    }
+
+    @Override
+    public String getIndexId() {
+        return AbstractGMLIndex.ID;
+    }
+
+    @Override
+    public String getIndexName() {
+        return index.getIndexName();
+    }
+
+    public Index getIndex() {
+        return index;
+    }
+
+    @Override
+    public Object configure(IndexController controller, NodeList configNodes, Map<String, String> namespaces) throws DatabaseConfigurationException {
+        this.controller = controller;
+        Map<String, GMLIndexConfig> map = null;
+        for(int i = 0; i < configNodes.getLength(); i++) {
+            final Node node = configNodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE &&
+                    INDEX_ELEMENT.equals(node.getLocalName())) { 
+                map = new TreeMap<>();
+                GMLIndexConfig config = new GMLIndexConfig(namespaces, (Element)node);
+                map.put(AbstractGMLIndex.ID, config);
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void setDocument(DocumentImpl document) {
+        isDocumentGMLAware = false;
+        documentDeleted= false;
+        if (document != null) {
+            IndexSpec idxConf = document.getCollection().getIndexConfiguration(getBroker());
+            if (idxConf != null) {
+                final Map collectionConfig = (Map) idxConf.getCustomIndexSpec(AbstractGMLIndex.ID);
+                if (collectionConfig != null) {
+                    isDocumentGMLAware = true;
+                    if (collectionConfig.get(AbstractGMLIndex.ID) != null)
+                        flushAfter = ((GMLIndexConfig)collectionConfig.get(AbstractGMLIndex.ID)).getFlushAfter();
+                }
+            }
+        }
+        if (isDocumentGMLAware) {
+            currentDoc = document;
+        } else {
+            currentDoc = null;
+            currentMode = ReindexMode.UNKNOWN;
+        }
+    } 
+
+    @Override
+    public void setMode(final ReindexMode newMode) {
+        currentMode = newMode; 
+    }
+
+    @Override
+    public void setDocument(DocumentImpl doc, ReindexMode mode) {
+        setDocument(doc);
+        setMode(mode);
+    }
+
+    /**
+     * Returns the document for the next operation.
+     * 
+     * @return the document
+     */
+    @Override
+    public DocumentImpl getDocument() {
+        return currentDoc;
+    }
+
+    /**
+     * Returns the mode for the next operation.
+     * 
+     * @return the document
+     */
+    @Override
+    public ReindexMode getMode() {
+        return currentMode;
+    }
+
+    @Override
+    public StreamListener getListener() {
+        //We won't listen to anything here
+        if (currentDoc == null || currentMode == ReindexMode.REMOVE_ALL_NODES)
+            return null;
+        return gmlStreamListener;
+    }
+
+    @Override
+    public MatchListener getMatchListener(DBBroker broker, NodeProxy proxy) {
+        return null;
+    }
+
+    public StoredNode getReindexRoot(StoredNode node, NodePath path, boolean insert, boolean includeSelf) {
+        if (!isDocumentGMLAware)
+            //Not concerned
+            return null;
+        StoredNode relevantNode = null;
+        StoredNode currentNode = node;
+        for (int i = path.length() ; i > 0; i--) {
+            if (GML_NS.equals(currentNode.getNamespaceURI()))
+                relevantNode = currentNode;
+            //Stop below root
+            if (currentNode.getParentNode() instanceof DocumentImpl)
+                break;
+            currentNode = (StoredNode)currentNode.getParentNode();
+        }
+        return relevantNode;
+    }
+
+    public abstract NodeSet search(DBBroker broker, NodeSet contextSet, Geometry EPSG4326_geometry, int spatialOp)
+            throws SpatialIndexException;
+
+    public abstract Geometry getGeometryForNode(DBBroker broker, NodeProxy p, boolean getEPSG4326)
+            throws SpatialIndexException;
+
+    protected abstract Geometry[] getGeometriesForNodes(DBBroker broker, NodeSet contextSet, boolean getEPSG4326)
+            throws SpatialIndexException;
+
+    public abstract AtomicValue getGeometricPropertyForNode(XQueryContext context, NodeProxy p, String propertyName)
+            throws SpatialIndexException;
+
+    public abstract ValueSequence getGeometricPropertyForNodes(XQueryContext context, NodeSet contextSet, String propertyName)
+            throws SpatialIndexException;
+
+    public abstract boolean checkIndex(DBBroker broker);
+
+    /**
+     * Aggregates the occurrences of the (normalized) geometries of a document.
+     *
+     * @param occurences the occurrences collected so far, keyed by geometry
+     * @param doc the document
+     * @param documentGeometries the geometries of the document, with their EPSG4326_WKT as value
+     */
+    protected static void addOccurrences(Map<Geometry, Occurrences> occurences, DocumentImpl doc, Map<Geometry, String> documentGeometries) {
+        for (Map.Entry<Geometry, String> entry : documentGeometries.entrySet()) {
+            ///TODO : use the IndexWorker.VALUE_COUNT hint, if present, to limit the number of returned entries
+            Geometry key = entry.getKey();
+            //Do we already have an occurence for this geometry ?
+            Occurrences oc = occurences.get(key);
+            if (oc != null) {
+                //Yes : increment occurence count
+                oc.addOccurrences(oc.getOccurrences() + 1);
+                //...and reference the document
+                oc.addDocument(doc);
+            } else {
+                //No : create a new occurence with EPSG4326_WKT as "term"
+                oc = new Occurrences(entry.getValue());
+                //... with a count set to 1
+                oc.addOccurrences(1);
+                //... and reference the document
+                oc.addDocument(doc);
+                occurences.put(key, oc);
+            }
+        }
+    }
+
+    public Geometry streamNodeToGeometry(XQueryContext context, NodeValue node) throws SpatialIndexException {
+        try {
+            context.pushDocumentContext();
+            try {
+                //TODO : get rid of the context dependency
+                node.toSAX(context.getBroker(), geometryDocument, null);
+            } finally {
+                context.popDocumentContext();
+            }
+        } catch (SAXException e) {
+            throw new SpatialIndexException(e);
+        }
+        return streamedGeometry;
+    }
+
+    public Element streamGeometryToElement(Geometry geometry, String srsName, Receiver receiver) throws SpatialIndexException {       
+        //YES !!!
+        String gmlString = null;
+        try {
+            //TODO : find a way to pass
+            //1) the SRS
+            //2) gmlPrefix
+            //3) other stuff...
+            //This will possibly require some changes in GeometryTransformer
+            gmlString = gmlTransformer.transform(geometry);
+        } catch (TransformerException e) {
+            throw new SpatialIndexException(e);
+        }
+
+        final XMLReaderPool parserPool = broker.getBrokerPool().getParserPool();
+        XMLReader reader = null;
+        try {
+            InputSource src = new InputSource(new StringReader(gmlString));
+            reader = parserPool.borrowXMLReader();
+            reader.setContentHandler((ContentHandler)receiver);
+            reader.parse(src);
+            Document doc = receiver.getDocument();
+            return doc.getDocumentElement();
+        } catch (final SAXException | IOException e) {
+            throw new SpatialIndexException(e);
+        } finally {
+            if (reader != null) {
+                parserPool.returnXMLReader(reader);
+            }
+        }
+    }
+
+    public Geometry transformGeometry(Geometry geometry, String sourceCRS, String targetCRS) throws SpatialIndexException {
+        //provisional workarounds
+        if ("osgb:BNG".equalsIgnoreCase(sourceCRS.trim()))
+            sourceCRS = "EPSG:27700";
+        if ("osgb:BNG".equalsIgnoreCase(targetCRS.trim()))
+            targetCRS = "EPSG:27700"; 
+        MathTransform transform = transformations.get(sourceCRS + "_" + targetCRS);
+        if (transform == null) {
+            try {
+
+                try {
+                    transform = CRS.findMathTransform(CRS.decode(sourceCRS), CRS.decode(targetCRS), useLenientMode);
+                } catch (final OperationNotFoundException e) {
+                    LOG.debug(e);
+                    LOG.info("Switching to lenient mode... beware of precision loss !");
+                    //Last parameter set to true ; won't bail out if it can't find the Bursa Wolf parameters
+                    //as it is the case in current gt2-epsg-wkt-2.4-M1.jar
+                    useLenientMode = true;
+                    transform = CRS.findMathTransform(CRS.decode(sourceCRS), CRS.decode(targetCRS), useLenientMode);
+                }
+                transformations.put(sourceCRS + "_" + targetCRS, transform);
+                LOG.debug("Instantiated transformation from '{}' to '{}'", sourceCRS, targetCRS);
+            } catch (FactoryException e) {
+                LOG.error(e);
+            }
+        }
+        if (transform == null) {
+            throw new SpatialIndexException("Unable to get a transformation from '" + sourceCRS + "' to '" + targetCRS +"'");        		           	
+        }
+        coordinateTransformer.setMathTransform(transform);
+        try {
+        	return coordinateTransformer.transform(geometry);
+        } catch (TransformException e) {
+        	throw new SpatialIndexException(e);
+        }
+    }
+
+    private class GMLStreamListener extends AbstractStreamListener {
+
+        private final Stack<String> srsNamesStack = new Stack<>();
+        private ElementImpl deferredElement;
+
+        @Override
+        public IndexWorker getWorker() {
+        	return AbstractGMLIndexWorker.this;
+        }
+        
+        @Override
+        public void startElement(Txn transaction, ElementImpl element, NodePath path) { 
+            if (isDocumentGMLAware) {
+                //Release the deferred element if any
+                if (deferredElement != null)
+                    processDeferredElement();
+                //Retain this element
+                deferredElement = element;
+            }
+            //Forward the event to the next listener 
+            super.startElement(transaction, element, path);
+        }
+        
+        @Override
+        public void attribute(Txn transaction, AttrImpl attrib, NodePath path) { 
+            //Forward the event to the next listener 
+            super.attribute(transaction, attrib, path);
+        }
+
+        @Override
+        public void characters(Txn transaction, AbstractCharacterData text, NodePath path) {
+            if (isDocumentGMLAware) {
+                //Release the deferred element if any
+                if (deferredElement != null)
+                    processDeferredElement();
+                try {
+                    geometryDocument.characters(text.getData().toCharArray(), 0, text.getLength());
+                } catch (Exception e) {
+                    LOG.error(e);
+                }
+            }
+            //Forward the event to the next listener 
+            super.characters(transaction, text, path);
+        }
+
+        @Override
+        public void endElement(Txn transaction, ElementImpl element, NodePath path) {
+            if (isDocumentGMLAware) {
+                //Release the deferred element if any
+                if (deferredElement != null)
+                    processDeferredElement();
+                //Process the element 
+                processCurrentElement(element);
+            }
+            //Forward the event to the next listener 
+            super.endElement(transaction, element, path);
+        }
+        
+        private void processDeferredElement() {
+            //We need to collect the deferred element's attributes in order to feed the SAX handler
+            AttributesImpl attList = new AttributesImpl();
+            NamedNodeMap attrs = deferredElement.getAttributes();
+
+            String whatToPush = null;
+
+            for (int i = 0; i < attrs.getLength() ; i++) {
+                AttrImpl attrib = (AttrImpl)attrs.item(i);
+
+                //Store the srs
+                if (GML_NS.equals(deferredElement.getNamespaceURI())) {
+                    //Maybe we could assume a configurable default value here
+                    if (attrib.getName().equals("srsName")) {
+                        whatToPush = attrib.getValue();
+                    }
+                }
+
+                attList.addAttribute(attrib.getNamespaceURI(), 
+                        attrib.getLocalName(), 
+                        attrib.getQName().getStringValue(), 
+                        Integer.toString(attrib.getType()), 
+                        attrib.getValue());
+            }
+
+            srsNamesStack.push(whatToPush);
+
+            try {
+                geometryDocument.startElement(deferredElement.getNamespaceURI(), deferredElement.getLocalName(), deferredElement.getQName().getStringValue(), attList);
+            } catch (Exception e) {
+                e.printStackTrace();
+                LOG.error(e);
+            } finally {
+                deferredElement = null;
+            }
+        }
+
+        private void processCurrentElement(ElementImpl element) {
+            currentNodeId = element.getNodeId();
+            String currentSrsName = srsNamesStack.pop();
+            try {
+                geometryDocument.endElement(element.getNamespaceURI(), element.getLocalName(), element.getQName().getStringValue());
+                //Some invalid/(yet) incomplete geometries don't have a SRS
+                if (streamedGeometry != null && currentSrsName != null) {
+                    geometries.put(currentNodeId, new SRSGeometry(currentSrsName, streamedGeometry));
+                    if (flushAfter != -1 && geometries.size() >= flushAfter) {
+                        //Mmmh... doesn't flush since it is currently dependant from the
+                        //number of nodes in the DOM file ; would need refactorings
+                        //currentDoc.getBroker().checkAvailableMemory();
+                        ((AbstractGMLIndexWorker)getWorker()).getBroker().flush();
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error("Unable to collect geometry for node: {}. Indexing will be skipped", currentNodeId);
+            } finally {
+                streamedGeometry = null;
+            }
+        }
+    }
+
+    private class GeometryHandler extends XMLFilterImpl implements GMLHandlerJTS {
+        @Override
+        public void geometry(Geometry geometry) {
+            streamedGeometry = geometry;
+            //TODO : null geometries can be returned for many reasons, including a (too) strict
+            //topology check done by the Geotools SAX parser.
+            //It would be nice to have static classes extending Geometry to report such geometries
+            if (geometry == null) {
+                LOG.error("Collected null geometry for node: {}. Indexing will be skipped", currentNodeId);
+            }
+        }
+    }
+
+    protected class SRSGeometry {
+
+        private String SRSName;
+        private Geometry geometry;
+
+        public SRSGeometry(String SRSName, Geometry geometry) {
+            //TODO : implement a default, eventually configurable, SRS ?
+            if (SRSName == null)
+                throw new IllegalArgumentException("Got null SRS");
+            if (geometry == null)
+                throw new IllegalArgumentException("Got null geometry");
+            this.SRSName = SRSName;
+            this.geometry = geometry;
+        }
+
+        public String getSRSName() {
+            return SRSName;
+        }
+
+        public Geometry getGeometry() {
+            return geometry;
+        }
+    }
+}
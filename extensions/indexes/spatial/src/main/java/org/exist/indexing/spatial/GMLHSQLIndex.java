@@ -84,7 +84,7 @@ public class GMLHSQLIndex extends AbstractGMLJDBCIndex implements RawBackupSuppo
 
     @Override
     public IndexWorker getWorker(DBBroker broker) {
-        AbstractGMLJDBCIndexWorker worker = workers.get(broker);
+        AbstractGMLIndexWorker worker = workers.get(broker);
         if (worker == null) {
             worker = new GMLHSQLIndexWorker(this, broker);
             workers.put(broker, worker);
@@ -30,7 +30,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.collections.Collection;
 import org.exist.dom.persistent.*;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndex.SpatialOperator;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
 import org.exist.numbering.DLN;
 import org.exist.numbering.NodeId;
 import org.exist.security.PermissionDeniedException;
@@ -214,12 +214,12 @@ public class GMLHSQLIndexWorker extends AbstractGMLJDBCIndexWorker {
 
     @Override
     protected Connection acquireConnection() throws SQLException {
-        return index.acquireConnection(this.broker);
+        return jdbcIndex.acquireConnection(this.broker);
     }
 
     @Override
     protected void releaseConnection(Connection conn) throws SQLException {
-        index.releaseConnection(this.broker);
+        jdbcIndex.releaseConnection(this.broker);
     }
 
     @Override
@@ -0,0 +1,184 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.backup.RawDataBackup;
+import org.exist.indexing.IndexWorker;
+import org.exist.indexing.RawBackupSupport;
+import org.exist.indexing.StartupReindexSupport;
+import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Paged;
+import org.exist.storage.index.BFile;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.FileUtils;
+
+/**
+ * A spatial index which keeps the GML geometries in the data directory, next to the other
+ * .dbx files, instead of an embedded HSQL database.
+ *
+ * The EPSG:4326 bounding boxes of the geometries are indexed by a paged R-tree
+ * ({@link SpatialRTree}), the geometries themselves and their SRS are stored in a
+ * {@link BFile} keyed by document and node id. Both files are guarded by a read/write lock:
+ * any number of queries may search the index at the same time, while updates are exclusive.
+ *
+ * The index plugs into the existing spatial functions by extending {@link AbstractGMLIndex}.
+ *
+ * Changes to the files are not written to the journal, so the index cannot be recovered
+ * after the database was not shut down cleanly. Instead, if the R-tree was not closed
+ * cleanly, both files are recreated when the index is opened, and the database is
+ * reindexed on startup (see {@link StartupReindexSupport}).
+ */
+public class GMLNativeIndex extends AbstractGMLIndex implements RawBackupSupport, StartupReindexSupport {
+
+    private final static Logger LOG = LogManager.getLogger(GMLNativeIndex.class);
+
+    public static final short FILE_FORMAT_VERSION_ID = 1;
+
+    public static final String TREE_FILE_NAME = "spatial.dbx";
+    public static final String RECORDS_FILE_NAME = "spatial-records.dbx";
+
+    /**
+     * Guards both files. Searches take the read lock, updates the write lock.
+     */
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    SpatialRTree tree = null;
+    BFile records = null;
+
+    private boolean reindexRequired = false;
+
+    @Override
+    public void open() throws DatabaseConfigurationException {
+        final Path treeFile = getDataDir().resolve(TREE_FILE_NAME);
+        final Path recordsFile = getDataDir().resolve(RECORDS_FILE_NAME);
+        lock.writeLock().lock();
+        try {
+            tree = new SpatialRTree(pool, FILE_FORMAT_VERSION_ID, treeFile);
+            reindexRequired = !tree.wasClosedCleanly();
+            if (reindexRequired) {
+                LOG.warn("GML index {} was not closed cleanly. It is recreated, and has to be rebuilt by reindexing the database.",
+                        treeFile.toAbsolutePath().toString());
+                tree.closeAndRemove();
+                FileUtils.deleteQuietly(recordsFile);
+                tree = new SpatialRTree(pool, FILE_FORMAT_VERSION_ID, treeFile);
+            }
+            records = new BFile(pool, (byte) 0, FILE_FORMAT_VERSION_ID, false, recordsFile, pool.getCacheManager(), 1.4, 0.07);
+        } catch (final DBException e) {
+            throw new DatabaseConfigurationException("Failed to create spatial index files in: " +
+                    getDataDir().toAbsolutePath().toString() + ": " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Opened GML index: {} ({} geometries)", treeFile.toAbsolutePath().toString(), tree.getEntryCount());
+    }
+
+    @Override
+    public void sync() throws DBException {
+        lock.writeLock().lock();
+        try {
+            if (tree != null)
+                tree.flush();
+            if (records != null)
+                records.flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public synchronized IndexWorker getWorker(DBBroker broker) {
+        AbstractGMLIndexWorker worker = workers.get(broker);
+        if (worker == null) {
+            worker = new GMLNativeIndexWorker(this, broker);
+            workers.put(broker, worker);
+        }
+        return worker;
+    }
+
+    @Override
+    public void close() throws DBException {
+        flushWorkers();
+        closeFiles();
+    }
+
+    @Override
+    public void remove() throws DBException {
+        flushWorkers();
+        closeFiles();
+        FileUtils.deleteQuietly(getDataDir().resolve(TREE_FILE_NAME));
+        FileUtils.deleteQuietly(getDataDir().resolve(RECORDS_FILE_NAME));
+    }
+
+    private void closeFiles() throws DBException {
+        lock.writeLock().lock();
+        try {
+            //The records first: closing the tree marks both files as closed cleanly
+            if (records != null) {
+                records.flush();
+                records.close();
+            }
+            if (tree != null)
+                tree.close();
+            if (LOG.isDebugEnabled())
+                LOG.debug("GML index: {} closed", getDataDir());
+        } finally {
+            tree = null;
+            records = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isReindexRequired() {
+        return reindexRequired;
+    }
+
+    @Override
+    public void backupToArchive(RawDataBackup backup) throws IOException {
+        lock.readLock().lock();
+        try {
+            backupToArchive(backup, tree);
+            backupToArchive(backup, records);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void backupToArchive(RawDataBackup backup, Paged file) throws IOException {
+        // do not use try-with-resources here, closing the OutputStream will close the entire backup
+        try {
+            final OutputStream os = backup.newEntry(FileUtils.fileName(file.getFile()));
+            file.backupToStream(os);
+        } finally {
+            backup.closeEntry();
+        }
+    }
+}
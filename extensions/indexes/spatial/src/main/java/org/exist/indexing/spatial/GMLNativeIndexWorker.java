@@ -0,0 +1,693 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.*;
+import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.IndexSpec;
+import org.exist.storage.NodePath;
+import org.exist.storage.btree.BTreeException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
+import org.exist.storage.index.BFile;
+import org.exist.storage.io.VariableByteArrayInput;
+import org.exist.storage.io.VariableByteOutputStream;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.util.ByteConversion;
+import org.exist.util.LockException;
+import org.exist.util.Occurrences;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.QueryRewriter;
+import org.exist.xquery.TerminatedException;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Base64BinaryValueType;
+import org.exist.xquery.value.BinaryValueFromInputStream;
+import org.exist.xquery.value.BooleanValue;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.ValueSequence;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+
+import javax.annotation.Nullable;
+
+/**
+ * The worker of {@link GMLNativeIndex}.
+ */
+public class GMLNativeIndexWorker extends AbstractGMLIndexWorker {
+
+    private static final Logger LOG = LogManager.getLogger(GMLNativeIndexWorker.class);
+
+    private final GMLNativeIndex nativeIndex;
+
+    public GMLNativeIndexWorker(GMLNativeIndex index, DBBroker broker) {
+        super(index, broker);
+        this.nativeIndex = index;
+    }
+
+    @Override
+    public void flush() {
+        //Not GML-aware : no document has been set
+        if (currentDoc == null)
+            return;
+        //Is the job already done ?
+        if (currentMode == ReindexMode.REMOVE_ALL_NODES && documentDeleted)
+            return;
+        final Lock lock = nativeIndex.lock.writeLock();
+        lock.lock();
+        try {
+            switch (currentMode) {
+                case STORE :
+                    saveDocumentNodes();
+                    break;
+                case REMOVE_SOME_NODES :
+                    dropDocumentNode();
+                    break;
+                case REMOVE_ALL_NODES:
+                    final int nodeCount = removeDocument(currentDoc.getDocId());
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Dropped {} nodes of document {} from GML index", nodeCount, currentDoc.getURI());
+                    documentDeleted = true;
+                    break;
+            }
+        } catch (final IOException | SpatialIndexException e) {
+            LOG.error("Document: {} NodeID: {}", currentDoc, currentNodeId, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void saveDocumentNodes() throws IOException, SpatialIndexException {
+        try {
+            for (final Map.Entry<NodeId, SRSGeometry> entry : geometries.entrySet()) {
+                final SRSGeometry srsGeometry = entry.getValue();
+                if (!saveGeometryNode(srsGeometry.getGeometry(), srsGeometry.getSRSName(), currentDoc, entry.getKey())) {
+                    LOG.error("Unable to save geometry for node: {}", entry.getKey());
+                }
+            }
+        } finally {
+            geometries.clear();
+        }
+    }
+
+    private void dropDocumentNode() throws IOException {
+        if (currentNodeId == null)
+            return;
+        try {
+            final boolean removed = removeNode(currentDoc.getDocId(), currentNodeId);
+            if (!removed) {
+                LOG.error("No data dropped for node {} from GML index", currentNodeId.toString());
+            } else if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropped data for node {} from GML index", currentNodeId.toString());
+            }
+        } finally {
+            currentNodeId = null;
+        }
+    }
+
+    /**
+     * Stores the geometry of a node. The caller holds the write lock of the index.
+     */
+    private boolean saveGeometryNode(Geometry geometry, String srsName, DocumentImpl doc, NodeId nodeId) throws IOException, SpatialIndexException {
+        final Geometry EPSG4326_geometry = transformGeometry(geometry, srsName, "EPSG:4326");
+        final Envelope envelope = EPSG4326_geometry.getEnvelopeInternal();
+        final Record record = new Record(doc.getURI().toString(), srsName,
+                envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY(),
+                //As discussed earlier, all instances of SFS geometry classes
+                //are topologically closed by definition.
+                //For empty Curves, isClosed is defined to have the value false.
+                !geometry.isEmpty(), geometry.isSimple(), geometry.isValid(),
+                wkbWriter.write(geometry), wkbWriter.write(EPSG4326_geometry));
+
+        //Replace the previous geometry of the node, if any
+        removeNode(doc.getDocId(), nodeId);
+        if (nativeIndex.records.put(null, nodeKey(doc.getDocId(), nodeId), record.toByteArray(), true) == BFile.UNKNOWN_ADDRESS)
+            return false;
+        nativeIndex.tree.insert(new SpatialRTree.Entry(record.minX, record.maxX, record.minY, record.maxY,
+                doc.getDocId(), nodeId, record.EPSG4326_wkb));
+        return true;
+    }
+
+    @Override
+    public void removeCollection(Collection collection, DBBroker broker, boolean reindex) {
+        final IndexSpec idxConf = collection.getIndexConfiguration(broker);
+        if (idxConf == null || idxConf.getCustomIndexSpec(AbstractGMLIndex.ID) == null)
+            //Not GML-aware
+            return;
+        final Lock lock = nativeIndex.lock.writeLock();
+        lock.lock();
+        try {
+            int nodeCount = 0;
+            //The collection is write locked by the broker which removes it
+            for (final Iterator<DocumentImpl> i = collection.iteratorNoLock(broker); i.hasNext(); ) {
+                nodeCount += removeDocument(i.next().getDocId());
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Dropped {} nodes of collection {} from GML index", nodeCount, collection.getURI());
+        } catch (final IOException | PermissionDeniedException e) {
+            LOG.error(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the geometry of a node. The caller holds the write lock of the index.
+     */
+    private boolean removeNode(int docId, NodeId nodeId) throws IOException {
+        final Value key = nodeKey(docId, nodeId);
+        final Value value = nativeIndex.records.get(key);
+        if (value == null)
+            return false;
+        final Record record = Record.read(value.getData());
+        nativeIndex.tree.remove(record.minX, record.maxX, record.minY, record.maxY,
+                entry -> entry.getDocId() == docId && entry.getNodeId().equals(nodeId));
+        nativeIndex.records.remove(key);
+        return true;
+    }
+
+    /**
+     * Removes the geometries of a document. The caller holds the write lock of the index.
+     */
+    private int removeDocument(int docId) throws IOException {
+        final IndexQuery query = new IndexQuery(IndexQuery.TRUNC_RIGHT, documentKey(docId));
+        final List<NodeId> nodeIds = new ArrayList<>();
+        final List<Record> nodeRecords = new ArrayList<>();
+        try {
+            nativeIndex.records.find(query, (key, value) -> {
+                nodeIds.add(readNodeId(key.getData()));
+                try {
+                    nodeRecords.add(Record.read(value.getData()));
+                } catch (final IOException e) {
+                    LOG.error("Unable to read the geometry of node {}", nodeIds.get(nodeIds.size() - 1), e);
+                    nodeIds.remove(nodeIds.size() - 1);
+                }
+                return true;
+            });
+            for (int i = 0; i < nodeIds.size(); i++) {
+                final NodeId nodeId = nodeIds.get(i);
+                final Record record = nodeRecords.get(i);
+                nativeIndex.tree.remove(record.minX, record.maxX, record.minY, record.maxY,
+                        entry -> entry.getDocId() == docId && entry.getNodeId().equals(nodeId));
+            }
+            nativeIndex.records.removeAll(null, query);
+        } catch (final BTreeException | TerminatedException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return nodeIds.size();
+    }
+
+    @Override
+    public NodeSet search(DBBroker broker, NodeSet contextSet, Geometry EPSG4326_geometry, int spatialOp) throws SpatialIndexException {
+        final Envelope envelope = EPSG4326_geometry.getEnvelopeInternal();
+        final double minX = envelope.getMinX();
+        final double maxX = envelope.getMaxX();
+        final double minY = envelope.getMinY();
+        final double maxY = envelope.getMaxY();
+
+        final Predicate<SpatialRTree.Entry> bboxMatches;
+        switch (spatialOp) {
+        //BBoxes are equal
+        case SpatialOperator.EQUALS:
+            bboxMatches = entry -> entry.hasBox(minX, maxX, minY, maxY);
+            break;
+        //Nothing much we can do with the BBox at this stage
+        case SpatialOperator.DISJOINT:
+        //BBoxes intersect themselves
+        case SpatialOperator.INTERSECTS:
+        case SpatialOperator.TOUCHES:
+        case SpatialOperator.CROSSES:
+        case SpatialOperator.OVERLAPS:
+            bboxMatches = entry -> true;
+            break;
+        //BBox is fully within
+        case SpatialOperator.WITHIN:
+            bboxMatches = entry -> entry.getMinX() >= minX && entry.getMaxX() <= maxX &&
+                entry.getMinY() >= minY && entry.getMaxY() <= maxY;
+            break;
+        //BBox fully contains
+        case SpatialOperator.CONTAINS:
+            bboxMatches = entry -> entry.contains(minX, maxX, minY, maxY);
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported spatial operator:" + spatialOp);
+        }
+        //contextSet == null should be used to scan the whole index
+        final DocumentSet docs = contextSet == null ? null : contextSet.getDocumentSet();
+        final Predicate<SpatialRTree.Entry> filter = entry -> bboxMatches.test(entry) &&
+                (docs == null || docs.getDoc(entry.getDocId()) != null);
+
+        final Lock lock = nativeIndex.lock.readLock();
+        lock.lock();
+        try {
+            final List<SpatialRTree.Entry> candidates = spatialOp == SpatialOperator.DISJOINT ?
+                nativeIndex.tree.scan(filter) : nativeIndex.tree.search(minX, maxX, minY, maxY, filter);
+            int disjointPostFiltered = 0;
+            final NodeSet result = new ExtArrayNodeSet();
+            for (final SpatialRTree.Entry entry : candidates) {
+                final DocumentImpl doc = docs == null ? getDocument(broker, entry.getDocId(), entry.getNodeId()) : docs.getDoc(entry.getDocId());
+                if (doc == null)
+                    continue;
+                final NodeProxy p = new NodeProxy(null, doc, entry.getNodeId());
+                //Node is in the context : check if it is accurate
+                //contextSet.contains(p) would have made more sense but there is a problem with
+                //VirtualNodeSet when on the DESCENDANT_OR_SELF axis
+                if (contextSet != null && contextSet.get(p) == null)
+                    continue;
+                boolean geometryMatches = false;
+                if (spatialOp == SpatialOperator.DISJOINT) {
+                    //No BBox intersection : obviously disjoint
+                    if (!entry.intersects(minX, maxX, minY, maxY)) {
+                        geometryMatches = true;
+                        disjointPostFiltered++;
+                    }
+                }
+                //Possible match : check the geometry
+                if (!geometryMatches) {
+                    final Geometry geometry = getEPSG4326Geometry(entry);
+                    if (geometry == null)
+                        continue;
+                    geometryMatches = switch (spatialOp) {
+                        case SpatialOperator.EQUALS -> geometry.equals(EPSG4326_geometry);
+                        case SpatialOperator.DISJOINT -> geometry.disjoint(EPSG4326_geometry);
+                        case SpatialOperator.INTERSECTS -> geometry.intersects(EPSG4326_geometry);
+                        case SpatialOperator.TOUCHES -> geometry.touches(EPSG4326_geometry);
+                        case SpatialOperator.CROSSES -> geometry.crosses(EPSG4326_geometry);
+                        case SpatialOperator.WITHIN -> geometry.within(EPSG4326_geometry);
+                        case SpatialOperator.CONTAINS -> geometry.contains(EPSG4326_geometry);
+                        case SpatialOperator.OVERLAPS -> geometry.overlaps(EPSG4326_geometry);
+                        default -> geometryMatches;
+                    };
+                }
+                if (geometryMatches)
+                    result.add(p);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{} eligible geometries, {} selected{}", candidates.size(), result.getItemCount(), spatialOp == SpatialOperator.DISJOINT ? " (" + disjointPostFiltered + " post filtered)" : "");
+            }
+            return result;
+        } catch (final IOException | ParseException e) {
+            throw new SpatialIndexException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the EPSG:4326 geometry of a leaf entry of the tree, from the entry itself if it is small
+     * enough to be kept there. The caller holds a lock of the index.
+     */
+    private @Nullable Geometry getEPSG4326Geometry(SpatialRTree.Entry entry) throws IOException, ParseException {
+        if (entry.getGeometry() != null)
+            return wkbReader.read(entry.getGeometry());
+        final Record record = readRecord(entry.getDocId(), entry.getNodeId());
+        return record == null ? null : wkbReader.read(record.EPSG4326_wkb);
+    }
+
+    /**
+     * Resolves the document of a geometry when there is no context to take it from.
+     * The caller holds a lock of the index.
+     */
+    private @Nullable DocumentImpl getDocument(DBBroker broker, int docId, NodeId nodeId) throws IOException {
+        final Record record = readRecord(docId, nodeId);
+        if (record == null)
+            return null;
+        try {
+            return (DocumentImpl) broker.getXMLResource(XmldbURI.create(record.documentURI));
+        } catch (final PermissionDeniedException e) {
+            LOG.debug(e);
+            //Ignore since the broker has no right on the document
+            return null;
+        }
+    }
+
+    @Override
+    public Occurrences[] scanIndex(XQueryContext context, DocumentSet docs, NodeSet contextSet, Map hints) {
+        final Map<Geometry, Occurrences> occurences = new TreeMap<>();
+        try {
+            //Collect the (normalized) geometries for each document
+            for (final Iterator<DocumentImpl> iDoc = docs.getDocumentIterator(); iDoc.hasNext(); ) {
+                final DocumentImpl doc = iDoc.next();
+                //Aggregate the occurences between different documents
+                addOccurrences(occurences, doc, getGeometriesForDocument(doc));
+            }
+        } catch (final SpatialIndexException e) {
+            LOG.error(e);
+            return null;
+        }
+        return occurences.values().toArray(new Occurrences[0]);
+    }
+
+    private Map<Geometry, String> getGeometriesForDocument(DocumentImpl doc) throws SpatialIndexException {
+        final List<Record> documentRecords = new ArrayList<>();
+        final Lock lock = nativeIndex.lock.readLock();
+        lock.lock();
+        try (final ManagedLock<ReentrantLock> recordsLock = broker.getBrokerPool().getLockManager().acquireBtreeReadLock(nativeIndex.records.getLockName())) {
+            nativeIndex.records.find(new IndexQuery(IndexQuery.TRUNC_RIGHT, documentKey(doc.getDocId())), (key, value) -> {
+                try {
+                    documentRecords.add(Record.read(value.getData()));
+                } catch (final IOException e) {
+                    LOG.error("Unable to read a geometry of document {}", doc.getURI(), e);
+                }
+                return true;
+            });
+        } catch (final LockException | IOException | BTreeException | TerminatedException e) {
+            throw new SpatialIndexException(e);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            final Map<Geometry, String> map = new TreeMap<>();
+            for (final Record record : documentRecords) {
+                final Geometry EPSG4326_geometry = wkbReader.read(record.EPSG4326_wkb);
+                //Returns the EPSG:4326 WKT for every geometry to make occurrence aggregation consistent
+                map.put(EPSG4326_geometry, wktWriter.write(EPSG4326_geometry));
+            }
+            return map;
+        } catch (final ParseException e) {
+            throw new SpatialIndexException(e);
+        }
+    }
+
+    @Override
+    public Geometry getGeometryForNode(DBBroker broker, NodeProxy p, boolean getEPSG4326) throws SpatialIndexException {
+        final Record record = getRecord(p);
+        if (record == null)
+            //Nothing stored
+            return null;
+        try {
+            return wkbReader.read(getEPSG4326 ? record.EPSG4326_wkb : record.wkb);
+        } catch (final ParseException e) {
+            throw new SpatialIndexException(e);
+        }
+    }
+
+    @Override
+    protected Geometry[] getGeometriesForNodes(DBBroker broker, NodeSet contextSet, boolean getEPSG4326) throws SpatialIndexException {
+        final Geometry[] result = new Geometry[contextSet.getLength()];
+        int index = 0;
+        for (final NodeProxy p : contextSet) {
+            result[index++] = getGeometryForNode(broker, p, getEPSG4326);
+        }
+        return result;
+    }
+
+    @Override
+    public AtomicValue getGeometricPropertyForNode(XQueryContext context, NodeProxy p, String propertyName) throws SpatialIndexException {
+        final Record record = getRecord(p);
+        if (record == null)
+            //Nothing stored
+            return AtomicValue.EMPTY_VALUE;
+        try {
+            return getGeometricProperty(context, record, propertyName);
+        } catch (final XPathException e) {
+            throw new SpatialIndexException(e);
+        }
+    }
+
+    @Override
+    public ValueSequence getGeometricPropertyForNodes(XQueryContext context, NodeSet contextSet, String propertyName) throws SpatialIndexException {
+        final ValueSequence result = new ValueSequence(contextSet.getLength());
+        for (final NodeProxy p : contextSet) {
+            final Record record = getRecord(p);
+            if (record != null) {
+                try {
+                    result.add(getGeometricProperty(context, record, propertyName));
+                } catch (final XPathException e) {
+                    throw new SpatialIndexException(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes a property of a stored geometry. The property names are those of the columns of
+     * the HSQL index.
+     */
+    private AtomicValue getGeometricProperty(XQueryContext context, Record record, String propertyName) throws SpatialIndexException, XPathException {
+        final Geometry geometry;
+        try {
+            geometry = wkbReader.read(propertyName.startsWith("EPSG4326_") ? record.EPSG4326_wkb : record.wkb);
+        } catch (final ParseException e) {
+            throw new SpatialIndexException(e);
+        }
+        return switch (propertyName) {
+            case "WKT", "EPSG4326_WKT" -> new StringValue(wktWriter.write(geometry));
+            case "WKB" -> BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), new UnsynchronizedByteArrayInputStream(record.wkb), null);
+            case "EPSG4326_WKB" -> BinaryValueFromInputStream.getInstance(context, new Base64BinaryValueType(), new UnsynchronizedByteArrayInputStream(record.EPSG4326_wkb), null);
+            case "MINX", "EPSG4326_MINX" -> new DoubleValue(geometry.getEnvelopeInternal().getMinX());
+            case "MAXX", "EPSG4326_MAXX" -> new DoubleValue(geometry.getEnvelopeInternal().getMaxX());
+            case "MINY", "EPSG4326_MINY" -> new DoubleValue(geometry.getEnvelopeInternal().getMinY());
+            case "MAXY", "EPSG4326_MAXY" -> new DoubleValue(geometry.getEnvelopeInternal().getMaxY());
+            case "CENTROID_X", "EPSG4326_CENTROID_X" -> new DoubleValue(geometry.getCentroid().getCoordinate().x);
+            case "CENTROID_Y", "EPSG4326_CENTROID_Y" -> new DoubleValue(geometry.getCentroid().getCoordinate().y);
+            case "AREA", "EPSG4326_AREA" -> new DoubleValue(geometry.getArea());
+            case "SRS_NAME" -> new StringValue(record.srsName);
+            case "GEOMETRY_TYPE" -> new StringValue(geometry.getGeometryType());
+            case "IS_CLOSED" -> BooleanValue.valueOf(record.isClosed);
+            case "IS_SIMPLE" -> BooleanValue.valueOf(record.isSimple);
+            case "IS_VALID" -> BooleanValue.valueOf(record.isValid);
+            default -> throw new SpatialIndexException("Unknown geometric property: " + propertyName);
+        };
+    }
+
+    @Override
+    public boolean checkIndex(DBBroker broker) {
+        final Lock lock = nativeIndex.lock.readLock();
+        lock.lock();
+        try {
+            final List<SpatialRTree.Entry> entries = nativeIndex.tree.scan(entry -> true);
+            if (entries.size() != nativeIndex.tree.getEntryCount()) {
+                LOG.info("Inconsistent number of geometries: {} in the tree, {} counted", entries.size(), nativeIndex.tree.getEntryCount());
+                return false;
+            }
+            for (final SpatialRTree.Entry entry : entries) {
+                final Record record = readRecord(entry.getDocId(), entry.getNodeId());
+                if (record == null) {
+                    LOG.info("No geometry stored for node {} of document {}", entry.getNodeId(), entry.getDocId());
+                    return false;
+                }
+                final Geometry original_geometry = wkbReader.read(record.wkb);
+                final Geometry EPSG4326_geometry = wkbReader.read(record.EPSG4326_wkb);
+                final Envelope envelope = EPSG4326_geometry.getEnvelopeInternal();
+                if (!entry.hasBox(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY())) {
+                    LOG.info("Inconsistent bounding box for node {} of document {}", entry.getNodeId(), entry.getDocId());
+                    return false;
+                }
+                if (entry.getGeometry() != null && !wkbReader.read(entry.getGeometry()).equals(EPSG4326_geometry)) {
+                    LOG.info("Inconsistent geometry in the tree for node {} of document {}", entry.getNodeId(), entry.getDocId());
+                    return false;
+                }
+                if (!transformGeometry(original_geometry, record.srsName, "EPSG:4326").equals(EPSG4326_geometry)) {
+                    LOG.info("Transformed original geometry inconsistent with stored tranformed one");
+                    return false;
+                }
+                if (original_geometry.isEmpty() == record.isClosed) {
+                    LOG.info("Inconsistent IS_CLOSED: {}", record.isClosed);
+                    return false;
+                }
+
+                final DocumentImpl doc;
+                try {
+                    doc = (DocumentImpl) broker.getXMLResource(XmldbURI.create(record.documentURI));
+                } catch (final PermissionDeniedException e) {
+                    //The broker has no right on the document
+                    LOG.error(e);
+                    return false;
+                }
+                if (doc == null || doc.getDocId() != entry.getDocId()) {
+                    LOG.info("Document {} doesn't exist", record.documentURI);
+                    return false;
+                }
+                final IStoredNode node = broker.objectWith(new NodeProxy(null, doc, entry.getNodeId()));
+                if (node == null) {
+                    LOG.info("Node {} doesn't exist", entry.getNodeId());
+                    return false;
+                }
+                if (!AbstractGMLIndexWorker.GML_NS.equals(node.getNamespaceURI())) {
+                    LOG.info("GML indexed node ({}) is in the '{}' namespace. '" + AbstractGMLIndexWorker.GML_NS + "' was expected !", node.getNodeId(), node.getNamespaceURI());
+                    return false;
+                }
+                if (!original_geometry.getGeometryType().equals(node.getLocalName())) {
+                    if ("Box".equals(node.getLocalName()) && "Polygon".equals(original_geometry.getGeometryType())) {
+                        LOG.debug("GML indexed node ({}) is a gml:Box indexed as a polygon", node.getNodeId());
+                    } else {
+                        LOG.info("GML indexed node ({}) has '{}' as its local name. '{}' was expected !", node.getNodeId(), node.getLocalName(), original_geometry.getGeometryType());
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (final IOException | ParseException | SpatialIndexException e) {
+            LOG.error(e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private @Nullable Record getRecord(NodeProxy p) throws SpatialIndexException {
+        final Lock lock = nativeIndex.lock.readLock();
+        lock.lock();
+        try {
+            return readRecord(p.getOwnerDocument().getDocId(), p.getNodeId());
+        } catch (final IOException e) {
+            throw new SpatialIndexException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the stored geometry of a node. The caller holds a lock of the index: since readers
+     * share it, the records file is locked for the read.
+     */
+    private @Nullable Record readRecord(int docId, NodeId nodeId) throws IOException {
+        final Value value;
+        try (final ManagedLock<ReentrantLock> recordsLock = broker.getBrokerPool().getLockManager().acquireBtreeReadLock(nativeIndex.records.getLockName())) {
+            value = nativeIndex.records.get(nodeKey(docId, nodeId));
+        } catch (final LockException e) {
+            throw new IOException("Failed to acquire lock for '" + nativeIndex.records.getLockName() + "'", e);
+        }
+        return value == null ? null : Record.read(value.getData());
+    }
+
+    private static Value documentKey(int docId) {
+        final byte[] data = new byte[4];
+        ByteConversion.intToByteH(docId, data, 0);
+        return new Value(data);
+    }
+
+    private static Value nodeKey(int docId, NodeId nodeId) {
+        final byte[] data = new byte[6 + nodeId.size()];
+        ByteConversion.intToByteH(docId, data, 0);
+        ByteConversion.shortToByteH((short) nodeId.units(), data, 4);
+        nodeId.serialize(data, 6);
+        return new Value(data);
+    }
+
+    private static NodeId readNodeId(byte[] key) {
+        return new DLN(ByteConversion.byteToShortH(key, 4), key, 6);
+    }
+
+    @Override
+    public <T extends IStoredNode> IStoredNode getReindexRoot(IStoredNode<T> node, NodePath path, boolean insert, boolean includeSelf) {
+        return null;
+    }
+
+    @Override
+    public QueryRewriter getQueryRewriter(XQueryContext context) {
+        return null;
+    }
+
+    /**
+     * A stored geometry, in its original SRS and in EPSG:4326.
+     */
+    private static final class Record {
+        private final String documentURI;
+        private final String srsName;
+        private final double minX;
+        private final double maxX;
+        private final double minY;
+        private final double maxY;
+        private final boolean isClosed;
+        private final boolean isSimple;
+        private final boolean isValid;
+        private final byte[] wkb;
+        private final byte[] EPSG4326_wkb;
+
+        Record(String documentURI, String srsName, double minX, double maxX, double minY, double maxY,
+                boolean isClosed, boolean isSimple, boolean isValid, byte[] wkb, byte[] EPSG4326_wkb) {
+            this.documentURI = documentURI;
+            this.srsName = srsName;
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.isClosed = isClosed;
+            this.isSimple = isSimple;
+            this.isValid = isValid;
+            this.wkb = wkb;
+            this.EPSG4326_wkb = EPSG4326_wkb;
+        }
+
+        static Record read(byte[] data) throws IOException {
+            final VariableByteArrayInput is = new VariableByteArrayInput(data);
+            final String documentURI = is.readUTF();
+            final String srsName = is.readUTF();
+            final byte[] box = new byte[32];
+            is.read(box);
+            final byte flags = is.readByte();
+            final byte[] wkb = new byte[is.readInt()];
+            is.read(wkb);
+            final byte[] EPSG4326_wkb = new byte[is.readInt()];
+            is.read(EPSG4326_wkb);
+            return new Record(documentURI, srsName,
+                    Double.longBitsToDouble(ByteConversion.byteToLong(box, 0)),
+                    Double.longBitsToDouble(ByteConversion.byteToLong(box, 8)),
+                    Double.longBitsToDouble(ByteConversion.byteToLong(box, 16)),
+                    Double.longBitsToDouble(ByteConversion.byteToLong(box, 24)),
+                    (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0, wkb, EPSG4326_wkb);
+        }
+
+        byte[] toByteArray() throws IOException {
+            final VariableByteOutputStream os = new VariableByteOutputStream(64 + wkb.length + EPSG4326_wkb.length);
+            os.writeUTF(documentURI);
+            os.writeUTF(srsName);
+            final byte[] box = new byte[32];
+            ByteConversion.longToByte(Double.doubleToLongBits(minX), box, 0);
+            ByteConversion.longToByte(Double.doubleToLongBits(maxX), box, 8);
+            ByteConversion.longToByte(Double.doubleToLongBits(minY), box, 16);
+            ByteConversion.longToByte(Double.doubleToLongBits(maxY), box, 24);
+            os.write(box);
+            os.writeByte((byte) ((isClosed ? 1 : 0) | (isSimple ? 2 : 0) | (isValid ? 4 : 0)));
+            os.writeInt(wkb.length);
+            os.write(wkb);
+            os.writeInt(EPSG4326_wkb.length);
+            os.write(EPSG4326_wkb);
+            return os.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,682 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.Paged;
+import org.exist.util.ByteConversion;
+import org.exist.util.FileUtils;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.function.Predicate;
+
+/**
+ * A paged R-tree of the bounding boxes of the indexed geometries.
+ *
+ * Each page of the file holds one node of the tree. The leaves map the EPSG:4326 bounding box
+ * of a geometry to the document and the node it belongs to and, if it is small enough, to the
+ * EPSG:4326 WKB of the geometry, so that most spatial searches can be answered from the tree
+ * alone. Full nodes are split along the axis on which the centres of their entries are spread
+ * the most.
+ *
+ * The tree does not lock itself. Pages are read with positional I/O, so any number of threads
+ * may search the tree at the same time, but the caller has to keep writers away from them.
+ *
+ * Changes to the tree are not journaled. The file header records whether the tree was closed
+ * cleanly: from opening the file until closing it, the header is marked as unclean on disk, so
+ * that after a crash {@link #wasClosedCleanly()} tells the index to rebuild the tree.
+ */
+final class SpatialRTree extends Paged {
+
+    private static final byte LEAF = 1;
+    private static final byte BRANCH = 2;
+
+    private static final int LENGTH_NODE_HEADER = 2;
+    private static final int LENGTH_BOX = 4 * 8;
+
+    private final int maxEntryLength;
+    private final int maxInlineGeometry;
+    private final boolean closedCleanly;
+
+    SpatialRTree(final BrokerPool pool, final short fileVersion, final Path file) throws DBException {
+        super(pool, fileVersion);
+        setFile(file);
+        this.maxEntryLength = getFileHeader().getWorkSize() / 4;
+        this.maxInlineGeometry = getFileHeader().getWorkSize() / 8;
+        if (exists()) {
+            open(fileVersion);
+            this.closedCleanly = header().isClean();
+        } else {
+            create();
+            this.closedCleanly = true;
+        }
+        if (!isReadOnly()) {
+            header().setClean(false);
+            try {
+                getFileHeader().write();
+            } catch (final IOException e) {
+                throw new DBException("Failed to write the header of " + FileUtils.fileName(file) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public FileHeader createFileHeader(final int pageSize) {
+        return new RTreeFileHeader(pageSize);
+    }
+
+    @Override
+    public PageHeader createPageHeader() {
+        return new RTreePageHeader();
+    }
+
+    /**
+     * Closes the file, marking it as closed cleanly. The caller has to flush any file
+     * the tree is kept consistent with before.
+     *
+     * @throws DBException if the file cannot be closed
+     */
+    @Override
+    public void close() throws DBException {
+        header().setClean(true);
+        flush();
+        super.close();
+    }
+
+    /**
+     * Returns whether the tree was closed cleanly before it was opened. If not, the
+     * tree might be inconsistent and has to be rebuilt.
+     *
+     * @return true if the tree was closed cleanly, or the file is new
+     */
+    boolean wasClosedCleanly() {
+        return closedCleanly;
+    }
+
+    /**
+     * Returns the number of geometries in the tree.
+     *
+     * @return the number of geometries
+     */
+    long getEntryCount() {
+        return getFileHeader().getRecordCount();
+    }
+
+    /**
+     * Adds a geometry to the tree. The WKB of the geometry is dropped from the entry if it
+     * is too large to be kept in a leaf.
+     *
+     * @param entry the leaf entry of the geometry
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void insert(final Entry entry) throws IOException {
+        final Entry leafEntry = entry.geometry != null && entry.geometry.length > maxInlineGeometry
+                ? new Entry(entry.minX, entry.maxX, entry.minY, entry.maxY, entry.docId, entry.nodeId, null)
+                : entry;
+        if (leafEntry.length() > maxEntryLength) {
+            throw new IOException("Node id " + entry.nodeId + " is too long to be stored in " + FileUtils.fileName(getFile()));
+        }
+
+        final long rootPage = header().getRootPage();
+        if (rootPage == Page.NO_PAGE) {
+            final Node root = newNode(true);
+            root.entries.add(leafEntry);
+            writeNode(root);
+            setRootPage(root.page.getPageNum());
+        } else {
+            final Node root = readNode(rootPage);
+            final Node sibling = insert(root, leafEntry);
+            if (sibling != null) {
+                final Node newRoot = newNode(false);
+                newRoot.entries.add(parentEntry(root));
+                newRoot.entries.add(parentEntry(sibling));
+                writeNode(newRoot);
+                setRootPage(newRoot.page.getPageNum());
+            }
+        }
+        getFileHeader().incRecordCount();
+    }
+
+    /**
+     * Returns the geometries whose bounding box intersects the given box.
+     *
+     * @param minX the lower x bound of the box
+     * @param maxX the upper x bound of the box
+     * @param minY the lower y bound of the box
+     * @param maxY the upper y bound of the box
+     * @param filter the entries to return among those which intersect the box
+     *
+     * @return the matching leaf entries
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    List<Entry> search(final double minX, final double maxX, final double minY, final double maxY,
+            final Predicate<Entry> filter) throws IOException {
+        return collect(entry -> entry.intersects(minX, maxX, minY, maxY), filter);
+    }
+
+    /**
+     * Returns the geometries of the whole tree.
+     *
+     * @param filter the entries to return
+     *
+     * @return the matching leaf entries
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    List<Entry> scan(final Predicate<Entry> filter) throws IOException {
+        return collect(entry -> true, filter);
+    }
+
+    /**
+     * Removes geometries with the given bounding box from the tree. Only the subtrees
+     * which contain the box are visited.
+     *
+     * @param minX the lower x bound of the box
+     * @param maxX the upper x bound of the box
+     * @param minY the lower y bound of the box
+     * @param maxY the upper y bound of the box
+     * @param match the entries to remove among those with this box
+     *
+     * @return the number of removed geometries
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    int remove(final double minX, final double maxX, final double minY, final double maxY,
+            final Predicate<Entry> match) throws IOException {
+        final long rootPage = header().getRootPage();
+        if (rootPage == Page.NO_PAGE) {
+            return 0;
+        }
+        final Node root = readNode(rootPage);
+        final int removed = remove(root, minX, maxX, minY, maxY, match);
+        if (removed > 0) {
+            condenseRoot(root);
+            for (int i = 0; i < removed; i++) {
+                getFileHeader().decRecordCount();
+            }
+        }
+        return removed;
+    }
+
+    private List<Entry> collect(final Predicate<Entry> overlaps, final Predicate<Entry> filter) throws IOException {
+        final List<Entry> result = new ArrayList<>();
+        final long rootPage = header().getRootPage();
+        if (rootPage == Page.NO_PAGE) {
+            return result;
+        }
+        final Deque<Long> pages = new ArrayDeque<>();
+        pages.push(rootPage);
+        while (!pages.isEmpty()) {
+            final Node node = readNode(pages.pop());
+            for (final Entry entry : node.entries) {
+                if (!overlaps.test(entry)) {
+                    continue;
+                }
+                if (!node.leaf) {
+                    pages.push(entry.child);
+                } else if (filter.test(entry)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Node insert(final Node node, final Entry entry) throws IOException {
+        boolean modified = true;
+        if (node.leaf) {
+            node.entries.add(entry);
+        } else {
+            final int i = chooseSubtree(node, entry);
+            final Entry childEntry = node.entries.get(i);
+            final Node child = readNode(childEntry.child);
+            final Node sibling = insert(child, entry);
+            final Entry updated = parentEntry(child);
+            modified = sibling != null || !updated.hasBox(childEntry.minX, childEntry.maxX, childEntry.minY, childEntry.maxY);
+            node.entries.set(i, updated);
+            if (sibling != null) {
+                node.entries.add(parentEntry(sibling));
+            }
+        }
+        if (node.length() > getFileHeader().getWorkSize()) {
+            return split(node);
+        }
+        if (modified) {
+            writeNode(node);
+        }
+        return null;
+    }
+
+    /**
+     * Picks the child whose box grows the least by adding the entry, or the smallest one.
+     */
+    private static int chooseSubtree(final Node node, final Entry entry) {
+        int best = 0;
+        double bestEnlargement = Double.POSITIVE_INFINITY;
+        double bestArea = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < node.entries.size(); i++) {
+            final Entry child = node.entries.get(i);
+            final double area = child.area();
+            final double enlargement = (Math.max(child.maxX, entry.maxX) - Math.min(child.minX, entry.minX)) *
+                    (Math.max(child.maxY, entry.maxY) - Math.min(child.minY, entry.minY)) - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = i;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    private Node split(final Node node) throws IOException {
+        final List<Entry> entries = node.entries;
+        double minCentreX = Double.POSITIVE_INFINITY;
+        double maxCentreX = Double.NEGATIVE_INFINITY;
+        double minCentreY = Double.POSITIVE_INFINITY;
+        double maxCentreY = Double.NEGATIVE_INFINITY;
+        for (final Entry entry : entries) {
+            minCentreX = Math.min(minCentreX, entry.minX + entry.maxX);
+            maxCentreX = Math.max(maxCentreX, entry.minX + entry.maxX);
+            minCentreY = Math.min(minCentreY, entry.minY + entry.maxY);
+            maxCentreY = Math.max(maxCentreY, entry.minY + entry.maxY);
+        }
+        if (maxCentreX - minCentreX >= maxCentreY - minCentreY) {
+            entries.sort(Comparator.comparingDouble(entry -> entry.minX + entry.maxX));
+        } else {
+            entries.sort(Comparator.comparingDouble(entry -> entry.minY + entry.maxY));
+        }
+
+        // cut where both halves take about the same space
+        final int half = node.length() / 2;
+        int length = LENGTH_NODE_HEADER;
+        int cut = 0;
+        while (cut < entries.size() - 1 && length < half) {
+            length += entries.get(cut++).length();
+        }
+        if (cut == 0) {
+            cut = 1;
+        }
+
+        final Node sibling = newNode(node.leaf);
+        final List<Entry> moved = entries.subList(cut, entries.size());
+        sibling.entries.addAll(moved);
+        moved.clear();
+        writeNode(node);
+        writeNode(sibling);
+        return sibling;
+    }
+
+    private int remove(final Node node, final double minX, final double maxX, final double minY, final double maxY,
+            final Predicate<Entry> match) throws IOException {
+        int removed = 0;
+        if (node.leaf) {
+            for (final Iterator<Entry> i = node.entries.iterator(); i.hasNext(); ) {
+                final Entry entry = i.next();
+                if (entry.hasBox(minX, maxX, minY, maxY) && match.test(entry)) {
+                    i.remove();
+                    removed++;
+                }
+            }
+        } else {
+            for (final ListIterator<Entry> i = node.entries.listIterator(); i.hasNext(); ) {
+                final Entry entry = i.next();
+                if (!entry.contains(minX, maxX, minY, maxY)) {
+                    continue;
+                }
+                final Node child = readNode(entry.child);
+                final int removedFromChild = remove(child, minX, maxX, minY, maxY, match);
+                if (removedFromChild > 0) {
+                    removed += removedFromChild;
+                    if (child.entries.isEmpty()) {
+                        freeNode(child);
+                        i.remove();
+                    } else {
+                        i.set(parentEntry(child));
+                    }
+                }
+            }
+        }
+        // empty nodes are freed by their parent
+        if (removed > 0 && !node.entries.isEmpty()) {
+            writeNode(node);
+        }
+        return removed;
+    }
+
+    /**
+     * Frees an empty root and shortens the tree while the root has a single child.
+     */
+    private void condenseRoot(final Node root) throws IOException {
+        Node node = root;
+        while (!node.leaf && node.entries.size() == 1) {
+            final Node child = readNode(node.entries.get(0).child);
+            freeNode(node);
+            node = child;
+        }
+        if (node.entries.isEmpty()) {
+            freeNode(node);
+            setRootPage(Page.NO_PAGE);
+        } else if (node != root) {
+            setRootPage(node.page.getPageNum());
+        }
+    }
+
+    private void setRootPage(final long rootPage) throws IOException {
+        header().setRootPage(rootPage);
+        getFileHeader().write();
+    }
+
+    private RTreeFileHeader header() {
+        return (RTreeFileHeader) getFileHeader();
+    }
+
+    private Node newNode(final boolean leaf) throws IOException {
+        final Page page = getFreePage();
+        page.getPageHeader().setStatus(leaf ? LEAF : BRANCH);
+        return new Node(page, leaf, new ArrayList<>());
+    }
+
+    private void freeNode(final Node node) throws IOException {
+        unlinkPages(node.page);
+    }
+
+    private Node readNode(final long pageNum) throws IOException {
+        final Page page = getPage(pageNum);
+        final byte[] data = page.read();
+        final byte status = page.getPageHeader().getStatus();
+        if (status != LEAF && status != BRANCH) {
+            throw new IOException("Page " + pageNum + " of " + FileUtils.fileName(getFile()) + " is not a node of the R-tree");
+        }
+        final boolean leaf = status == LEAF;
+        final int count = ByteConversion.byteToShortH(data, 0);
+        final List<Entry> entries = new ArrayList<>(count + 1);
+        int offset = LENGTH_NODE_HEADER;
+        for (int i = 0; i < count; i++) {
+            final double minX = Double.longBitsToDouble(ByteConversion.byteToLong(data, offset));
+            final double maxX = Double.longBitsToDouble(ByteConversion.byteToLong(data, offset + 8));
+            final double minY = Double.longBitsToDouble(ByteConversion.byteToLong(data, offset + 16));
+            final double maxY = Double.longBitsToDouble(ByteConversion.byteToLong(data, offset + 24));
+            offset += LENGTH_BOX;
+            if (leaf) {
+                final int docId = ByteConversion.byteToIntH(data, offset);
+                offset += 4;
+                final int units = ByteConversion.byteToShortH(data, offset);
+                offset += 2;
+                final int nodeIdLength = ByteConversion.byteToShortH(data, offset);
+                offset += 2;
+                final NodeId nodeId = new DLN(units, data, offset);
+                offset += nodeIdLength;
+                final int geometryLength = ByteConversion.byteToIntH(data, offset);
+                offset += 4;
+                byte[] geometry = null;
+                if (geometryLength >= 0) {
+                    geometry = new byte[geometryLength];
+                    System.arraycopy(data, offset, geometry, 0, geometryLength);
+                    offset += geometryLength;
+                }
+                entries.add(new Entry(minX, maxX, minY, maxY, docId, nodeId, geometry));
+            } else {
+                entries.add(new Entry(minX, maxX, minY, maxY, ByteConversion.byteToLong(data, offset)));
+                offset += 8;
+            }
+        }
+        return new Node(page, leaf, entries);
+    }
+
+    private void writeNode(final Node node) throws IOException {
+        final byte[] data = new byte[node.length()];
+        ByteConversion.shortToByteH((short) node.entries.size(), data, 0);
+        int offset = LENGTH_NODE_HEADER;
+        for (final Entry entry : node.entries) {
+            ByteConversion.longToByte(Double.doubleToLongBits(entry.minX), data, offset);
+            ByteConversion.longToByte(Double.doubleToLongBits(entry.maxX), data, offset + 8);
+            ByteConversion.longToByte(Double.doubleToLongBits(entry.minY), data, offset + 16);
+            ByteConversion.longToByte(Double.doubleToLongBits(entry.maxY), data, offset + 24);
+            offset += LENGTH_BOX;
+            if (node.leaf) {
+                ByteConversion.intToByteH(entry.docId, data, offset);
+                offset += 4;
+                ByteConversion.shortToByteH((short) entry.nodeId.units(), data, offset);
+                offset += 2;
+                ByteConversion.shortToByteH((short) entry.nodeId.size(), data, offset);
+                offset += 2;
+                entry.nodeId.serialize(data, offset);
+                offset += entry.nodeId.size();
+                if (entry.geometry == null) {
+                    ByteConversion.intToByteH(-1, data, offset);
+                    offset += 4;
+                } else {
+                    ByteConversion.intToByteH(entry.geometry.length, data, offset);
+                    offset += 4;
+                    System.arraycopy(entry.geometry, 0, data, offset, entry.geometry.length);
+                    offset += entry.geometry.length;
+                }
+            } else {
+                ByteConversion.longToByte(entry.child, data, offset);
+                offset += 8;
+            }
+        }
+        node.page.getPageHeader().setStatus(node.leaf ? LEAF : BRANCH);
+        writeValue(node.page, data);
+    }
+
+    private static Entry parentEntry(final Node node) {
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (final Entry entry : node.entries) {
+            minX = Math.min(minX, entry.minX);
+            maxX = Math.max(maxX, entry.maxX);
+            minY = Math.min(minY, entry.minY);
+            maxY = Math.max(maxY, entry.maxY);
+        }
+        return new Entry(minX, maxX, minY, maxY, node.page.getPageNum());
+    }
+
+    /**
+     * An entry of a node of the tree: the bounding box of a child node, or the bounding box of
+     * a geometry together with the node it was found in.
+     */
+    static final class Entry {
+        private final double minX;
+        private final double maxX;
+        private final double minY;
+        private final double maxY;
+        private final long child;
+        private final int docId;
+        @Nullable private final NodeId nodeId;
+        @Nullable private final byte[] geometry;
+
+        /**
+         * Creates the leaf entry of a geometry.
+         *
+         * @param minX the lower x bound of the EPSG:4326 bounding box
+         * @param maxX the upper x bound of the EPSG:4326 bounding box
+         * @param minY the lower y bound of the EPSG:4326 bounding box
+         * @param maxY the upper y bound of the EPSG:4326 bounding box
+         * @param docId the id of the document
+         * @param nodeId the id of the geometry node
+         * @param geometry the EPSG:4326 WKB of the geometry, or null to not keep it in the tree
+         */
+        Entry(final double minX, final double maxX, final double minY, final double maxY,
+                final int docId, final NodeId nodeId, @Nullable final byte[] geometry) {
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.child = Page.NO_PAGE;
+            this.docId = docId;
+            this.nodeId = nodeId;
+            this.geometry = geometry;
+        }
+
+        private Entry(final double minX, final double maxX, final double minY, final double maxY, final long child) {
+            this.minX = minX;
+            this.maxX = maxX;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.child = child;
+            this.docId = -1;
+            this.nodeId = null;
+            this.geometry = null;
+        }
+
+        double getMinX() {
+            return minX;
+        }
+
+        double getMaxX() {
+            return maxX;
+        }
+
+        double getMinY() {
+            return minY;
+        }
+
+        double getMaxY() {
+            return maxY;
+        }
+
+        int getDocId() {
+            return docId;
+        }
+
+        NodeId getNodeId() {
+            return nodeId;
+        }
+
+        /**
+         * Returns the EPSG:4326 WKB of the geometry, if it was small enough to be kept in the tree.
+         *
+         * @return the WKB, or null if it has to be read from the stored geometry
+         */
+        @Nullable byte[] getGeometry() {
+            return geometry;
+        }
+
+        boolean intersects(final double minX, final double maxX, final double minY, final double maxY) {
+            return this.maxX >= minX && this.minX <= maxX && this.maxY >= minY && this.minY <= maxY;
+        }
+
+        boolean contains(final double minX, final double maxX, final double minY, final double maxY) {
+            return this.minX <= minX && this.maxX >= maxX && this.minY <= minY && this.maxY >= maxY;
+        }
+
+        boolean hasBox(final double minX, final double maxX, final double minY, final double maxY) {
+            return this.minX == minX && this.maxX == maxX && this.minY == minY && this.maxY == maxY;
+        }
+
+        private double area() {
+            return (maxX - minX) * (maxY - minY);
+        }
+
+        private int length() {
+            if (nodeId == null) {
+                return LENGTH_BOX + 8;
+            }
+            return LENGTH_BOX + 4 + 2 + 2 + nodeId.size() + 4 + (geometry == null ? 0 : geometry.length);
+        }
+    }
+
+    private static final class Node {
+        private final Page page;
+        private final boolean leaf;
+        private final List<Entry> entries;
+
+        Node(final Page page, final boolean leaf, final List<Entry> entries) {
+            this.page = page;
+            this.leaf = leaf;
+            this.entries = entries;
+        }
+
+        int length() {
+            int length = LENGTH_NODE_HEADER;
+            for (final Entry entry : entries) {
+                length += entry.length();
+            }
+            return length;
+        }
+    }
+
+    private final class RTreeFileHeader extends FileHeader {
+        private long rootPage = Page.NO_PAGE;
+        private boolean clean = false;
+
+        RTreeFileHeader(final int pageSize) {
+            super(1024, pageSize);
+        }
+
+        @Override
+        public int read(final byte[] buf) throws IOException {
+            int offset = super.read(buf);
+            rootPage = ByteConversion.byteToLong(buf, offset);
+            offset += 8;
+            clean = buf[offset++] == 1;
+            return offset;
+        }
+
+        @Override
+        public int write(final byte[] buf) throws IOException {
+            int offset = super.write(buf);
+            ByteConversion.longToByte(rootPage, buf, offset);
+            offset += 8;
+            buf[offset++] = (byte) (clean ? 1 : 0);
+            return offset;
+        }
+
+        long getRootPage() {
+            return rootPage;
+        }
+
+        void setRootPage(final long rootPage) {
+            this.rootPage = rootPage;
+            setDirty(true);
+        }
+
+        boolean isClean() {
+            return clean;
+        }
+
+        void setClean(final boolean clean) {
+            this.clean = clean;
+            setDirty(true);
+        }
+    }
+
+    private static final class RTreePageHeader extends PageHeader {
+    }
+}
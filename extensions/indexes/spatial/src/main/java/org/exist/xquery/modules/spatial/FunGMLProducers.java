@@ -26,8 +26,8 @@ import org.apache.logging.log4j.Logger;
 
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.QName;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndex;
-import org.exist.indexing.spatial.AbstractGMLJDBCIndexWorker;
+import org.exist.indexing.spatial.AbstractGMLIndex;
+import org.exist.indexing.spatial.AbstractGMLIndexWorker;
 import org.exist.indexing.spatial.SpatialIndexException;
 import org.exist.dom.memtree.DocumentBuilderReceiver;
 import org.exist.dom.memtree.MemTreeBuilder;
@@ -183,8 +183,8 @@ public class FunGMLProducers extends BasicFunction implements IndexUseReporter {
     public Sequence eval(Sequence[] args, Sequence contextSequence) throws XPathException {
         Sequence result = null; 
         try {
-            AbstractGMLJDBCIndexWorker indexWorker = (AbstractGMLJDBCIndexWorker)
-                context.getBroker().getIndexController().getWorkerByIndexId(AbstractGMLJDBCIndex.ID);
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker)
+                context.getBroker().getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
             if (indexWorker == null) {
                 logger.error("Unable to find a spatial index worker");
                 throw new XPathException(this, "Unable to find a spatial index worker");
@@ -408,10 +408,10 @@ public class FunGMLProducers extends BasicFunction implements IndexUseReporter {
             }
 
             if (result == null) {
-                String gmlPrefix = context.getPrefixForURI(AbstractGMLJDBCIndexWorker.GML_NS);
+                String gmlPrefix = context.getPrefixForURI(AbstractGMLIndexWorker.GML_NS);
                 if (gmlPrefix == null) {
                     logger.error("namespace is not defined:" + SpatialModule.PREFIX);
-                    throw new XPathException(this, "'" + AbstractGMLJDBCIndexWorker.GML_NS + "' namespace is not defined");
+                    throw new XPathException(this, "'" + AbstractGMLIndexWorker.GML_NS + "' namespace is not defined");
                 }
 
                 context.pushDocumentContext();
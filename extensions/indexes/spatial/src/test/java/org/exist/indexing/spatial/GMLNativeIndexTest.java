@@ -0,0 +1,343 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.Properties;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.memtree.SAXAdapter;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.indexing.IndexManager;
+import org.exist.indexing.spatial.AbstractGMLIndex.SpatialOperator;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.Configuration;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.ExistSAXParserFactory;
+import org.exist.util.FileInputSource;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.geotools.gml.GMLFilterDocument;
+import org.geotools.gml.GMLFilterGeometry;
+import org.geotools.gml.GMLHandlerJTS;
+import org.junit.*;
+import org.xml.sax.*;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+import org.locationtech.jts.geom.Geometry;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link GMLNativeIndex}, registered in place of the HSQL index of the test configuration.
+ */
+public class GMLNativeIndexTest {
+
+    private static final String SPATIAL_INDEX_ID = "spatial-index";
+
+    @ClassRule
+    public static final ExistEmbeddedServer server = new ExistEmbeddedServer(config(), true, true);
+
+    private static final String FILES[] = { "15385-SS7886-5i1.gml" };
+
+    private static final XmldbURI TEST_COLLECTION_URI = XmldbURI.create("/db/test-spatial-index");
+
+    private static String COLLECTION_CONFIG =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "   <index>" +
+        "        <gml/>" +
+        "   </index>" +
+        "   <validation mode=\"no\"/> " +
+        "</collection>";
+
+    String IN_MEMORY_GML = "<gml:Polygon xmlns:gml = 'http://www.opengis.net/gml' srsName='osgb:BNG'>" +
+    "  <gml:outerBoundaryIs><gml:LinearRing><gml:coordinates>" +
+    "278515.400,187060.450 278515.150,187057.950 278516.350,187057.150 " +
+    "278546.700,187054.000 278580.550,187050.900 278609.500,187048.100 " +
+    "278609.750,187051.250 278574.750,187054.650 278544.950,187057.450 " +
+    "278515.400,187060.450 " +
+    "   </gml:coordinates></gml:LinearRing></gml:outerBoundaryIs>" +
+    "</gml:Polygon>";
+
+    private Geometry currentGeometry;
+
+    /**
+     * @return the configuration properties which register {@link GMLNativeIndex} as the spatial index
+     */
+    private static Properties config() {
+        final Configuration.IndexModuleConfig[] modules;
+        try {
+            modules = ((Configuration.IndexModuleConfig[]) new Configuration().getProperty(IndexManager.PROPERTY_INDEXER_MODULES)).clone();
+        } catch (final DatabaseConfigurationException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        for (int i = 0; i < modules.length; i++) {
+            if (SPATIAL_INDEX_ID.equals(modules[i].id())) {
+                modules[i] = new Configuration.IndexModuleConfig(modules[i].id(), GMLNativeIndex.class.getName(), modules[i].config());
+            }
+        }
+        final Properties properties = new Properties();
+        properties.put(IndexManager.PROPERTY_INDEXER_MODULES, modules);
+        return properties;
+    }
+
+    @BeforeClass
+    public static void setup() throws EXistException, PermissionDeniedException, IOException, SAXException, CollectionConfigurationException, URISyntaxException, LockException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection testCollection = broker.getOrCreateCollection(transaction, TEST_COLLECTION_URI)) {
+
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, testCollection, COLLECTION_CONFIG);
+
+            for (int i = 0; i < FILES.length; i++) {
+                final URL url = GMLNativeIndexTest.class.getResource("/" + FILES[i]);
+                broker.storeDocument(transaction, XmldbURI.create(FILES[i]), new FileInputSource(Paths.get(url.toURI())), MimeType.XML_TYPE, testCollection);
+            }
+
+            transaction.commit();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws EXistException, PermissionDeniedException, IOException, TriggerException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection testCollection = broker.openCollection(TEST_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+
+            if (testCollection != null) {
+                broker.removeCollection(transaction, testCollection);
+            }
+
+            transaction.commit();
+        }
+    }
+
+    private static GMLNativeIndex nativeIndex() {
+        return (GMLNativeIndex) server.getBrokerPool().getIndexManager().getIndexByName(SPATIAL_INDEX_ID);
+    }
+
+    @Test
+    public void indexDocument() {
+        assertTrue(nativeIndex().tree.getEntryCount() > 0);
+    }
+
+    @Test
+    public void removeDocument() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException, URISyntaxException, TriggerException {
+        final BrokerPool pool = server.getBrokerPool();
+        final long geometries = nativeIndex().tree.getEntryCount();
+        final XmldbURI copyName = XmldbURI.create("copy-" + FILES[0]);
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection testCollection = broker.openCollection(TEST_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+                final URL url = GMLNativeIndexTest.class.getResource("/" + FILES[0]);
+                broker.storeDocument(transaction, copyName, new FileInputSource(Paths.get(url.toURI())), MimeType.XML_TYPE, testCollection);
+                transaction.commit();
+            }
+            assertEquals(2 * geometries, nativeIndex().tree.getEntryCount());
+            assertTrue(nativeIndex().checkIndex(broker));
+
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                 final Collection testCollection = broker.openCollection(TEST_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+                testCollection.removeXMLResource(transaction, broker, copyName);
+                transaction.commit();
+            }
+            assertEquals(geometries, nativeIndex().tree.getEntryCount());
+            assertTrue(nativeIndex().checkIndex(broker));
+        }
+    }
+
+    @Test
+    public void checkIndex() throws EXistException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            assertTrue(nativeIndex().checkIndex(broker));
+        }
+    }
+
+    @Test
+    public void scanIndex() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            XQuery xquery = pool.getXQueryService();
+            Sequence seq = xquery.execute(
+                    broker,
+                    "declare namespace gml = 'http://www.opengis.net/gml'; " +
+                            "declare function local:key-callback($term as xs:string, $data as xs:int+) as element() { " +
+                            "   <entry>" +
+                            "     <term>{$term}</term>" +
+                            "     <frequency>{$data[1]}</frequency>" +
+                            "     <documents>{$data[2]}</documents>" +
+                            "     <position>{$data[3]}</position>" +
+                            "   </entry> " +
+                            "}; " +
+                            "util:index-keys(//gml:*, '', local:key-callback#2, 1000, 'spatial-index')",
+                    null);
+            assertNotNull(seq);
+            assertTrue(seq.getItemCount() > 1);
+        }
+    }
+
+    @Test
+    public void lowLevelSearch() throws EXistException, SAXException, ParserConfigurationException, SpatialIndexException, IOException {
+        GMLHandlerJTS geometryHandler = new GeometryHandler();
+        GMLFilterGeometry geometryFilter = new GMLFilterGeometry(geometryHandler);
+        GMLFilterDocument handler = new GMLFilterDocument(geometryFilter);
+
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            AbstractGMLIndexWorker indexWorker = (AbstractGMLIndexWorker) broker.getIndexController().getWorkerByIndexId(AbstractGMLIndex.ID);
+            assertTrue(indexWorker instanceof GMLNativeIndexWorker);
+
+            SAXParserFactory factory = ExistSAXParserFactory.getSAXParserFactory();
+            factory.setNamespaceAware(true);
+            InputSource src = new InputSource(new StringReader(IN_MEMORY_GML));
+            SAXParser parser = factory.newSAXParser();
+            XMLReader reader = parser.getXMLReader();
+            SAXAdapter adapter = new SAXAdapter();
+            reader.setContentHandler(handler);
+            reader.setProperty("http://xml.org/sax/properties/lexical-handler", adapter);
+            reader.parse(src);
+
+            Geometry EPSG4326_geometry = indexWorker.transformGeometry(currentGeometry, "osgb:BNG", "EPSG:4326");
+            assertNotNull(EPSG4326_geometry);
+
+            NodeSet ns = indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.EQUALS);
+            assertTrue(ns.getLength() > 0);
+            ns = indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.DISJOINT);
+            assertTrue(ns.getLength() > 0);
+            ns = indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.INTERSECTS);
+            assertTrue(ns.getLength() > 0);
+            ns = indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.WITHIN);
+            assertTrue(ns.getLength() > 0);
+            ns = indexWorker.search(broker, null, EPSG4326_geometry, SpatialOperator.CONTAINS);
+            assertTrue(ns.getLength() > 0);
+        }
+    }
+
+    @Test
+    public void highLevelSearch() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            for (final String function : new String[] { "equals", "disjoint", "intersects", "within", "contains" }) {
+                String query = "import module namespace spatial='http://exist-db.org/xquery/spatial' " +
+                        "at 'java:org.exist.xquery.modules.spatial.SpatialModule'; " +
+                        "declare namespace gml = 'http://www.opengis.net/gml'; " +
+                        "spatial:" + function + "(//gml:*, //gml:Point[gml:coordinates[. = '278697.450,187740.900']])";
+                Sequence seq = xquery.execute(broker, query, null);
+                assertNotNull(seq);
+                assertTrue(function, seq.getItemCount() > 0);
+            }
+
+            //Tests with empty sequences
+            String query = "import module namespace spatial='http://exist-db.org/xquery/spatial' " +
+                    "at 'java:org.exist.xquery.modules.spatial.SpatialModule'; " +
+                    "declare namespace gml = 'http://www.opengis.net/gml'; " +
+                    "spatial:overlaps((), //gml:Point[gml:coordinates[. = '278697.450,187740.900']])";
+            Sequence seq = xquery.execute(broker, query, null);
+            assertNotNull(seq);
+            assertEquals(0, seq.getItemCount());
+
+            //In-memory test
+            query = "import module namespace spatial='http://exist-db.org/xquery/spatial' " +
+                    "at 'java:org.exist.xquery.modules.spatial.SpatialModule'; " +
+                    "declare namespace gml = 'http://www.opengis.net/gml'; " +
+                    "spatial:equals(//gml:*, " + IN_MEMORY_GML + ")";
+            seq = xquery.execute(broker, query, null);
+            assertNotNull(seq);
+            assertTrue(seq.getItemCount() > 0);
+        }
+    }
+
+    @Test
+    public void geometricProperties() throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = server.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            for (final String function : new String[] { "getWKT", "getWKB", "getMinX", "getMaxX", "getMinY", "getMaxY",
+                    "getCentroidX", "getCentroidY", "getArea", "getEPSG4326WKT", "getEPSG4326WKB", "getEPSG4326MinX",
+                    "getEPSG4326MaxX", "getEPSG4326MinY", "getEPSG4326MaxY", "getEPSG4326CentroidX",
+                    "getEPSG4326CentroidY", "getEPSG4326Area", "getSRS", "getGeometryType", "isClosed", "isSimple",
+                    "isValid" }) {
+                String query = "import module namespace spatial='http://exist-db.org/xquery/spatial' " +
+                        "at 'java:org.exist.xquery.modules.spatial.SpatialModule'; " +
+                        "declare namespace gml = 'http://www.opengis.net/gml'; " +
+                        "spatial:" + function + "((//gml:Polygon)[1])";
+                Sequence seq = xquery.execute(broker, query, null);
+                assertNotNull(seq);
+                assertEquals(function, 1, seq.getItemCount());
+            }
+        }
+    }
+
+    @Test
+    public void reindexAfterUncleanShutdown() throws EXistException, DatabaseConfigurationException, IOException {
+        final Path treeFile = server.getTemporaryStorage().get().resolve(GMLNativeIndex.TREE_FILE_NAME);
+        final long geometries = nativeIndex().tree.getEntryCount();
+        assertTrue(geometries > 0);
+        assertFalse(nativeIndex().isReindexRequired());
+
+        // the file as it is left if the database crashes while the index is open
+        final byte[] crashed = Files.readAllBytes(treeFile);
+        server.stopDb(false);
+        Files.write(treeFile, crashed);
+        server.startDb();
+
+        assertTrue(nativeIndex().isReindexRequired());
+        assertEquals(geometries, nativeIndex().tree.getEntryCount());
+    }
+
+    private class GeometryHandler extends XMLFilterImpl implements GMLHandlerJTS {
+        public void geometry(Geometry geometry) {
+            currentGeometry = geometry;
+        }
+    }
+}
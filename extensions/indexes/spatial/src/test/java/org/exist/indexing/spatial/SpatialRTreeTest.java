@@ -0,0 +1,248 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.spatial;
+
+import org.exist.numbering.DLN;
+import org.exist.storage.BrokerPool;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link SpatialRTree}, comparing its searches with a brute force search
+ * of the inserted entries.
+ */
+public class SpatialRTreeTest {
+
+    private static final short FILE_VERSION = 1;
+
+    private static final int ENTRIES = 2000;
+    private static final int SEARCHES = 200;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void search() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("spatial.dbx");
+        final List<SpatialRTree.Entry> entries = randomEntries(ENTRIES);
+        try (final SpatialRTree tree = newTree(file)) {
+            for (final SpatialRTree.Entry entry : entries) {
+                tree.insert(entry);
+            }
+            assertEquals(ENTRIES, tree.getEntryCount());
+            assertSearchesMatch(tree, entries);
+            assertEquals(keys(entries), keys(tree.scan(entry -> true)));
+        }
+    }
+
+    @Test
+    public void geometryIsOnlyKeptIfSmall() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("spatial.dbx");
+        try (final SpatialRTree tree = newTree(file)) {
+            tree.insert(new SpatialRTree.Entry(0, 1, 0, 1, 1, new DLN("1.1"), new byte[16]));
+            tree.insert(new SpatialRTree.Entry(2, 3, 2, 3, 1, new DLN("1.2"), new byte[tree.getFileHeader().getWorkSize()]));
+
+            final List<SpatialRTree.Entry> small = tree.search(0, 1, 0, 1, entry -> true);
+            assertEquals(1, small.size());
+            assertArrayEquals(new byte[16], small.get(0).getGeometry());
+
+            final List<SpatialRTree.Entry> large = tree.search(2, 3, 2, 3, entry -> true);
+            assertEquals(1, large.size());
+            assertNull(large.get(0).getGeometry());
+        }
+    }
+
+    @Test
+    public void remove() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("spatial.dbx");
+        final List<SpatialRTree.Entry> entries = randomEntries(ENTRIES);
+        try (final SpatialRTree tree = newTree(file)) {
+            for (final SpatialRTree.Entry entry : entries) {
+                tree.insert(entry);
+            }
+
+            // remove every other entry, by its box and node
+            int removed = 0;
+            for (final Iterator<SpatialRTree.Entry> i = entries.iterator(); i.hasNext(); ) {
+                final SpatialRTree.Entry entry = i.next();
+                if (random.nextBoolean()) {
+                    removed += tree.remove(entry.getMinX(), entry.getMaxX(), entry.getMinY(), entry.getMaxY(),
+                            e -> e.getDocId() == entry.getDocId() && e.getNodeId().equals(entry.getNodeId()));
+                    i.remove();
+                }
+            }
+            assertEquals(ENTRIES - entries.size(), removed);
+            assertEquals(entries.size(), tree.getEntryCount());
+            assertSearchesMatch(tree, entries);
+
+            // remove all remaining entries of a document
+            final int docId = entries.get(0).getDocId();
+            for (final SpatialRTree.Entry entry : new ArrayList<>(entries)) {
+                if (entry.getDocId() == docId) {
+                    assertEquals(1, tree.remove(entry.getMinX(), entry.getMaxX(), entry.getMinY(), entry.getMaxY(),
+                            e -> e.getDocId() == docId && e.getNodeId().equals(entry.getNodeId())));
+                    entries.remove(entry);
+                }
+            }
+            assertSearchesMatch(tree, entries);
+
+            for (final SpatialRTree.Entry entry : entries) {
+                assertEquals(1, tree.remove(entry.getMinX(), entry.getMaxX(), entry.getMinY(), entry.getMaxY(),
+                        e -> e.getDocId() == entry.getDocId() && e.getNodeId().equals(entry.getNodeId())));
+            }
+            assertEquals(0, tree.getEntryCount());
+            assertTrue(tree.scan(entry -> true).isEmpty());
+
+            // the empty tree can be filled again
+            tree.insert(entries.get(0));
+            assertEquals(1, tree.scan(entry -> true).size());
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("spatial.dbx");
+        final List<SpatialRTree.Entry> entries = randomEntries(ENTRIES);
+        try (final SpatialRTree tree = newTree(file)) {
+            assertTrue(tree.wasClosedCleanly());
+            for (final SpatialRTree.Entry entry : entries) {
+                tree.insert(entry);
+            }
+        }
+
+        try (final SpatialRTree tree = newTree(file)) {
+            assertTrue(tree.wasClosedCleanly());
+            assertEquals(ENTRIES, tree.getEntryCount());
+            assertSearchesMatch(tree, entries);
+
+            // changes after reopening are kept as well
+            final SpatialRTree.Entry first = entries.remove(0);
+            assertEquals(1, tree.remove(first.getMinX(), first.getMaxX(), first.getMinY(), first.getMaxY(),
+                    e -> e.getDocId() == first.getDocId() && e.getNodeId().equals(first.getNodeId())));
+        }
+
+        try (final SpatialRTree tree = newTree(file)) {
+            assertEquals(ENTRIES - 1, tree.getEntryCount());
+            assertSearchesMatch(tree, entries);
+        }
+    }
+
+    @Test
+    public void notClosedCleanly() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("spatial.dbx");
+        final Path crashedFile = temporaryFolder.getRoot().toPath().resolve("crashed.dbx");
+        try (final SpatialRTree tree = newTree(file)) {
+            for (final SpatialRTree.Entry entry : randomEntries(100)) {
+                tree.insert(entry);
+            }
+            tree.flush();
+
+            // the file as it is left if the database crashes while the tree is open
+            Files.copy(file, crashedFile);
+        }
+
+        try (final SpatialRTree tree = newTree(crashedFile)) {
+            assertFalse(tree.wasClosedCleanly());
+        }
+        try (final SpatialRTree tree = newTree(file)) {
+            assertTrue(tree.wasClosedCleanly());
+        }
+    }
+
+    private static SpatialRTree newTree(final Path file) throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        return new SpatialRTree(pool, FILE_VERSION, file);
+    }
+
+    /**
+     * Creates entries with random boxes, some of which overlap, spread over a few documents.
+     */
+    private List<SpatialRTree.Entry> randomEntries(final int count) {
+        final List<SpatialRTree.Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final double x = random.nextDouble() * 360 - 180;
+            final double y = random.nextDouble() * 180 - 90;
+            // mostly small boxes, and a few large ones
+            final double size = random.nextInt(10) == 0 ? random.nextDouble() * 90 : random.nextDouble();
+            final byte[] geometry = new byte[random.nextInt(64)];
+            random.nextBytes(geometry);
+            entries.add(new SpatialRTree.Entry(x, x + size, y, y + size / 2,
+                    i % 7, new DLN("1." + (i + 1) + "." + (i % 3 + 1)), geometry));
+        }
+        return entries;
+    }
+
+    private void assertSearchesMatch(final SpatialRTree tree, final List<SpatialRTree.Entry> entries) throws Exception {
+        for (int i = 0; i < SEARCHES; i++) {
+            final double minX = random.nextDouble() * 360 - 180;
+            final double minY = random.nextDouble() * 180 - 90;
+            final double maxX = minX + random.nextDouble() * (i % 10 == 0 ? 180 : 10);
+            final double maxY = minY + random.nextDouble() * (i % 10 == 0 ? 90 : 5);
+            final int docId = i % 7;
+
+            final List<SpatialRTree.Entry> expected = new ArrayList<>();
+            final List<SpatialRTree.Entry> expectedInDocument = new ArrayList<>();
+            for (final SpatialRTree.Entry entry : entries) {
+                if (entry.intersects(minX, maxX, minY, maxY)) {
+                    expected.add(entry);
+                    if (entry.getDocId() == docId) {
+                        expectedInDocument.add(entry);
+                    }
+                }
+            }
+
+            final List<SpatialRTree.Entry> found = tree.search(minX, maxX, minY, maxY, entry -> true);
+            assertEquals(keys(expected), keys(found));
+            assertEquals(expected.size(), found.size());
+
+            assertEquals(keys(expectedInDocument), keys(tree.search(minX, maxX, minY, maxY, entry -> entry.getDocId() == docId)));
+        }
+    }
+
+    private static Set<String> keys(final List<SpatialRTree.Entry> entries) {
+        final Set<String> keys = new TreeSet<>();
+        for (final SpatialRTree.Entry entry : entries) {
+            keys.add(entry.getDocId() + "/" + entry.getNodeId() + "/" + entry.getMinX() + "," + entry.getMaxX() + "," +
+                    entry.getMinY() + "," + entry.getMaxY());
+        }
+        return keys;
+    }
+}